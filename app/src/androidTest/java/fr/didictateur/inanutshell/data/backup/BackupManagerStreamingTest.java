@@ -0,0 +1,285 @@
+package fr.didictateur.inanutshell.data.backup;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import fr.didictateur.inanutshell.User;
+import fr.didictateur.inanutshell.data.database.AppDatabase;
+import fr.didictateur.inanutshell.data.meal.MealPlan;
+import fr.didictateur.inanutshell.data.model.Recipe;
+import fr.didictateur.inanutshell.data.shopping.ShoppingItem;
+import fr.didictateur.inanutshell.data.shopping.ShoppingList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sauvegarde écrite au fil de l'eau depuis des pages Room : contenu des sections, mémoire
+ * retenue constante sur 10 000 recettes et durée de leur restauration
+ */
+@RunWith(AndroidJUnit4.class)
+public class BackupManagerStreamingTest {
+    private static final String TAG = "BackupManagerStreamingTest";
+    private static final int LARGE_RECIPE_COUNT = 10_000;
+
+    private AppDatabase recipeDatabase;
+    private fr.didictateur.inanutshell.AppDatabase appDatabase;
+    private BackupManager backupManager;
+    private final List<File> backupFiles = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        recipeDatabase = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        appDatabase = Room.inMemoryDatabaseBuilder(context, fr.didictateur.inanutshell.AppDatabase.class).build();
+        backupManager = new BackupManager(context, recipeDatabase, appDatabase);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : backupFiles) {
+            file.delete();
+        }
+        recipeDatabase.close();
+        appDatabase.close();
+    }
+
+    @Test
+    public void fullBackupStreamsEverySection() throws Exception {
+        insertRecipes(3);
+        for (int i = 0; i < 4; i++) {
+            appDatabase.mealPlanDao().insertSync(new MealPlan("recipe-" + i, "Recette " + i,
+                new Date(1704067200000L), MealPlan.MealType.values()[i % 3]));
+        }
+        int listId = (int) appDatabase.shoppingListDao().insertSync(new ShoppingList("Courses", "Semaine"));
+        List<ShoppingItem> items = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            items.add(new ShoppingItem(listId, "Article " + i, "500 g", ShoppingItem.Category.values()[0]));
+        }
+        appDatabase.shoppingItemDao().insertAll(items);
+        User user = new User("alice", "alice@example.org", User.UserRole.values()[0]);
+        user.passwordHash = "empreinte-secrete";
+        appDatabase.userDao().insert(user);
+
+        Map<String, String> entries = readEntries(awaitBackup(callback ->
+            backupManager.createFullBackup(callback)));
+
+        assertEquals(3, countObjects(entries.get("recipes.json")));
+        assertEquals(4, countObjects(entries.get("meal_plans.json")));
+        assertEquals(1, countObjects(entries.get("shopping_lists.json")));
+        assertEquals(5, countObjects(entries.get("shopping_items.json")));
+        assertEquals(1, countObjects(entries.get("users.json")));
+        assertNotNull(entries.get("timers.json"));
+        assertNotNull(entries.get("groups.json"));
+        assertNotNull(entries.get("themes.json"));
+        assertTrue(entries.get("users.json").contains("alice"));
+        assertFalse(entries.get("users.json").contains("empreinte-secrete"));
+    }
+
+    /**
+     * Mémoire retenue (après GC) à chaque étape d'avancement : elle doit rester de l'ordre
+     * d'une page de recettes, loin de la taille du JSON écrit
+     */
+    @Test
+    public void tenThousandRecipesKeepRetainedHeapFlat() throws Exception {
+        insertRecipes(LARGE_RECIPE_COUNT);
+        long baseline = retainedHeap();
+        AtomicLong peak = new AtomicLong();
+
+        File backup = awaitBackup(callback -> backupManager.createSelectiveBackup(
+            Collections.singletonList(BackupManager.BackupDataType.RECIPES),
+            new ForwardingCallback(callback) {
+                @Override
+                public void onProgress(String operation, int progress) {
+                    peak.accumulateAndGet(retainedHeap() - baseline, Math::max);
+                }
+            }));
+
+        long jsonBytes = readEntries(backup).get("recipes.json").getBytes(StandardCharsets.UTF_8).length;
+        Log.i(TAG, LARGE_RECIPE_COUNT + " recettes : JSON " + (jsonBytes / 1024) + " Ko, pic de mémoire retenue "
+            + (peak.get() / 1024) + " Ko, archive " + (backup.length() / 1024) + " Ko");
+
+        assertTrue("Pic " + peak.get() + " octets pour " + jsonBytes + " octets de JSON",
+            peak.get() < jsonBytes / 4);
+    }
+
+    @Test
+    public void tenThousandRecipesRestoreInSeconds() throws Exception {
+        insertRecipes(LARGE_RECIPE_COUNT);
+        File backup = awaitBackup(callback -> backupManager.createSelectiveBackup(
+            Collections.singletonList(BackupManager.BackupDataType.RECIPES), callback));
+        recipeDatabase.recipeDao().deleteAllRecipes();
+
+        long start = System.nanoTime();
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<String> error = new AtomicReference<>();
+        backupManager.restoreSelectiveBackup(backup,
+            Collections.singletonList(BackupManager.BackupDataType.RECIPES),
+            BackupManager.RestoreMode.REPLACE, new BackupManager.RestoreCallback() {
+                @Override
+                public void onSuccess(String message) {
+                    done.countDown();
+                }
+
+                @Override
+                public void onError(String message) {
+                    error.set(message);
+                    done.countDown();
+                }
+
+                @Override
+                public void onProgress(String operation, int progress) {
+                }
+            });
+        assertTrue(done.await(5, TimeUnit.MINUTES));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Log.i(TAG, "Restauration de " + LARGE_RECIPE_COUNT + " recettes : " + elapsedMs + " ms");
+        assertNull(error.get());
+        assertEquals(LARGE_RECIPE_COUNT, recipeDatabase.recipeDao().getRecipeCount());
+        assertTrue("Restauration en " + elapsedMs + " ms", elapsedMs < TimeUnit.SECONDS.toMillis(60));
+    }
+
+    private interface BackupStarter {
+        void start(BackupManager.BackupCallback callback);
+    }
+
+    private static class ForwardingCallback implements BackupManager.BackupCallback {
+        private final BackupManager.BackupCallback delegate;
+
+        ForwardingCallback(BackupManager.BackupCallback delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onSuccess(File backupFile) {
+            delegate.onSuccess(backupFile);
+        }
+
+        @Override
+        public void onError(String error) {
+            delegate.onError(error);
+        }
+
+        @Override
+        public void onProgress(String operation, int progress) {
+            delegate.onProgress(operation, progress);
+        }
+    }
+
+    private File awaitBackup(BackupStarter starter) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<File> file = new AtomicReference<>();
+        AtomicReference<String> error = new AtomicReference<>();
+        starter.start(new BackupManager.BackupCallback() {
+            @Override
+            public void onSuccess(File backupFile) {
+                file.set(backupFile);
+                done.countDown();
+            }
+
+            @Override
+            public void onError(String message) {
+                error.set(message);
+                done.countDown();
+            }
+
+            @Override
+            public void onProgress(String operation, int progress) {
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.MINUTES));
+        assertNull(error.get());
+        backupFiles.add(file.get());
+        return file.get();
+    }
+
+    private void insertRecipes(int count) {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            description.append("Étape ").append(i).append(" : mélanger puis laisser reposer. ");
+        }
+        List<Recipe> batch = new ArrayList<>(500);
+        for (int i = 0; i < count; i++) {
+            Recipe recipe = new Recipe();
+            recipe.setId(String.format("recipe-%05d", i));
+            recipe.setName("Recette " + i);
+            recipe.setDescription(description.toString());
+            recipe.setRecipeYield("4 personnes");
+            batch.add(recipe);
+            if (batch.size() == 500) {
+                recipeDatabase.recipeDao().upsertRecipes(batch);
+                batch.clear();
+            }
+        }
+        recipeDatabase.recipeDao().upsertRecipes(batch);
+    }
+
+    private static Map<String, String> readEntries(File backup) throws IOException {
+        Map<String, String> entries = new HashMap<>();
+        try (ZipInputStream zipIn = new ZipInputStream(new BufferedInputStream(new FileInputStream(backup)))) {
+            ZipEntry entry;
+            byte[] buffer = new byte[8192];
+            while ((entry = zipIn.getNextEntry()) != null) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                int read;
+                while ((read = zipIn.read(buffer)) > 0) {
+                    content.write(buffer, 0, read);
+                }
+                entries.put(entry.getName(), content.toString("UTF-8"));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Objets de premier niveau d'un tableau JSON indenté (une accolade en début de ligne)
+     */
+    private static int countObjects(String jsonArray) {
+        assertNotNull(jsonArray);
+        int count = 0;
+        for (String line : jsonArray.split("\n")) {
+            if (line.equals("  {")) count++;
+        }
+        return count;
+    }
+
+    private static long retainedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        runtime.runFinalization();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,149 @@
+package fr.didictateur.inanutshell.data.meal;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import fr.didictateur.inanutshell.data.AppDatabase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Enregistrement par lot des meal plans téléchargés : recherche IN (...) et écriture
+ * en une transaction, comparée à l'ancien chemin une requête par meal plan
+ */
+@RunWith(AndroidJUnit4.class)
+public class MealPlanDaoUpsertTest {
+    private static final String TAG = "MealPlanDaoUpsertTest";
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+    private AppDatabase database;
+    private MealPlanDao dao;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        dao = database.mealPlanDao();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void insertsNewPlansAndUpdatesExistingInPlace() {
+        dao.upsertServerMealPlans(serverPlans("a", 3, "v1"));
+        int existingId = dao.getMealPlanByServerIdSync("a-1").id;
+
+        int written = dao.upsertServerMealPlans(serverPlans("a", 5, "v2"));
+
+        assertEquals(5, written);
+        assertEquals(5, dao.getAllMealPlansSync().size());
+        MealPlan updated = dao.getMealPlanByServerIdSync("a-1");
+        assertEquals(existingId, updated.id);
+        assertEquals("v2", updated.notes);
+    }
+
+    @Test
+    public void keepsPlansWithUnsentLocalChanges() {
+        dao.upsertServerMealPlans(serverPlans("a", 2, "serveur"));
+        MealPlan local = dao.getMealPlanByServerIdSync("a-0");
+        local.notes = "local";
+        local.needsSync = true;
+        dao.updateSync(local);
+
+        int written = dao.upsertServerMealPlans(serverPlans("a", 2, "serveur v2"));
+
+        assertEquals(1, written);
+        assertEquals("local", dao.getMealPlanByServerIdSync("a-0").notes);
+        assertEquals("serveur v2", dao.getMealPlanByServerIdSync("a-1").notes);
+    }
+
+    @Test
+    public void looksUpMoreIdsThanTheSqliteParameterLimit() {
+        dao.upsertServerMealPlans(serverPlans("a", 1200, "v1"));
+
+        int written = dao.upsertServerMealPlans(serverPlans("a", 1200, "v2"));
+
+        assertEquals(1200, written);
+        List<MealPlan> all = dao.getAllMealPlansSync();
+        assertEquals(1200, all.size());
+        for (MealPlan plan : all) {
+            assertEquals("v2", plan.notes);
+        }
+    }
+
+    /**
+     * Une année de meal plans (3 repas par jour) : ancien chemin une requête par meal plan
+     * contre le lot transactionnel, première synchronisation puis mise à jour complète
+     */
+    @Test
+    public void yearOfPlansTiming() {
+        int count = 365 * 3;
+
+        long perRowMs = timePerRow(serverPlans("row", count, "v1"))
+            + timePerRow(serverPlans("row", count, "v2"));
+        long batchMs = timeBatch(serverPlans("batch", count, "v1"))
+            + timeBatch(serverPlans("batch", count, "v2"));
+
+        Log.i(TAG, "Année de meal plans (" + count + ") : une requête par meal plan " + perRowMs
+            + " ms, lot transactionnel " + batchMs + " ms");
+
+        assertEquals(count * 2, dao.getAllMealPlansSync().size());
+        assertNotNull(dao.getMealPlanByServerIdSync("batch-" + (count - 1)));
+        assertTrue("Le lot ne doit pas être plus lent que l'ancien chemin", batchMs <= perRowMs);
+    }
+
+    private long timePerRow(List<MealPlan> plans) {
+        long start = System.nanoTime();
+        for (MealPlan plan : plans) {
+            MealPlan existing = dao.getMealPlanByServerIdSync(plan.serverId);
+            if (existing == null) {
+                dao.insertSync(plan);
+            } else if (!existing.needsSync) {
+                plan.id = existing.id;
+                dao.updateSync(plan);
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private long timeBatch(List<MealPlan> plans) {
+        long start = System.nanoTime();
+        dao.upsertServerMealPlans(plans);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static List<MealPlan> serverPlans(String prefix, int count, String notes) {
+        long firstDay = 1704067200000L; // 2024-01-01
+        MealPlan.MealType[] types = MealPlan.MealType.values();
+        List<MealPlan> plans = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MealPlan plan = new MealPlan("recipe-" + (i % 50), "Recette " + (i % 50),
+                new Date(firstDay + (i / 3) * DAY_MS), types[i % 3]);
+            plan.serverId = prefix + "-" + i;
+            plan.notes = notes;
+            plan.isSynced = true;
+            plan.needsSync = false;
+            plans.add(plan);
+        }
+        return plans;
+    }
+}
@@ -1,9 +1,12 @@
 package fr.didictateur.inanutshell;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 import android.content.Context;
 
 import fr.didictateur.inanutshell.data.cache.CachedRecipe;
@@ -14,7 +17,9 @@ import fr.didictateur.inanutshell.data.shopping.ShoppingItem;
 import fr.didictateur.inanutshell.data.shopping.ShoppingList;
 import fr.didictateur.inanutshell.data.shopping.ShoppingItemDao;
 import fr.didictateur.inanutshell.data.shopping.ShoppingListDao;
+import fr.didictateur.inanutshell.config.CertificatePin;
 import fr.didictateur.inanutshell.config.ServerConfig;
+import fr.didictateur.inanutshell.database.dao.CertificatePinDao;
 import fr.didictateur.inanutshell.database.dao.ServerConfigDao;
 
 /**
@@ -36,9 +41,10 @@ import fr.didictateur.inanutshell.database.dao.ServerConfigDao;
         // Entité de personnalisation
         Theme.class,
         // Configuration serveurs
-        ServerConfig.class
+        ServerConfig.class,
+        CertificatePin.class
     }, 
-    version = 7, // Incrémenté pour ServerConfig
+    version = 9, // Certificats épinglés des serveurs auto-signés
     exportSchema = false
 )
 @TypeConverters({Converters.class})
@@ -65,6 +71,28 @@ public abstract class AppDatabase extends RoomDatabase {
     
     // DAO pour la configuration serveurs
     public abstract ServerConfigDao serverConfigDao();
+    public abstract CertificatePinDao certificatePinDao();
+    
+    // 7 → 8 : colonnes de synchronisation des listes de courses, sans toucher aux données existantes
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `shopping_lists` ADD COLUMN `server_id` TEXT");
+            db.execSQL("ALTER TABLE `shopping_lists` ADD COLUMN `needs_sync` INTEGER NOT NULL DEFAULT 1");
+            db.execSQL("ALTER TABLE `shopping_lists` ADD COLUMN `last_sync_date` INTEGER");
+        }
+    };
+    
+    // 8 → 9 : ajout de la table des certificats épinglés, sans toucher aux données existantes
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `certificate_pins` (" +
+                "`hostPort` TEXT NOT NULL, `serverId` INTEGER NOT NULL, `spkiSha256` TEXT, " +
+                "`subject` TEXT, `notAfter` INTEGER NOT NULL, `firstSeen` INTEGER NOT NULL, " +
+                "`lastSeen` INTEGER NOT NULL, PRIMARY KEY(`hostPort`))");
+        }
+    };
     
     public static synchronized AppDatabase getInstance(Context context) {
         if (INSTANCE == null) {
@@ -73,6 +101,7 @@ public abstract class AppDatabase extends RoomDatabase {
                 AppDatabase.class,
                 DATABASE_NAME
             )
+            .addMigrations(MIGRATION_7_8, MIGRATION_8_9)
             .fallbackToDestructiveMigration() // Pour la migration automatique
             .allowMainThreadQueries() // À utiliser avec parcimonie
             .build();
@@ -37,6 +37,13 @@ public interface GroupDao {
     @Query("SELECT * FROM groups WHERE isActive = 1")
     LiveData<List<Group>> getAllActiveGroupsLive();
 
+    // Sauvegarde : tous les groupes, actifs ou non, par pages triées par id
+    @Query("SELECT * FROM groups WHERE groupId > :afterId ORDER BY groupId ASC LIMIT :limit")
+    List<Group> getGroupsAfter(int afterId, int limit);
+
+    @Query("SELECT COUNT(*) FROM groups")
+    int getGroupCount();
+
     // ===================== Gestion des propriétaires =====================
 
     @Query("SELECT * FROM groups WHERE ownerId = :ownerId AND isActive = 1")
@@ -37,6 +37,10 @@ public interface ThemeDao {
     @Query("SELECT * FROM themes ORDER BY isDefault DESC, isActive DESC, themeName ASC")
     LiveData<List<Theme>> getAllThemesLive();
 
+    // Sauvegarde : pages triées par id, après l'id donné (0 pour la première page)
+    @Query("SELECT * FROM themes WHERE themeId > :afterId ORDER BY themeId ASC LIMIT :limit")
+    List<Theme> getThemesAfter(int afterId, int limit);
+
     // ===================== Gestion des thèmes actifs =====================
 
     @Query("SELECT * FROM themes WHERE isActive = 1 LIMIT 1")
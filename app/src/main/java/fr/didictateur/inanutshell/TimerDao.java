@@ -33,6 +33,13 @@ public interface TimerDao {
     @Query("SELECT * FROM timers ORDER BY createdAt DESC")
     LiveData<List<Timer>> getAllTimersLive();
     
+    // Sauvegarde : pages triées par id, après l'id donné (0 pour la première page)
+    @Query("SELECT * FROM timers WHERE id > :afterId ORDER BY id ASC LIMIT :limit")
+    List<Timer> getTimersAfter(int afterId, int limit);
+    
+    @Query("SELECT COUNT(*) FROM timers")
+    int getTimerCount();
+    
     @Query("SELECT * FROM timers WHERE state IN ('RUNNING', 'PAUSED') ORDER BY createdAt DESC")
     List<Timer> getActiveTimers();
     
@@ -37,6 +37,13 @@ public interface UserDao {
     @Query("SELECT * FROM users")
     LiveData<List<User>> getAllUsersLive();
 
+    // Sauvegarde : pages triées par id, après l'id donné (0 pour la première page)
+    @Query("SELECT * FROM users WHERE userId > :afterId ORDER BY userId ASC LIMIT :limit")
+    List<User> getUsersAfter(int afterId, int limit);
+
+    @Query("SELECT COUNT(*) FROM users")
+    int getUserCount();
+
     // ===================== Authentification =====================
 
     @Query("SELECT * FROM users WHERE email = :email AND passwordHash = :passwordHash AND isActive = 1")
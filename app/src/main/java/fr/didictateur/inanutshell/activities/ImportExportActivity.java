@@ -81,6 +81,8 @@ public class ImportExportActivity extends AppCompatActivity {
     
     // Gestionnaires
     private RecipeImporter recipeImporter;
+    private RecipeImporter.BulkImportHandle urlImportHandle;
+    private RecipeImporter.BulkImportHandle archiveImportHandle;
     private RecipeExporter recipeExporter;
     private NetworkManager networkManager;
     
@@ -100,6 +102,27 @@ public class ImportExportActivity extends AppCompatActivity {
         setupRecyclerView();
         setupFloatingActionButton();
         checkStoragePermissions();
+        
+        // Reprendre les imports d'URLs interrompus (annulés en quittant l'écran, arrêt de l'application).
+        // Après une rotation, l'import lancé par l'instance précédente tourne encore : pas de reprise.
+        if (savedInstanceState == null) {
+            urlImportHandle = recipeImporter.resumeBulkImports(newUrlImportCallback());
+        }
+    }
+    
+    @Override
+    protected void onDestroy() {
+        // En quittant l'écran, l'import en cours est repris à la prochaine ouverture ;
+        // une rotation ou un changement de thème le laisse continuer
+        boolean leaving = isFinishing() && !isChangingConfigurations();
+        if (leaving && urlImportHandle != null) {
+            urlImportHandle.cancel();
+        }
+        // Les lots d'archive déjà enregistrés sont gardés ; réimporter n'ajoute que le reste
+        if (leaving && archiveImportHandle != null) {
+            archiveImportHandle.cancel();
+        }
+        super.onDestroy();
     }
     
     private void initializeViews() {
@@ -275,10 +298,15 @@ public class ImportExportActivity extends AppCompatActivity {
     private void importFromMultipleUrls(List<String> urls) {
         showProgress("Import de " + urls.size() + " URLs...");
         
-        recipeImporter.importFromUrls(urls, new RecipeImporter.MultipleImportCallback() {
+        urlImportHandle = recipeImporter.importFromUrls(urls, newUrlImportCallback());
+    }
+    
+    private RecipeImporter.MultipleImportCallback newUrlImportCallback() {
+        return new RecipeImporter.MultipleImportCallback() {
             @Override
             public void onSuccess(List<Recipe> recipes) {
                 runOnUiThread(() -> {
+                    if (isDestroyed()) return;
                     hideProgress();
                     selectedRecipes.addAll(recipes);
                     adapter.notifyDataSetChanged();
@@ -290,6 +318,7 @@ public class ImportExportActivity extends AppCompatActivity {
             @Override
             public void onError(String error) {
                 runOnUiThread(() -> {
+                    if (isDestroyed()) return;
                     hideProgress();
                     showSnackbar("Erreur import multiple: " + error);
                 });
@@ -298,10 +327,11 @@ public class ImportExportActivity extends AppCompatActivity {
             @Override
             public void onProgress(int processed, int total) {
                 runOnUiThread(() -> {
-                    textViewStatus.setText("Import: " + processed + "/" + total + " URLs");
+                    if (isDestroyed()) return;
+                    showProgress("Import: " + processed + "/" + total + " URLs");
                 });
             }
-        });
+        };
     }
     
     // ===== IMPORT DEPUIS FICHIER =====
@@ -310,7 +340,8 @@ public class ImportExportActivity extends AppCompatActivity {
         Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
         intent.setType("*/*");
         intent.addCategory(Intent.CATEGORY_OPENABLE);
-        intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[]{"application/json", "text/plain"});
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[]{"application/json", "text/plain",
+            "application/zip", "application/gzip", "application/octet-stream"});
         
         try {
             startActivityForResult(Intent.createChooser(intent, "Sélectionner un fichier"), REQUEST_PICK_FILE);
@@ -331,6 +362,26 @@ public class ImportExportActivity extends AppCompatActivity {
     }
     
     private void importFromFile(Uri fileUri) {
+        String fileName = "";
+        long fileSize = -1;
+        try (android.database.Cursor cursor = getContentResolver().query(fileUri, null, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                int nameIndex = cursor.getColumnIndex(android.provider.OpenableColumns.DISPLAY_NAME);
+                int sizeIndex = cursor.getColumnIndex(android.provider.OpenableColumns.SIZE);
+                if (nameIndex >= 0 && !cursor.isNull(nameIndex)) fileName = cursor.getString(nameIndex);
+                if (sizeIndex >= 0 && !cursor.isNull(sizeIndex)) fileSize = cursor.getLong(sizeIndex);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Nom du fichier inconnu", e);
+        }
+        
+        String lowerName = fileName.toLowerCase(Locale.ROOT);
+        if (lowerName.endsWith(".zip") || lowerName.endsWith(".paprikarecipes") || lowerName.endsWith(".paprikarecipe")
+                || "application/zip".equals(getContentResolver().getType(fileUri))) {
+            importFromArchive(fileUri, fileSize);
+            return;
+        }
+        
         showProgress("Import du fichier...");
         
         try {
@@ -366,6 +417,49 @@ public class ImportExportActivity extends AppCompatActivity {
         }
     }
     
+    /**
+     * Archive de recettes (Mealie, Paprika, ZIP) : enregistrée directement en base
+     */
+    private void importFromArchive(Uri fileUri, long fileSize) {
+        showProgress("Import de l'archive...");
+        
+        try {
+            InputStream inputStream = getContentResolver().openInputStream(fileUri);
+            archiveImportHandle = recipeImporter.importArchive(inputStream, fileSize, new RecipeImporter.ArchiveImportCallback() {
+                @Override
+                public void onSuccess(RecipeImporter.ArchiveImportResult result) {
+                    runOnUiThread(() -> {
+                        if (isDestroyed()) return;
+                        hideProgress();
+                        showSnackbar(result.imported + " recettes importées, " + result.duplicates + " déjà présentes");
+                    });
+                }
+                
+                @Override
+                public void onError(String error) {
+                    runOnUiThread(() -> {
+                        if (isDestroyed()) return;
+                        hideProgress();
+                        showSnackbar("Erreur import archive: " + error);
+                    });
+                }
+                
+                @Override
+                public void onProgress(int imported, long bytesRead, long totalBytes) {
+                    runOnUiThread(() -> {
+                        if (isDestroyed()) return;
+                        String progress = totalBytes > 0 ? " (" + (bytesRead * 100 / totalBytes) + "%)" : "";
+                        textViewStatus.setText("Import: " + imported + " recettes" + progress);
+                    });
+                }
+            });
+        } catch (Exception e) {
+            hideProgress();
+            showSnackbar("Erreur ouverture fichier: " + e.getMessage());
+            Log.e(TAG, "Erreur import archive", e);
+        }
+    }
+    
     // ===== EXPORT =====
     
     private void exportSingleRecipe(Recipe recipe, RecipeExporter.ExportFormat format) {
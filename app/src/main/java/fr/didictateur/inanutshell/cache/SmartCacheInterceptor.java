@@ -4,24 +4,65 @@ import android.content.Context;
 import android.util.Log;
 import java.io.File;
 import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import okhttp3.Cache;
 import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 import org.jetbrains.annotations.NotNull;
 import fr.didictateur.inanutshell.network.NetworkStateManager;
+import fr.didictateur.inanutshell.network.RequestScheduler;
 
 /**
- * Intercepteur intelligent pour la gestion du cache HTTP avec stratégies adaptatives
+ * Intercepteur intelligent pour la gestion du cache HTTP avec stratégies adaptatives.
+ *
+ * Le cache OkHttp ignore stale-while-revalidate et stale-if-error : ces directives sont
+ * donc appliquées ici, au-dessus du cache disque.
+ * - stale-while-revalidate : une réponse périmée (dans la fenêtre) est servie immédiatement
+ *   et une revalidation conditionnelle est lancée en arrière-plan, une seule par URL.
+ * - stale-if-error : sur erreur 5xx ou IOException, la réponse en cache est servie si elle
+ *   est encore dans la fenêtre.
+ * - La durée de fraîcheur n'est ajoutée par {@link #getFreshnessInterceptor()} que si le
+ *   serveur n'en fournit pas ; seuls les validateurs (ETag, Last-Modified) du serveur sont utilisés.
+ *
+ * La revalidation passe par le client du serveur qui a servi la requête (fraîcheur, TLS,
+ * disjoncteur) : ajouter l'intercepteur retourné par {@link #forServer()} et lui attacher le
+ * client une fois construit. Sans client attaché, stale-while-revalidate n'est pas appliqué.
  */
 public class SmartCacheInterceptor implements Interceptor {
     private static final String TAG = "SmartCacheInterceptor";
     
+    // Avertissement ajouté par OkHttp lorsqu'il sert une réponse périmée
+    private static final String STALE_WARNING = "110";
+    
+    // Marque les requêtes de revalidation, qui traversent à nouveau l'intercepteur
+    private static final class Revalidation {
+        static final Revalidation INSTANCE = new Revalidation();
+    }
+    
+    private final Context context;
     private final NetworkStateManager networkManager;
     private final CacheStrategy strategy;
     
+    // Revalidations en cours, par URL
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+    
+    // Compteurs
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong failedRevalidations = new AtomicLong();
+    private final AtomicLong staleIfErrorHits = new AtomicLong();
+    
     // Configuration du cache
     public static final long CACHE_SIZE = 50 * 1024 * 1024; // 50 MB
     public static final String CACHE_DIR_NAME = "http_cache";
@@ -49,29 +90,150 @@ public class SmartCacheInterceptor implements Interceptor {
             this.maxStaleOffline = maxStaleOffline;
             this.forceCacheOffline = forceCacheOffline;
         }
+        
+        /**
+         * Fenêtre pendant laquelle une réponse périmée est servie en attendant sa revalidation
+         */
+        public int staleWhileRevalidate() {
+            return forceCacheOffline ? maxStaleOffline / 2 : 0;
+        }
+        
+        /**
+         * Fenêtre pendant laquelle une réponse périmée remplace une erreur serveur
+         */
+        public int staleIfError() {
+            return maxStaleOffline;
+        }
     }
     
     public SmartCacheInterceptor(Context context, CacheStrategy strategy) {
+        this.context = context.getApplicationContext();
         this.networkManager = NetworkStateManager.getInstance(context);
         this.strategy = strategy;
     }
     
+    /**
+     * Intercepteur propre à un client serveur, qui partage la configuration et les compteurs
+     */
+    public final class ServerInterceptor implements Interceptor {
+        private volatile OkHttpClient client;
+        
+        /**
+         * Client à utiliser pour les revalidations en arrière-plan (celui qui porte cet intercepteur)
+         */
+        public void attachClient(OkHttpClient client) {
+            this.client = client;
+        }
+        
+        @NotNull
+        @Override
+        public Response intercept(@NotNull Chain chain) throws IOException {
+            return SmartCacheInterceptor.this.intercept(chain, client);
+        }
+    }
+    
+    public ServerInterceptor forServer() {
+        return new ServerInterceptor();
+    }
+    
     @NotNull
     @Override
     public Response intercept(@NotNull Chain chain) throws IOException {
+        return intercept(chain, null);
+    }
+    
+    private Response intercept(Chain chain, OkHttpClient revalidationClient) throws IOException {
         Request request = chain.request();
+        if (!"GET".equals(request.method()) || request.tag(Revalidation.class) != null) {
+            return chain.proceed(request);
+        }
         
         // Obtenir la configuration de cache pour cette requête
         CacheConfig config = getCacheConfigForRequest(request);
+        NetworkStateManager.NetworkState networkState = networkManager.getCurrentNetworkState();
+        
+        if (!networkState.isConnected) {
+            // Pas de réseau - utiliser uniquement le cache
+            if (config.forceCacheOffline) {
+                Log.d(TAG, "Offline mode: using cache only for " + request.url());
+                return chain.proceed(cacheOnly(request, config.maxStaleOffline));
+            }
+            return chain.proceed(request);
+        }
         
-        // Modifier la requête selon l'état du réseau
-        Request modifiedRequest = modifyRequestForCache(request, config);
+        // 1. Cache, en acceptant une réponse périmée dans la fenêtre stale-while-revalidate
+        if (config.staleWhileRevalidate() > 0 && revalidationClient != null) {
+            Response cached = chain.proceed(cacheOnly(request, config.staleWhileRevalidate()));
+            if (cached.cacheResponse() != null) {
+                if (!isStale(cached)) {
+                    hits.incrementAndGet();
+                    return cached;
+                }
+                
+                staleHits.incrementAndGet();
+                // Connexion limitée - favoriser le cache, pas de revalidation en arrière-plan
+                if (!networkState.isMetered) {
+                    revalidateInBackground(revalidationClient, request);
+                }
+                Log.d(TAG, "Stale response served while revalidating: " + request.url());
+                return cached;
+            }
+            cached.close();
+        }
+        misses.incrementAndGet();
         
-        // Exécuter la requête
-        Response response = chain.proceed(modifiedRequest);
+        // 2. Réseau (requête conditionnelle gérée par le cache OkHttp), avec repli stale-if-error
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            Response stale = staleIfError(chain, request, config);
+            if (stale != null) {
+                Log.w(TAG, "Network error, serving stale response for " + request.url() + ": " + e.getMessage());
+                return stale;
+            }
+            throw e;
+        }
         
-        // Modifier la réponse pour optimiser le cache
-        return modifyResponseForCache(response, config);
+        if (response.code() >= 500) {
+            Response stale = staleIfError(chain, request, config);
+            if (stale != null) {
+                Log.w(TAG, "Server error " + response.code() + ", serving stale response for " + request.url());
+                response.close();
+                return stale;
+            }
+        }
+        return response;
+    }
+    
+    /**
+     * Intercepteur réseau qui donne une durée de fraîcheur aux réponses dont le serveur
+     * n'en fournit pas, pour qu'elles soient stockées par le cache OkHttp.
+     * Doit être ajouté avec addNetworkInterceptor.
+     */
+    public Interceptor getFreshnessInterceptor() {
+        return chain -> {
+            Request request = chain.request();
+            Response response = chain.proceed(request);
+            if (!"GET".equals(request.method()) || response.code() != 200) {
+                return response;
+            }
+            
+            // Respecter les directives explicites du serveur
+            CacheControl serverControl = response.cacheControl();
+            if (serverControl.maxAgeSeconds() >= 0 || serverControl.noStore() || serverControl.noCache()) {
+                return response;
+            }
+            
+            CacheConfig config = getCacheConfigForRequest(request);
+            if (config.maxAgeOnline <= 0) {
+                return response;
+            }
+            return response.newBuilder()
+                .removeHeader("Pragma")
+                .header("Cache-Control", "max-age=" + config.maxAgeOnline)
+                .build();
+        };
     }
     
     /**
@@ -141,109 +303,94 @@ public class SmartCacheInterceptor implements Interceptor {
     }
     
     /**
-     * Modifie la requête pour optimiser le cache
+     * Requête servie uniquement depuis le cache, en acceptant une réponse périmée de maxStaleSeconds
      */
-    private Request modifyRequestForCache(Request request, CacheConfig config) {
-        Request.Builder builder = request.newBuilder();
-        
-        NetworkStateManager.NetworkState networkState = networkManager.getCurrentNetworkState();
-        
-        if (!networkState.isConnected) {
-            // Pas de réseau - utiliser uniquement le cache
-            if (config.forceCacheOffline) {
-                CacheControl cacheControl = new CacheControl.Builder()
-                    .onlyIfCached()
-                    .maxStale(config.maxStaleOffline, TimeUnit.SECONDS)
-                    .build();
-                builder.cacheControl(cacheControl);
-                
-                Log.d(TAG, "Offline mode: using cache only for " + request.url());
+    private Request cacheOnly(Request request, int maxStaleSeconds) {
+        return request.newBuilder()
+            .cacheControl(new CacheControl.Builder()
+                .onlyIfCached()
+                .maxStale(maxStaleSeconds, TimeUnit.SECONDS)
+                .build())
+            .build();
+    }
+    
+    private boolean isStale(Response cached) {
+        for (String warning : cached.headers("Warning")) {
+            if (warning.startsWith(STALE_WARNING)) {
+                return true;
             }
-        } else if (networkState.isMetered) {
-            // Connexion limitée - favoriser le cache
-            CacheControl cacheControl = new CacheControl.Builder()
-                .maxAge(config.maxAgeOnline * 2, TimeUnit.SECONDS) // Double la durée sur réseau limité
-                .build();
-            builder.cacheControl(cacheControl);
-            
-            Log.d(TAG, "Metered connection: extended cache for " + request.url());
-        } else {
-            // Connexion normale - configuration standard
-            if (config.maxAgeOnline > 0) {
-                CacheControl cacheControl = new CacheControl.Builder()
-                    .maxAge(config.maxAgeOnline, TimeUnit.SECONDS)
-                    .build();
-                builder.cacheControl(cacheControl);
+        }
+        return false;
+    }
+    
+    /**
+     * Réponse en cache encore dans la fenêtre stale-if-error, ou null
+     */
+    private Response staleIfError(Chain chain, Request request, CacheConfig config) {
+        try {
+            Response cached = chain.proceed(cacheOnly(request, config.staleIfError()));
+            if (cached.cacheResponse() != null) {
+                staleIfErrorHits.incrementAndGet();
+                return cached;
             }
+            cached.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Cache lookup failed for " + request.url(), e);
         }
-        
-        return builder.build();
+        return null;
     }
     
     /**
-     * Modifie la réponse pour optimiser le cache
+     * Lance une revalidation conditionnelle (max-age=0 : OkHttp envoie les validateurs
+     * du serveur et met à jour le cache sur 304 ou 200), dédupliquée par URL et planifiée
+     * en priorité BACKGROUND
      */
-    private Response modifyResponseForCache(Response response, CacheConfig config) {
-        NetworkStateManager.NetworkState networkState = networkManager.getCurrentNetworkState();
-        
-        // Si la requête vient du cache, pas besoin de modifier
-        if (response.cacheResponse() != null && response.networkResponse() == null) {
-            Log.d(TAG, "Response from cache: " + response.request().url());
-            return response;
+    private void revalidateInBackground(OkHttpClient client, Request request) {
+        String url = request.url().toString();
+        if (!revalidating.add(url)) {
+            return;
         }
+        revalidations.incrementAndGet();
         
-        // Construire les headers de cache appropriés
-        Response.Builder builder = response.newBuilder();
+        Request revalidation = request.newBuilder()
+            .cacheControl(new CacheControl.Builder().maxAge(0, TimeUnit.SECONDS).build())
+            .tag(Revalidation.class, Revalidation.INSTANCE)
+            .build();
         
-        if (networkState.isConnected) {
-            // En ligne - définir les headers de cache
-            String cacheControlValue = buildCacheControlHeader(config, networkState);
-            builder.header("Cache-Control", cacheControlValue);
-            
-            // Ajouter Etag si absent pour améliorer la validation
-            if (response.header("ETag") == null) {
-                String etag = "\"" + System.currentTimeMillis() + "\"";
-                builder.header("ETag", etag);
+        RequestScheduler.getInstance().enqueue(client.newCall(revalidation),
+                RequestScheduler.Priority.BACKGROUND, null, new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                // Le corps doit être lu entièrement pour que le cache l'enregistre
+                try (ResponseBody body = response.body()) {
+                    if (body != null) {
+                        body.bytes();
+                    }
+                    if (!response.isSuccessful()) {
+                        failedRevalidations.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    failedRevalidations.incrementAndGet();
+                } finally {
+                    revalidating.remove(url);
+                }
             }
             
-            Log.d(TAG, "Response cached with: " + cacheControlValue + " for " + response.request().url());
-        }
-        
-        return builder.build();
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                failedRevalidations.incrementAndGet();
+                revalidating.remove(url);
+                Log.d(TAG, "Background revalidation failed for " + url + ": " + e.getMessage());
+            }
+        });
     }
     
     /**
-     * Construit la valeur de l'header Cache-Control
+     * Compteurs d'efficacité du cache depuis le démarrage
      */
-    private String buildCacheControlHeader(CacheConfig config, NetworkStateManager.NetworkState networkState) {
-        StringBuilder cacheControl = new StringBuilder();
-        
-        // Max age pour le cache
-        if (config.maxAgeOnline > 0) {
-            int maxAge = config.maxAgeOnline;
-            
-            // Ajuster selon le type de connexion
-            if (networkState.isMetered) {
-                maxAge *= 2; // Double sur connexion limitée
-            }
-            
-            cacheControl.append("max-age=").append(maxAge);
-        }
-        
-        // Stale while revalidate pour une meilleure expérience
-        if (config.maxStaleOffline > 0) {
-            if (cacheControl.length() > 0) cacheControl.append(", ");
-            cacheControl.append("stale-while-revalidate=").append(config.maxStaleOffline / 2);
-        }
-        
-        // Public cache si approprié
-        String url = "";
-        if (!url.contains("/auth") && !url.contains("/users")) {
-            if (cacheControl.length() > 0) cacheControl.append(", ");
-            cacheControl.append("public");
-        }
-        
-        return cacheControl.toString();
+    public CacheCounters getCounters() {
+        return new CacheCounters(hits.get(), staleHits.get(), misses.get(),
+            revalidations.get(), failedRevalidations.get(), staleIfErrorHits.get());
     }
     
     /**
@@ -357,4 +504,32 @@ public class SmartCacheInterceptor implements Interceptor {
                 size, maxSize, hitCount, requestCount, hitRate * 100, networkCount);
         }
     }
+    
+    /**
+     * Compteurs de la couche stale-while-revalidate / stale-if-error
+     */
+    public static class CacheCounters {
+        public final long hits;
+        public final long staleHits;
+        public final long misses;
+        public final long revalidations;
+        public final long failedRevalidations;
+        public final long staleIfErrorHits;
+        
+        public CacheCounters(long hits, long staleHits, long misses, long revalidations,
+                             long failedRevalidations, long staleIfErrorHits) {
+            this.hits = hits;
+            this.staleHits = staleHits;
+            this.misses = misses;
+            this.revalidations = revalidations;
+            this.failedRevalidations = failedRevalidations;
+            this.staleIfErrorHits = staleIfErrorHits;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("CacheCounters{hits=%d, stale=%d, misses=%d, revalidations=%d (%d failed), staleIfError=%d}",
+                hits, staleHits, misses, revalidations, failedRevalidations, staleIfErrorHits);
+        }
+    }
 }
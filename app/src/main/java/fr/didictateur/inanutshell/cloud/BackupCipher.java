@@ -0,0 +1,248 @@
+package fr.didictateur.inanutshell.cloud;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Chiffrement AES-GCM en flux des sauvegardes cloud, par blocs de CHUNK_SIZE octets.
+ *
+ * Format : en-tête (magique "INB", version, taille de bloc, préfixe de nonce aléatoire de 8 octets),
+ * puis une suite d'enregistrements [longueur | drapeau final][texte chiffré + tag de 16 octets].
+ * Le nonce de chaque bloc est préfixe + compteur : jamais réutilisé avec la même clé, et l'ordre
+ * des blocs est authentifié. L'en-tête et le drapeau final font partie des données authentifiées :
+ * une sauvegarde tronquée, réordonnée ou prolongée est rejetée. Seul un bloc est en mémoire.
+ */
+public final class BackupCipher {
+    private static final byte[] MAGIC = { 'I', 'N', 'B' };
+    private static final byte VERSION = 2;
+    private static final int HEADER_SIZE = MAGIC.length + 1 + 4 + 8;
+    private static final int TAG_BITS = 128;
+    private static final int TAG_SIZE = TAG_BITS / 8;
+    private static final int FINAL_FLAG = 0x80000000;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    private BackupCipher() {}
+
+    /**
+     * Flux chiffrant ; close() écrit le dernier bloc (éventuellement vide) puis ferme le flux sous-jacent
+     */
+    public static OutputStream encrypt(OutputStream out, SecretKey key) throws IOException {
+        return new EncryptingOutputStream(out, key);
+    }
+
+    /**
+     * Flux déchiffrant ; lève une IOException si un bloc a été altéré ou si la fin manque
+     */
+    public static InputStream decrypt(InputStream in, SecretKey key) throws IOException {
+        return new DecryptingInputStream(in, key);
+    }
+
+    private static byte[] nonce(byte[] prefix, int counter) {
+        return ByteBuffer.allocate(12).put(prefix).putInt(counter).array();
+    }
+
+    private static byte[] aad(byte[] header, boolean last) {
+        byte[] aad = new byte[header.length + 1];
+        System.arraycopy(header, 0, aad, 0, header.length);
+        aad[header.length] = (byte) (last ? 1 : 0);
+        return aad;
+    }
+
+    private static class EncryptingOutputStream extends FilterOutputStream {
+        private final SecretKey key;
+        private final Cipher cipher;
+        private final byte[] header;
+        private final byte[] noncePrefix = new byte[8];
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int buffered;
+        private int counter;
+        private boolean closed;
+
+        EncryptingOutputStream(OutputStream out, SecretKey key) throws IOException {
+            super(out);
+            this.key = key;
+            try {
+                this.cipher = Cipher.getInstance(TRANSFORMATION);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("AES-GCM indisponible", e);
+            }
+            new SecureRandom().nextBytes(noncePrefix);
+            this.header = ByteBuffer.allocate(HEADER_SIZE)
+                .put(MAGIC).put(VERSION).putInt(CHUNK_SIZE).put(noncePrefix).array();
+            out.write(header);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (buffered == CHUNK_SIZE) {
+                writeChunk(false);
+            }
+            buffer[buffered++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            while (length > 0) {
+                // Un bloc plein n'est émis qu'à l'arrivée de la suite : le dernier bloc reste à marquer final
+                if (buffered == CHUNK_SIZE) {
+                    writeChunk(false);
+                }
+                int n = Math.min(length, CHUNK_SIZE - buffered);
+                System.arraycopy(data, offset, buffer, buffered, n);
+                buffered += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // Les blocs partiels ne sont pas émis : flush() ne ferait que fragmenter le flux
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                writeChunk(true);
+                out.flush();
+            } finally {
+                out.close();
+            }
+        }
+
+        private void writeChunk(boolean last) throws IOException {
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, nonce(noncePrefix, counter++)));
+                cipher.updateAAD(aad(header, last));
+                byte[] sealed = cipher.doFinal(buffer, 0, buffered);
+                out.write(ByteBuffer.allocate(4).putInt(last ? buffered | FINAL_FLAG : buffered).array());
+                out.write(sealed);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Échec du chiffrement de la sauvegarde", e);
+            }
+            buffered = 0;
+        }
+    }
+
+    private static class DecryptingInputStream extends InputStream {
+        private final DataInputStream in;
+        private final SecretKey key;
+        private final Cipher cipher;
+        private final byte[] header = new byte[HEADER_SIZE];
+        private final byte[] noncePrefix = new byte[8];
+        private final int chunkSize;
+        private byte[] plain = new byte[0];
+        private int position;
+        private int counter;
+        private boolean finished;
+
+        DecryptingInputStream(InputStream in, SecretKey key) throws IOException {
+            this.in = new DataInputStream(in);
+            this.key = key;
+            try {
+                this.cipher = Cipher.getInstance(TRANSFORMATION);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("AES-GCM indisponible", e);
+            }
+
+            try {
+                this.in.readFully(header);
+            } catch (EOFException e) {
+                throw new IOException("Sauvegarde chiffrée invalide");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(header);
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            byte version = buffer.get();
+            chunkSize = buffer.getInt();
+            buffer.get(noncePrefix);
+            if (!java.util.Arrays.equals(magic, MAGIC) || version != VERSION
+                    || chunkSize <= 0 || chunkSize > 16 * CHUNK_SIZE) {
+                throw new IOException("Format de sauvegarde chiffrée non pris en charge");
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) return -1;
+            return plain[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int offset, int length) throws IOException {
+            if (length == 0) return 0;
+            if (!fill()) return -1;
+            int n = Math.min(length, plain.length - position);
+            System.arraycopy(plain, position, b, offset, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        /**
+         * Déchiffre le bloc suivant si le courant est épuisé ; false en fin de flux
+         */
+        private boolean fill() throws IOException {
+            while (position == plain.length) {
+                if (finished) return false;
+
+                int lengthField;
+                try {
+                    lengthField = in.readInt();
+                } catch (EOFException e) {
+                    throw new IOException("Sauvegarde tronquée : dernier bloc manquant");
+                }
+                boolean last = (lengthField & FINAL_FLAG) != 0;
+                int length = lengthField & ~FINAL_FLAG;
+                if (length > chunkSize) {
+                    throw new IOException("Bloc de sauvegarde invalide");
+                }
+
+                byte[] sealed = new byte[length + TAG_SIZE];
+                try {
+                    in.readFully(sealed);
+                } catch (EOFException e) {
+                    throw new IOException("Sauvegarde tronquée");
+                }
+                try {
+                    cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, nonce(noncePrefix, counter++)));
+                    cipher.updateAAD(aad(header, last));
+                    plain = cipher.doFinal(sealed);
+                } catch (AEADBadTagException e) {
+                    throw new IOException("Sauvegarde altérée ou clé de chiffrement différente");
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Échec du déchiffrement de la sauvegarde", e);
+                }
+                position = 0;
+
+                if (last) {
+                    finished = true;
+                    if (in.read() != -1) {
+                        throw new IOException("Données inattendues après la fin de la sauvegarde");
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
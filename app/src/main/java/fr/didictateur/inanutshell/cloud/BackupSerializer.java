@@ -0,0 +1,496 @@
+package fr.didictateur.inanutshell.cloud;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.didictateur.inanutshell.cloud.CloudBackupManager.BackupSection;
+import fr.didictateur.inanutshell.cloud.CloudBackupManager.ShoppingListData;
+import fr.didictateur.inanutshell.data.meal.MealPlan;
+import fr.didictateur.inanutshell.data.model.Recipe;
+
+/**
+ * Format binaire versionné des sauvegardes cloud, avant compression et chiffrement.
+ *
+ * En-tête (magique "INBS", version du schéma, nombre de sections), puis un index d'une entrée
+ * [id | version | nombre d'enregistrements | longueur] par section, puis les sections dans l'ordre
+ * de l'index. Une section est une suite d'enregistrements [longueur | octets] : JSON compact pour
+ * les entités, binaire pour les favoris, les notes et les réglages.
+ *
+ * Grâce à l'index, la lecture saute sans les décoder les sections non demandées, ainsi que
+ * celles qu'une version plus récente de l'application aurait ajoutées (id ou version inconnus).
+ *
+ * Les enregistrements circulent un par un dans les deux sens : les sections sont lues depuis des
+ * {@link RecordSource} (pages Room) et décodées vers un {@link SectionHandler}, sans jamais
+ * construire la sauvegarde entière en mémoire.
+ */
+final class BackupSerializer {
+    private static final String TAG = "BackupSerializer";
+    private static final int MAGIC = 0x494E4253; // "INBS"
+    static final int SCHEMA_VERSION = 1;
+    // Version des enregistrements d'une section, à incrémenter lors d'un changement incompatible
+    private static final int SECTION_VERSION = 1;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    // Type de la valeur d'un réglage, écrit après sa clé
+    private static final int SETTING_STRING = 1;
+    private static final int SETTING_BOOLEAN = 2;
+    private static final int SETTING_INT = 3;
+    private static final int SETTING_LONG = 4;
+    private static final int SETTING_FLOAT = 5;
+    private static final int SETTING_STRING_SET = 6;
+
+    private interface RecordEncoder<T> {
+        void encode(T item, DataOutputStream record) throws IOException;
+    }
+
+    interface RecordSink<T> {
+        void accept(T record) throws IOException;
+    }
+
+    /**
+     * Enregistrements d'une section, parcourus une seule fois lors de l'écriture
+     */
+    interface RecordSource<T> {
+        void forEach(RecordSink<T> sink) throws IOException;
+    }
+
+    /**
+     * Source paginée : retourne les lignes qui suivent la dernière ligne lue (null pour la
+     * première page), une liste vide à la fin
+     */
+    interface PageLoader<T> {
+        List<T> loadAfter(T last, int limit);
+    }
+
+    /**
+     * Reçoit les sections demandées dans l'ordre du fichier, enregistrement par enregistrement
+     */
+    interface SectionHandler {
+        void beginSection(BackupSection section) throws IOException;
+        void recipe(Recipe recipe) throws IOException;
+        void mealPlan(MealPlan mealPlan) throws IOException;
+        void shoppingList(ShoppingListData list) throws IOException;
+        void favorite(String recipeId) throws IOException;
+        void rating(String recipeId, float rating) throws IOException;
+        /**
+         * @param value String, Boolean, Integer, Long, Float ou Set&lt;String&gt;, comme dans les SharedPreferences
+         */
+        void setting(String key, Object value) throws IOException;
+        void endSection(BackupSection section, int count) throws IOException;
+    }
+
+    /**
+     * Sections à écrire ; une section sans source est écrite vide
+     */
+    static class BackupContent {
+        RecordSource<Recipe> recipes = empty();
+        RecordSource<MealPlan> mealPlans = empty();
+        RecordSource<ShoppingListData> shoppingLists = empty();
+        RecordSource<String> favorites = empty();
+        RecordSource<Map.Entry<String, Float>> ratings = empty();
+        RecordSource<Map.Entry<String, ?>> settings = empty();
+    }
+
+    private static class IndexEntry {
+        final int id;
+        final int version;
+        final int count;
+        final long length;
+
+        IndexEntry(int id, int version, int count, long length) {
+            this.id = id;
+            this.version = version;
+            this.count = count;
+            this.length = length;
+        }
+    }
+
+    private static class SectionFile {
+        final BackupSection section;
+        final File file;
+        final int count;
+
+        SectionFile(BackupSection section, File file, int count) {
+            this.section = section;
+            this.file = file;
+            this.count = count;
+        }
+    }
+
+    private final File tempDir;
+    private final Gson gson;
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+    private byte[] readBuffer = new byte[8192];
+
+    /**
+     * @param tempDir dossier des fichiers temporaires : la longueur de chaque section doit être
+     *                connue avant d'écrire l'index, les sections sont donc d'abord écrites à part
+     */
+    BackupSerializer(File tempDir) {
+        this.tempDir = tempDir;
+        this.gson = new GsonBuilder()
+            .registerTypeAdapter(Date.class, new EpochDateAdapter().nullSafe())
+            .create();
+    }
+
+    // ===== ÉCRITURE =====
+
+    /**
+     * Écrit les sections puis retourne le nombre d'enregistrements écrits par section
+     */
+    Map<BackupSection, Integer> write(BackupContent content, OutputStream out) throws IOException {
+        List<SectionFile> sections = new ArrayList<>();
+        try {
+            sections.add(writeSection(BackupSection.RECIPES, content.recipes, this::encodeJson));
+            sections.add(writeSection(BackupSection.MEAL_PLANS, content.mealPlans, this::encodeJson));
+            sections.add(writeSection(BackupSection.SHOPPING_LISTS, content.shoppingLists, this::encodeJson));
+            sections.add(writeSection(BackupSection.FAVORITES, content.favorites,
+                (id, record) -> record.write(id.getBytes(StandardCharsets.UTF_8))));
+            sections.add(writeSection(BackupSection.RATINGS, content.ratings,
+                (rating, record) -> {
+                    record.writeFloat(rating.getValue());
+                    record.write(rating.getKey().getBytes(StandardCharsets.UTF_8));
+                }));
+            sections.add(writeSection(BackupSection.SETTINGS, content.settings, BackupSerializer::encodeSetting));
+
+            // Le flux appelant n'est pas fermé : il appartient à CloudBackupManager
+            DataOutputStream output = new DataOutputStream(out);
+            output.writeInt(MAGIC);
+            output.writeShort(SCHEMA_VERSION);
+            output.writeShort(sections.size());
+            for (SectionFile section : sections) {
+                output.writeShort(section.section.id);
+                output.writeShort(SECTION_VERSION);
+                output.writeInt(section.count);
+                output.writeLong(section.file.length());
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (SectionFile section : sections) {
+                try (InputStream in = new FileInputStream(section.file)) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        output.write(buffer, 0, read);
+                    }
+                }
+            }
+            output.flush();
+
+            Map<BackupSection, Integer> counts = new EnumMap<>(BackupSection.class);
+            for (SectionFile section : sections) {
+                counts.put(section.section, section.count);
+            }
+            return counts;
+        } finally {
+            for (SectionFile section : sections) {
+                section.file.delete();
+            }
+        }
+    }
+
+    private <T> SectionFile writeSection(BackupSection section, RecordSource<T> items,
+                                         RecordEncoder<T> encoder) throws IOException {
+        File file = File.createTempFile("section_", ".tmp", tempDir);
+        int[] count = new int[1];
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE))) {
+            DataOutputStream record = new DataOutputStream(recordBuffer);
+            items.forEach(item -> {
+                if (item == null) return;
+                recordBuffer.reset();
+                encoder.encode(item, record);
+                record.flush();
+                out.writeInt(recordBuffer.size());
+                recordBuffer.writeTo(out);
+                count[0]++;
+            });
+        } catch (IOException | RuntimeException e) {
+            file.delete();
+            throw e;
+        }
+        return new SectionFile(section, file, count[0]);
+    }
+
+    private void encodeJson(Object item, DataOutputStream record) throws IOException {
+        record.write(gson.toJson(item).getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * [clé | type | valeur] ; les types inconnus des SharedPreferences ne sont pas sauvegardés
+     */
+    private static void encodeSetting(Map.Entry<String, ?> setting, DataOutputStream record) throws IOException {
+        Object value = setting.getValue();
+        record.writeUTF(setting.getKey());
+        if (value instanceof String) {
+            record.writeByte(SETTING_STRING);
+            writeString(record, (String) value);
+        } else if (value instanceof Boolean) {
+            record.writeByte(SETTING_BOOLEAN);
+            record.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer) {
+            record.writeByte(SETTING_INT);
+            record.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            record.writeByte(SETTING_LONG);
+            record.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            record.writeByte(SETTING_FLOAT);
+            record.writeFloat((Float) value);
+        } else if (value instanceof Set) {
+            Set<?> values = (Set<?>) value;
+            record.writeByte(SETTING_STRING_SET);
+            record.writeInt(values.size());
+            for (Object item : values) {
+                writeString(record, String.valueOf(item));
+            }
+        } else {
+            throw new IOException("Type de réglage non pris en charge pour " + setting.getKey());
+        }
+    }
+    
+    // writeUTF est limité à 64 Ko : longueur sur 4 octets pour les valeurs
+    private static void writeString(DataOutputStream record, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        record.writeInt(bytes.length);
+        record.write(bytes);
+    }
+
+    // ===== LECTURE =====
+
+    /**
+     * Lit les sections demandées vers le handler ; les autres sont sautées sans être décodées.
+     * Retourne les sections effectivement lues.
+     */
+    Set<BackupSection> read(InputStream in, Set<BackupSection> wanted, SectionHandler handler) throws IOException {
+        DataInputStream input = new DataInputStream(in);
+        try {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Format de sauvegarde inconnu");
+            }
+            int schemaVersion = input.readUnsignedShort();
+            if (schemaVersion > SCHEMA_VERSION) {
+                throw new IOException("Sauvegarde créée par une version plus récente de l'application (schéma "
+                    + schemaVersion + ")");
+            }
+            int sectionCount = input.readUnsignedShort();
+            List<IndexEntry> index = new ArrayList<>(sectionCount);
+            for (int i = 0; i < sectionCount; i++) {
+                index.add(new IndexEntry(input.readUnsignedShort(), input.readUnsignedShort(),
+                    input.readInt(), input.readLong()));
+            }
+
+            Set<BackupSection> read = EnumSet.noneOf(BackupSection.class);
+            for (IndexEntry entry : index) {
+                BackupSection section = BackupSection.fromId(entry.id);
+                if (section == null || !wanted.contains(section)) {
+                    skipFully(input, entry.length);
+                } else if (entry.version > SECTION_VERSION) {
+                    Log.w(TAG, "Section " + section + " en version " + entry.version + " ignorée");
+                    skipFully(input, entry.length);
+                } else {
+                    handler.beginSection(section);
+                    readSection(input, entry, section, handler);
+                    handler.endSection(section, entry.count);
+                    read.add(section);
+                }
+            }
+            return read;
+        } catch (EOFException e) {
+            throw new IOException("Sauvegarde tronquée", e);
+        }
+    }
+
+    private void readSection(DataInputStream input, IndexEntry entry, BackupSection section,
+                             SectionHandler handler) throws IOException {
+        long remaining = entry.length;
+        for (int i = 0; i < entry.count; i++) {
+            int length = input.readInt();
+            remaining -= 4L + length;
+            if (length < 0 || length > MAX_RECORD_SIZE || remaining < 0) {
+                throw new IOException("Section " + section + " corrompue");
+            }
+            if (readBuffer.length < length) {
+                readBuffer = new byte[Math.max(length, readBuffer.length * 2)];
+            }
+            input.readFully(readBuffer, 0, length);
+            try {
+                decodeRecord(section, readBuffer, length, handler);
+            } catch (JsonParseException e) {
+                throw new IOException("Enregistrement illisible dans la section " + section, e);
+            }
+        }
+        if (remaining != 0) {
+            throw new IOException("Section " + section + " corrompue");
+        }
+    }
+
+    private void decodeRecord(BackupSection section, byte[] bytes, int length,
+                              SectionHandler handler) throws IOException {
+        switch (section) {
+            case RECIPES:
+                handler.recipe(decodeJson(bytes, length, Recipe.class));
+                break;
+            case MEAL_PLANS:
+                handler.mealPlan(decodeJson(bytes, length, MealPlan.class));
+                break;
+            case SHOPPING_LISTS:
+                handler.shoppingList(decodeJson(bytes, length, ShoppingListData.class));
+                break;
+            case FAVORITES:
+                handler.favorite(new String(bytes, 0, length, StandardCharsets.UTF_8));
+                break;
+            case RATINGS: {
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
+                float rating = record.readFloat();
+                handler.rating(new String(bytes, 4, length - 4, StandardCharsets.UTF_8), rating);
+                break;
+            }
+            case SETTINGS: {
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
+                String key = record.readUTF();
+                Object value = decodeSettingValue(record);
+                if (value != null) {
+                    handler.setting(key, value);
+                }
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Valeur d'un réglage, null si son type vient d'une version plus récente
+     */
+    private static Object decodeSettingValue(DataInputStream record) throws IOException {
+        int type = record.readUnsignedByte();
+        switch (type) {
+            case SETTING_STRING:
+                return readString(record);
+            case SETTING_BOOLEAN:
+                return record.readBoolean();
+            case SETTING_INT:
+                return record.readInt();
+            case SETTING_LONG:
+                return record.readLong();
+            case SETTING_FLOAT:
+                return record.readFloat();
+            case SETTING_STRING_SET: {
+                int size = record.readInt();
+                if (size < 0 || size > record.available() / 4) {
+                    throw new IOException("Réglage corrompu");
+                }
+                Set<String> values = new HashSet<>(size);
+                for (int i = 0; i < size; i++) {
+                    values.add(readString(record));
+                }
+                return values;
+            }
+            default:
+                Log.w(TAG, "Type de réglage " + type + " ignoré");
+                return null;
+        }
+    }
+    
+    private static String readString(DataInputStream record) throws IOException {
+        int length = record.readInt();
+        if (length < 0 || length > record.available()) {
+            throw new IOException("Réglage corrompu");
+        }
+        byte[] bytes = new byte[length];
+        record.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private <T> T decodeJson(byte[] bytes, int length, Class<T> type) {
+        return gson.fromJson(new InputStreamReader(
+            new ByteArrayInputStream(bytes, 0, length), StandardCharsets.UTF_8), type);
+    }
+
+    // ===== SOURCES =====
+
+    static <T> RecordSource<T> empty() {
+        return sink -> { };
+    }
+
+    static <T> RecordSource<T> of(Collection<T> items) {
+        return sink -> {
+            for (T item : items) {
+                sink.accept(item);
+            }
+        };
+    }
+
+    /**
+     * Parcourt une table page par page (pagination par clé) : seule la page courante est en mémoire
+     */
+    static <T> RecordSource<T> paged(int pageSize, PageLoader<T> loader) {
+        return sink -> {
+            T last = null;
+            List<T> page;
+            while (!(page = loader.loadAfter(last, pageSize)).isEmpty()) {
+                for (T item : page) {
+                    sink.accept(item);
+                }
+                last = page.get(page.size() - 1);
+                if (page.size() < pageSize) break;
+            }
+        };
+    }
+
+    private static void skipFully(InputStream in, long length) throws IOException {
+        while (length > 0) {
+            long skipped = in.skip(length);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    /**
+     * Dates en millisecondes : plus compact que le format texte par défaut de Gson, sans perte de précision
+     */
+    private static class EpochDateAdapter extends TypeAdapter<Date> {
+        @Override
+        public void write(JsonWriter out, Date value) throws IOException {
+            out.value(value.getTime());
+        }
+
+        @Override
+        public Date read(JsonReader in) throws IOException {
+            return new Date(in.nextLong());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package fr.didictateur.inanutshell.cloud;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import fr.didictateur.inanutshell.cloud.CloudBackupManager.BackupMetadata;
+
+/**
+ * Envoi d'un fichier de sauvegarde par blocs, reprenable.
+ *
+ * L'identifiant de session est conservé dans les préférences jusqu'à la fin de l'envoi : après une
+ * coupure réseau ou un redémarrage, l'envoi reprend au nombre d'octets que le service confirme
+ * avoir reçus. Un bloc en échec est retenté après avoir redemandé ce décalage, le service ayant
+ * pu en recevoir une partie.
+ */
+class ChunkedUploader {
+    private static final String TAG = "ChunkedUploader";
+    private static final String PREFS_NAME = "cloud_upload_sessions";
+
+    // Multiple de 256 Kio (Drive) et de 320 Kio (OneDrive)
+    static final int CHUNK_SIZE = 1280 * 1024;
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long RETRY_DELAY_MS = 1000;
+
+    interface ProgressListener {
+        void onProgress(long uploaded, long total);
+    }
+
+    private final SharedPreferences sessions;
+
+    ChunkedUploader(Context context) {
+        this.sessions = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    void upload(CloudStorageProvider provider, File file, BackupMetadata metadata,
+                ProgressListener listener) throws IOException {
+        long total = file.length();
+        String sessionId = sessions.getString(metadata.backupId, null);
+        long offset = sessionId != null ? provider.getUploadedBytes(sessionId) : -1;
+        if (offset < 0 || offset > total) {
+            sessionId = provider.startUpload(metadata, total);
+            sessions.edit().putString(metadata.backupId, sessionId).apply();
+            offset = 0;
+        } else if (offset > 0) {
+            Log.d(TAG, "Reprise de l'envoi de " + metadata.backupId + " à " + offset + "/" + total);
+        }
+
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try (RandomAccessFile source = new RandomAccessFile(file, "r")) {
+            int failures = 0;
+            while (offset < total) {
+                int length = (int) Math.min(CHUNK_SIZE, total - offset);
+                source.seek(offset);
+                source.readFully(buffer, 0, length);
+                try {
+                    provider.uploadChunk(sessionId, offset, buffer, length);
+                    offset += length;
+                    failures = 0;
+                    listener.onProgress(offset, total);
+                } catch (IOException e) {
+                    if (++failures >= MAX_ATTEMPTS) {
+                        // La session est gardée : le prochain essai reprendra ici
+                        throw e;
+                    }
+                    Log.w(TAG, "Échec du bloc à " + offset + ", nouvel essai (" + failures + ")", e);
+                    sleep(RETRY_DELAY_MS * failures);
+                    long confirmed = provider.getUploadedBytes(sessionId);
+                    if (confirmed < 0) {
+                        throw new IOException("Session d'envoi expirée", e);
+                    }
+                    offset = confirmed;
+                }
+            }
+        }
+
+        provider.finishUpload(sessionId, metadata);
+        sessions.edit().remove(metadata.backupId).apply();
+    }
+
+    /**
+     * Oublie la session d'une sauvegarde abandonnée
+     */
+    void discard(String backupId) {
+        sessions.edit().remove(backupId).apply();
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.io.InterruptedIOException("Envoi interrompu");
+        }
+    }
+}
@@ -5,34 +5,64 @@ import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Base64;
+import android.util.Log;
+
+import com.google.gson.Gson;
 
-import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+import fr.didictateur.inanutshell.AppDatabase;
+import fr.didictateur.inanutshell.data.database.RecipeDao;
+import fr.didictateur.inanutshell.data.meal.MealPlan;
+import fr.didictateur.inanutshell.data.meal.MealPlanDao;
 import fr.didictateur.inanutshell.data.model.Recipe;
-import fr.didictateur.inanutshell.data.model.RecipeComment;
-import fr.didictateur.inanutshell.data.model.User;
+import fr.didictateur.inanutshell.data.shopping.ShoppingItem;
+import fr.didictateur.inanutshell.data.shopping.ShoppingItemDao;
+import fr.didictateur.inanutshell.data.shopping.ShoppingList;
+import fr.didictateur.inanutshell.data.shopping.ShoppingListDao;
+import fr.didictateur.inanutshell.utils.FavoritesManager;
+import fr.didictateur.inanutshell.utils.RatingManager;
 
 public class CloudBackupManager {
+    private static final String TAG = "CloudBackupManager";
+    private static final String UPLOAD_DIR = "cloud_upload";
+    private static final String PENDING_UPLOAD_KEY = "pending_upload_metadata";
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    // Identifiants par requête IN (sous la limite de 999 paramètres de SQLite)
+    private static final int ID_QUERY_CHUNK = 500;
+    // Lignes lues par requête Room : la mémoire reste bornée quelle que soit la taille des tables
+    private static final int PAGE_SIZE = 200;
+    
     private static CloudBackupManager instance;
     private Context context;
     private SharedPreferences backupPrefs;
@@ -43,6 +73,9 @@ public class CloudBackupManager {
     private GoogleDriveProvider googleDriveProvider;
     private DropboxProvider dropboxProvider;
     private OneDriveProvider oneDriveProvider;
+    private LocalFileProvider localFileProvider;
+    private ChunkedUploader uploader;
+    private final Gson gson = new Gson();
     
     // Configuration
     private boolean autoBackupEnabled = true;
@@ -64,6 +97,7 @@ public class CloudBackupManager {
         GOOGLE_DRIVE("Google Drive"),
         DROPBOX("Dropbox"),
         ONEDRIVE("OneDrive"),
+        LOCAL("Stockage local"),
         NONE("Aucun");
         
         private String displayName;
@@ -84,6 +118,35 @@ public class CloudBackupManager {
         public String getDisplayName() { return displayName; }
     }
     
+    /**
+     * Sections d'une sauvegarde ; l'id est écrit dans l'index du fichier et ne doit jamais changer.
+     * Les ids 6 et 7 (commentaires et utilisateurs, jamais persistés) sont réservés : les sections
+     * vides qui les portent dans les anciennes sauvegardes sont sautées à la lecture.
+     */
+    public enum BackupSection {
+        RECIPES(1, "Recettes"),
+        MEAL_PLANS(2, "Planning des repas"),
+        SHOPPING_LISTS(3, "Listes de courses"),
+        FAVORITES(4, "Favoris"),
+        RATINGS(5, "Notes"),
+        SETTINGS(8, "Paramètres");
+        
+        final int id;
+        private String displayName;
+        BackupSection(int id, String displayName) {
+            this.id = id;
+            this.displayName = displayName;
+        }
+        public String getDisplayName() { return displayName; }
+        
+        static BackupSection fromId(int id) {
+            for (BackupSection section : values()) {
+                if (section.id == id) return section;
+            }
+            return null;
+        }
+    }
+    
     public static class BackupMetadata {
         public String backupId;
         public Date createdAt;
@@ -96,6 +159,7 @@ public class CloudBackupManager {
         public String checksum;
         public CloudProvider provider;
         public String description;
+        public int schemaVersion;
         
         public BackupMetadata() {
             this.backupId = UUID.randomUUID().toString();
@@ -103,19 +167,16 @@ public class CloudBackupManager {
         }
     }
     
-    public static class BackupData {
-        public List<Recipe> recipes;
-        public List<RecipeComment> comments;
-        public List<User> users;
-        public Map<String, String> settings;
-        public BackupMetadata metadata;
+    /**
+     * Liste de courses et ses articles, sauvegardés ensemble : les ids des articles en dépendent
+     */
+    public static class ShoppingListData {
+        public ShoppingList list;
+        public List<ShoppingItem> items;
         
-        public BackupData() {
-            this.recipes = new ArrayList<>();
-            this.comments = new ArrayList<>();
-            this.users = new ArrayList<>();
-            this.settings = new HashMap<>();
-            this.metadata = new BackupMetadata();
+        public ShoppingListData(ShoppingList list, List<ShoppingItem> items) {
+            this.list = list;
+            this.items = items;
         }
     }
     
@@ -141,6 +202,15 @@ public class CloudBackupManager {
         }
     }
     
+    /**
+     * Sauvegarde lisible mais incohérente (nombre d'enregistrements différent des métadonnées)
+     */
+    private static class CorruptBackupException extends IOException {
+        CorruptBackupException(String message) {
+            super(message);
+        }
+    }
+    
     public interface BackupListener {
         void onBackupStarted();
         void onBackupProgress(int progress);
@@ -178,6 +248,8 @@ public class CloudBackupManager {
         googleDriveProvider = new GoogleDriveProvider(context);
         dropboxProvider = new DropboxProvider(context);
         oneDriveProvider = new OneDriveProvider(context);
+        localFileProvider = new LocalFileProvider(context);
+        uploader = new ChunkedUploader(context);
         
         String providerName = backupPrefs.getString("current_provider", CloudProvider.NONE.name());
         currentProvider = CloudProvider.valueOf(providerName);
@@ -187,19 +259,8 @@ public class CloudBackupManager {
     public void authenticateWithProvider(CloudProvider provider, AuthenticationListener listener) {
         executorService.execute(() -> {
             try {
-                boolean success = false;
-                
-                switch (provider) {
-                    case GOOGLE_DRIVE:
-                        success = googleDriveProvider.authenticate();
-                        break;
-                    case DROPBOX:
-                        success = dropboxProvider.authenticate();
-                        break;
-                    case ONEDRIVE:
-                        success = oneDriveProvider.authenticate();
-                        break;
-                }
+                CloudStorageProvider storage = providerFor(provider);
+                boolean success = storage != null && storage.authenticate();
                 
                 if (success) {
                     currentProvider = provider;
@@ -216,6 +277,24 @@ public class CloudBackupManager {
         });
     }
     
+    /**
+     * Service de stockage correspondant, null pour NONE
+     */
+    private CloudStorageProvider providerFor(CloudProvider provider) {
+        switch (provider) {
+            case GOOGLE_DRIVE:
+                return googleDriveProvider;
+            case DROPBOX:
+                return dropboxProvider;
+            case ONEDRIVE:
+                return oneDriveProvider;
+            case LOCAL:
+                return localFileProvider;
+            default:
+                return null;
+        }
+    }
+    
     public interface AuthenticationListener {
         void onAuthenticationSuccess(CloudProvider provider);
         void onAuthenticationFailed(CloudProvider provider, String error);
@@ -231,42 +310,45 @@ public class CloudBackupManager {
         addListener(listener);
         
         executorService.execute(() -> {
+            File backupFile = null;
+            boolean pendingUpload = false;
             try {
                 notifyBackupStarted();
+                CloudStorageProvider provider = providerFor(currentProvider);
                 
-                // 1. Collecter les données (10%)
-                BackupData data = collectBackupData();
-                notifyBackupProgress(10);
-                
-                // 2. Générer les métadonnées (20%)
-                populateMetadata(data, description);
-                notifyBackupProgress(20);
+                // 0. Terminer un envoi interrompu avant d'en commencer un autre
+                resumePendingUpload(provider);
                 
-                // 3. Compresser les données (40%)
-                byte[] compressedData = compressBackupData(data);
-                notifyBackupProgress(40);
-                
-                // 4. Chiffrer si activé (60%)
-                byte[] finalData = encryptionEnabled ? encryptData(compressedData) : compressedData;
-                notifyBackupProgress(60);
+                // 1. Générer les métadonnées (10%)
+                BackupMetadata metadata = createMetadata(description);
+                notifyBackupProgress(10);
                 
-                // 5. Calculer le checksum (70%)
-                data.metadata.checksum = calculateChecksum(finalData);
-                notifyBackupProgress(70);
+                // 2. Lire les tables page par page, sérialiser, compresser, chiffrer et calculer
+                //    le checksum en un seul passage (50%)
+                backupFile = new File(getUploadDirectory(), metadata.backupId + ".inb");
+                metadata.checksum = writeBackupFile(collectBackupContent(), metadata, backupFile);
+                metadata.size = backupFile.length();
+                notifyBackupProgress(50);
                 
-                // 6. Uploader vers le cloud (100%)
-                boolean success = uploadToCurrentProvider(finalData, data.metadata);
+                // 3. Envoyer par blocs, reprenable en cas de coupure (100%)
+                savePendingUpload(metadata);
+                pendingUpload = true;
+                uploader.upload(provider, backupFile, metadata, (uploaded, total) ->
+                    notifyBackupProgress(50 + (int) (50 * uploaded / Math.max(total, 1))));
+                clearPendingUpload(metadata);
+                pendingUpload = false;
                 
-                if (success) {
-                    updateBackupStatus(BackupStatus.COMPLETED, data.metadata);
-                    notifyBackupCompleted(data.metadata);
-                } else {
-                    notifyBackupFailed("Échec de l'upload vers " + currentProvider.getDisplayName());
-                }
+                updateBackupStatus(BackupStatus.COMPLETED, metadata);
+                notifyBackupCompleted(metadata);
                 
             } catch (Exception e) {
+                Log.e(TAG, "Erreur lors de la sauvegarde", e);
                 notifyBackupFailed("Erreur lors de la sauvegarde: " + e.getMessage());
             } finally {
+                // Un envoi commencé garde son fichier pour être repris ; sinon le fichier est inutile
+                if (backupFile != null && !pendingUpload) {
+                    backupFile.delete();
+                }
                 removeListener(listener);
             }
         });
@@ -281,21 +363,7 @@ public class CloudBackupManager {
         
         executorService.execute(() -> {
             try {
-                List<BackupMetadata> backups = new ArrayList<>();
-                
-                switch (currentProvider) {
-                    case GOOGLE_DRIVE:
-                        backups = googleDriveProvider.listBackups();
-                        break;
-                    case DROPBOX:
-                        backups = dropboxProvider.listBackups();
-                        break;
-                    case ONEDRIVE:
-                        backups = oneDriveProvider.listBackups();
-                        break;
-                }
-                
-                final List<BackupMetadata> finalBackups = backups;
+                final List<BackupMetadata> finalBackups = providerFor(currentProvider).listBackups();
                 mainHandler.post(() -> listener.onBackupListReady(finalBackups));
                 
             } catch (Exception e) {
@@ -310,37 +378,35 @@ public class CloudBackupManager {
     }
     
     public void restoreBackup(BackupMetadata metadata, boolean mergeWithExisting, BackupListener listener) {
+        restoreSections(metadata, EnumSet.allOf(BackupSection.class), mergeWithExisting, listener);
+    }
+    
+    /**
+     * Restaure seulement certaines sections (par exemple les favoris) : les autres sont sautées
+     * à la lecture sans être décodées, et ne sont ni effacées ni modifiées localement.
+     * Chaque section est appliquée au fil du téléchargement, sans charger la sauvegarde en mémoire.
+     */
+    public void restoreSections(BackupMetadata metadata, Set<BackupSection> sections,
+                                boolean mergeWithExisting, BackupListener listener) {
         addListener(listener);
         
         executorService.execute(() -> {
             try {
                 notifyRestoreStarted();
                 
-                // 1. Télécharger depuis le cloud (30%)
-                byte[] cloudData = downloadFromCurrentProvider(metadata);
-                notifyRestoreProgress(30);
-                
-                // 2. Déchiffrer si nécessaire (50%)
-                byte[] decryptedData = metadata.isEncrypted ? decryptData(cloudData) : cloudData;
-                notifyRestoreProgress(50);
+                // 1-4. Télécharger, déchiffrer, décompresser, écrire en base et vérifier (90%)
+                RestoreWriter writer = restoreFromProvider(providerFor(currentProvider), metadata,
+                    sections, mergeWithExisting);
+                notifyRestoreProgress(90);
                 
-                // 3. Décompresser (70%)
-                BackupData data = decompressBackupData(decryptedData);
-                notifyRestoreProgress(70);
-                
-                // 4. Vérifier l'intégrité (80%)
-                if (!verifyBackupIntegrity(data, metadata)) {
-                    notifyRestoreFailed("Corruption détectée dans la sauvegarde");
-                    return;
-                }
-                notifyRestoreProgress(80);
-                
-                // 5. Appliquer la restauration (100%)
-                applyRestoredData(data, mergeWithExisting);
+                // 5. Favoris, notes et réglages, une fois les transactions validées (100%)
+                writer.applyPreferences();
                 
                 updateBackupStatus(BackupStatus.RESTORED, metadata);
                 notifyRestoreCompleted(metadata);
                 
+            } catch (CorruptBackupException e) {
+                notifyRestoreFailed(e.getMessage());
             } catch (Exception e) {
                 notifyRestoreFailed("Erreur lors de la restauration: " + e.getMessage());
             } finally {
@@ -390,108 +456,252 @@ public class CloudBackupManager {
     }
     
     // Méthodes utilitaires privées
-    private BackupData collectBackupData() {
-        BackupData data = new BackupData();
+    
+    /**
+     * Sections de la sauvegarde, lues au moment de l'écriture : les tables Room page par page
+     * (pagination par clé), les préférences en une fois.
+     * Les réglages sont ceux de l'application ("app_prefs"), comme pour la sauvegarde locale.
+     */
+    private BackupSerializer.BackupContent collectBackupContent() {
+        AppDatabase database = AppDatabase.getInstance(context);
+        BackupSerializer.BackupContent content = new BackupSerializer.BackupContent();
         
-        // TODO: Récupérer les données depuis Room DAO
-        data.recipes = getAllRecipesFromDatabase();
-        data.comments = getAllCommentsFromDatabase();
-        data.users = getAllUsersFromDatabase();
-        data.settings = getAllSettingsFromPreferences();
+        content.recipes = BackupSerializer.paged(PAGE_SIZE,
+            (last, limit) -> recipeDao().getRecipesAfter(last != null ? last.getId() : "", limit));
+        content.mealPlans = BackupSerializer.paged(PAGE_SIZE,
+            (last, limit) -> database.mealPlanDao().getMealPlansAfter(last != null ? last.id : 0, limit));
+        content.shoppingLists = shoppingListSource(database);
+        content.favorites = BackupSerializer.of(FavoritesManager.getInstance(context).getFavoriteRecipeIds());
+        content.ratings = BackupSerializer.of(RatingManager.getInstance(context).getAllRatings().entrySet());
+        content.settings = BackupSerializer.of(new ArrayList<Map.Entry<String, ?>>(appPreferences().getAll().entrySet()));
         
-        return data;
+        return content;
     }
     
-    private void populateMetadata(BackupData data, String description) {
-        data.metadata.recipesCount = data.recipes.size();
-        data.metadata.commentsCount = data.comments.size();
-        data.metadata.usersCount = data.users.size();
-        data.metadata.appVersion = getAppVersion();
-        data.metadata.isEncrypted = encryptionEnabled;
-        data.metadata.provider = currentProvider;
-        data.metadata.description = description;
+    /**
+     * Listes de courses page par page, avec les articles de la page en une requête
+     */
+    private BackupSerializer.RecordSource<ShoppingListData> shoppingListSource(AppDatabase database) {
+        ShoppingListDao listDao = database.shoppingListDao();
+        ShoppingItemDao itemDao = database.shoppingItemDao();
+        return sink -> {
+            int lastId = 0;
+            List<ShoppingList> page;
+            while (!(page = listDao.getListsAfter(lastId, PAGE_SIZE)).isEmpty()) {
+                List<Integer> ids = new ArrayList<>(page.size());
+                for (ShoppingList list : page) {
+                    ids.add(list.id);
+                }
+                Map<Integer, List<ShoppingItem>> itemsByList = new HashMap<>();
+                for (ShoppingItem item : itemDao.getItemsByListIdsSync(ids)) {
+                    List<ShoppingItem> items = itemsByList.get(item.shoppingListId);
+                    if (items == null) {
+                        items = new ArrayList<>();
+                        itemsByList.put(item.shoppingListId, items);
+                    }
+                    items.add(item);
+                }
+                for (ShoppingList list : page) {
+                    List<ShoppingItem> items = itemsByList.get(list.id);
+                    sink.accept(new ShoppingListData(list, items != null ? items : Collections.emptyList()));
+                }
+                lastId = page.get(page.size() - 1).id;
+                if (page.size() < PAGE_SIZE) break;
+            }
+        };
     }
     
-    private byte[] compressBackupData(BackupData data) throws Exception {
-        // TODO: Sérialiser en JSON et compresser avec GZIP
-        String jsonData = serializeToJson(data);
-        
-        File tempFile = new File(context.getCacheDir(), "backup_temp.gz");
-        
-        try (FileOutputStream fos = new FileOutputStream(tempFile);
-             GZIPOutputStream gzos = new GZIPOutputStream(fos)) {
-            
-            gzos.write(jsonData.getBytes("UTF-8"));
+    private BackupMetadata createMetadata(String description) {
+        BackupMetadata metadata = new BackupMetadata();
+        metadata.appVersion = getAppVersion();
+        metadata.isEncrypted = encryptionEnabled;
+        metadata.provider = currentProvider;
+        metadata.description = description;
+        metadata.schemaVersion = BackupSerializer.SCHEMA_VERSION;
+        return metadata;
+    }
+    
+    /**
+     * Écrit la sauvegarde dans le fichier : sections -> GZIP -> AES-GCM par blocs -> disque, sans jamais
+     * avoir la sauvegarde entière en mémoire. Reporte les nombres d'enregistrements dans les
+     * métadonnées et retourne le SHA-256 (Base64) du fichier écrit.
+     */
+    private String writeBackupFile(BackupSerializer.BackupContent content, BackupMetadata metadata,
+                                   File file) throws IOException {
+        MessageDigest digest = sha256();
+        OutputStream out = new DigestOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file), STREAM_BUFFER_SIZE), digest);
+        try {
+            if (encryptionEnabled) {
+                out = BackupCipher.encrypt(out, getSecretKey());
+            }
+            out = new GZIPOutputStream(out, STREAM_BUFFER_SIZE);
+        } catch (IOException e) {
+            out.close();
+            throw e;
         }
-        
-        // Lire le fichier compressé
-        byte[] compressed = new byte[(int) tempFile.length()];
-        try (FileInputStream fis = new FileInputStream(tempFile)) {
-            fis.read(compressed);
+        Map<BackupSection, Integer> counts;
+        try (OutputStream gzip = out) {
+            counts = new BackupSerializer(context.getCacheDir()).write(content, gzip);
         }
-        
-        tempFile.delete();
-        return compressed;
+        metadata.recipesCount = countOf(counts, BackupSection.RECIPES);
+        return Base64.encodeToString(digest.digest(), Base64.NO_WRAP);
+    }
+    
+    private static int countOf(Map<BackupSection, Integer> counts, BackupSection section) {
+        Integer count = counts.get(section);
+        return count != null ? count : 0;
     }
     
-    private BackupData decompressBackupData(byte[] compressedData) throws Exception {
-        // TODO: Décompresser et désérialiser depuis JSON
+    /**
+     * Applique la sauvegarde au fil de la lecture, dans une transaction par base : un checksum
+     * invalide, une section tronquée ou un nombre d'enregistrements incohérent annule toutes
+     * les écritures. Les favoris, notes et réglages restent dans le RestoreWriter jusqu'à la fin.
+     */
+    private RestoreWriter restoreFromProvider(CloudStorageProvider provider, BackupMetadata metadata,
+                                              Set<BackupSection> sections,
+                                              boolean mergeWithExisting) throws IOException {
+        fr.didictateur.inanutshell.data.database.AppDatabase recipeDatabase =
+            fr.didictateur.inanutshell.data.database.AppDatabase.getInstance(context);
+        AppDatabase database = AppDatabase.getInstance(context);
+        RestoreWriter writer = new RestoreWriter(recipeDatabase.recipeDao(), database, mergeWithExisting);
         
-        File tempFile = new File(context.getCacheDir(), "restore_temp.gz");
-        try (FileOutputStream fos = new FileOutputStream(tempFile)) {
-            fos.write(compressedData);
+        recipeDatabase.runInTransaction(() -> {
+            return database.runInTransaction(() -> {
+                readBackup(provider, metadata, sections, writer);
+                if (!verifyBackupIntegrity(writer.counts, metadata)) {
+                    throw new CorruptBackupException("Corruption détectée dans la sauvegarde");
+                }
+                return null;
+            });
+        });
+        return writer;
+    }
+    
+    /**
+     * Lit la sauvegarde en flux depuis le service : déchiffrement et décompression au fil du
+     * téléchargement, puis contrôle du checksum sur l'intégralité du fichier reçu
+     */
+    private void readBackup(CloudStorageProvider provider, BackupMetadata metadata,
+                            Set<BackupSection> sections, BackupSerializer.SectionHandler handler) throws IOException {
+        if (provider == null) {
+            throw new IOException("Provider non configuré");
         }
-        
-        StringBuilder jsonData = new StringBuilder();
-        try (FileInputStream fis = new FileInputStream(tempFile);
-             GZIPInputStream gzis = new GZIPInputStream(fis)) {
+        MessageDigest digest = sha256();
+        try (InputStream raw = new DigestInputStream(provider.openDownload(metadata), digest)) {
+            InputStream decrypted = metadata.isEncrypted ? BackupCipher.decrypt(raw, getSecretKey()) : raw;
+            InputStream content = new GZIPInputStream(decrypted, STREAM_BUFFER_SIZE);
+            new BackupSerializer(context.getCacheDir()).read(content, sections, handler);
             
-            byte[] buffer = new byte[1024];
-            int len;
-            while ((len = gzis.read(buffer)) != -1) {
-                jsonData.append(new String(buffer, 0, len, "UTF-8"));
+            // Consommer la fin des flux : vérification du dernier bloc chiffré et checksum complet
+            drain(content);
+            drain(decrypted);
+            drain(raw);
+            
+            String checksum = Base64.encodeToString(digest.digest(), Base64.NO_WRAP);
+            if (metadata.checksum != null && !metadata.checksum.equals(checksum)) {
+                throw new IOException("Checksum de la sauvegarde invalide");
             }
         }
-        
-        tempFile.delete();
-        return deserializeFromJson(jsonData.toString());
     }
     
-    private byte[] encryptData(byte[] data) throws Exception {
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (in.read(buffer) != -1) {
+            // rien
+        }
+    }
+    
+    /**
+     * Clé AES de la sauvegarde. Les clés générées sont 256 bits en Base64 ; l'ancienne clé
+     * de secours (UUID) est dérivée en 256 bits par SHA-256.
+     */
+    private SecretKey getSecretKey() {
         if (encryptionKey == null) {
             generateEncryptionKeyIfNeeded();
         }
-        
-        SecretKeySpec keySpec = new SecretKeySpec(encryptionKey.getBytes("UTF-8"), "AES");
-        Cipher cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.ENCRYPT_MODE, keySpec);
-        
-        return cipher.doFinal(data);
+        byte[] raw = null;
+        try {
+            raw = Base64.decode(encryptionKey, Base64.NO_WRAP);
+        } catch (IllegalArgumentException e) {
+            // Pas du Base64 : clé de secours
+        }
+        if (raw == null || (raw.length != 16 && raw.length != 24 && raw.length != 32)) {
+            raw = sha256().digest(encryptionKey.getBytes(StandardCharsets.UTF_8));
+        }
+        return new SecretKeySpec(raw, "AES");
     }
     
-    private byte[] decryptData(byte[] encryptedData) throws Exception {
-        if (encryptionKey == null) {
-            throw new Exception("Clé de chiffrement manquante");
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
         }
-        
-        SecretKeySpec keySpec = new SecretKeySpec(encryptionKey.getBytes("UTF-8"), "AES");
-        Cipher cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.DECRYPT_MODE, keySpec);
-        
-        return cipher.doFinal(encryptedData);
     }
     
-    private String calculateChecksum(byte[] data) throws Exception {
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        byte[] hash = md.digest(data);
-        return Base64.encodeToString(hash, Base64.NO_WRAP);
+    // ===== ENVOIS INTERROMPUS =====
+    
+    private File getUploadDirectory() {
+        // Stockage interne et non cache : le fichier doit survivre jusqu'à la fin de l'envoi
+        File dir = new File(context.getFilesDir(), UPLOAD_DIR);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+    
+    /**
+     * Mémorise l'envoi en cours ; un envoi interrompu plus ancien est abandonné
+     */
+    private void savePendingUpload(BackupMetadata metadata) {
+        BackupMetadata previous = loadPendingUpload();
+        if (previous != null && !previous.backupId.equals(metadata.backupId)) {
+            new File(getUploadDirectory(), previous.backupId + ".inb").delete();
+            uploader.discard(previous.backupId);
+        }
+        backupPrefs.edit().putString(PENDING_UPLOAD_KEY, gson.toJson(metadata)).apply();
     }
     
-    private boolean verifyBackupIntegrity(BackupData data, BackupMetadata metadata) {
-        // Vérifier que les counts correspondent
-        return data.recipes.size() == metadata.recipesCount &&
-               data.comments.size() == metadata.commentsCount &&
-               data.users.size() == metadata.usersCount;
+    private BackupMetadata loadPendingUpload() {
+        String json = backupPrefs.getString(PENDING_UPLOAD_KEY, null);
+        try {
+            return json != null ? gson.fromJson(json, BackupMetadata.class) : null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+    
+    private void clearPendingUpload(BackupMetadata metadata) {
+        backupPrefs.edit().remove(PENDING_UPLOAD_KEY).apply();
+        new File(getUploadDirectory(), metadata.backupId + ".inb").delete();
+    }
+    
+    /**
+     * Reprend l'envoi interrompu (coupure réseau, application tuée) là où le service l'a laissé
+     */
+    private void resumePendingUpload(CloudStorageProvider provider) {
+        BackupMetadata pending = loadPendingUpload();
+        if (pending == null || provider == null) return;
+        
+        File file = new File(getUploadDirectory(), pending.backupId + ".inb");
+        if (!file.exists()) {
+            clearPendingUpload(pending);
+            return;
+        }
+        try {
+            uploader.upload(provider, file, pending, (uploaded, total) -> {});
+            clearPendingUpload(pending);
+            updateBackupStatus(BackupStatus.COMPLETED, pending);
+            Log.d(TAG, "Envoi interrompu terminé: " + pending.backupId);
+        } catch (IOException e) {
+            Log.w(TAG, "Reprise de l'envoi impossible pour l'instant: " + pending.backupId, e);
+        }
+    }
+    
+    private boolean verifyBackupIntegrity(Map<BackupSection, Integer> counts, BackupMetadata metadata) {
+        // Vérifier que les counts correspondent, pour les sections lues seulement
+        return !counts.containsKey(BackupSection.RECIPES) || counts.get(BackupSection.RECIPES) == metadata.recipesCount;
     }
     
     private void generateEncryptionKeyIfNeeded() {
@@ -512,46 +722,194 @@ public class CloudBackupManager {
         }
     }
     
-    private boolean uploadToCurrentProvider(byte[] data, BackupMetadata metadata) {
-        try {
-            switch (currentProvider) {
-                case GOOGLE_DRIVE:
-                    return googleDriveProvider.uploadBackup(data, metadata);
-                case DROPBOX:
-                    return dropboxProvider.uploadBackup(data, metadata);
-                case ONEDRIVE:
-                    return oneDriveProvider.uploadBackup(data, metadata);
+    private RecipeDao recipeDao() {
+        return fr.didictateur.inanutshell.data.database.AppDatabase.getInstance(context).recipeDao();
+    }
+    
+    /**
+     * Écrit les sections au fur et à mesure de leur lecture ; en remplacement, seules les sections
+     * lues sont effacées, au moment où leur lecture commence. Doit être utilisé dans les
+     * transactions ouvertes par restoreFromProvider.
+     */
+    private class RestoreWriter implements BackupSerializer.SectionHandler {
+        private final RecipeDao recipeDao;
+        private final MealPlanDao mealPlanDao;
+        private final ShoppingListDao listDao;
+        private final ShoppingItemDao itemDao;
+        private final boolean mergeWithExisting;
+        private final List<Recipe> recipeBatch = new ArrayList<>(ID_QUERY_CHUNK);
+        private final Set<String> existingLists = new HashSet<>();
+        // Enregistrements lus par section, comparés aux métadonnées
+        final Map<BackupSection, Integer> counts = new HashMap<>();
+        
+        // Sections hors base, appliquées une fois les transactions validées
+        private final List<String> favorites = new ArrayList<>();
+        private final Map<String, Float> ratings = new HashMap<>();
+        private final Map<String, Object> settings = new HashMap<>();
+        
+        RestoreWriter(RecipeDao recipeDao, AppDatabase database, boolean mergeWithExisting) {
+            this.recipeDao = recipeDao;
+            this.mealPlanDao = database.mealPlanDao();
+            this.listDao = database.shoppingListDao();
+            this.itemDao = database.shoppingItemDao();
+            this.mergeWithExisting = mergeWithExisting;
+        }
+        
+        @Override
+        public void beginSection(BackupSection section) {
+            switch (section) {
+                case RECIPES:
+                    if (!mergeWithExisting) {
+                        recipeDao.deleteAllRecipes();
+                    }
+                    break;
+                case MEAL_PLANS:
+                    if (!mergeWithExisting) {
+                        mealPlanDao.deleteAllMealPlans();
+                    }
+                    break;
+                case SHOPPING_LISTS:
+                    if (mergeWithExisting) {
+                        for (ShoppingList list : listDao.getAllListsSync()) {
+                            existingLists.add(shoppingListKey(list));
+                        }
+                    } else {
+                        itemDao.deleteAllItems();
+                        listDao.deleteAllLists();
+                    }
+                    break;
                 default:
-                    return false;
+                    break;
             }
-        } catch (Exception e) {
-            return false;
         }
-    }
-    
-    private byte[] downloadFromCurrentProvider(BackupMetadata metadata) throws Exception {
-        switch (currentProvider) {
-            case GOOGLE_DRIVE:
-                return googleDriveProvider.downloadBackup(metadata);
-            case DROPBOX:
-                return dropboxProvider.downloadBackup(metadata);
-            case ONEDRIVE:
-                return oneDriveProvider.downloadBackup(metadata);
-            default:
-                throw new Exception("Provider non configuré");
+        
+        @Override
+        public void recipe(Recipe recipe) {
+            if (recipe == null) return;
+            recipeBatch.add(recipe);
+            if (recipeBatch.size() == ID_QUERY_CHUNK) {
+                saveRecipeBatch();
+            }
         }
-    }
-    
-    private void applyRestoredData(BackupData data, boolean mergeWithExisting) {
-        // TODO: Appliquer les données dans la base Room
-        if (!mergeWithExisting) {
-            clearAllData();
+        
+        /**
+         * En fusion, une recette locale plus récente que celle de la sauvegarde est conservée
+         */
+        private void saveRecipeBatch() {
+            if (recipeBatch.isEmpty()) return;
+            if (mergeWithExisting) {
+                List<String> ids = new ArrayList<>(recipeBatch.size());
+                for (Recipe recipe : recipeBatch) {
+                    ids.add(recipe.getId());
+                }
+                Map<String, Long> localUpdates = new HashMap<>();
+                for (Recipe local : recipeDao.getRecipesByIds(ids)) {
+                    localUpdates.put(local.getId(), local.getUpdatedAtTimestamp());
+                }
+                java.util.Iterator<Recipe> it = recipeBatch.iterator();
+                while (it.hasNext()) {
+                    Recipe recipe = it.next();
+                    Long localUpdate = localUpdates.get(recipe.getId());
+                    if (localUpdate != null && localUpdate > recipe.getUpdatedAtTimestamp()) {
+                        it.remove();
+                    }
+                }
+            }
+            recipeDao.upsertRecipes(recipeBatch);
+            recipeBatch.clear();
+        }
+        
+        /**
+         * Les ids locaux sont réattribués ; en fusion, un créneau (jour et repas) déjà planifié est conservé
+         */
+        @Override
+        public void mealPlan(MealPlan mealPlan) {
+            if (mealPlan == null) return;
+            if (mergeWithExisting && mealPlanDao.getMealPlanForDateTime(mealPlan.mealDate, mealPlan.mealType) != null) {
+                return;
+            }
+            mealPlan.id = 0;
+            mealPlanDao.insertSync(mealPlan);
+        }
+        
+        /**
+         * Les listes reçoivent de nouveaux ids, reportés sur leurs articles ; en fusion, une liste
+         * déjà présente (même nom et même date de création) n'est pas dupliquée
+         */
+        @Override
+        public void shoppingList(ShoppingListData data) {
+            if (data == null || data.list == null || existingLists.contains(shoppingListKey(data.list))) {
+                return;
+            }
+            data.list.id = 0;
+            int listId = (int) listDao.insertSync(data.list);
+            if (data.items != null && !data.items.isEmpty()) {
+                for (ShoppingItem item : data.items) {
+                    item.id = 0;
+                    item.shoppingListId = listId;
+                }
+                itemDao.insertAll(data.items);
+            }
+        }
+        
+        @Override
+        public void favorite(String recipeId) {
+            favorites.add(recipeId);
+        }
+        
+        @Override
+        public void rating(String recipeId, float rating) {
+            ratings.put(recipeId, rating);
         }
         
-        saveRecipesToDatabase(data.recipes);
-        saveCommentsToDatabase(data.comments);
-        saveUsersToDatabase(data.users);
-        saveSettingsToPreferences(data.settings);
+        @Override
+        public void setting(String key, Object value) {
+            settings.put(key, value);
+        }
+        
+        @Override
+        public void endSection(BackupSection section, int count) {
+            if (section == BackupSection.RECIPES) {
+                saveRecipeBatch();
+            }
+            counts.put(section, count);
+        }
+        
+        /**
+         * Favoris, notes et réglages lus, hors transaction : à appeler une fois les écritures en base validées
+         */
+        void applyPreferences() {
+            if (counts.containsKey(BackupSection.FAVORITES)) {
+                FavoritesManager favoritesManager = FavoritesManager.getInstance(context);
+                if (!mergeWithExisting) {
+                    favoritesManager.clearAllFavorites();
+                }
+                favoritesManager.addAllToFavorites(favorites);
+            }
+            if (counts.containsKey(BackupSection.RATINGS)) {
+                RatingManager ratingManager = RatingManager.getInstance(context);
+                if (!mergeWithExisting) {
+                    ratingManager.clearAllRatings();
+                }
+                for (Map.Entry<String, Float> rating : ratings.entrySet()) {
+                    ratingManager.setRating(rating.getKey(), rating.getValue());
+                }
+            }
+            if (counts.containsKey(BackupSection.SETTINGS)) {
+                SharedPreferences.Editor editor = appPreferences().edit();
+                if (!mergeWithExisting) {
+                    editor.clear();
+                }
+                for (Map.Entry<String, Object> setting : settings.entrySet()) {
+                    putSetting(editor, setting.getKey(), setting.getValue());
+                }
+                editor.apply();
+            }
+        }
+    }
+    
+    private static String shoppingListKey(ShoppingList list) {
+        return list.name + "|" + (list.createdAt != null ? list.createdAt.getTime() : 0);
     }
     
     // Méthodes de notification
@@ -619,20 +977,27 @@ public class CloudBackupManager {
         });
     }
     
-    // Méthodes utilitaires (à implémenter)
-    private List<Recipe> getAllRecipesFromDatabase() { return new ArrayList<>(); }
-    private List<RecipeComment> getAllCommentsFromDatabase() { return new ArrayList<>(); }
-    private List<User> getAllUsersFromDatabase() { return new ArrayList<>(); }
-    private Map<String, String> getAllSettingsFromPreferences() { return new HashMap<>(); }
+    private SharedPreferences appPreferences() {
+        return context.getSharedPreferences("app_prefs", Context.MODE_PRIVATE);
+    }
     
-    private void saveRecipesToDatabase(List<Recipe> recipes) { /* TODO */ }
-    private void saveCommentsToDatabase(List<RecipeComment> comments) { /* TODO */ }
-    private void saveUsersToDatabase(List<User> users) { /* TODO */ }
-    private void saveSettingsToPreferences(Map<String, String> settings) { /* TODO */ }
-    private void clearAllData() { /* TODO */ }
+    @SuppressWarnings("unchecked")
+    private static void putSetting(SharedPreferences.Editor editor, String key, Object value) {
+        if (value instanceof String) {
+            editor.putString(key, (String) value);
+        } else if (value instanceof Boolean) {
+            editor.putBoolean(key, (Boolean) value);
+        } else if (value instanceof Integer) {
+            editor.putInt(key, (Integer) value);
+        } else if (value instanceof Long) {
+            editor.putLong(key, (Long) value);
+        } else if (value instanceof Float) {
+            editor.putFloat(key, (Float) value);
+        } else if (value instanceof Set) {
+            editor.putStringSet(key, (Set<String>) value);
+        }
+    }
     
-    private String serializeToJson(BackupData data) { /* TODO */ return "{}"; }
-    private BackupData deserializeFromJson(String json) { /* TODO */ return new BackupData(); }
     private String getAppVersion() { return "1.0.0"; }
     
     // Gestion de l'état
@@ -760,7 +1125,7 @@ public class CloudBackupManager {
     }
     
     private boolean deleteBackupFromCurrentProvider(BackupMetadata metadata) {
-        // TODO: Implémenter avec les providers
-        return true;
+        CloudStorageProvider provider = providerFor(currentProvider);
+        return provider != null && provider.deleteBackup(metadata);
     }
 }
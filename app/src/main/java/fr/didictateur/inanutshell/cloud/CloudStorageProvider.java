@@ -0,0 +1,50 @@
+package fr.didictateur.inanutshell.cloud;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import fr.didictateur.inanutshell.cloud.CloudBackupManager.BackupMetadata;
+
+/**
+ * Service de stockage des sauvegardes cloud.
+ *
+ * L'envoi se fait par sessions reprenables, sur le modèle des API des services (Drive
+ * uploadType=resumable, Dropbox upload_session, OneDrive createUploadSession) : les blocs sont
+ * envoyés à un décalage donné et le service indique combien d'octets il a déjà reçus, ce qui
+ * permet de reprendre après une coupure sans tout renvoyer. Le téléchargement est un flux.
+ */
+public interface CloudStorageProvider {
+
+    boolean authenticate();
+
+    boolean isAuthenticated();
+
+    void signOut();
+
+    /**
+     * Ouvre une session d'envoi pour une sauvegarde de totalSize octets ; retourne son identifiant
+     */
+    String startUpload(BackupMetadata metadata, long totalSize) throws IOException;
+
+    /**
+     * Octets déjà reçus par le service pour cette session, -1 si elle a expiré ou est inconnue
+     */
+    long getUploadedBytes(String sessionId) throws IOException;
+
+    /**
+     * Envoie length octets de buffer à la position offset de la session
+     */
+    void uploadChunk(String sessionId, long offset, byte[] buffer, int length) throws IOException;
+
+    /**
+     * Termine la session : le fichier et ses métadonnées deviennent visibles dans listBackups()
+     */
+    void finishUpload(String sessionId, BackupMetadata metadata) throws IOException;
+
+    InputStream openDownload(BackupMetadata metadata) throws IOException;
+
+    List<BackupMetadata> listBackups() throws IOException;
+
+    boolean deleteBackup(BackupMetadata metadata);
+}
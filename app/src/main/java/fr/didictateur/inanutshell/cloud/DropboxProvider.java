@@ -3,18 +3,23 @@ package fr.didictateur.inanutshell.cloud;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 import fr.didictateur.inanutshell.cloud.CloudBackupManager.BackupMetadata;
 
-public class DropboxProvider {
+public class DropboxProvider implements CloudStorageProvider {
     private Context context;
     private SharedPreferences prefs;
     private boolean isAuthenticated = false;
     private String accessToken;
     
+    private final SimulatedUploadSessions uploadSessions = new SimulatedUploadSessions("Dropbox");
+    
     private static final String DROPBOX_API_BASE = "https://api.dropboxapi.com/2";
     private static final String BACKUP_FOLDER_PATH = "/InANutshell Backups";
     
@@ -24,6 +29,7 @@ public class DropboxProvider {
         loadConfiguration();
     }
     
+    @Override
     public boolean authenticate() {
         try {
             // TODO: Implémenter l'authentification OAuth2 Dropbox
@@ -45,43 +51,55 @@ public class DropboxProvider {
         }
     }
     
-    public boolean uploadBackup(byte[] data, BackupMetadata metadata) {
+    @Override
+    public String startUpload(BackupMetadata metadata, long totalSize) throws IOException {
         if (!isAuthenticated) {
-            return false;
+            throw new IOException("Non authentifié avec Dropbox");
         }
         
-        try {
-            // TODO: Upload via Dropbox API
-            // POST https://content.dropboxapi.com/2/files/upload
-            
-            String fileName = generateBackupFileName(metadata);
-            String filePath = BACKUP_FOLDER_PATH + "/" + fileName;
-            
-            // Simuler l'upload
-            Thread.sleep(500);
-            metadata.size = data.length;
-            
-            return true;
-            
-        } catch (Exception e) {
-            return false;
-        }
+        // TODO: Session d'envoi
+        // POST https://content.dropboxapi.com/2/files/upload_session/start, puis append_v2 (cursor :
+        // session_id + offset) et finish (commit : chemin du fichier)
+        return uploadSessions.start(generateBackupFileName(metadata));
+    }
+    
+    @Override
+    public long getUploadedBytes(String sessionId) {
+        return uploadSessions.received(sessionId);
+    }
+    
+    @Override
+    public void uploadChunk(String sessionId, long offset, byte[] buffer, int length) throws IOException {
+        uploadSessions.append(sessionId, offset, length);
     }
     
-    public byte[] downloadBackup(BackupMetadata metadata) throws Exception {
+    @Override
+    public void finishUpload(String sessionId, BackupMetadata metadata) throws IOException {
+        metadata.size = uploadSessions.finish(sessionId);
+    }
+    
+    @Override
+    public InputStream openDownload(BackupMetadata metadata) throws IOException {
         if (!isAuthenticated) {
-            throw new Exception("Non authentifié avec Dropbox");
+            throw new IOException("Non authentifié avec Dropbox");
         }
         
         // TODO: Download via Dropbox API
         // POST https://content.dropboxapi.com/2/files/download
         
-        return "fake_dropbox_content".getBytes();
+        return new ByteArrayInputStream("fake_dropbox_content".getBytes());
+    }
+    
+    @Override
+    public boolean deleteBackup(BackupMetadata metadata) {
+        // Rien n'est encore envoyé au service : aucune sauvegarde distante à supprimer
+        return false;
     }
     
-    public List<BackupMetadata> listBackups() throws Exception {
+    @Override
+    public List<BackupMetadata> listBackups() throws IOException {
         if (!isAuthenticated) {
-            throw new Exception("Non authentifié avec Dropbox");
+            throw new IOException("Non authentifié avec Dropbox");
         }
         
         List<BackupMetadata> backups = new ArrayList<>();
@@ -140,10 +158,12 @@ public class DropboxProvider {
             .apply();
     }
     
+    @Override
     public boolean isAuthenticated() {
         return isAuthenticated;
     }
     
+    @Override
     public void signOut() {
         isAuthenticated = false;
         accessToken = null;
@@ -4,7 +4,6 @@ import android.content.Context;
 import android.content.SharedPreferences;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.SimpleDateFormat;
@@ -15,7 +14,7 @@ import java.util.Locale;
 
 import fr.didictateur.inanutshell.cloud.CloudBackupManager.BackupMetadata;
 
-public class GoogleDriveProvider {
+public class GoogleDriveProvider implements CloudStorageProvider {
     private Context context;
     private SharedPreferences prefs;
     private boolean isAuthenticated = false;
@@ -26,12 +25,15 @@ public class GoogleDriveProvider {
     private static final String BACKUP_FOLDER_NAME = "InANutshell Backups";
     private String backupFolderId;
     
+    private final SimulatedUploadSessions uploadSessions = new SimulatedUploadSessions("Google Drive");
+    
     public GoogleDriveProvider(Context context) {
         this.context = context;
         this.prefs = context.getSharedPreferences("google_drive_backup", Context.MODE_PRIVATE);
         loadConfiguration();
     }
     
+    @Override
     public boolean authenticate() {
         try {
             // TODO: Implémenter l'authentification OAuth2 Google
@@ -56,52 +58,59 @@ public class GoogleDriveProvider {
         }
     }
     
-    public boolean uploadBackup(byte[] data, BackupMetadata metadata) {
+    @Override
+    public String startUpload(BackupMetadata metadata, long totalSize) throws IOException {
         if (!isAuthenticated) {
-            return false;
+            throw new IOException("Non authentifié avec Google Drive");
         }
         
-        try {
-            // 1. Créer le fichier sur Google Drive
-            String fileName = generateBackupFileName(metadata);
-            String fileId = createDriveFile(fileName, data);
-            
-            if (fileId == null) {
-                return false;
-            }
-            
-            // 2. Sauvegarder les métadonnées comme propriétés du fichier
-            updateFileMetadata(fileId, metadata);
-            
-            // 3. Mettre à jour la taille du fichier
-            metadata.size = data.length;
-            
-            return true;
-            
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
-        }
+        // TODO: Session reprenable
+        // POST https://www.googleapis.com/upload/drive/v3/files?uploadType=resumable -> Location,
+        // puis PUT des blocs avec Content-Range: bytes {offset}-{offset+length-1}/{total}
+        return uploadSessions.start(generateBackupFileName(metadata));
+    }
+    
+    @Override
+    public long getUploadedBytes(String sessionId) {
+        return uploadSessions.received(sessionId);
     }
     
-    public byte[] downloadBackup(BackupMetadata metadata) throws Exception {
+    @Override
+    public void uploadChunk(String sessionId, long offset, byte[] buffer, int length) throws IOException {
+        uploadSessions.append(sessionId, offset, length);
+    }
+    
+    @Override
+    public void finishUpload(String sessionId, BackupMetadata metadata) throws IOException {
+        long size = uploadSessions.finish(sessionId);
+        // La réponse au dernier bloc contient l'identifiant du fichier créé
+        String fileId = findBackupFile(metadata.backupId);
+        
+        // Sauvegarder les métadonnées comme propriétés du fichier
+        updateFileMetadata(fileId, metadata);
+        metadata.size = size;
+    }
+    
+    @Override
+    public InputStream openDownload(BackupMetadata metadata) throws IOException {
         if (!isAuthenticated) {
-            throw new Exception("Non authentifié avec Google Drive");
+            throw new IOException("Non authentifié avec Google Drive");
         }
         
         // Rechercher le fichier par son nom ou ID
         String fileId = findBackupFile(metadata.backupId);
         if (fileId == null) {
-            throw new Exception("Sauvegarde introuvable sur Google Drive");
+            throw new IOException("Sauvegarde introuvable sur Google Drive");
         }
         
         // Télécharger le contenu du fichier
-        return downloadFileContent(fileId);
+        return openFileContent(fileId);
     }
     
-    public List<BackupMetadata> listBackups() throws Exception {
+    @Override
+    public List<BackupMetadata> listBackups() throws IOException {
         if (!isAuthenticated) {
-            throw new Exception("Non authentifié avec Google Drive");
+            throw new IOException("Non authentifié avec Google Drive");
         }
         
         List<BackupMetadata> backups = new ArrayList<>();
@@ -119,6 +128,7 @@ public class GoogleDriveProvider {
         return backups;
     }
     
+    @Override
     public boolean deleteBackup(BackupMetadata metadata) {
         if (!isAuthenticated) {
             return false;
@@ -160,24 +170,6 @@ public class GoogleDriveProvider {
         return String.format("inanutshell_backup_%s_%s.inb", timestamp, metadata.backupId.substring(0, 8));
     }
     
-    private String createDriveFile(String fileName, byte[] data) {
-        try {
-            // TODO: Appel à l'API Google Drive pour créer un fichier
-            // POST https://www.googleapis.com/upload/drive/v3/files?uploadType=multipart
-            
-            // Simulation pour la démonstration
-            String fileId = "file_" + System.currentTimeMillis();
-            
-            // Simuler l'upload
-            Thread.sleep(1000); // Simulation de l'upload
-            
-            return fileId;
-            
-        } catch (Exception e) {
-            return null;
-        }
-    }
-    
     private void updateFileMetadata(String fileId, BackupMetadata metadata) {
         try {
             // TODO: Mettre à jour les propriétés du fichier Google Drive
@@ -217,15 +209,15 @@ public class GoogleDriveProvider {
         }
     }
     
-    private byte[] downloadFileContent(String fileId) throws Exception {
-        // TODO: Télécharger le contenu du fichier
+    private InputStream openFileContent(String fileId) {
+        // TODO: Télécharger le contenu du fichier en flux
         // GET https://www.googleapis.com/drive/v3/files/{fileId}?alt=media
         
         // Simulation pour la démonstration
-        return "fake_backup_content".getBytes();
+        return new ByteArrayInputStream("fake_backup_content".getBytes());
     }
     
-    private List<DriveFile> listFilesInBackupFolder() throws Exception {
+    private List<DriveFile> listFilesInBackupFolder() {
         List<DriveFile> files = new ArrayList<>();
         
         // TODO: Lister les fichiers dans le dossier de sauvegarde
@@ -340,10 +332,12 @@ public class GoogleDriveProvider {
             .apply();
     }
     
+    @Override
     public boolean isAuthenticated() {
         return isAuthenticated;
     }
     
+    @Override
     public void signOut() {
         isAuthenticated = false;
         accessToken = null;
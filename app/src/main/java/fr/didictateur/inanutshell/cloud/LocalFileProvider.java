@@ -0,0 +1,144 @@
+package fr.didictateur.inanutshell.cloud;
+
+import android.content.Context;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.didictateur.inanutshell.cloud.CloudBackupManager.BackupMetadata;
+
+/**
+ * Stockage des sauvegardes dans un dossier local (par défaut le stockage de l'application).
+ *
+ * Même protocole de sessions que les services cloud : le fichier .part grossit bloc par bloc
+ * et sa taille sert de décalage de reprise. Utile hors ligne, pour copier les sauvegardes
+ * sur une carte SD ou un ordinateur, et pour tester le chemin complet sans compte cloud.
+ */
+public class LocalFileProvider implements CloudStorageProvider {
+    private static final String PART_SUFFIX = ".part";
+    private static final String BACKUP_SUFFIX = ".inb";
+    private static final String METADATA_SUFFIX = ".json";
+
+    private final File directory;
+    private final Gson gson = new Gson();
+
+    public LocalFileProvider(Context context) {
+        this(new File(context.getExternalFilesDir(null), "cloud_backups"));
+    }
+
+    public LocalFileProvider(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public boolean authenticate() {
+        return directory.isDirectory() || directory.mkdirs();
+    }
+
+    @Override
+    public boolean isAuthenticated() {
+        return directory.isDirectory();
+    }
+
+    @Override
+    public void signOut() {
+        // Rien à révoquer pour un dossier local
+    }
+
+    @Override
+    public String startUpload(BackupMetadata metadata, long totalSize) throws IOException {
+        if (!authenticate()) {
+            throw new IOException("Dossier de sauvegarde inaccessible: " + directory.getAbsolutePath());
+        }
+        File part = new File(directory, metadata.backupId + PART_SUFFIX);
+        if (part.exists() && !part.delete()) {
+            throw new IOException("Impossible de réinitialiser " + part.getName());
+        }
+        if (!part.createNewFile()) {
+            throw new IOException("Impossible de créer " + part.getName());
+        }
+        return metadata.backupId;
+    }
+
+    @Override
+    public long getUploadedBytes(String sessionId) {
+        File part = new File(directory, sessionId + PART_SUFFIX);
+        return part.exists() ? part.length() : -1;
+    }
+
+    @Override
+    public void uploadChunk(String sessionId, long offset, byte[] buffer, int length) throws IOException {
+        File part = new File(directory, sessionId + PART_SUFFIX);
+        if (!part.exists()) {
+            throw new IOException("Session d'envoi inconnue: " + sessionId);
+        }
+        if (part.length() != offset) {
+            throw new IOException("Décalage " + offset + " inattendu, " + part.length() + " octets déjà reçus");
+        }
+        try (FileOutputStream out = new FileOutputStream(part, true)) {
+            out.write(buffer, 0, length);
+            out.getFD().sync();
+        }
+    }
+
+    @Override
+    public void finishUpload(String sessionId, BackupMetadata metadata) throws IOException {
+        File part = new File(directory, sessionId + PART_SUFFIX);
+        File backup = new File(directory, metadata.backupId + BACKUP_SUFFIX);
+        if (!part.renameTo(backup)) {
+            throw new IOException("Impossible de finaliser " + backup.getName());
+        }
+        metadata.size = backup.length();
+        metadata.provider = CloudBackupManager.CloudProvider.LOCAL;
+        try (Writer writer = new FileWriter(new File(directory, metadata.backupId + METADATA_SUFFIX))) {
+            gson.toJson(metadata, writer);
+        }
+    }
+
+    @Override
+    public InputStream openDownload(BackupMetadata metadata) throws IOException {
+        File backup = new File(directory, metadata.backupId + BACKUP_SUFFIX);
+        if (!backup.exists()) {
+            throw new IOException("Sauvegarde introuvable: " + backup.getName());
+        }
+        return new BufferedInputStream(new FileInputStream(backup));
+    }
+
+    @Override
+    public List<BackupMetadata> listBackups() throws IOException {
+        List<BackupMetadata> backups = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(METADATA_SUFFIX));
+        if (files == null) return backups;
+
+        for (File file : files) {
+            try (Reader reader = new FileReader(file)) {
+                BackupMetadata metadata = gson.fromJson(reader, BackupMetadata.class);
+                if (metadata != null && new File(directory, metadata.backupId + BACKUP_SUFFIX).exists()) {
+                    backups.add(metadata);
+                }
+            } catch (RuntimeException e) {
+                // Fichier de métadonnées illisible : ignoré
+            }
+        }
+        return backups;
+    }
+
+    @Override
+    public boolean deleteBackup(BackupMetadata metadata) {
+        boolean deleted = new File(directory, metadata.backupId + BACKUP_SUFFIX).delete();
+        new File(directory, metadata.backupId + METADATA_SUFFIX).delete();
+        return deleted;
+    }
+}
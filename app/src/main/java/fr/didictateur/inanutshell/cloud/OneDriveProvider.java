@@ -3,18 +3,23 @@ package fr.didictateur.inanutshell.cloud;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 import fr.didictateur.inanutshell.cloud.CloudBackupManager.BackupMetadata;
 
-public class OneDriveProvider {
+public class OneDriveProvider implements CloudStorageProvider {
     private Context context;
     private SharedPreferences prefs;
     private boolean isAuthenticated = false;
     private String accessToken;
     
+    private final SimulatedUploadSessions uploadSessions = new SimulatedUploadSessions("OneDrive");
+    
     private static final String ONEDRIVE_API_BASE = "https://graph.microsoft.com/v1.0";
     private static final String BACKUP_FOLDER_NAME = "InANutshell Backups";
     
@@ -24,6 +29,7 @@ public class OneDriveProvider {
         loadConfiguration();
     }
     
+    @Override
     public boolean authenticate() {
         try {
             // TODO: Implémenter l'authentification Microsoft Graph API
@@ -45,42 +51,55 @@ public class OneDriveProvider {
         }
     }
     
-    public boolean uploadBackup(byte[] data, BackupMetadata metadata) {
+    @Override
+    public String startUpload(BackupMetadata metadata, long totalSize) throws IOException {
         if (!isAuthenticated) {
-            return false;
+            throw new IOException("Non authentifié avec OneDrive");
         }
         
-        try {
-            // TODO: Upload via Microsoft Graph API
-            // PUT https://graph.microsoft.com/v1.0/me/drive/items/{folder-id}:/{filename}:/content
-            
-            String fileName = generateBackupFileName(metadata);
-            
-            // Simuler l'upload
-            Thread.sleep(300);
-            metadata.size = data.length;
-            
-            return true;
-            
-        } catch (Exception e) {
-            return false;
-        }
+        // TODO: Session d'envoi
+        // POST https://graph.microsoft.com/v1.0/me/drive/items/{folder-id}:/{filename}:/createUploadSession -> uploadUrl,
+        // puis PUT des blocs avec Content-Range: bytes {offset}-{offset+length-1}/{total}
+        return uploadSessions.start(generateBackupFileName(metadata));
+    }
+    
+    @Override
+    public long getUploadedBytes(String sessionId) {
+        return uploadSessions.received(sessionId);
+    }
+    
+    @Override
+    public void uploadChunk(String sessionId, long offset, byte[] buffer, int length) throws IOException {
+        uploadSessions.append(sessionId, offset, length);
     }
     
-    public byte[] downloadBackup(BackupMetadata metadata) throws Exception {
+    @Override
+    public void finishUpload(String sessionId, BackupMetadata metadata) throws IOException {
+        metadata.size = uploadSessions.finish(sessionId);
+    }
+    
+    @Override
+    public InputStream openDownload(BackupMetadata metadata) throws IOException {
         if (!isAuthenticated) {
-            throw new Exception("Non authentifié avec OneDrive");
+            throw new IOException("Non authentifié avec OneDrive");
         }
         
         // TODO: Download via Microsoft Graph API
         // GET https://graph.microsoft.com/v1.0/me/drive/items/{item-id}/content
         
-        return "fake_onedrive_content".getBytes();
+        return new ByteArrayInputStream("fake_onedrive_content".getBytes());
+    }
+    
+    @Override
+    public boolean deleteBackup(BackupMetadata metadata) {
+        // Rien n'est encore envoyé au service : aucune sauvegarde distante à supprimer
+        return false;
     }
     
-    public List<BackupMetadata> listBackups() throws Exception {
+    @Override
+    public List<BackupMetadata> listBackups() throws IOException {
         if (!isAuthenticated) {
-            throw new Exception("Non authentifié avec OneDrive");
+            throw new IOException("Non authentifié avec OneDrive");
         }
         
         List<BackupMetadata> backups = new ArrayList<>();
@@ -137,10 +156,12 @@ public class OneDriveProvider {
             .apply();
     }
     
+    @Override
     public boolean isAuthenticated() {
         return isAuthenticated;
     }
     
+    @Override
     public void signOut() {
         isAuthenticated = false;
         accessToken = null;
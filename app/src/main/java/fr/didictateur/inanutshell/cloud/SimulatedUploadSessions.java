@@ -0,0 +1,52 @@
+package fr.didictateur.inanutshell.cloud;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Suivi des sessions d'envoi reprenables des fournisseurs distants tant que leurs API ne sont
+ * pas branchées : chaque session retient seulement le nombre d'octets reçus, comme le ferait le
+ * service (Location de Drive, session_id de Dropbox, uploadUrl de OneDrive)
+ */
+final class SimulatedUploadSessions {
+    private final String providerName;
+    private final Map<String, Long> received = new ConcurrentHashMap<>();
+
+    SimulatedUploadSessions(String providerName) {
+        this.providerName = providerName;
+    }
+
+    String start(String fileName) {
+        String sessionId = "session_" + fileName;
+        received.put(sessionId, 0L);
+        return sessionId;
+    }
+
+    /**
+     * Octets reçus par la session, -1 si elle est inconnue
+     */
+    long received(String sessionId) {
+        Long bytes = received.get(sessionId);
+        return bytes != null ? bytes : -1;
+    }
+
+    void append(String sessionId, long offset, int length) throws IOException {
+        Long bytes = received.get(sessionId);
+        if (bytes == null || bytes != offset) {
+            throw new IOException("Session " + providerName + " désynchronisée");
+        }
+        received.put(sessionId, offset + length);
+    }
+
+    /**
+     * Ferme la session et retourne la taille du fichier créé
+     */
+    long finish(String sessionId) throws IOException {
+        Long bytes = received.remove(sessionId);
+        if (bytes == null) {
+            throw new IOException("Session " + providerName + " inconnue");
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,27 @@
+package fr.didictateur.inanutshell.config;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Certificat épinglé à la première connexion (TOFU) pour un serveur auto-signé.
+ * L'empreinte porte sur la clé publique (SPKI) : un renouvellement qui garde la clé reste valide.
+ */
+@Entity(tableName = "certificate_pins")
+public class CertificatePin {
+    
+    @PrimaryKey
+    @NonNull
+    public String hostPort = "";    // hôte:port du serveur
+    
+    public int serverId;            // Serveur qui a épinglé le certificat
+    public String spkiSha256;       // SHA-256 de la clé publique, en Base64
+    public String subject;          // Sujet du certificat, pour l'affichage
+    public long notAfter;           // Fin de validité du certificat
+    public long firstSeen;          // Date de l'épinglage
+    public long lastSeen;           // Dernière connexion avec ce certificat
+    
+    public CertificatePin() {
+    }
+}
@@ -4,19 +4,25 @@ import android.content.Context;
 import android.util.Log;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
-import java.io.IOException;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 import fr.didictateur.inanutshell.AppDatabase;
 import fr.didictateur.inanutshell.database.dao.ServerConfigDao;
+import fr.didictateur.inanutshell.network.CircuitBreaker;
+import fr.didictateur.inanutshell.network.CircuitBreakerRegistry;
+import fr.didictateur.inanutshell.network.HttpClientProvider;
 import fr.didictateur.inanutshell.network.NetworkStateManager;
+import fr.didictateur.inanutshell.network.ServerTlsProvider;
 import fr.didictateur.inanutshell.performance.PerformanceManager;
 import fr.didictateur.inanutshell.logging.AppLogger;
 
@@ -32,9 +38,13 @@ public class MultiServerManager {
     private final ServerConfigDao serverDao;
     private final ExecutorService executor;
     private final OkHttpClient httpClient;
+    private final ServerHealthProber prober;
+    private final ScheduledExecutorService healthScheduler;
     private final PerformanceManager performanceManager;
     private final AppLogger logger;
     private final NetworkStateManager networkManager;
+    private final CircuitBreakerRegistry circuitBreakers;
+    private final ServerScorer serverScorer;
     
     // État actuel
     private final AtomicReference<ServerConfig> currentServer;
@@ -43,14 +53,17 @@ public class MultiServerManager {
     private final MutableLiveData<ConnectionStatus> connectionStatusLiveData;
     
     // Cache et surveillance
-    private final ConcurrentHashMap<Integer, Future<?>> statusCheckTasks;
+    private ScheduledFuture<?> nextHealthCheck;
     private final ConcurrentHashMap<Integer, Long> lastConnectionAttempt;
     
     // Configuration
     private static final int HEALTH_CHECK_INTERVAL_MS = 30000; // 30 secondes
+    private static final int METERED_INTERVAL_FACTOR = 4;      // 2 minutes sur réseau limité
+    private static final long PROBE_ROUND_DEADLINE_MS = 6000;  // Échéance d'un tour de sondes
     private static final int CONNECTION_TIMEOUT_MS = 10000;    // 10 secondes
     private static final int MAX_RETRY_ATTEMPTS = 3;
     private static final int FALLBACK_DELAY_MS = 5000;         // 5 secondes
+    private static final int RECENT_PROBE_MS = 2 * HEALTH_CHECK_INTERVAL_MS; // Sonde encore fiable
     
     /**
      * État de la connexion multi-serveurs
@@ -74,16 +87,26 @@ public class MultiServerManager {
             return thread;
         });
         
-        // Client HTTP avec timeout personnalisé
-        this.httpClient = new OkHttpClient.Builder()
+        // Client HTTP avec timeout personnalisé, dérivé du client racine (pool partagé) ;
+        // pas de cache HTTP pour que les sondes reflètent l'état réel du serveur
+        this.httpClient = HttpClientProvider.getInstance(context).getRootClient().newBuilder()
             .connectTimeout(CONNECTION_TIMEOUT_MS, java.util.concurrent.TimeUnit.MILLISECONDS)
             .readTimeout(CONNECTION_TIMEOUT_MS, java.util.concurrent.TimeUnit.MILLISECONDS)
             .writeTimeout(CONNECTION_TIMEOUT_MS, java.util.concurrent.TimeUnit.MILLISECONDS)
+            .cache(null)
             .build();
+        this.prober = new ServerHealthProber(httpClient, ServerTlsProvider.getInstance(context));
+        this.healthScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "HealthCheck");
+            thread.setDaemon(true);
+            return thread;
+        });
         
         this.performanceManager = PerformanceManager.getInstance();
         this.logger = AppLogger.getInstance(context);
         this.networkManager = NetworkStateManager.getInstance(context);
+        this.circuitBreakers = CircuitBreakerRegistry.getInstance();
+        this.serverScorer = ServerScorer.getInstance();
         
         // État
         this.currentServer = new AtomicReference<>();
@@ -92,13 +115,13 @@ public class MultiServerManager {
         this.connectionStatusLiveData = new MutableLiveData<>(ConnectionStatus.DISCONNECTED);
         
         // Cache
-        this.statusCheckTasks = new ConcurrentHashMap<>();
         this.lastConnectionAttempt = new ConcurrentHashMap<>();
         
         // Initialisation
         initializeServers();
-        startHealthCheckScheduler();
+        scheduleHealthCheck(HEALTH_CHECK_INTERVAL_MS);
         observeNetworkChanges();
+        circuitBreakers.addListener(this::onCircuitStateChanged);
     }
     
     public static synchronized MultiServerManager getInstance(Context context) {
@@ -157,6 +180,8 @@ public class MultiServerManager {
             if (networkState.isConnected) {
                 logger.logInfo(TAG, "Network connected - checking server status");
                 checkCurrentServerStatus();
+                // Reprendre les sondes périodiques au rythme du nouveau réseau
+                scheduleHealthCheck(healthCheckInterval());
             } else {
                 logger.logInfo(TAG, "Network disconnected");
                 connectionStatusLiveData.postValue(ConnectionStatus.DISCONNECTED);
@@ -164,6 +189,24 @@ public class MultiServerManager {
         });
     }
     
+    /**
+     * Réagit aux changements d'état des disjoncteurs alimentés par le trafic réel :
+     * basculement immédiat si le circuit du serveur actuel s'ouvre, et recherche
+     * d'un meilleur serveur lorsqu'un autre circuit redevient utilisable
+     */
+    private void onCircuitStateChanged(CircuitBreaker breaker, CircuitBreaker.State previous,
+                                       CircuitBreaker.State state) {
+        ServerConfig current = currentServer.get();
+        boolean isCurrent = current != null && current.getId() == breaker.getServerId();
+        
+        if (state == CircuitBreaker.State.OPEN && isCurrent) {
+            logger.logWarning(TAG, "Circuit ouvert pour " + current.getName() + ", basculement immédiat");
+            switchToNextAvailableServer();
+        } else if (state != CircuitBreaker.State.OPEN && !isCurrent) {
+            checkForBetterServer();
+        }
+    }
+    
     /**
      * Ajoute un nouveau serveur
      */
@@ -296,6 +339,9 @@ public class MultiServerManager {
                 
                 // Supprimer
                 serverDao.deleteServer(serverToDelete);
+                circuitBreakers.remove(serverToDelete);
+                serverScorer.remove(serverToDelete);
+                ServerTlsProvider.getInstance(context).removeServer(serverToDelete);
                 
                 // Mettre à jour la liste
                 refreshServersList();
@@ -382,6 +428,9 @@ public class MultiServerManager {
             try {
                 List<ServerConfig> servers = serverDao.getEnabledServersByPriority();
                 
+                // Les serveurs les mieux notés d'abord, puis les autres par priorité
+                Collections.sort(servers, serverScorer::compare);
+                
                 for (ServerConfig server : servers) {
                     ServerConfig current = currentServer.get();
                     
@@ -390,8 +439,13 @@ public class MultiServerManager {
                         continue;
                     }
                     
-                    // Tester la connexion
-                    if (testServerConnection(server)) {
+                    // Ignorer les serveurs dont le circuit est ouvert
+                    if (!circuitBreakers.isAvailable(server)) {
+                        continue;
+                    }
+                    
+                    // Sonde récente réussie : basculer sans attendre une nouvelle sonde
+                    if (isRecentlyOnline(server) || testServerConnection(server)) {
                         setCurrentServer(server);
                         connectionStatusLiveData.postValue(ConnectionStatus.FALLBACK);
                         logger.logInfo(TAG, "Switched to fallback server: " + server.getName());
@@ -411,6 +465,12 @@ public class MultiServerManager {
         });
     }
     
+    private boolean isRecentlyOnline(ServerConfig server) {
+        return server.getStatus() == ServerConfig.ServerStatus.ONLINE &&
+            System.currentTimeMillis() - server.getLastStatusCheck() < RECENT_PROBE_MS &&
+            circuitBreakers.forServer(server).getState() == CircuitBreaker.State.CLOSED;
+    }
+    
     /**
      * Teste la connexion à un serveur
      */
@@ -426,73 +486,73 @@ public class MultiServerManager {
         }
         
         lastConnectionAttempt.put(server.getId(), now);
+        logger.logDebug(TAG, "Testing connection to: " + server.getName());
         
-        try {
-            String healthUrl = server.getApiUrl() + "/app/about";
-            Request request = new Request.Builder()
-                .url(healthUrl)
-                .header("Authorization", "Bearer " + server.getApiKey())
-                .build();
-            
-            logger.logDebug(TAG, "Testing connection to: " + server.getName());
-            
-            try (Response response = httpClient.newCall(request).execute()) {
-                boolean isHealthy = response.isSuccessful();
-                
-                if (isHealthy) {
-                    server.updateStatus(ServerConfig.ServerStatus.ONLINE);
-                    
-                    // Extraire la version si possible
-                    if (response.body() != null) {
-                        String body = response.body().string();
-                        // Analyser la réponse pour extraire la version
-                        extractVersionFromResponse(server, body);
-                    }
-                } else {
-                    if (response.code() == 401 || response.code() == 403) {
-                        server.updateStatus(ServerConfig.ServerStatus.UNAUTHORIZED);
-                    } else {
-                        server.updateStatus(ServerConfig.ServerStatus.ERROR);
-                    }
-                }
-                
-                // Mettre à jour en base
-                serverDao.updateServer(server);
-                
-                logger.logDebug(TAG, "Server " + server.getName() + " status: " + server.getStatus() + 
-                    " (HTTP " + response.code() + ")");
-                
-                return isHealthy;
+        return applyProbeResult(server, prober.probe(server));
+    }
+    
+    /**
+     * Sonde plusieurs serveurs en parallèle, dans la limite de PROBE_ROUND_DEADLINE_MS.
+     * Retourne les serveurs en bonne santé.
+     */
+    private List<ServerConfig> probeServers(List<ServerConfig> servers) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        for (ServerConfig server : servers) {
+            lastConnectionAttempt.put(server.getId(), now);
+        }
+        
+        Map<Integer, ServerHealthProber.ProbeResult> results = prober.probeAll(servers, PROBE_ROUND_DEADLINE_MS);
+        List<ServerConfig> healthy = new ArrayList<>();
+        for (ServerConfig server : servers) {
+            if (applyProbeResult(server, results.get(server.getId()))) {
+                healthy.add(server);
             }
-            
-        } catch (IOException e) {
-            server.updateStatus(ServerConfig.ServerStatus.OFFLINE);
-            serverDao.updateServer(server);
-            logger.logDebug(TAG, "Server " + server.getName() + " is offline: " + e.getMessage());
-            return false;
-        } catch (Exception e) {
-            server.updateStatus(ServerConfig.ServerStatus.ERROR);
-            serverDao.updateServer(server);
-            logger.logError(TAG, "Error testing server " + server.getName(), e);
-            return false;
         }
+        
+        logger.logDebug(TAG, String.format("Probed %d servers in %dms, %d healthy",
+            servers.size(), System.currentTimeMillis() - now, healthy.size()));
+        return healthy;
     }
     
     /**
-     * Extrait la version de Mealie depuis la réponse
+     * Répercute le résultat d'une sonde sur le statut, le disjoncteur et le score du serveur
      */
-    private void extractVersionFromResponse(ServerConfig server, String response) {
+    private boolean applyProbeResult(ServerConfig server, ServerHealthProber.ProbeResult result) {
         try {
-            // Parse JSON pour extraire la version
-            if (response.contains("\"version\"")) {
-                String version = response.replaceAll(".*\"version\":\\s*\"([^\"]+)\".*", "$1");
-                if (!version.equals(response)) { // Si la regex a fonctionné
-                    server.setVersion(version);
-                    logger.logDebug(TAG, "Detected Mealie version: " + version + " on " + server.getName());
+            boolean isHealthy = result.isHealthy();
+            serverScorer.record(server, result.latencyMs, isHealthy);
+            
+            if (isHealthy) {
+                circuitBreakers.forServer(server).recordProbeSuccess();
+                server.updateStatus(ServerConfig.ServerStatus.ONLINE);
+                if (result.version != null && !result.version.equals(server.getVersion())) {
+                    server.setVersion(result.version);
+                    logger.logDebug(TAG, "Detected Mealie version: " + result.version + " on " + server.getName());
                 }
+            } else if (result.error != null) {
+                circuitBreakers.forServer(server).recordFailure();
+                server.updateStatus(ServerConfig.ServerStatus.OFFLINE);
+                logger.logDebug(TAG, "Server " + server.getName() + " is offline: " + result.error.getMessage());
+            } else if (result.code == 401 || result.code == 403) {
+                server.updateStatus(ServerConfig.ServerStatus.UNAUTHORIZED);
+            } else {
+                if (result.code >= 500) {
+                    circuitBreakers.forServer(server).recordFailure();
+                }
+                server.updateStatus(ServerConfig.ServerStatus.ERROR);
             }
+            
+            // Mettre à jour en base
+            serverDao.updateServer(server);
+            
+            logger.logDebug(TAG, "Server " + server.getName() + " status: " + server.getStatus() + 
+                " (HTTP " + result.code + ", " + result.latencyMs + "ms)");
+            
+            return isHealthy;
+            
         } catch (Exception e) {
-            logger.logDebug(TAG, "Could not extract version from response: " + e.getMessage());
+            logger.logError(TAG, "Error testing server " + server.getName(), e);
+            return false;
         }
     }
     
@@ -520,7 +580,9 @@ public class MultiServerManager {
     }
     
     /**
-     * Vérifie s'il y a un serveur de priorité plus élevée disponible
+     * Vérifie s'il y a un serveur nettement mieux noté (latence et taux d'erreur EWMA, priorité).
+     * Les candidats sans mesure récente sont sondés ; l'hystérésis du ServerScorer évite les
+     * basculements répétés entre serveurs de qualité proche.
      */
     private void checkForBetterServer() {
         ServerConfig current = currentServer.get();
@@ -529,24 +591,34 @@ public class MultiServerManager {
         executor.submit(() -> {
             try {
                 List<ServerConfig> servers = serverDao.getEnabledServersByPriority();
+                List<ServerConfig> candidates = new ArrayList<>();
+                List<ServerConfig> toProbe = new ArrayList<>();
+                candidates.add(current);
                 
                 for (ServerConfig server : servers) {
-                    // Ignorer le serveur actuel et les serveurs de priorité inférieure
-                    if (server.getId() == current.getId() || 
-                        server.getPriority() <= current.getPriority()) {
+                    // Ignorer le serveur actuel et les serveurs dont le circuit est ouvert
+                    if (server.getId() == current.getId() || !circuitBreakers.isAvailable(server)) {
                         continue;
                     }
                     
-                    // Tester le serveur de priorité plus élevée
-                    if (testServerConnection(server)) {
-                        logger.logInfo(TAG, "Found better server, switching from " + 
-                            current.getName() + " to " + server.getName());
-                        setCurrentServer(server);
-                        connectionStatusLiveData.postValue(ConnectionStatus.CONNECTED);
-                        break;
+                    if (serverScorer.hasRecentSample(server, RECENT_PROBE_MS)) {
+                        candidates.add(server);
+                    } else {
+                        toProbe.add(server);
                     }
                 }
                 
+                // Sonder en parallèle les serveurs sans mesure récente
+                candidates.addAll(probeServers(toProbe));
+                
+                ServerConfig best = serverScorer.selectBest(current, candidates);
+                if (best != null && best.getId() != current.getId()) {
+                    logger.logInfo(TAG, String.format("Found better server, switching from %s (%.0f) to %s (%.0f)",
+                        current.getName(), serverScorer.score(current), best.getName(), serverScorer.score(best)));
+                    setCurrentServer(best);
+                    connectionStatusLiveData.postValue(ConnectionStatus.CONNECTED);
+                }
+                
             } catch (Exception e) {
                 logger.logError(TAG, "Error checking for better server", e);
             }
@@ -554,56 +626,70 @@ public class MultiServerManager {
     }
     
     /**
-     * Démarre le planificateur de vérifications périodiques
+     * Planifie la prochaine vérification périodique, en remplaçant celle en attente
      */
-    private void startHealthCheckScheduler() {
-        executor.submit(() -> {
-            while (!Thread.currentThread().isInterrupted()) {
-                try {
-                    Thread.sleep(HEALTH_CHECK_INTERVAL_MS);
-                    
-                    if (networkManager.getCurrentNetworkState().isConnected) {
-                        checkCurrentServerStatus();
-                        
-                        // Vérifier périodiquement tous les serveurs
-                        refreshServersStatus();
-                    }
-                    
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                } catch (Exception e) {
-                    logger.logError(TAG, "Error in health check scheduler", e);
-                }
+    private synchronized void scheduleHealthCheck(long delayMs) {
+        if (healthScheduler.isShutdown()) return;
+        
+        if (nextHealthCheck != null) {
+            nextHealthCheck.cancel(false);
+        }
+        nextHealthCheck = healthScheduler.schedule(this::runHealthCheck, delayMs, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Intervalle entre deux vérifications selon le réseau : plus lent sur réseau limité
+     */
+    private long healthCheckInterval() {
+        return networkManager.getCurrentNetworkState().isMetered
+            ? (long) HEALTH_CHECK_INTERVAL_MS * METERED_INTERVAL_FACTOR
+            : HEALTH_CHECK_INTERVAL_MS;
+    }
+    
+    /**
+     * Vérification périodique ; suspendue hors ligne et reprise par observeNetworkChanges
+     */
+    private void runHealthCheck() {
+        try {
+            if (!networkManager.getCurrentNetworkState().isConnected) {
+                logger.logDebug(TAG, "Offline - health checks paused");
+                return;
             }
-        });
+            
+            checkCurrentServerStatus();
+            
+            // Vérifier périodiquement tous les serveurs
+            refreshServersStatus();
+            
+        } catch (Exception e) {
+            logger.logError(TAG, "Error in health check scheduler", e);
+        }
+        scheduleHealthCheck(healthCheckInterval());
     }
     
     /**
-     * Rafraîchit le statut de tous les serveurs
+     * Rafraîchit le statut de tous les serveurs dont le statut n'est plus récent,
+     * en parallèle et dans la limite de PROBE_ROUND_DEADLINE_MS
      */
     private void refreshServersStatus() {
         executor.submit(() -> {
             try {
                 List<ServerConfig> servers = serverDao.getAllServers();
+                List<ServerConfig> toProbe = new ArrayList<>();
                 
                 for (ServerConfig server : servers) {
                     if (server.isEnabled() && !server.isStatusFresh()) {
-                        // Annuler la tâche précédente s'il y en a une
-                        Future<?> existingTask = statusCheckTasks.get(server.getId());
-                        if (existingTask != null && !existingTask.isDone()) {
-                            existingTask.cancel(true);
-                        }
-                        
-                        // Démarrer une nouvelle vérification
-                        Future<?> task = executor.submit(() -> testServerConnection(server));
-                        statusCheckTasks.put(server.getId(), task);
+                        toProbe.add(server);
                     }
                 }
                 
-                // Mettre à jour la liste après les vérifications
-                performanceManager.executeOnMainThreadDelayed(this::refreshServersList, 2000);
+                if (!toProbe.isEmpty()) {
+                    probeServers(toProbe);
+                    refreshServersList();
+                }
                 
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             } catch (Exception e) {
                 logger.logError(TAG, "Error refreshing servers status", e);
             }
@@ -632,6 +718,7 @@ public class MultiServerManager {
         currentServerLiveData.postValue(server);
         
         if (server != null) {
+            serverScorer.onServerSwitched();
             server.setLastConnected(System.currentTimeMillis());
             executor.submit(() -> serverDao.updateServer(server));
         }
@@ -710,11 +797,9 @@ public class MultiServerManager {
      * Libère les ressources
      */
     public void shutdown() {
-        // Annuler toutes les tâches en cours
-        for (Future<?> task : statusCheckTasks.values()) {
-            task.cancel(true);
-        }
-        statusCheckTasks.clear();
+        // Arrêter les vérifications périodiques et les sondes en cours
+        healthScheduler.shutdownNow();
+        prober.shutdown();
         
         executor.shutdown();
         try {
@@ -0,0 +1,218 @@
+package fr.didictateur.inanutshell.config;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import fr.didictateur.inanutshell.network.ServerTlsProvider;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Sondes de santé légères et parallèles des serveurs Mealie.
+ *
+ * - Toutes les sondes d'un tour partent en même temps et sont bornées par une échéance globale :
+ *   un serveur mort ne retarde plus les autres.
+ * - Une requête HEAD suffit dès que la version du serveur est connue ; sinon un GET
+ *   conditionnel (ETag) sur /app/about, dont le corps n'est lu qu'une fois.
+ * - Le client est dérivé du client fourni (newBuilder) et partage son pool de connexions.
+ */
+public class ServerHealthProber {
+
+    private static final int MAX_CONCURRENT_PROBES = 8;
+    private static final long PROBE_CONNECT_TIMEOUT_MS = 3000;
+    private static final long PROBE_CALL_TIMEOUT_MS = 5000;
+
+    private final OkHttpClient probeClient;
+    private final ExecutorService probeExecutor;
+    private final ServerTlsProvider tlsProvider;
+    
+    // Clients dérivés des serveurs auto-signés (trust manager propre), par id|url
+    private final Map<String, OkHttpClient> selfSignedClients = new ConcurrentHashMap<>();
+
+    // Serveurs qui refusent HEAD (405/501) et leurs validateurs ETag
+    private final Set<Integer> headUnsupported = ConcurrentHashMap.newKeySet();
+    private final Map<Integer, String> etags = new ConcurrentHashMap<>();
+
+    public ServerHealthProber(OkHttpClient baseClient) {
+        this(baseClient, null);
+    }
+
+    public ServerHealthProber(OkHttpClient baseClient, ServerTlsProvider tlsProvider) {
+        this.tlsProvider = tlsProvider;
+        this.probeClient = baseClient.newBuilder()
+            .connectTimeout(PROBE_CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .readTimeout(PROBE_CALL_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .callTimeout(PROBE_CALL_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .retryOnConnectionFailure(false)
+            .build();
+        this.probeExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_PROBES, r -> {
+            Thread thread = new Thread(r, "HealthProbe");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Résultat d'une sonde
+     */
+    public static class ProbeResult {
+        public final int code;              // -1 si aucune réponse HTTP
+        public final long latencyMs;
+        public final String version;        // Non null seulement si le corps a été lu
+        public final IOException error;
+
+        ProbeResult(int code, long latencyMs, String version, IOException error) {
+            this.code = code;
+            this.latencyMs = latencyMs;
+            this.version = version;
+            this.error = error;
+        }
+
+        public boolean isHealthy() {
+            return (code >= 200 && code < 300) || code == 304;
+        }
+
+        static ProbeResult timedOut(long latencyMs) {
+            return new ProbeResult(-1, latencyMs, null,
+                new InterruptedIOException("Échéance de la sonde dépassée"));
+        }
+    }
+
+    /**
+     * Sonde un serveur (bloquant, borné par PROBE_CALL_TIMEOUT_MS)
+     */
+    public ProbeResult probe(ServerConfig server) {
+        long start = System.currentTimeMillis();
+        try {
+            boolean needsBody = server.getVersion() == null;
+            if (!needsBody && !headUnsupported.contains(server.getId())) {
+                try (Response response = clientFor(server).newCall(buildRequest(server, "HEAD")).execute()) {
+                    if (response.code() == 405 || response.code() == 501) {
+                        headUnsupported.add(server.getId());
+                    } else {
+                        // Un ETag différent signale une mise à jour du serveur : relire la version
+                        String headEtag = response.header("ETag");
+                        if (!response.isSuccessful() || headEtag == null ||
+                                headEtag.equals(etags.get(server.getId()))) {
+                            return new ProbeResult(response.code(), System.currentTimeMillis() - start, null, null);
+                        }
+                        needsBody = true;
+                    }
+                }
+            }
+
+            Request.Builder get = buildRequest(server, "GET").newBuilder();
+            String etag = etags.get(server.getId());
+            if (etag != null && !needsBody) {
+                get.header("If-None-Match", etag);
+            }
+
+            try (Response response = clientFor(server).newCall(get.build()).execute()) {
+                String version = null;
+                if (response.isSuccessful()) {
+                    String responseEtag = response.header("ETag");
+                    if (responseEtag != null) {
+                        etags.put(server.getId(), responseEtag);
+                    }
+                    ResponseBody body = response.body();
+                    if (needsBody && body != null) {
+                        version = extractVersion(body.string());
+                    }
+                }
+                return new ProbeResult(response.code(), System.currentTimeMillis() - start, version, null);
+            }
+        } catch (IOException e) {
+            return new ProbeResult(-1, System.currentTimeMillis() - start, null, e);
+        }
+    }
+
+    /**
+     * Sonde tous les serveurs en parallèle ; les sondes non terminées à l'échéance
+     * sont annulées et comptées comme des échecs
+     */
+    public Map<Integer, ProbeResult> probeAll(List<ServerConfig> servers, long deadlineMs)
+            throws InterruptedException {
+        Map<Integer, ProbeResult> results = new HashMap<>();
+        if (servers.isEmpty()) return results;
+
+        List<Callable<ProbeResult>> tasks = new ArrayList<>();
+        for (ServerConfig server : servers) {
+            tasks.add(() -> probe(server));
+        }
+
+        long start = System.currentTimeMillis();
+        List<Future<ProbeResult>> futures = probeExecutor.invokeAll(tasks, deadlineMs, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < servers.size(); i++) {
+            Future<ProbeResult> future = futures.get(i);
+            ProbeResult result;
+            try {
+                result = future.isCancelled()
+                    ? ProbeResult.timedOut(System.currentTimeMillis() - start)
+                    : future.get();
+            } catch (ExecutionException e) {
+                result = new ProbeResult(-1, System.currentTimeMillis() - start, null,
+                    new IOException("Sonde en échec", e.getCause()));
+            }
+            results.put(servers.get(i).getId(), result);
+        }
+        return results;
+    }
+
+    public void shutdown() {
+        probeExecutor.shutdownNow();
+    }
+
+    private OkHttpClient clientFor(ServerConfig server) {
+        if (tlsProvider == null || !server.isAllowSelfSigned()) {
+            return probeClient;
+        }
+        String key = server.getId() + "|" + server.getBaseUrl();
+        OkHttpClient client = selfSignedClients.get(key);
+        if (client == null) {
+            OkHttpClient.Builder builder = probeClient.newBuilder();
+            tlsProvider.configure(builder, server);
+            client = builder.build();
+            selfSignedClients.put(key, client);
+        }
+        return client;
+    }
+
+    private Request buildRequest(ServerConfig server, String method) {
+        return new Request.Builder()
+            .url(server.getApiUrl() + "/app/about")
+            .header("Authorization", "Bearer " + server.getApiKey())
+            .method(method, null)
+            .build();
+    }
+
+    private String extractVersion(String body) {
+        try {
+            JsonElement element = JsonParser.parseString(body);
+            if (element.isJsonObject()) {
+                JsonObject about = element.getAsJsonObject();
+                if (about.has("version") && about.get("version").isJsonPrimitive()) {
+                    return about.get("version").getAsString();
+                }
+            }
+        } catch (RuntimeException e) {
+            // Corps non JSON : version inconnue
+        }
+        return null;
+    }
+}
@@ -0,0 +1,201 @@
+package fr.didictateur.inanutshell.config;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Score de chaque serveur à partir d'une moyenne mobile exponentielle (EWMA)
+ * de la latence et du taux d'erreur, alimentée par les sondes de santé et le trafic réel.
+ *
+ * Score = latence EWMA × (1 + ERROR_PENALTY × taux d'erreur) − PRIORITY_BONUS_MS × priorité.
+ * Plus le score est bas, meilleur est le serveur. Un autre serveur n'est préféré que s'il
+ * est nettement meilleur (hystérésis) et après un délai minimal depuis le dernier basculement,
+ * pour éviter les allers-retours entre serveurs proches.
+ */
+public class ServerScorer {
+    private static ServerScorer instance;
+
+    private static final double ALPHA = 0.3;                  // Poids d'un nouvel échantillon
+    private static final double ERROR_PENALTY = 4.0;          // 25% d'erreurs double le score
+    private static final double PRIORITY_BONUS_MS = 20.0;     // Avantage par niveau de priorité
+    private static final double SWITCH_MARGIN = 0.25;         // Le candidat doit être 25% meilleur
+    private static final long MIN_DWELL_MS = 60000;           // 1 minute entre deux basculements
+    private static final int MIN_SAMPLES = 3;
+
+    private final Map<Integer, Stats> stats = new ConcurrentHashMap<>();
+    private volatile long lastSwitchAt;
+
+    private ServerScorer() {
+    }
+
+    public static synchronized ServerScorer getInstance() {
+        if (instance == null) {
+            instance = new ServerScorer();
+        }
+        return instance;
+    }
+
+    /**
+     * Enregistre le résultat d'une requête ou d'une sonde
+     */
+    public void record(ServerConfig server, long latencyMs, boolean success) {
+        Stats serverStats = stats.get(server.getId());
+        if (serverStats == null) {
+            serverStats = new Stats();
+            Stats existing = stats.putIfAbsent(server.getId(), serverStats);
+            if (existing != null) {
+                serverStats = existing;
+            }
+        }
+        serverStats.add(latencyMs, success);
+    }
+
+    /**
+     * Score du serveur, ou NaN s'il n'y a pas encore assez d'échantillons
+     */
+    public double score(ServerConfig server) {
+        Stats serverStats = stats.get(server.getId());
+        if (serverStats == null) {
+            return Double.NaN;
+        }
+        return serverStats.score(server.getPriority());
+    }
+
+    /**
+     * Indique si le dernier échantillon du serveur date de moins de maxAgeMs
+     */
+    public boolean hasRecentSample(ServerConfig server, long maxAgeMs) {
+        Stats serverStats = stats.get(server.getId());
+        return serverStats != null && System.currentTimeMillis() - serverStats.lastSampleAt() < maxAgeMs;
+    }
+
+    /**
+     * Meilleur serveur parmi les candidats, en appliquant l'hystérésis par rapport au serveur actuel.
+     * Retourne le serveur actuel s'il n'y a pas de candidat nettement meilleur.
+     */
+    public ServerConfig selectBest(ServerConfig current, List<ServerConfig> candidates) {
+        ServerConfig best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (ServerConfig candidate : candidates) {
+            double candidateScore = score(candidate);
+            if (!Double.isNaN(candidateScore) && candidateScore < bestScore) {
+                best = candidate;
+                bestScore = candidateScore;
+            }
+        }
+
+        if (best == null || current == null) {
+            return best != null ? best : current;
+        }
+        if (best.getId() == current.getId()) {
+            return current;
+        }
+
+        double currentScore = score(current);
+        if (Double.isNaN(currentScore)) {
+            return current;
+        }
+        if (System.currentTimeMillis() - lastSwitchAt < MIN_DWELL_MS) {
+            return current;
+        }
+        return bestScore < currentScore * (1 - SWITCH_MARGIN) ? best : current;
+    }
+
+    /**
+     * Compare deux serveurs par score ; les serveurs sans score passent après, par priorité
+     */
+    public int compare(ServerConfig a, ServerConfig b) {
+        double scoreA = score(a);
+        double scoreB = score(b);
+        if (Double.isNaN(scoreA) || Double.isNaN(scoreB)) {
+            if (Double.isNaN(scoreA) != Double.isNaN(scoreB)) {
+                return Double.isNaN(scoreA) ? 1 : -1;
+            }
+            return Integer.compare(b.getPriority(), a.getPriority());
+        }
+        return Double.compare(scoreA, scoreB);
+    }
+
+    /**
+     * À appeler après chaque changement de serveur actuel
+     */
+    public void onServerSwitched() {
+        lastSwitchAt = System.currentTimeMillis();
+    }
+
+    public void remove(ServerConfig server) {
+        stats.remove(server.getId());
+    }
+
+    /**
+     * Interceptor qui mesure le trafic réel vers un serveur.
+     * Seuls les échanges réseau comptent : les réponses servies par le cache et les appels
+     * annulés sont ignorés, et la latence est celle de l'échange réseau (envoi → réception),
+     * sans le temps passé dans les autres interceptors ni les retries.
+     */
+    public Interceptor interceptorFor(ServerConfig server) {
+        return chain -> {
+            // Une lecture du cache seul ne dit rien du serveur
+            if (chain.request().cacheControl().onlyIfCached()) {
+                return chain.proceed(chain.request());
+            }
+            long start = System.nanoTime();
+            try {
+                Response response = chain.proceed(chain.request());
+                Response networkResponse = response.networkResponse();
+                if (networkResponse != null && !chain.call().isCanceled()) {
+                    long latencyMs = networkResponse.receivedResponseAtMillis() - networkResponse.sentRequestAtMillis();
+                    record(server, Math.max(0, latencyMs), response.code() < 500);
+                }
+                return response;
+            } catch (IOException e) {
+                if (!chain.call().isCanceled()) {
+                    record(server, (System.nanoTime() - start) / 1000000, false);
+                }
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Moyennes mobiles d'un serveur
+     */
+    private static class Stats {
+        private double latencyMs;
+        private double errorRate;
+        private int samples;
+        private long lastSampleAt;
+
+        synchronized void add(long sampleLatencyMs, boolean success) {
+            double error = success ? 0.0 : 1.0;
+            if (samples == 0) {
+                latencyMs = sampleLatencyMs;
+                errorRate = error;
+            } else {
+                // Un échec n'a pas de latence représentative : seul le taux d'erreur est mis à jour
+                if (success) {
+                    latencyMs = ALPHA * sampleLatencyMs + (1 - ALPHA) * latencyMs;
+                }
+                errorRate = ALPHA * error + (1 - ALPHA) * errorRate;
+            }
+            samples++;
+            lastSampleAt = System.currentTimeMillis();
+        }
+
+        synchronized double score(int priority) {
+            if (samples < MIN_SAMPLES) {
+                return Double.NaN;
+            }
+            double score = latencyMs * (1 + ERROR_PENALTY * errorRate) - PRIORITY_BONUS_MS * priority;
+            return Math.max(1.0, score);
+        }
+
+        synchronized long lastSampleAt() {
+            return lastSampleAt;
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package fr.didictateur.inanutshell.data;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 import android.content.Context;
 
 import fr.didictateur.inanutshell.data.cache.CachedRecipe;
@@ -26,7 +29,7 @@ import fr.didictateur.inanutshell.data.dao.NotificationDao;
 
 @Database(
     entities = {CachedRecipe.class, MealPlan.class, ShoppingList.class, ShoppingItem.class, Timer.class, Notification.class}, 
-    version = 5,
+    version = 6,
     exportSchema = false
 )
 @TypeConverters({Converters.class})
@@ -51,6 +54,16 @@ public abstract class AppDatabase extends RoomDatabase {
     // DAO pour les notifications
     public abstract NotificationDao notificationDao();
     
+    // 5 → 6 : colonnes de synchronisation des listes de courses, sans toucher aux données existantes
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `shopping_lists` ADD COLUMN `server_id` TEXT");
+            db.execSQL("ALTER TABLE `shopping_lists` ADD COLUMN `needs_sync` INTEGER NOT NULL DEFAULT 1");
+            db.execSQL("ALTER TABLE `shopping_lists` ADD COLUMN `last_sync_date` INTEGER");
+        }
+    };
+    
     public static synchronized AppDatabase getInstance(Context context) {
         if (INSTANCE == null) {
             INSTANCE = Room.databaseBuilder(
@@ -58,6 +71,7 @@ public abstract class AppDatabase extends RoomDatabase {
                 AppDatabase.class,
                 DATABASE_NAME
             )
+            .addMigrations(MIGRATION_5_6)
             .fallbackToDestructiveMigration() // Pour la migration v1->v3
             .allowMainThreadQueries() // À utiliser avec parcimonie, idéalement async
             .build();
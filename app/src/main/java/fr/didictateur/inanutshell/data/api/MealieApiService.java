@@ -7,6 +7,7 @@ import fr.didictateur.inanutshell.data.request.LoginRequest;
 
 import retrofit2.Call;
 import retrofit2.http.*;
+import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
 
 import java.util.List;
@@ -51,6 +52,14 @@ public interface MealieApiService {
         @Body Recipe recipe
     );
     
+    // Mise à jour partielle : seuls les champs présents sont modifiés
+    @PATCH("api/recipes/{slug}")
+    Call<Recipe> patchRecipe(
+        @Header("Authorization") String token,
+        @Path("slug") String slug,
+        @Body RequestBody patch
+    );
+    
     @DELETE("api/recipes/{slug}")
     Call<Void> deleteRecipe(
         @Header("Authorization") String token,
@@ -104,6 +113,17 @@ public interface MealieApiService {
         @Query("end_date") String endDate     // Format YYYY-MM-DD
     );
     
+    // Meal plans modifiés depuis un marqueur (synchronisation incrémentale)
+    @GET("api/groups/meal-plans")
+    Call<fr.didictateur.inanutshell.data.response.MealPlanListResponse> getMealPlansUpdatedSince(
+        @Header("Authorization") String token,
+        @Query("page") int page,
+        @Query("per_page") int perPage,
+        @Query("start_date") String startDate,
+        @Query("end_date") String endDate,
+        @Query("queryFilter") String queryFilter
+    );
+    
     @GET("api/groups/meal-plans/{plan_id}")
     Call<fr.didictateur.inanutshell.data.model.MealieMealPlan> getMealPlan(
         @Header("Authorization") String token,
@@ -140,4 +160,38 @@ public interface MealieApiService {
     Call<List<fr.didictateur.inanutshell.data.model.MealieMealPlan>> getThisWeekMealPlans(
         @Header("Authorization") String token
     );
+    
+    // Shopping Lists - API Mealie v1.x
+    @GET("api/groups/shopping/lists")
+    Call<fr.didictateur.inanutshell.data.response.ShoppingListListResponse> getShoppingLists(
+        @Header("Authorization") String token,
+        @Query("page") int page,
+        @Query("per_page") int perPage,
+        @Query("queryFilter") String queryFilter
+    );
+    
+    @GET("api/groups/shopping/lists/{list_id}")
+    Call<fr.didictateur.inanutshell.data.model.MealieShoppingList> getShoppingList(
+        @Header("Authorization") String token,
+        @Path("list_id") String listId
+    );
+    
+    @POST("api/groups/shopping/lists")
+    Call<fr.didictateur.inanutshell.data.model.MealieShoppingList> createShoppingList(
+        @Header("Authorization") String token,
+        @Body fr.didictateur.inanutshell.data.model.MealieShoppingList shoppingList
+    );
+    
+    @PUT("api/groups/shopping/lists/{list_id}")
+    Call<fr.didictateur.inanutshell.data.model.MealieShoppingList> updateShoppingList(
+        @Header("Authorization") String token,
+        @Path("list_id") String listId,
+        @Body fr.didictateur.inanutshell.data.model.MealieShoppingList shoppingList
+    );
+    
+    @DELETE("api/groups/shopping/lists/{list_id}")
+    Call<Void> deleteShoppingList(
+        @Header("Authorization") String token,
+        @Path("list_id") String listId
+    );
 }
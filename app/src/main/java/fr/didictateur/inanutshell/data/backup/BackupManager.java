@@ -2,29 +2,37 @@ package fr.didictateur.inanutshell.data.backup;
 
 import android.content.Context;
 import android.util.Log;
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
-import java.io.File;
 
 import fr.didictateur.inanutshell.data.database.AppDatabase;
+import fr.didictateur.inanutshell.data.database.RecipeDao;
 import fr.didictateur.inanutshell.data.model.Recipe;
-import fr.didictateur.inanutshell.data.model.MealPlan;
-import fr.didictateur.inanutshell.data.model.ShoppingList;
-import fr.didictateur.inanutshell.data.model.ShoppingItem;
-import fr.didictateur.inanutshell.data.model.Timer;
-import fr.didictateur.inanutshell.data.model.User;
-import fr.didictateur.inanutshell.data.model.Group;
-import fr.didictateur.inanutshell.data.model.Theme;
+import fr.didictateur.inanutshell.data.meal.MealPlan;
+import fr.didictateur.inanutshell.data.shopping.ShoppingList;
+import fr.didictateur.inanutshell.data.shopping.ShoppingItem;
+import fr.didictateur.inanutshell.Timer;
+import fr.didictateur.inanutshell.User;
+import fr.didictateur.inanutshell.Group;
+import fr.didictateur.inanutshell.Theme;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
@@ -50,12 +58,27 @@ public class BackupManager {
     private ExecutorService executorService;
     private Context context;
     private AppDatabase database;
+    // Base principale : meal plans, listes de courses, minuteries, utilisateurs, groupes, thèmes
+    private fr.didictateur.inanutshell.AppDatabase appDatabase;
     private Gson gson;
+    private ChunkStore chunkStore;
     
     // Versions de backup pour compatibilité
     private static final String BACKUP_VERSION = "1.0";
     private static final String BACKUP_FORMAT = "inanutshell_backup";
     
+    // Lignes lues par requête Room : la mémoire reste bornée quelle que soit la taille de la collection
+    private static final int PAGE_SIZE = 200;
+    private static final String JSON_INDENT = "  ";
+    // Lignes par insertion groupée lors de la restauration (sous la limite de 999 paramètres de IN)
+    private static final int RESTORE_BATCH_SIZE = 500;
+    
+    // Sauvegardes incrémentales : blocs adressés par contenu + manifestes, les 7 derniers conservés
+    private static final String CHUNKS_DIR = "chunks";
+    private static final String MANIFESTS_DIR = "manifests";
+    private static final String MANIFEST_PREFIX = "manifest_";
+    private static final int KEPT_MANIFESTS = 7;
+    
     // Types de données sauvegardables
     public enum BackupDataType {
         RECIPES,
@@ -76,20 +99,159 @@ public class BackupManager {
         void onProgress(String operation, int progress);
     }
     
+    /**
+     * Source paginée d'un type de données : retourne les lignes qui suivent la dernière
+     * ligne écrite (null pour la première page), une liste vide à la fin
+     */
+    private interface PageLoader<T> {
+        List<T> loadAfter(T last, int limit);
+    }
+    
+    /**
+     * Avancement d'une sauvegarde en nombre de lignes écrites, ramené entre 5 et 95 %
+     */
+    private static class RowProgress {
+        private final BackupCallback callback;
+        private final long totalRows;
+        private long writtenRows;
+        private int lastPercent = -1;
+        
+        RowProgress(BackupCallback callback, long totalRows) {
+            this.callback = callback;
+            this.totalRows = totalRows;
+        }
+        
+        void rowsWritten(String operation, int rows) {
+            writtenRows += rows;
+            int percent = totalRows > 0 ? (int) (5 + 90 * Math.min(writtenRows, totalRows) / totalRows) : 95;
+            if (percent != lastPercent) {
+                lastPercent = percent;
+                callback.onProgress(operation + " (" + writtenRows + "/" + totalRows + ")", percent);
+            }
+        }
+    }
+    
     public interface RestoreCallback {
         void onSuccess(String message);
         void onError(String error);
         void onProgress(String operation, int progress);
     }
     
+    /**
+     * REPLACE : les données restaurées remplacent celles de l'appareil (par type présent dans l'archive).
+     * MERGE : les données de l'archive sont ajoutées ; une ligne locale plus récente est conservée.
+     */
+    public enum RestoreMode {
+        REPLACE,
+        MERGE
+    }
+    
+    /**
+     * Archive refusée (format inconnu, version plus récente que l'application, JSON illisible)
+     */
+    private static class InvalidBackupException extends IOException {
+        InvalidBackupException(String message) {
+            super(message);
+        }
+    }
+    
+    private static class RestoreResult {
+        int recipes;
+        int skippedRecipes;
+        int preferences;
+        JsonObject pendingPreferences;
+    }
+    
+    /**
+     * Compte les octets lus dans le fichier (compressés), pour un avancement sans connaître le contenu
+     */
+    private static class CountingInputStream extends java.io.FilterInputStream {
+        private volatile long count;
+        
+        CountingInputStream(java.io.InputStream in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) count += read;
+            return read;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+        
+        long getCount() {
+            return count;
+        }
+    }
+    
+    /**
+     * Avancement d'une restauration en octets lus sur la taille du fichier, ramené entre 5 et 95 %
+     */
+    private static class RestoreProgress {
+        private final RestoreCallback callback;
+        private final CountingInputStream counting;
+        private final long totalBytes;
+        private int lastPercent = -1;
+        
+        RestoreProgress(RestoreCallback callback, CountingInputStream counting, long totalBytes) {
+            this.callback = callback;
+            this.counting = counting;
+            this.totalBytes = totalBytes;
+        }
+        
+        void update(String operation) {
+            int percent = totalBytes > 0
+                ? (int) (5 + 90 * Math.min(counting.getCount(), totalBytes) / totalBytes) : 95;
+            if (percent != lastPercent) {
+                lastPercent = percent;
+                callback.onProgress(operation, percent);
+            }
+        }
+    }
+    
     private BackupManager(Context context) {
+        this(context, AppDatabase.getInstance(context), fr.didictateur.inanutshell.AppDatabase.getInstance(context));
+    }
+    
+    /**
+     * Bases fournies par l'appelant (tests sur des bases en mémoire)
+     */
+    BackupManager(Context context, AppDatabase database, fr.didictateur.inanutshell.AppDatabase appDatabase) {
         this.context = context.getApplicationContext();
         this.executorService = Executors.newSingleThreadExecutor();
-        this.database = AppDatabase.getInstance(context);
+        this.database = database;
+        this.appDatabase = appDatabase;
         this.gson = new GsonBuilder()
             .setPrettyPrinting()
             .setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+            // Les empreintes de mot de passe locales ne sortent pas de l'appareil
+            .addSerializationExclusionStrategy(new ExclusionStrategy() {
+                @Override
+                public boolean shouldSkipField(FieldAttributes field) {
+                    return field.getDeclaringClass() == User.class && "passwordHash".equals(field.getName());
+                }
+                
+                @Override
+                public boolean shouldSkipClass(Class<?> clazz) {
+                    return false;
+                }
+            })
             .create();
+        this.chunkStore = new ChunkStore(new File(getBackupDirectory(), CHUNKS_DIR));
     }
     
     public static synchronized BackupManager getInstance(Context context) {
@@ -115,41 +277,38 @@ public class BackupManager {
                 String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
                 File backupFile = new File(backupDir, "backup_complete_" + timestamp + ".zip");
                 
-                // Créer l'archive ZIP
-                try (ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(backupFile))) {
+                // Créer l'archive ZIP, écrite au fil de l'eau (rien n'est gardé en mémoire)
+                try (ZipOutputStream zipOut = new ZipOutputStream(
+                        new java.io.BufferedOutputStream(new FileOutputStream(backupFile)))) {
                     
                     // Métadonnées de sauvegarde
-                    callback.onProgress("Création métadonnées...", 10);
+                    callback.onProgress("Création métadonnées...", 2);
                     addBackupMetadata(zipOut, BackupDataType.ALL);
                     
+                    RowProgress progress = new RowProgress(callback,
+                        countRows(Arrays.asList(BackupDataType.ALL)));
+                    
                     // Recettes
-                    callback.onProgress("Sauvegarde recettes...", 20);
-                    backupRecipes(zipOut);
+                    backupRecipes(zipOut, progress);
                     
                     // Meal Plans
-                    callback.onProgress("Sauvegarde meal plans...", 35);
-                    backupMealPlans(zipOut);
+                    backupMealPlans(zipOut, progress);
                     
                     // Listes de courses
-                    callback.onProgress("Sauvegarde listes de courses...", 50);
-                    backupShoppingLists(zipOut);
+                    backupShoppingLists(zipOut, progress);
                     
                     // Minuteries
-                    callback.onProgress("Sauvegarde minuteries...", 65);
-                    backupTimers(zipOut);
+                    backupTimers(zipOut, progress);
                     
                     // Utilisateurs et groupes
-                    callback.onProgress("Sauvegarde utilisateurs...", 80);
-                    backupUsers(zipOut);
-                    backupGroups(zipOut);
+                    backupUsers(zipOut, progress);
+                    backupGroups(zipOut, progress);
                     
                     // Thèmes
-                    callback.onProgress("Sauvegarde thèmes...", 90);
-                    backupThemes(zipOut);
+                    backupThemes(zipOut, progress);
                     
                     // Préférences
-                    callback.onProgress("Sauvegarde préférences...", 95);
-                    backupPreferences(zipOut);
+                    backupPreferences(zipOut, progress);
                     
                     callback.onProgress("Finalisation...", 100);
                 }
@@ -177,45 +336,41 @@ public class BackupManager {
                 String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
                 File backupFile = new File(backupDir, "backup_selective_" + timestamp + ".zip");
                 
-                try (ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(backupFile))) {
+                try (ZipOutputStream zipOut = new ZipOutputStream(
+                        new java.io.BufferedOutputStream(new FileOutputStream(backupFile)))) {
                     
                     // Métadonnées
                     addSelectiveBackupMetadata(zipOut, dataTypes);
                     
-                    int progressStep = 80 / dataTypes.size();
-                    int currentProgress = 10;
+                    RowProgress progress = new RowProgress(callback, countRows(dataTypes));
                     
                     for (BackupDataType dataType : dataTypes) {
-                        callback.onProgress("Sauvegarde " + dataType.name() + "...", currentProgress);
-                        
                         switch (dataType) {
                             case RECIPES:
-                                backupRecipes(zipOut);
+                                backupRecipes(zipOut, progress);
                                 break;
                             case MEAL_PLANS:
-                                backupMealPlans(zipOut);
+                                backupMealPlans(zipOut, progress);
                                 break;
                             case SHOPPING_LISTS:
-                                backupShoppingLists(zipOut);
+                                backupShoppingLists(zipOut, progress);
                                 break;
                             case TIMERS:
-                                backupTimers(zipOut);
+                                backupTimers(zipOut, progress);
                                 break;
                             case USERS:
-                                backupUsers(zipOut);
+                                backupUsers(zipOut, progress);
                                 break;
                             case GROUPS:
-                                backupGroups(zipOut);
+                                backupGroups(zipOut, progress);
                                 break;
                             case THEMES:
-                                backupThemes(zipOut);
+                                backupThemes(zipOut, progress);
                                 break;
                             case PREFERENCES:
-                                backupPreferences(zipOut);
+                                backupPreferences(zipOut, progress);
                                 break;
                         }
-                        
-                        currentProgress += progressStep;
                     }
                     
                     callback.onProgress("Finalisation...", 100);
@@ -231,75 +386,298 @@ public class BackupManager {
         });
     }
     
+    // ===== SAUVEGARDE INCRÉMENTALE =====
+    
+    /**
+     * Crée une sauvegarde incrémentale : chaque recette, image et les préférences deviennent des blocs
+     * du {@link ChunkStore}, et la sauvegarde elle-même n'est qu'un manifeste qui les référence.
+     * Une recette dont updatedAt n'a pas changé depuis le manifeste précédent, ou une image de même
+     * taille et date, reprend son bloc sans être relue ni resérialisée ; un contenu modifié mais
+     * identique à un bloc existant n'est pas réécrit. Le coût suit donc ce qui a changé.
+     * Les manifestes au-delà des KEPT_MANIFESTS plus récents sont supprimés avec leurs blocs orphelins.
+     */
+    public void createIncrementalBackup(BackupCallback callback) {
+        executorService.execute(() -> {
+            try {
+                Log.d(TAG, "Début sauvegarde incrémentale");
+                callback.onProgress("Préparation...", 0);
+                long startTime = System.currentTimeMillis();
+                
+                List<File> manifests = getAvailableIncrementalBackups();
+                BackupManifest previous = null;
+                if (!manifests.isEmpty()) {
+                    try {
+                        previous = BackupManifest.readFrom(manifests.get(0));
+                    } catch (IOException e) {
+                        Log.w(TAG, "Manifeste précédent illisible, sauvegarde sans référence", e);
+                    }
+                }
+                java.util.Map<String, BackupManifest.Entry> previousRecipes = previous != null
+                    ? BackupManifest.byKey(previous.recipes) : new java.util.HashMap<>();
+                java.util.Map<String, BackupManifest.Entry> previousImages = previous != null
+                    ? BackupManifest.byKey(previous.images) : new java.util.HashMap<>();
+                
+                File[] images = getRecipeImageFiles();
+                RecipeDao dao = database.recipeDao();
+                RowProgress progress = new RowProgress(callback, dao.getRecipeCount() + images.length + 1);
+                chunkStore.resetStats();
+                int unchanged = 0;
+                
+                BackupManifest manifest = new BackupManifest();
+                manifest.createdAt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.ROOT).format(new Date());
+                manifest.appVersion = getAppVersion();
+                
+                // Recettes, par pages
+                String afterId = "";
+                List<Recipe> page;
+                do {
+                    page = dao.getRecipesAfter(afterId, PAGE_SIZE);
+                    for (Recipe recipe : page) {
+                        BackupManifest.Entry before = previousRecipes.get(recipe.getId());
+                        String version = recipe.getUpdatedAt();
+                        String chunk;
+                        if (before != null && version != null && version.equals(before.version)
+                                && chunkStore.exists(before.chunk)) {
+                            chunk = before.chunk;
+                            unchanged++;
+                        } else {
+                            chunk = chunkStore.putBytes(gson.toJson(recipe, Recipe.class).getBytes(StandardCharsets.UTF_8));
+                        }
+                        manifest.recipes.add(new BackupManifest.Entry(recipe.getId(), version, 0, chunk));
+                    }
+                    if (!page.isEmpty()) {
+                        afterId = page.get(page.size() - 1).getId();
+                        progress.rowsWritten("Sauvegarde recettes...", page.size());
+                    }
+                } while (page.size() == PAGE_SIZE);
+                
+                // Images des recettes
+                for (File image : images) {
+                    BackupManifest.Entry before = previousImages.get(image.getName());
+                    String version = String.valueOf(image.lastModified());
+                    String chunk;
+                    if (before != null && before.size == image.length() && version.equals(before.version)
+                            && chunkStore.exists(before.chunk)) {
+                        chunk = before.chunk;
+                        unchanged++;
+                    } else {
+                        chunk = chunkStore.putFile(image);
+                    }
+                    manifest.images.add(new BackupManifest.Entry(image.getName(), version, image.length(), chunk));
+                    progress.rowsWritten("Sauvegarde images...", 1);
+                }
+                
+                // Préférences
+                manifest.preferencesChunk = chunkStore.putBytes(
+                    gson.toJson(preferencesToJson()).getBytes(StandardCharsets.UTF_8));
+                progress.rowsWritten("Sauvegarde préférences...", 1);
+                
+                // Millisecondes, puis compteur : deux sauvegardes rapprochées ne s'écrasent pas,
+                // et l'ordre des noms reste l'ordre chronologique
+                String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.ROOT).format(new Date());
+                File manifestFile = new File(getManifestDirectory(), MANIFEST_PREFIX + timestamp + ".json");
+                for (int n = 1; manifestFile.exists(); n++) {
+                    manifestFile = new File(getManifestDirectory(), MANIFEST_PREFIX + timestamp + "_" + n + ".json");
+                }
+                manifest.writeTo(manifestFile);
+                
+                callback.onProgress("Nettoyage des anciennes sauvegardes...", 97);
+                pruneIncrementalBackups();
+                
+                Log.d(TAG, String.format(Locale.ROOT,
+                    "Sauvegarde incrémentale terminée en %d ms: %d élément(s) inchangé(s), %d bloc(s) écrit(s) (%d octets), %d réutilisé(s)",
+                    System.currentTimeMillis() - startTime, unchanged, chunkStore.getChunksWritten(),
+                    chunkStore.getBytesWritten(), chunkStore.getChunksReused()));
+                callback.onProgress("Finalisation...", 100);
+                callback.onSuccess(manifestFile);
+                
+            } catch (Exception e) {
+                Log.e(TAG, "Erreur lors de la sauvegarde incrémentale", e);
+                callback.onError("Erreur sauvegarde: " + e.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * Manifestes des sauvegardes incrémentales, du plus récent au plus ancien
+     */
+    public List<File> getAvailableIncrementalBackups() {
+        List<File> manifests = new ArrayList<>();
+        File[] files = getManifestDirectory().listFiles(
+            (dir, name) -> name.startsWith(MANIFEST_PREFIX) && name.endsWith(".json"));
+        if (files != null) {
+            manifests.addAll(Arrays.asList(files));
+        }
+        // Le nom contient l'horodatage : l'ordre alphabétique inverse est l'ordre chronologique inverse
+        manifests.sort((a, b) -> b.getName().compareTo(a.getName()));
+        return manifests;
+    }
+    
+    /**
+     * Supprime les manifestes au-delà des KEPT_MANIFESTS plus récents, puis les blocs
+     * qui ne sont plus référencés. Si un manifeste conservé est illisible, les blocs sont
+     * tous gardés plutôt que de risquer de supprimer les siens.
+     */
+    private void pruneIncrementalBackups() {
+        List<File> manifests = getAvailableIncrementalBackups();
+        for (int i = KEPT_MANIFESTS; i < manifests.size(); i++) {
+            if (manifests.get(i).delete()) {
+                Log.d(TAG, "Suppression ancien manifeste: " + manifests.get(i).getName());
+            }
+        }
+        
+        java.util.Set<String> live = new java.util.HashSet<>();
+        for (File manifest : manifests.subList(0, Math.min(KEPT_MANIFESTS, manifests.size()))) {
+            try {
+                live.addAll(BackupManifest.readFrom(manifest).chunks());
+            } catch (IOException e) {
+                Log.w(TAG, "Manifeste illisible, nettoyage des blocs annulé: " + manifest.getName(), e);
+                return;
+            }
+        }
+        chunkStore.collectGarbage(live);
+    }
+    
     // ===== RESTAURATION =====
     
     /**
-     * Restaure une sauvegarde complète
+     * Restaure une sauvegarde complète en remplaçant les données existantes
      */
     public void restoreFullBackup(File backupFile, RestoreCallback callback) {
+        restoreFullBackup(backupFile, RestoreMode.REPLACE, callback);
+    }
+    
+    /**
+     * Restaure une sauvegarde complète
+     */
+    public void restoreFullBackup(File backupFile, RestoreMode mode, RestoreCallback callback) {
+        restoreBackup(backupFile, null, mode, callback);
+    }
+    
+    /**
+     * Restaure seulement les types de données spécifiés, en remplaçant les données existantes
+     */
+    public void restoreSelectiveBackup(File backupFile, List<BackupDataType> dataTypes, RestoreCallback callback) {
+        restoreSelectiveBackup(backupFile, dataTypes, RestoreMode.REPLACE, callback);
+    }
+    
+    /**
+     * Restaure seulement les types de données spécifiés
+     */
+    public void restoreSelectiveBackup(File backupFile, List<BackupDataType> dataTypes,
+                                       RestoreMode mode, RestoreCallback callback) {
+        restoreBackup(backupFile, dataTypes, mode, callback);
+    }
+    
+    /**
+     * Restaure une sauvegarde incrémentale à partir de son manifeste.
+     * Tous les blocs sont vérifiés avant d'écrire quoi que ce soit ; les recettes sont insérées
+     * dans une seule transaction comme pour une archive ZIP, images et préférences ensuite.
+     */
+    public void restoreIncrementalBackup(File manifestFile, RestoreMode mode, RestoreCallback callback) {
         executorService.execute(() -> {
             try {
-                Log.d(TAG, "Début restauration complète: " + backupFile.getAbsolutePath());
-                callback.onProgress("Vérification du fichier...", 0);
+                Log.d(TAG, "Début restauration incrémentale (" + mode + "): " + manifestFile.getName());
+                callback.onProgress("Lecture du manifeste...", 0);
                 
-                if (!backupFile.exists()) {
-                    callback.onError("Fichier de sauvegarde introuvable");
-                    return;
+                BackupManifest manifest = BackupManifest.readFrom(manifestFile);
+                for (String chunk : manifest.chunks()) {
+                    if (!chunkStore.exists(chunk)) {
+                        callback.onError("Sauvegarde incomplète : bloc " + chunk + " manquant");
+                        return;
+                    }
                 }
                 
-                try (ZipInputStream zipIn = new ZipInputStream(new FileInputStream(backupFile))) {
-                    
-                    // Vérifier les métadonnées
-                    callback.onProgress("Lecture métadonnées...", 10);
-                    JsonObject metadata = readBackupMetadata(zipIn);
-                    if (metadata == null) {
-                        callback.onError("Fichier de sauvegarde invalide");
-                        return;
+                RestoreResult result = new RestoreResult();
+                RecipeDao dao = database.recipeDao();
+                int total = manifest.recipes.size();
+                database.runInTransaction(() -> {
+                    if (mode == RestoreMode.REPLACE) {
+                        dao.deleteAllRecipes();
+                    }
+                    List<Recipe> batch = new ArrayList<>(RESTORE_BATCH_SIZE);
+                    int read = 0;
+                    for (BackupManifest.Entry entry : manifest.recipes) {
+                        read++;
+                        Recipe recipe;
+                        try (java.io.Reader reader = new InputStreamReader(chunkStore.open(entry.chunk), StandardCharsets.UTF_8)) {
+                            recipe = gson.fromJson(reader, Recipe.class);
+                        }
+                        if (recipe == null || recipe.getId() == null) {
+                            result.skippedRecipes++;
+                            continue;
+                        }
+                        batch.add(recipe);
+                        if (batch.size() == RESTORE_BATCH_SIZE) {
+                            insertRecipeBatch(dao, batch, mode, result);
+                            callback.onProgress("Restauration recettes...", 5 + 80 * read / Math.max(total, 1));
+                        }
+                    }
+                    insertRecipeBatch(dao, batch, mode, result);
+                    return null;
+                });
+                
+                callback.onProgress("Restauration images...", 90);
+                int images = restoreImages(manifest.images);
+                
+                if (manifest.preferencesChunk != null) {
+                    try (java.io.Reader reader = new InputStreamReader(
+                            chunkStore.open(manifest.preferencesChunk), StandardCharsets.UTF_8)) {
+                        result.preferences = restorePreferences(gson.fromJson(reader, JsonObject.class), mode);
                     }
-                    
-                    // Restaurer selon le contenu
-                    callback.onProgress("Restauration recettes...", 20);
-                    restoreRecipesFromZip(zipIn);
-                    
-                    callback.onProgress("Restauration meal plans...", 35);
-                    restoreMealPlansFromZip(zipIn);
-                    
-                    callback.onProgress("Restauration listes de courses...", 50);
-                    restoreShoppingListsFromZip(zipIn);
-                    
-                    callback.onProgress("Restauration minuteries...", 65);
-                    restoreTimersFromZip(zipIn);
-                    
-                    callback.onProgress("Restauration utilisateurs...", 80);
-                    restoreUsersFromZip(zipIn);
-                    restoreGroupsFromZip(zipIn);
-                    
-                    callback.onProgress("Restauration thèmes...", 90);
-                    restoreThemesFromZip(zipIn);
-                    
-                    callback.onProgress("Restauration préférences...", 95);
-                    restorePreferencesFromZip(zipIn);
-                    
-                    callback.onProgress("Finalisation...", 100);
                 }
                 
-                Log.d(TAG, "Restauration complète terminée");
-                callback.onSuccess("Restauration complète réussie");
+                callback.onProgress("Finalisation...", 100);
+                callback.onSuccess("Restauration réussie : " + result.recipes + " recettes, "
+                    + result.skippedRecipes + " ignorées, " + images + " images, "
+                    + result.preferences + " préférences");
                 
             } catch (Exception e) {
-                Log.e(TAG, "Erreur lors de la restauration complète", e);
+                Log.e(TAG, "Erreur lors de la restauration incrémentale", e);
                 callback.onError("Erreur restauration: " + e.getMessage());
             }
         });
     }
     
     /**
-     * Restaure seulement les types de données spécifiés
+     * Recopie les images manquantes ou différentes ; retourne le nombre d'images écrites
      */
-    public void restoreSelectiveBackup(File backupFile, List<BackupDataType> dataTypes, RestoreCallback callback) {
+    private int restoreImages(List<BackupManifest.Entry> images) throws IOException {
+        File imageDir = context.getExternalFilesDir(android.os.Environment.DIRECTORY_PICTURES);
+        if (imageDir == null || images.isEmpty()) return 0;
+        
+        int written = 0;
+        for (BackupManifest.Entry entry : images) {
+            File target = new File(imageDir, entry.key);
+            if (target.exists() && target.length() == entry.size) continue;
+            
+            File temp = new File(imageDir, entry.key + ".restore");
+            try (java.io.InputStream in = chunkStore.open(entry.chunk);
+                 java.io.OutputStream out = new java.io.BufferedOutputStream(new FileOutputStream(temp))) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            if (temp.renameTo(target)) {
+                written++;
+            } else {
+                temp.delete();
+            }
+        }
+        return written;
+    }
+    
+    /**
+     * @param dataTypes types à restaurer, null pour tout le contenu de l'archive
+     */
+    private void restoreBackup(File backupFile, List<BackupDataType> dataTypes,
+                               RestoreMode mode, RestoreCallback callback) {
         executorService.execute(() -> {
             try {
-                Log.d(TAG, "Début restauration sélective: " + dataTypes);
+                Log.d(TAG, "Début restauration (" + mode + "): " + backupFile.getAbsolutePath()
+                    + (dataTypes != null ? " " + dataTypes : ""));
                 callback.onProgress("Vérification du fichier...", 0);
                 
                 if (!backupFile.exists()) {
@@ -307,115 +685,151 @@ public class BackupManager {
                     return;
                 }
                 
-                try (ZipInputStream zipIn = new ZipInputStream(new FileInputStream(backupFile))) {
-                    
-                    callback.onProgress("Lecture métadonnées...", 10);
-                    JsonObject metadata = readBackupMetadata(zipIn);
-                    if (metadata == null) {
-                        callback.onError("Fichier de sauvegarde invalide");
-                        return;
-                    }
-                    
-                    int progressStep = 80 / dataTypes.size();
-                    int currentProgress = 20;
-                    
-                    for (BackupDataType dataType : dataTypes) {
-                        callback.onProgress("Restauration " + dataType.name() + "...", currentProgress);
-                        
-                        switch (dataType) {
-                            case RECIPES:
-                                restoreRecipesFromZip(zipIn);
-                                break;
-                            case MEAL_PLANS:
-                                restoreMealPlansFromZip(zipIn);
-                                break;
-                            case SHOPPING_LISTS:
-                                restoreShoppingListsFromZip(zipIn);
-                                break;
-                            case TIMERS:
-                                restoreTimersFromZip(zipIn);
-                                break;
-                            case USERS:
-                                restoreUsersFromZip(zipIn);
-                                break;
-                            case GROUPS:
-                                restoreGroupsFromZip(zipIn);
-                                break;
-                            case THEMES:
-                                restoreThemesFromZip(zipIn);
-                                break;
-                            case PREFERENCES:
-                                restorePreferencesFromZip(zipIn);
-                                break;
-                        }
-                        
-                        currentProgress += progressStep;
-                    }
-                    
-                    callback.onProgress("Finalisation...", 100);
-                }
+                RestoreResult result = restoreFromZip(backupFile, dataTypes, mode, callback);
+                callback.onProgress("Finalisation...", 100);
                 
-                Log.d(TAG, "Restauration sélective terminée");
-                callback.onSuccess("Restauration sélective réussie");
+                Log.d(TAG, "Restauration terminée: " + result.recipes + " recettes, "
+                    + result.skippedRecipes + " ignorées, " + result.preferences + " préférences");
+                callback.onSuccess("Restauration réussie : " + result.recipes + " recettes, "
+                    + result.preferences + " préférences");
                 
+            } catch (InvalidBackupException e) {
+                Log.w(TAG, "Sauvegarde refusée: " + e.getMessage());
+                callback.onError(e.getMessage());
             } catch (Exception e) {
-                Log.e(TAG, "Erreur lors de la restauration sélective", e);
+                Log.e(TAG, "Erreur lors de la restauration, aucune donnée modifiée", e);
                 callback.onError("Erreur restauration: " + e.getMessage());
             }
         });
     }
     
-    // ===== SAUVEGARDE PAR TYPE DE DONNÉES =====
-    
-    private void backupRecipes(ZipOutputStream zipOut) throws IOException {
-        List<Recipe> recipes = database.recipeDao().getAllRecipes();
-        JsonArray recipesArray = new JsonArray();
+    /**
+     * Lit l'archive d'une seule traite, entrée par entrée, sans la charger en mémoire.
+     *
+     * Toutes les écritures en base se font dans une seule transaction, par lots de RESTORE_BATCH_SIZE
+     * lignes : une restauration interrompue (erreur, archive tronquée, thread interrompu) est annulée
+     * en entier. Les préférences ne sont appliquées qu'une fois la transaction validée.
+     */
+    private RestoreResult restoreFromZip(File backupFile, List<BackupDataType> dataTypes,
+                                         RestoreMode mode, RestoreCallback callback) throws IOException {
+        CountingInputStream counting = new CountingInputStream(
+            new java.io.BufferedInputStream(new FileInputStream(backupFile)));
+        RestoreProgress progress = new RestoreProgress(callback, counting, backupFile.length());
+        RestoreResult result = new RestoreResult();
         
-        for (Recipe recipe : recipes) {
-            recipesArray.add(gson.toJsonTree(recipe));
+        try (ZipInputStream zipIn = new ZipInputStream(counting)) {
+            callback.onProgress("Lecture métadonnées...", 2);
+            ZipEntry entry = zipIn.getNextEntry();
+            if (entry == null || !"metadata.json".equals(entry.getName())) {
+                throw new InvalidBackupException("Fichier de sauvegarde invalide");
+            }
+            validateMetadata(readJsonEntry(zipIn));
+            
+            database.runInTransaction(() -> {
+                // Sans effet tant qu'aucune clé étrangère n'est déclarée ; vérifiées à la validation sinon
+                database.getOpenHelper().getWritableDatabase().execSQL("PRAGMA defer_foreign_keys = ON");
+                
+                ZipEntry next;
+                while ((next = zipIn.getNextEntry()) != null) {
+                    BackupDataType type = dataTypeOf(next.getName());
+                    if (type == null || (dataTypes != null && !dataTypes.contains(type)
+                            && !dataTypes.contains(BackupDataType.ALL))) {
+                        continue;
+                    }
+                    switch (type) {
+                        case RECIPES:
+                            restoreRecipes(zipIn, mode, progress, result);
+                            break;
+                        case PREFERENCES:
+                            result.pendingPreferences = readJsonEntry(zipIn);
+                            break;
+                        default:
+                            Log.d(TAG, "Restauration " + type + " non prise en charge, entrée ignorée");
+                            break;
+                    }
+                }
+                return null;
+            });
         }
         
-        addJsonToZip(zipOut, "recipes.json", recipesArray);
-        Log.d(TAG, "Sauvegarde de " + recipes.size() + " recettes");
+        if (result.pendingPreferences != null) {
+            result.preferences = restorePreferences(result.pendingPreferences, mode);
+        }
+        return result;
     }
     
-    private void backupMealPlans(ZipOutputStream zipOut) throws IOException {
-        // Disabled - missing DAO method getAllMealPlans()
-        Log.d(TAG, "MealPlans backup disabled - missing DAO implementation");
+    // ===== SAUVEGARDE PAR TYPE DE DONNÉES =====
+    
+    private void backupRecipes(ZipOutputStream zipOut, RowProgress progress) throws IOException {
+        int count = writeJsonArrayToZip(zipOut, "recipes.json", Recipe.class,
+            (last, limit) -> database.recipeDao().getRecipesAfter(last != null ? last.getId() : "", limit),
+            progress, "Sauvegarde recettes...");
+        Log.d(TAG, "Sauvegarde de " + count + " recettes");
     }
     
-    private void backupShoppingLists(ZipOutputStream zipOut) throws IOException {
-        // Disabled - missing DAO methods getAllShoppingLists() and getItemsByListId()
-        Log.d(TAG, "ShoppingLists backup disabled - missing DAO implementation");
+    private void backupMealPlans(ZipOutputStream zipOut, RowProgress progress) throws IOException {
+        int count = writeJsonArrayToZip(zipOut, "meal_plans.json", MealPlan.class,
+            (last, limit) -> appDatabase.mealPlanDao().getMealPlansAfter(last != null ? last.id : 0, limit),
+            progress, "Sauvegarde meal plans...");
+        Log.d(TAG, "Sauvegarde de " + count + " meal plans");
     }
     
-    private void backupTimers(ZipOutputStream zipOut) throws IOException {
-        // Disabled - missing DAO method getAllTimers()
-        Log.d(TAG, "Timers backup disabled - missing DAO implementation");
+    /**
+     * Listes et articles dans deux entrées distinctes ; chaque article garde l'id de sa liste
+     */
+    private void backupShoppingLists(ZipOutputStream zipOut, RowProgress progress) throws IOException {
+        int lists = writeJsonArrayToZip(zipOut, "shopping_lists.json", ShoppingList.class,
+            (last, limit) -> appDatabase.shoppingListDao().getListsAfter(last != null ? last.id : 0, limit),
+            progress, "Sauvegarde listes de courses...");
+        int items = writeJsonArrayToZip(zipOut, "shopping_items.json", ShoppingItem.class,
+            (last, limit) -> appDatabase.shoppingItemDao().getItemsAfter(last != null ? last.id : 0, limit),
+            progress, "Sauvegarde listes de courses...");
+        Log.d(TAG, "Sauvegarde de " + lists + " listes de courses, " + items + " articles");
     }
     
-    private void backupUsers(ZipOutputStream zipOut) throws IOException {
-        // Disabled - missing DAO method getAllUsers()
-        Log.d(TAG, "Users backup disabled - missing DAO implementation");
+    private void backupTimers(ZipOutputStream zipOut, RowProgress progress) throws IOException {
+        int count = writeJsonArrayToZip(zipOut, "timers.json", Timer.class,
+            (last, limit) -> appDatabase.timerDao().getTimersAfter(last != null ? last.id : 0, limit),
+            progress, "Sauvegarde minuteries...");
+        Log.d(TAG, "Sauvegarde de " + count + " minuteries");
     }
     
-    private void backupGroups(ZipOutputStream zipOut) throws IOException {
-        // Disabled - missing DAO method getAllGroups()
-        Log.d(TAG, "Groups backup disabled - missing DAO implementation");
+    private void backupUsers(ZipOutputStream zipOut, RowProgress progress) throws IOException {
+        int count = writeJsonArrayToZip(zipOut, "users.json", User.class,
+            (last, limit) -> appDatabase.userDao().getUsersAfter(last != null ? last.userId : 0, limit),
+            progress, "Sauvegarde utilisateurs...");
+        Log.d(TAG, "Sauvegarde de " + count + " utilisateurs");
     }
     
-    private void backupThemes(ZipOutputStream zipOut) throws IOException {
-        // Disabled - missing DAO method getAllThemes()
-        Log.d(TAG, "Themes backup disabled - missing DAO implementation");
+    private void backupGroups(ZipOutputStream zipOut, RowProgress progress) throws IOException {
+        int count = writeJsonArrayToZip(zipOut, "groups.json", Group.class,
+            (last, limit) -> appDatabase.groupDao().getGroupsAfter(last != null ? last.groupId : 0, limit),
+            progress, "Sauvegarde groupes...");
+        Log.d(TAG, "Sauvegarde de " + count + " groupes");
     }
     
-    private void backupPreferences(ZipOutputStream zipOut) throws IOException {
+    private void backupThemes(ZipOutputStream zipOut, RowProgress progress) throws IOException {
+        int count = writeJsonArrayToZip(zipOut, "themes.json", Theme.class,
+            (last, limit) -> appDatabase.themeDao().getThemesAfter(last != null ? last.themeId : 0, limit),
+            progress, "Sauvegarde thèmes...");
+        Log.d(TAG, "Sauvegarde de " + count + " thèmes");
+    }
+    
+    private void backupPreferences(ZipOutputStream zipOut, RowProgress progress) throws IOException {
+        JsonObject prefsJson = preferencesToJson();
+        addJsonToZip(zipOut, "preferences.json", prefsJson);
+        progress.rowsWritten("Sauvegarde préférences...", prefsJson.size());
+        Log.d(TAG, "Sauvegarde de " + prefsJson.size() + " préférences");
+    }
+    
+    private JsonObject preferencesToJson() {
         // Sauvegarder SharedPreferences
         android.content.SharedPreferences prefs = context.getSharedPreferences("app_prefs", Context.MODE_PRIVATE);
+        java.util.Map<String, ?> all = prefs.getAll();
         JsonObject prefsJson = new JsonObject();
         
-        for (String key : prefs.getAll().keySet()) {
-            Object value = prefs.getAll().get(key);
+        for (String key : all.keySet()) {
+            Object value = all.get(key);
             if (value instanceof String) {
                 prefsJson.addProperty(key, (String) value);
             } else if (value instanceof Boolean) {
@@ -428,55 +842,135 @@ public class BackupManager {
                 prefsJson.addProperty(key, (Long) value);
             }
         }
-        
-        addJsonToZip(zipOut, "preferences.json", prefsJson);
-        Log.d(TAG, "Sauvegarde de " + prefsJson.size() + " préférences");
+        return prefsJson;
     }
     
     // ===== RESTAURATION PAR TYPE DE DONNÉES =====
     
-    private void restoreRecipesFromZip(ZipInputStream zipIn) throws IOException {
-        // TODO: Implémenter restauration recettes
-        Log.d(TAG, "Restauration recettes (TODO)");
-    }
-    
-    private void restoreMealPlansFromZip(ZipInputStream zipIn) throws IOException {
-        // TODO: Implémenter restauration meal plans
-        Log.d(TAG, "Restauration meal plans (TODO)");
+    /**
+     * Insère les recettes du tableau JSON par lots. En mode REPLACE la table est vidée d'abord ;
+     * en mode MERGE une recette locale plus récente que celle de l'archive est conservée.
+     */
+    private void restoreRecipes(ZipInputStream zipIn, RestoreMode mode, RestoreProgress progress,
+                                RestoreResult result) throws IOException {
+        RecipeDao dao = database.recipeDao();
+        if (mode == RestoreMode.REPLACE) {
+            dao.deleteAllRecipes();
+        }
+        
+        JsonReader reader = newEntryReader(zipIn);
+        List<Recipe> batch = new ArrayList<>(RESTORE_BATCH_SIZE);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Recipe recipe = gson.fromJson(reader, Recipe.class);
+            if (recipe == null || recipe.getId() == null) {
+                result.skippedRecipes++;
+                continue;
+            }
+            batch.add(recipe);
+            if (batch.size() == RESTORE_BATCH_SIZE) {
+                insertRecipeBatch(dao, batch, mode, result);
+                progress.update("Restauration recettes...");
+            }
+        }
+        reader.endArray();
+        insertRecipeBatch(dao, batch, mode, result);
+        progress.update("Restauration recettes...");
     }
     
-    private void restoreShoppingListsFromZip(ZipInputStream zipIn) throws IOException {
-        // TODO: Implémenter restauration listes de courses
-        Log.d(TAG, "Restauration listes de courses (TODO)");
+    private void insertRecipeBatch(RecipeDao dao, List<Recipe> batch, RestoreMode mode,
+                                   RestoreResult result) throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new java.io.InterruptedIOException("Restauration interrompue");
+        }
+        if (batch.isEmpty()) return;
+        
+        if (mode == RestoreMode.MERGE) {
+            List<String> ids = new ArrayList<>(batch.size());
+            for (Recipe recipe : batch) {
+                ids.add(recipe.getId());
+            }
+            java.util.Map<String, Long> localUpdatedAt = new java.util.HashMap<>();
+            for (Recipe local : dao.getRecipesByIds(ids)) {
+                localUpdatedAt.put(local.getId(), local.getUpdatedAtTimestamp());
+            }
+            java.util.Iterator<Recipe> it = batch.iterator();
+            while (it.hasNext()) {
+                Recipe restored = it.next();
+                Long local = localUpdatedAt.get(restored.getId());
+                if (local != null && local > restored.getUpdatedAtTimestamp()) {
+                    it.remove();
+                    result.skippedRecipes++;
+                }
+            }
+        }
+        
+        dao.upsertRecipes(batch);
+        result.recipes += batch.size();
+        batch.clear();
     }
     
-    private void restoreTimersFromZip(ZipInputStream zipIn) throws IOException {
-        // TODO: Implémenter restauration minuteries
-        Log.d(TAG, "Restauration minuteries (TODO)");
+    private int restorePreferences(JsonObject prefsJson, RestoreMode mode) {
+        android.content.SharedPreferences.Editor editor =
+            context.getSharedPreferences("app_prefs", Context.MODE_PRIVATE).edit();
+        if (mode == RestoreMode.REPLACE) {
+            editor.clear();
+        }
+        
+        int count = 0;
+        for (java.util.Map.Entry<String, JsonElement> pref : prefsJson.entrySet()) {
+            JsonElement value = pref.getValue();
+            if (!value.isJsonPrimitive()) continue;
+            com.google.gson.JsonPrimitive primitive = value.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                editor.putBoolean(pref.getKey(), primitive.getAsBoolean());
+            } else if (primitive.isNumber()) {
+                putNumber(editor, pref.getKey(), primitive.getAsNumber());
+            } else {
+                editor.putString(pref.getKey(), primitive.getAsString());
+            }
+            count++;
+        }
+        editor.apply();
+        return count;
     }
     
-    private void restoreUsersFromZip(ZipInputStream zipIn) throws IOException {
-        // TODO: Implémenter restauration utilisateurs
-        Log.d(TAG, "Restauration utilisateurs (TODO)");
+    /**
+     * Le JSON ne distingue pas int, long et float : entier dans la plage int, long au-delà, float sinon
+     */
+    private static void putNumber(android.content.SharedPreferences.Editor editor, String key, Number number) {
+        double value = number.doubleValue();
+        if (value == Math.rint(value) && !number.toString().contains(".")) {
+            long asLong = number.longValue();
+            if (asLong >= Integer.MIN_VALUE && asLong <= Integer.MAX_VALUE) {
+                editor.putInt(key, (int) asLong);
+            } else {
+                editor.putLong(key, asLong);
+            }
+        } else {
+            editor.putFloat(key, number.floatValue());
+        }
     }
     
-    private void restoreGroupsFromZip(ZipInputStream zipIn) throws IOException {
-        // TODO: Implémenter restauration groupes
-        Log.d(TAG, "Restauration groupes (TODO)");
-    }
+    // ===== UTILITAIRES =====
     
-    private void restoreThemesFromZip(ZipInputStream zipIn) throws IOException {
-        // TODO: Implémenter restauration thèmes
-        Log.d(TAG, "Restauration thèmes (TODO)");
+    private File getManifestDirectory() {
+        File manifestDir = new File(getBackupDirectory(), MANIFESTS_DIR);
+        if (!manifestDir.exists()) {
+            manifestDir.mkdirs();
+        }
+        return manifestDir;
     }
     
-    private void restorePreferencesFromZip(ZipInputStream zipIn) throws IOException {
-        // TODO: Implémenter restauration préférences
-        Log.d(TAG, "Restauration préférences (TODO)");
+    /**
+     * Photos des recettes prises ou choisies dans l'application (voir ImageUtils)
+     */
+    private File[] getRecipeImageFiles() {
+        File imageDir = context.getExternalFilesDir(android.os.Environment.DIRECTORY_PICTURES);
+        File[] files = imageDir != null ? imageDir.listFiles(File::isFile) : null;
+        return files != null ? files : new File[0];
     }
     
-    // ===== UTILITAIRES =====
-    
     private File getBackupDirectory() {
         File backupDir = new File(context.getExternalFilesDir(null), "backups");
         if (!backupDir.exists()) {
@@ -513,29 +1007,154 @@ public class BackupManager {
         addJsonToZip(zipOut, "metadata.json", metadata);
     }
     
-    private void addJsonToZip(ZipOutputStream zipOut, String fileName, Object jsonData) throws IOException {
-        ZipEntry entry = new ZipEntry(fileName);
-        zipOut.putNextEntry(entry);
+    private void addJsonToZip(ZipOutputStream zipOut, String fileName, JsonElement jsonData) throws IOException {
+        zipOut.putNextEntry(new ZipEntry(fileName));
+        JsonWriter writer = newEntryWriter(zipOut);
+        gson.toJson(jsonData, writer);
+        writer.flush();
+        zipOut.closeEntry();
+    }
+    
+    /**
+     * Écrit un tableau JSON dans une entrée du ZIP, page par page : chaque ligne est sérialisée
+     * directement dans le flux compressé, seule la page courante est en mémoire.
+     * Retourne le nombre de lignes écrites.
+     */
+    private <T> int writeJsonArrayToZip(ZipOutputStream zipOut, String fileName, Class<T> type,
+                                        PageLoader<T> loader, RowProgress progress,
+                                        String operation) throws IOException {
+        zipOut.putNextEntry(new ZipEntry(fileName));
+        JsonWriter writer = newEntryWriter(zipOut);
+        writer.beginArray();
         
-        String jsonString = gson.toJson(jsonData);
-        zipOut.write(jsonString.getBytes("UTF-8"));
+        int count = 0;
+        T last = null;
+        List<T> page;
+        while (!(page = loader.loadAfter(last, PAGE_SIZE)).isEmpty()) {
+            for (T row : page) {
+                gson.toJson(row, type, writer);
+            }
+            count += page.size();
+            last = page.get(page.size() - 1);
+            progress.rowsWritten(operation, page.size());
+            if (page.size() < PAGE_SIZE) break;
+        }
+        
+        writer.endArray();
+        // Vider sans fermer : fermer le writer fermerait le ZipOutputStream
+        writer.flush();
         zipOut.closeEntry();
+        return count;
     }
     
-    private JsonObject readBackupMetadata(ZipInputStream zipIn) throws IOException {
-        ZipEntry entry;
-        while ((entry = zipIn.getNextEntry()) != null) {
-            if ("metadata.json".equals(entry.getName())) {
-                StringBuilder jsonString = new StringBuilder();
-                byte[] buffer = new byte[1024];
-                int length;
-                while ((length = zipIn.read(buffer)) > 0) {
-                    jsonString.append(new String(buffer, 0, length, "UTF-8"));
-                }
-                return gson.fromJson(jsonString.toString(), JsonObject.class);
+    private JsonWriter newEntryWriter(ZipOutputStream zipOut) {
+        JsonWriter writer = new JsonWriter(new BufferedWriter(
+            new OutputStreamWriter(zipOut, StandardCharsets.UTF_8)));
+        writer.setIndent(JSON_INDENT);
+        return writer;
+    }
+    
+    /**
+     * Nombre total de lignes à écrire, pour un avancement proportionnel au travail réel
+     */
+    private long countRows(List<BackupDataType> dataTypes) {
+        long total = 0;
+        for (BackupDataType dataType : dataTypes) {
+            boolean all = dataType == BackupDataType.ALL;
+            if (dataType == BackupDataType.RECIPES || all) {
+                total += database.recipeDao().getRecipeCount();
+            }
+            if (dataType == BackupDataType.MEAL_PLANS || all) {
+                total += appDatabase.mealPlanDao().getMealPlanCount();
+            }
+            if (dataType == BackupDataType.SHOPPING_LISTS || all) {
+                total += appDatabase.shoppingListDao().getTotalListsCount()
+                    + appDatabase.shoppingItemDao().getItemCount();
+            }
+            if (dataType == BackupDataType.TIMERS || all) {
+                total += appDatabase.timerDao().getTimerCount();
             }
+            if (dataType == BackupDataType.USERS || all) {
+                total += appDatabase.userDao().getUserCount();
+            }
+            if (dataType == BackupDataType.GROUPS || all) {
+                total += appDatabase.groupDao().getGroupCount();
+            }
+            if (dataType == BackupDataType.THEMES || all) {
+                total += appDatabase.themeDao().getTotalThemeCount();
+            }
+            if (dataType == BackupDataType.PREFERENCES || all) {
+                total += context.getSharedPreferences("app_prefs", Context.MODE_PRIVATE).getAll().size();
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * Lit une petite entrée JSON (métadonnées, préférences) directement depuis le flux
+     */
+    private JsonObject readJsonEntry(ZipInputStream zipIn) throws IOException {
+        try {
+            JsonObject json = gson.fromJson(newEntryReader(zipIn), JsonObject.class);
+            if (json == null) {
+                throw new InvalidBackupException("Entrée JSON vide dans la sauvegarde");
+            }
+            return json;
+        } catch (com.google.gson.JsonParseException e) {
+            throw new InvalidBackupException("Entrée JSON illisible dans la sauvegarde: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Lecteur sur l'entrée courante ; à ne pas fermer, ce qui fermerait le ZipInputStream.
+     * JsonReader a son propre tampon, qui ne peut pas déborder sur l'entrée suivante :
+     * le flux s'arrête en fin d'entrée.
+     */
+    private JsonReader newEntryReader(ZipInputStream zipIn) {
+        return new JsonReader(new InputStreamReader(zipIn, StandardCharsets.UTF_8));
+    }
+    
+    private void validateMetadata(JsonObject metadata) throws InvalidBackupException {
+        if (!metadata.has("format") || !BACKUP_FORMAT.equals(metadata.get("format").getAsString())) {
+            throw new InvalidBackupException("Fichier de sauvegarde invalide");
+        }
+        String version = metadata.has("version") ? metadata.get("version").getAsString() : "";
+        if (majorVersion(version) < 0 || majorVersion(version) > majorVersion(BACKUP_VERSION)) {
+            throw new InvalidBackupException("Version de sauvegarde non prise en charge: " + version);
+        }
+    }
+    
+    private static int majorVersion(String version) {
+        int dot = version.indexOf('.');
+        try {
+            return Integer.parseInt(dot >= 0 ? version.substring(0, dot) : version);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    private static BackupDataType dataTypeOf(String entryName) {
+        switch (entryName) {
+            case "recipes.json":
+                return BackupDataType.RECIPES;
+            case "meal_plans.json":
+                return BackupDataType.MEAL_PLANS;
+            case "shopping_lists.json":
+            case "shopping_items.json":
+                return BackupDataType.SHOPPING_LISTS;
+            case "timers.json":
+                return BackupDataType.TIMERS;
+            case "users.json":
+                return BackupDataType.USERS;
+            case "groups.json":
+                return BackupDataType.GROUPS;
+            case "themes.json":
+                return BackupDataType.THEMES;
+            case "preferences.json":
+                return BackupDataType.PREFERENCES;
+            default:
+                return null;
         }
-        return null;
     }
     
     private String getAppVersion() {
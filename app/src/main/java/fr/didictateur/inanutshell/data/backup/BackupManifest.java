@@ -0,0 +1,192 @@
+package fr.didictateur.inanutshell.data.backup;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Manifeste d'une sauvegarde incrémentale : la liste des blocs du {@link ChunkStore} qui la composent.
+ *
+ * Une entrée garde, en plus du hash, de quoi reconnaître un élément inchangé sans le relire :
+ * updatedAt pour une recette, taille et date de modification pour une image. La sauvegarde
+ * suivante reprend alors directement le hash de l'entrée précédente.
+ */
+class BackupManifest {
+    static final String FORMAT = "inanutshell_incremental";
+    static final int VERSION = 1;
+
+    static class Entry {
+        final String key;
+        final String version;
+        final long size;
+        final String chunk;
+
+        Entry(String key, String version, long size, String chunk) {
+            this.key = key;
+            this.version = version;
+            this.size = size;
+            this.chunk = chunk;
+        }
+    }
+
+    String createdAt;
+    String appVersion;
+    String preferencesChunk;
+    final List<Entry> recipes = new ArrayList<>();
+    final List<Entry> images = new ArrayList<>();
+
+    /**
+     * Hashs de tous les blocs référencés
+     */
+    Set<String> chunks() {
+        Set<String> chunks = new HashSet<>();
+        for (Entry entry : recipes) chunks.add(entry.chunk);
+        for (Entry entry : images) chunks.add(entry.chunk);
+        if (preferencesChunk != null) chunks.add(preferencesChunk);
+        return chunks;
+    }
+
+    static Map<String, Entry> byKey(List<Entry> entries) {
+        Map<String, Entry> map = new HashMap<>();
+        for (Entry entry : entries) {
+            map.put(entry.key, entry);
+        }
+        return map;
+    }
+
+    /**
+     * Écrit le manifeste dans un fichier temporaire puis le renomme : un manifeste présent est toujours complet
+     */
+    void writeTo(File file) throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (JsonWriter writer = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)))) {
+            writer.beginObject();
+            writer.name("format").value(FORMAT);
+            writer.name("version").value(VERSION);
+            writer.name("createdAt").value(createdAt);
+            writer.name("appVersion").value(appVersion);
+            if (preferencesChunk != null) {
+                writer.name("preferences").value(preferencesChunk);
+            }
+            writeEntries(writer, "recipes", recipes);
+            writeEntries(writer, "images", images);
+            writer.endObject();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Impossible d'écrire le manifeste " + file.getName());
+        }
+    }
+
+    static BackupManifest readFrom(File file) throws IOException {
+        BackupManifest manifest = new BackupManifest();
+        try (JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "format":
+                        if (!FORMAT.equals(reader.nextString())) {
+                            throw new IOException("Manifeste de sauvegarde invalide: " + file.getName());
+                        }
+                        break;
+                    case "version":
+                        int version = reader.nextInt();
+                        if (version > VERSION) {
+                            throw new IOException("Version de manifeste non prise en charge: " + version);
+                        }
+                        break;
+                    case "createdAt":
+                        manifest.createdAt = reader.nextString();
+                        break;
+                    case "appVersion":
+                        manifest.appVersion = reader.nextString();
+                        break;
+                    case "preferences":
+                        manifest.preferencesChunk = reader.nextString();
+                        break;
+                    case "recipes":
+                        readEntries(reader, manifest.recipes);
+                        break;
+                    case "images":
+                        readEntries(reader, manifest.images);
+                        break;
+                    default:
+                        // Champ d'une version plus récente : ignoré
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        }
+        return manifest;
+    }
+
+    private static void writeEntries(JsonWriter writer, String name, List<Entry> entries) throws IOException {
+        writer.name(name).beginArray();
+        for (Entry entry : entries) {
+            writer.beginObject();
+            writer.name("key").value(entry.key);
+            if (entry.version != null) {
+                writer.name("v").value(entry.version);
+            }
+            if (entry.size > 0) {
+                writer.name("size").value(entry.size);
+            }
+            writer.name("chunk").value(entry.chunk);
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+
+    private static void readEntries(JsonReader reader, List<Entry> entries) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String key = null;
+            String version = null;
+            long size = 0;
+            String chunk = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "key": key = reader.nextString(); break;
+                    case "v": version = reader.nextString(); break;
+                    case "size": size = reader.nextLong(); break;
+                    case "chunk": chunk = reader.nextString(); break;
+                    default: reader.skipValue(); break;
+                }
+            }
+            reader.endObject();
+            if (key != null && chunk != null) {
+                entries.add(new Entry(key, version, size, chunk));
+            }
+        }
+        reader.endArray();
+    }
+}
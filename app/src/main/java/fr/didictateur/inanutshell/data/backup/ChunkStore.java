@@ -0,0 +1,224 @@
+package fr.didictateur.inanutshell.data.backup;
+
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stockage adressé par contenu des sauvegardes incrémentales.
+ *
+ * Chaque bloc (une recette sérialisée, une image, les préférences) est rangé sous le SHA-256
+ * de son contenu : un contenu déjà présent n'est ni recompressé ni réécrit. Les blocs JSON sont
+ * compressés en GZIP (suffixe .gz), les images sont gardées telles quelles (déjà compressées).
+ * Les blocs sont répartis dans des sous-dossiers par les deux premiers caractères du hash.
+ */
+public class ChunkStore {
+    private static final String TAG = "ChunkStore";
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final String TEMP_PREFIX = "tmp_";
+    private static final long STALE_TEMP_MS = 60 * 60 * 1000;
+
+    private final File root;
+
+    // Statistiques de la sauvegarde en cours
+    private int chunksWritten;
+    private int chunksReused;
+    private long bytesWritten;
+
+    public ChunkStore(File root) {
+        this.root = root;
+    }
+
+    /**
+     * Range un contenu JSON (compressé) ; retourne son hash
+     */
+    public String putBytes(byte[] content) throws IOException {
+        String hash = toHex(sha256().digest(content));
+        if (exists(hash)) {
+            chunksReused++;
+            return hash;
+        }
+
+        File target = fileFor(hash, true);
+        File temp = tempFile();
+        try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.write(content);
+        }
+        commit(temp, target);
+        return hash;
+    }
+
+    /**
+     * Range le contenu d'un fichier tel quel, en une seule lecture : le hash est calculé
+     * pendant la copie vers un fichier temporaire, renommé ensuite sous son hash
+     */
+    public String putFile(File source) throws IOException {
+        File temp = tempFile();
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(new BufferedInputStream(new FileInputStream(source)), digest);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+            copy(in, out);
+        }
+
+        String hash = toHex(digest.digest());
+        if (exists(hash)) {
+            temp.delete();
+            chunksReused++;
+            return hash;
+        }
+        commit(temp, fileFor(hash, false));
+        return hash;
+    }
+
+    /**
+     * Ouvre un bloc, décompressé si besoin
+     */
+    public InputStream open(String hash) throws IOException {
+        File compressed = fileFor(hash, true);
+        if (compressed.exists()) {
+            return new GZIPInputStream(new BufferedInputStream(new FileInputStream(compressed)));
+        }
+        File raw = fileFor(hash, false);
+        if (raw.exists()) {
+            return new BufferedInputStream(new FileInputStream(raw));
+        }
+        throw new IOException("Bloc de sauvegarde manquant: " + hash);
+    }
+
+    public byte[] readBytes(String hash) throws IOException {
+        try (InputStream in = open(hash)) {
+            java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+            copy(in, out);
+            return out.toByteArray();
+        }
+    }
+
+    public boolean exists(String hash) {
+        return fileFor(hash, true).exists() || fileFor(hash, false).exists();
+    }
+
+    /**
+     * Supprime les blocs qui ne sont plus référencés par aucun manifeste conservé,
+     * ainsi que les fichiers temporaires abandonnés. Retourne le nombre de fichiers supprimés.
+     */
+    public int collectGarbage(Set<String> liveHashes) {
+        int deleted = 0;
+        long freed = 0;
+        File[] entries = root.listFiles();
+        if (entries == null) return 0;
+
+        long now = System.currentTimeMillis();
+        for (File shard : entries) {
+            if (!shard.isDirectory()) {
+                long length = shard.length();
+                if (shard.getName().startsWith(TEMP_PREFIX) && now - shard.lastModified() > STALE_TEMP_MS
+                        && shard.delete()) {
+                    deleted++;
+                    freed += length;
+                }
+                continue;
+            }
+            File[] files = shard.listFiles();
+            if (files == null) continue;
+            for (File file : files) {
+                long length = file.length();
+                if (!liveHashes.contains(hashOf(file.getName())) && file.delete()) {
+                    deleted++;
+                    freed += length;
+                }
+            }
+            String[] remaining = shard.list();
+            if (remaining != null && remaining.length == 0) {
+                shard.delete();
+            }
+        }
+
+        Log.d(TAG, "GC: " + deleted + " bloc(s) supprimé(s), " + freed + " octets libérés");
+        return deleted;
+    }
+
+    public void resetStats() {
+        chunksWritten = 0;
+        chunksReused = 0;
+        bytesWritten = 0;
+    }
+
+    public int getChunksWritten() { return chunksWritten; }
+    public int getChunksReused() { return chunksReused; }
+    public long getBytesWritten() { return bytesWritten; }
+
+    private void commit(File temp, File target) throws IOException {
+        long length = temp.length();
+        File shard = target.getParentFile();
+        if (!shard.exists()) {
+            shard.mkdirs();
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            // Écrit entre-temps par une autre sauvegarde : même hash, même contenu
+            if (!target.exists()) {
+                throw new IOException("Impossible d'enregistrer le bloc " + target.getName());
+            }
+            chunksReused++;
+            return;
+        }
+        chunksWritten++;
+        bytesWritten += length;
+    }
+
+    private File fileFor(String hash, boolean compressed) {
+        File shard = new File(root, hash.substring(0, 2));
+        return new File(shard, compressed ? hash + GZIP_SUFFIX : hash);
+    }
+
+    /**
+     * Fichier temporaire à la racine du stockage (même volume : le renommage est atomique)
+     */
+    private File tempFile() throws IOException {
+        if (!root.exists() && !root.mkdirs()) {
+            throw new IOException("Impossible de créer " + root.getAbsolutePath());
+        }
+        return File.createTempFile(TEMP_PREFIX, null, root);
+    }
+
+    private static String hashOf(String fileName) {
+        return fileName.endsWith(GZIP_SUFFIX)
+            ? fileName.substring(0, fileName.length() - GZIP_SUFFIX.length()) : fileName;
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
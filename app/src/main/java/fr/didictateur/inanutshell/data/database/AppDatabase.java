@@ -1,15 +1,19 @@
 package fr.didictateur.inanutshell.data.database;
 
 import android.content.Context;
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import fr.didictateur.inanutshell.data.importing.ImportJob;
 import fr.didictateur.inanutshell.data.model.Recipe;
 
 @Database(
-    entities = {Recipe.class},
-    version = 1,
+    entities = {Recipe.class, ImportJob.class},
+    version = 2, // Table des imports en masse
     exportSchema = false
 )
 @TypeConverters({DatabaseConverters.class})
@@ -18,8 +22,21 @@ public abstract class AppDatabase extends RoomDatabase {
     private static AppDatabase instance;
     
     public abstract RecipeDao recipeDao();
+    public abstract ImportJobDao importJobDao();
     // Add other DAOs here as needed
     
+    // 1 → 2 : ajout de la table des imports en masse, sans toucher aux recettes
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `import_jobs` (" +
+                "`canonicalUrl` TEXT NOT NULL, `url` TEXT, `batchId` TEXT, `status` INTEGER NOT NULL, " +
+                "`attempts` INTEGER NOT NULL, `lastError` TEXT, `recipeId` TEXT, " +
+                "`createdAt` INTEGER NOT NULL, `updatedAt` INTEGER NOT NULL, PRIMARY KEY(`canonicalUrl`))");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_import_jobs_batchId` ON `import_jobs` (`batchId`)");
+        }
+    };
+    
     public static synchronized AppDatabase getInstance(Context context) {
         if (instance == null) {
             instance = Room.databaseBuilder(
@@ -27,6 +44,7 @@ public abstract class AppDatabase extends RoomDatabase {
                 AppDatabase.class,
                 DATABASE_NAME
             )
+            .addMigrations(MIGRATION_1_2)
             .fallbackToDestructiveMigration()
             .build();
         }
@@ -0,0 +1,58 @@
+package fr.didictateur.inanutshell.data.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Update;
+import fr.didictateur.inanutshell.data.importing.ImportJob;
+import java.util.List;
+
+/**
+ * DAO de la table des imports en masse
+ */
+@Dao
+public interface ImportJobDao {
+    
+    /**
+     * Les URLs déjà connues sont ignorées (-1 dans le résultat)
+     */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    List<Long> insertJobs(List<ImportJob> jobs);
+    
+    @Update
+    void updateJobs(List<ImportJob> jobs);
+    
+    /**
+     * Rattache au lot donné les URLs connues qui n'ont pas encore abouti
+     */
+    @Query("UPDATE import_jobs SET batchId = :batchId, status = 0, attempts = 0 WHERE canonicalUrl IN (:urls) AND status != 1")
+    void reassignUnfinished(List<String> urls, String batchId);
+    
+    /**
+     * Rattache au lot donné les URLs déjà importées dont la recette a été supprimée depuis
+     */
+    @Query("UPDATE import_jobs SET batchId = :batchId, status = 0, attempts = 0, recipeId = NULL "
+        + "WHERE canonicalUrl IN (:urls) AND status = 1 "
+        + "AND (recipeId IS NULL OR recipeId NOT IN (SELECT id FROM recipes))")
+    void reassignDeleted(List<String> urls, String batchId);
+    
+    @Query("SELECT * FROM import_jobs WHERE batchId = :batchId AND status = 0")
+    List<ImportJob> getPendingJobs(String batchId);
+    
+    @Query("SELECT DISTINCT batchId FROM import_jobs WHERE status = 0")
+    List<String> getUnfinishedBatchIds();
+    
+    /**
+     * URL importée dont la recette existe toujours
+     */
+    @Query("SELECT COUNT(*) FROM import_jobs INNER JOIN recipes ON recipes.id = import_jobs.recipeId "
+        + "WHERE import_jobs.canonicalUrl = :canonicalUrl AND import_jobs.status = 1")
+    int countDone(String canonicalUrl);
+    
+    /**
+     * Oublie les URLs terminées (importées ou en échec) depuis la date donnée
+     */
+    @Query("DELETE FROM import_jobs WHERE status != 0 AND updatedAt < :before")
+    void deleteFinishedBefore(long before);
+}
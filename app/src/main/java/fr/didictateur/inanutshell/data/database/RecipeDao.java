@@ -3,6 +3,7 @@ package fr.didictateur.inanutshell.data.database;
 import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 import androidx.room.Update;
 import fr.didictateur.inanutshell.data.model.Recipe;
@@ -49,7 +50,23 @@ public interface RecipeDao {
     
     @Query("SELECT DISTINCT categories FROM recipes WHERE categories IS NOT NULL ORDER BY categories ASC")
     List<String> getAllCategories();
-    
+
+    /**
+     * Page de recettes triées par id, après l'id donné ("" pour la première page).
+     * Pagination par clé : chaque page coûte le même prix, contrairement à OFFSET.
+     */
+    @Query("SELECT * FROM recipes WHERE id > :afterId ORDER BY id ASC LIMIT :limit")
+    List<Recipe> getRecipesAfter(String afterId, int limit);
+
+    @Query("SELECT * FROM recipes WHERE id IN (:ids)")
+    List<Recipe> getRecipesByIds(List<String> ids);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsertRecipes(List<Recipe> recipes);
+
+    @Query("DELETE FROM recipes")
+    void deleteAllRecipes();
+
     // ===== MÉTHODES POUR LA SYNCHRONISATION =====
     
     @Query("SELECT * FROM recipes")
@@ -0,0 +1,467 @@
+package fr.didictateur.inanutshell.data.export;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import fr.didictateur.inanutshell.data.export.RecipeExporter.ExportCallback;
+import fr.didictateur.inanutshell.data.export.RecipeExporter.ExportHandle;
+import fr.didictateur.inanutshell.data.export.RecipeExporter.PdfOptions;
+import fr.didictateur.inanutshell.data.export.RecipeExporter.RecipeSource;
+import fr.didictateur.inanutshell.data.model.Recipe;
+import fr.didictateur.inanutshell.data.model.RecipeIngredient;
+import fr.didictateur.inanutshell.data.model.RecipeInstruction;
+
+/**
+ * Export PDF d'un livre de recettes en deux étages :
+ * - mise en page de chaque recette en parallèle (découpage des lignes, réduction et compression
+ *   des images) en une liste d'éléments indépendante de sa position dans le document ;
+ * - placement séquentiel de ces éléments sur les pages, chaque page terminée partant aussitôt
+ *   dans le fichier.
+ *
+ * Seules quelques recettes d'avance sont mises en page : la mémoire reste bornée quelle que soit
+ * la taille du livre. Plusieurs recettes peuvent se suivre sur une même page ; la table des
+ * matières est écrite en dernier mais affichée en premier.
+ */
+final class PdfExportEngine {
+    private static final String TAG = "PdfExportEngine";
+
+    private static final float MARGIN = 50;
+    private static final float CONTENT_WIDTH = PdfStreamWriter.PAGE_WIDTH - 2 * MARGIN;
+    private static final float TOP = 50;
+    private static final float BOTTOM = PdfStreamWriter.PAGE_HEIGHT - 60;
+    private static final float FOOTER_BASELINE = PdfStreamWriter.PAGE_HEIGHT - 30;
+    // Place minimale restante pour commencer une recette sous la précédente
+    private static final float MIN_RECIPE_START = 150;
+
+    private static final float TITLE_SIZE = 18;
+    private static final float HEADER_SIZE = 13;
+    private static final float TEXT_SIZE = 11;
+    private static final float LINE_SPACING = 1.32f;
+
+    private static final float MAX_IMAGE_HEIGHT = 220;
+    private static final float IMAGE_DPI = 150;
+    private static final int JPEG_QUALITY = 80;
+
+    private static final float TOC_LINE_HEIGHT = 18;
+    private static final int TOC_ENTRIES_PER_PAGE = (int) ((BOTTOM - TOP - 40) / TOC_LINE_HEIGHT);
+
+    /**
+     * Élément placé sur une page : ligne de texte, image ou espace vide
+     */
+    private static final class Item {
+        final float height;
+        final float x;
+        final String text;
+        final boolean bold;
+        final float size;
+        final Image image;
+        final boolean keepWithNext;
+
+        Item(float height, float x, String text, boolean bold, float size, Image image, boolean keepWithNext) {
+            this.height = height;
+            this.x = x;
+            this.text = text;
+            this.bold = bold;
+            this.size = size;
+            this.image = image;
+            this.keepWithNext = keepWithNext;
+        }
+
+        static Item space(float height) {
+            return new Item(height, 0, null, false, 0, null, false);
+        }
+    }
+
+    private static final class Image {
+        final byte[] jpeg;
+        final int pixelWidth;
+        final int pixelHeight;
+        final float width;
+        final float height;
+
+        Image(byte[] jpeg, int pixelWidth, int pixelHeight, float width, float height) {
+            this.jpeg = jpeg;
+            this.pixelWidth = pixelWidth;
+            this.pixelHeight = pixelHeight;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private static final class RecipeBlock {
+        final String title;
+        final List<Item> items;
+
+        RecipeBlock(String title, List<Item> items) {
+            this.title = title;
+            this.items = items;
+        }
+    }
+
+    private static final class TocEntry {
+        final String title;
+        final int pageIndex;
+
+        TocEntry(String title, int pageIndex) {
+            this.title = title;
+            this.pageIndex = pageIndex;
+        }
+    }
+
+    private final PdfOptions options;
+    private final Function<Recipe, File> imageLocator;
+    private final int threads;
+
+    // État du placement, utilisé par le seul thread d'écriture
+    private PdfStreamWriter writer;
+    private int tocPages;
+    private final List<Integer> recipePages = new ArrayList<>();
+    private final List<TocEntry> toc = new ArrayList<>();
+    private PdfStreamWriter.Content content;
+    private Map<String, Integer> pageImages;
+    private float y;
+    private long startedAt;
+    private ExportHandle handle;
+
+    /**
+     * @param imageLocator fichier local de l'image d'une recette, ou null
+     */
+    PdfExportEngine(PdfOptions options, Function<Recipe, File> imageLocator) {
+        this.options = options;
+        this.imageLocator = imageLocator;
+        this.threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    void export(RecipeSource source, OutputStream out, ExportHandle handle, ExportCallback callback) throws IOException {
+        this.handle = handle;
+        this.startedAt = System.nanoTime();
+        this.writer = new PdfStreamWriter(out);
+
+        int total = source.count();
+        if (options.tableOfContents && total > 0) {
+            tocPages = (total + TOC_ENTRIES_PER_PAGE - 1) / TOC_ENTRIES_PER_PAGE;
+        }
+        List<Integer> tocPageObjects = new ArrayList<>();
+        for (int i = 0; i < tocPages; i++) {
+            tocPageObjects.add(writer.reserve());
+        }
+
+        ExecutorService layoutPool = Executors.newFixedThreadPool(threads);
+        try {
+            Deque<Future<RecipeBlock>> pending = new ArrayDeque<>();
+            Iterator<Recipe> page = Collections.emptyIterator();
+            int processed = 0;
+            while (true) {
+                // Garder quelques recettes d'avance en cours de mise en page
+                while (pending.size() < threads * 2) {
+                    if (!page.hasNext()) {
+                        List<Recipe> next = source.nextPage(RecipeExporter.PAGE_SIZE);
+                        if (next.isEmpty()) break;
+                        page = next.iterator();
+                    }
+                    Recipe recipe = page.next();
+                    pending.add(layoutPool.submit(() -> layout(recipe)));
+                }
+                if (pending.isEmpty()) break;
+
+                checkCancelled();
+                place(await(pending.poll()));
+                callback.onProgress(++processed, total);
+            }
+            if (content != null) {
+                finishPage();
+            }
+
+            writeTableOfContents(tocPageObjects);
+            List<Integer> pageOrder = new ArrayList<>(tocPageObjects);
+            pageOrder.addAll(recipePages);
+            writer.finish(pageOrder);
+        } finally {
+            layoutPool.shutdownNow();
+        }
+
+        float seconds = (System.nanoTime() - startedAt) / 1e9f;
+        int pages = tocPages + recipePages.size();
+        Log.i(TAG, pages + " pages PDF en " + String.format(Locale.ROOT, "%.1f", seconds) + " s ("
+            + String.format(Locale.ROOT, "%.1f", pages / Math.max(seconds, 0.001f)) + " pages/s, "
+            + threads + " threads de mise en page)");
+    }
+
+    // ===== MISE EN PAGE (threads du pool) =====
+
+    private RecipeBlock layout(Recipe recipe) {
+        List<Item> items = new ArrayList<>();
+        String title = recipe.getName() != null ? recipe.getName() : "";
+        for (String line : PdfTextMetrics.wrap(title, true, TITLE_SIZE, CONTENT_WIDTH)) {
+            items.add(new Item(TITLE_SIZE * LINE_SPACING, MARGIN, line, true, TITLE_SIZE, null, true));
+        }
+        items.add(Item.space(6));
+
+        if (options.includeImages && imageLocator != null) {
+            File file = imageLocator.apply(recipe);
+            Image image = file != null ? loadImage(file) : null;
+            if (image != null) {
+                items.add(new Item(image.height + 10, MARGIN, null, false, 0, image, false));
+            }
+        }
+
+        if (notEmpty(recipe.getDescription())) {
+            addParagraph(items, recipe.getDescription(), MARGIN, MARGIN);
+            items.add(Item.space(6));
+        }
+
+        List<String> infos = new ArrayList<>();
+        if (notEmpty(recipe.getPrepTime())) infos.add("Temps de préparation: " + recipe.getPrepTime());
+        if (notEmpty(recipe.getCookTime())) infos.add("Temps de cuisson: " + recipe.getCookTime());
+        if (notEmpty(recipe.getRecipeYield())) infos.add("Portions: " + recipe.getRecipeYield());
+        if (!infos.isEmpty()) {
+            addHeader(items, "Informations");
+            for (String info : infos) {
+                addParagraph(items, info, MARGIN + 20, MARGIN + 20);
+            }
+            items.add(Item.space(6));
+        }
+
+        if (recipe.getRecipeIngredient() != null && !recipe.getRecipeIngredient().isEmpty()) {
+            addHeader(items, "Ingrédients");
+            for (RecipeIngredient ingredient : recipe.getRecipeIngredient()) {
+                StringBuilder text = new StringBuilder("• ");
+                if (ingredient.getQuantity() > 0) {
+                    text.append(formatQuantity(ingredient.getQuantity())).append(' ');
+                }
+                if (notEmpty(ingredient.getUnit())) {
+                    text.append(ingredient.getUnit()).append(' ');
+                }
+                text.append(ingredient.getFood() != null ? ingredient.getFood() : "");
+                addParagraph(items, text.toString(), MARGIN + 20, MARGIN + 20 + PdfTextMetrics.width("• ", false, TEXT_SIZE));
+            }
+            items.add(Item.space(6));
+        }
+
+        List<RecipeInstruction> instructions = recipe.getRecipeInstructions();
+        if (instructions != null && !instructions.isEmpty()) {
+            addHeader(items, "Instructions");
+            for (int i = 0; i < instructions.size(); i++) {
+                String number = (i + 1) + ". ";
+                String text = instructions.get(i).getText() != null ? instructions.get(i).getText() : "";
+                addParagraph(items, number + text, MARGIN + 20, MARGIN + 20 + PdfTextMetrics.width(number, false, TEXT_SIZE));
+                items.add(Item.space(4));
+            }
+        }
+        return new RecipeBlock(title, items);
+    }
+
+    private void addHeader(List<Item> items, String text) {
+        items.add(Item.space(4));
+        items.add(new Item(HEADER_SIZE * LINE_SPACING + 4, MARGIN, text, true, HEADER_SIZE, null, true));
+    }
+
+    /**
+     * Paragraphe avec retrait de la première ligne et des suivantes (puces, numéros)
+     */
+    private void addParagraph(List<Item> items, String text, float firstX, float nextX) {
+        List<String> lines = PdfTextMetrics.wrap(text, false, TEXT_SIZE, PdfStreamWriter.PAGE_WIDTH - MARGIN - nextX);
+        for (int i = 0; i < lines.size(); i++) {
+            items.add(new Item(TEXT_SIZE * LINE_SPACING, i == 0 ? firstX : nextX, lines.get(i), false, TEXT_SIZE, null, false));
+        }
+    }
+
+    /**
+     * Image décodée directement à une résolution proche de sa taille d'affichage, puis recompressée en JPEG
+     */
+    private Image loadImage(File file) {
+        try {
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(file.getAbsolutePath(), bounds);
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+                return null;
+            }
+
+            float scale = Math.min(CONTENT_WIDTH / bounds.outWidth, MAX_IMAGE_HEIGHT / bounds.outHeight);
+            float width = bounds.outWidth * scale;
+            float height = bounds.outHeight * scale;
+            int targetWidth = Math.max(1, Math.round(width * IMAGE_DPI / 72f));
+            int targetHeight = Math.max(1, Math.round(height * IMAGE_DPI / 72f));
+
+            BitmapFactory.Options decode = new BitmapFactory.Options();
+            decode.inPreferredConfig = Bitmap.Config.RGB_565;
+            decode.inSampleSize = 1;
+            while (bounds.outWidth / (decode.inSampleSize * 2) >= targetWidth
+                    && bounds.outHeight / (decode.inSampleSize * 2) >= targetHeight) {
+                decode.inSampleSize *= 2;
+            }
+            Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), decode);
+            if (bitmap == null) {
+                return null;
+            }
+            if (bitmap.getWidth() > targetWidth) {
+                Bitmap scaled = Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, true);
+                if (scaled != bitmap) {
+                    bitmap.recycle();
+                    bitmap = scaled;
+                }
+            }
+
+            ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, jpeg);
+            Image image = new Image(jpeg.toByteArray(), bitmap.getWidth(), bitmap.getHeight(), width, height);
+            bitmap.recycle();
+            return image;
+        } catch (RuntimeException | OutOfMemoryError e) {
+            Log.w(TAG, "Image ignorée: " + file.getName(), e);
+            return null;
+        }
+    }
+
+    // ===== PLACEMENT (thread d'écriture) =====
+
+    private void place(RecipeBlock block) throws IOException {
+        if (content != null && (options.oneRecipePerPage || y + MIN_RECIPE_START > BOTTOM)) {
+            finishPage();
+        } else if (content != null) {
+            y += 10;
+            content.line(MARGIN, y, PdfStreamWriter.PAGE_WIDTH - MARGIN, y, 0.5f, 0.7f);
+            y += 16;
+        }
+
+        List<Item> items = block.items;
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            float needed = item.height;
+            if (item.keepWithNext && i + 1 < items.size()) {
+                needed += items.get(i + 1).height;
+            }
+            if (content == null || (y + needed > BOTTOM && y > TOP)) {
+                if (content != null) {
+                    finishPage();
+                }
+                startPage();
+            }
+            if (i == 0) {
+                toc.add(new TocEntry(block.title, recipePages.size() - 1));
+            }
+            draw(item);
+            y += item.height;
+        }
+    }
+
+    private void draw(Item item) throws IOException {
+        if (item.text != null) {
+            content.text(item.bold, item.size, item.x, y + item.size, item.text);
+        } else if (item.image != null) {
+            int object = writer.addJpeg(item.image.jpeg, item.image.pixelWidth, item.image.pixelHeight);
+            String name = "Im" + object;
+            pageImages.put(name, object);
+            content.image(name, item.x, y + 4, item.image.width, item.image.height);
+        }
+    }
+
+    private void startPage() {
+        recipePages.add(writer.reserve());
+        content = new PdfStreamWriter.Content();
+        pageImages = new HashMap<>();
+        y = TOP;
+    }
+
+    private void finishPage() throws IOException {
+        drawPageNumber(content, tocPages + recipePages.size());
+        writer.addPage(recipePages.get(recipePages.size() - 1), content, pageImages,
+            Collections.<PdfStreamWriter.Link>emptyList());
+        handle.recordPages(recipePages.size(), System.nanoTime() - startedAt);
+        content = null;
+        pageImages = null;
+    }
+
+    private void writeTableOfContents(List<Integer> tocPageObjects) throws IOException {
+        if (tocPages == 0) return;
+        if (toc.size() > tocPages * TOC_ENTRIES_PER_PAGE) {
+            // La source a grossi pendant l'export : les numéros de page sont déjà imprimés
+            Log.w(TAG, (toc.size() - tocPages * TOC_ENTRIES_PER_PAGE) + " recette(s) absente(s) de la table des matières");
+        }
+
+        float right = PdfStreamWriter.PAGE_WIDTH - MARGIN;
+        for (int p = 0; p < tocPages; p++) {
+            PdfStreamWriter.Content page = new PdfStreamWriter.Content();
+            List<PdfStreamWriter.Link> links = new ArrayList<>();
+            float top = TOP;
+            if (p == 0) {
+                page.text(true, TITLE_SIZE, MARGIN, top + TITLE_SIZE, "Table des matières");
+            }
+            top += 40;
+
+            int end = Math.min(toc.size(), (p + 1) * TOC_ENTRIES_PER_PAGE);
+            for (int i = p * TOC_ENTRIES_PER_PAGE; i < end; i++) {
+                TocEntry entry = toc.get(i);
+                String number = String.valueOf(tocPages + entry.pageIndex + 1);
+                float numberWidth = PdfTextMetrics.width(number, false, TEXT_SIZE);
+                String title = PdfTextMetrics.ellipsize(entry.title, false, TEXT_SIZE, CONTENT_WIDTH - numberWidth - 20);
+                page.text(false, TEXT_SIZE, MARGIN, top + TEXT_SIZE, title);
+                page.text(false, TEXT_SIZE, right - numberWidth, top + TEXT_SIZE, number);
+                links.add(new PdfStreamWriter.Link(MARGIN, top, right, top + TOC_LINE_HEIGHT,
+                    recipePages.get(entry.pageIndex)));
+                top += TOC_LINE_HEIGHT;
+            }
+            drawPageNumber(page, p + 1);
+            writer.addPage(tocPageObjects.get(p), page, Collections.<String, Integer>emptyMap(), links);
+        }
+        handle.recordPages(tocPages + recipePages.size(), System.nanoTime() - startedAt);
+    }
+
+    private void drawPageNumber(PdfStreamWriter.Content page, int number) {
+        String text = String.valueOf(number);
+        float width = PdfTextMetrics.width(text, false, 9);
+        page.text(false, 9, (PdfStreamWriter.PAGE_WIDTH - width) / 2, FOOTER_BASELINE, text);
+    }
+
+    // ===== UTILITAIRES =====
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (handle.isCancelled() || Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Export annulé");
+        }
+    }
+
+    private static RecipeBlock await(Future<RecipeBlock> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export annulé");
+        } catch (ExecutionException e) {
+            throw new IOException("Mise en page impossible: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static boolean notEmpty(String value) {
+        return value != null && !value.isEmpty();
+    }
+
+    private static String formatQuantity(double quantity) {
+        if (quantity == Math.rint(quantity)) {
+            return String.valueOf((long) quantity);
+        }
+        return String.format(Locale.getDefault(), "%.2f", quantity).replaceAll("0+$", "");
+    }
+}
@@ -0,0 +1,264 @@
+package fr.didictateur.inanutshell.data.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Écriture d'un PDF au fil de l'eau : chaque objet (image, page) part dans le flux dès qu'il est
+ * prêt, seule la table des positions reste en mémoire. Contrairement à PdfDocument, qui garde
+ * toutes les pages jusqu'à writeTo(), la mémoire ne dépend donc pas du nombre de pages.
+ *
+ * Le texte utilise les polices standard Helvetica et Helvetica-Bold (encodage WinAnsi, donc
+ * les accents français) : elles n'ont pas à être embarquées. Les images sont des JPEG insérés tels quels.
+ * L'ordre d'affichage des pages est donné à la fin par finish() : une page écrite en dernier
+ * (la table des matières) peut ainsi apparaître en premier.
+ */
+final class PdfStreamWriter {
+    static final float PAGE_WIDTH = 595;
+    static final float PAGE_HEIGHT = 842;
+
+    private static final int CATALOG = 1;
+    private static final int PAGES = 2;
+    private static final int FONT_REGULAR = 3;
+    private static final int FONT_BOLD = 4;
+
+    /**
+     * Lien d'une zone de page vers une autre page (table des matières)
+     */
+    static final class Link {
+        final float x1, y1, x2, y2;
+        final int targetPage;
+
+        Link(float x1, float y1, float x2, float y2, int targetPage) {
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+            this.targetPage = targetPage;
+        }
+    }
+
+    /**
+     * Contenu d'une page. Les ordonnées sont comptées depuis le haut de la page, comme sur un Canvas.
+     */
+    static final class Content {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        private final StringBuilder operators = new StringBuilder(128);
+
+        void text(boolean bold, float size, float x, float baseline, String text) {
+            operators.setLength(0);
+            operators.append("BT /").append(bold ? "F2 " : "F1 ").append(number(size)).append(" Tf ")
+                .append(number(x)).append(' ').append(number(PAGE_HEIGHT - baseline)).append(" Td (");
+            append(operators);
+            writeEscaped(PdfTextMetrics.encode(text));
+            operators.setLength(0);
+            operators.append(") Tj ET\n");
+            append(operators);
+        }
+
+        void line(float x1, float y1, float x2, float y2, float width, float gray) {
+            operators.setLength(0);
+            operators.append(number(gray)).append(" G ").append(number(width)).append(" w ")
+                .append(number(x1)).append(' ').append(number(PAGE_HEIGHT - y1)).append(" m ")
+                .append(number(x2)).append(' ').append(number(PAGE_HEIGHT - y2)).append(" l S\n");
+            append(operators);
+        }
+
+        void image(String name, float x, float top, float width, float height) {
+            operators.setLength(0);
+            operators.append("q ").append(number(width)).append(" 0 0 ").append(number(height)).append(' ')
+                .append(number(x)).append(' ').append(number(PAGE_HEIGHT - top - height))
+                .append(" cm /").append(name).append(" Do Q\n");
+            append(operators);
+        }
+
+        boolean isEmpty() {
+            return bytes.size() == 0;
+        }
+
+        private void append(CharSequence ascii) {
+            for (int i = 0; i < ascii.length(); i++) {
+                bytes.write(ascii.charAt(i));
+            }
+        }
+
+        private void writeEscaped(byte[] text) {
+            for (byte b : text) {
+                if (b == '(' || b == ')' || b == '\\') {
+                    bytes.write('\\');
+                }
+                bytes.write(b);
+            }
+        }
+    }
+
+    private final CountingOutputStream out;
+    private long[] offsets = new long[64];
+    private int nextObject = FONT_BOLD + 1;
+
+    PdfStreamWriter(OutputStream out) throws IOException {
+        this.out = new CountingOutputStream(out);
+        // Octets > 127 dans le commentaire : signale un fichier binaire aux outils de transfert
+        this.out.write(new byte[] { '%', 'P', 'D', 'F', '-', '1', '.', '4', '\n',
+            '%', (byte) 0xE2, (byte) 0xE3, (byte) 0xCF, (byte) 0xD3, '\n' });
+        writeObject(FONT_REGULAR, "<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica /Encoding /WinAnsiEncoding >>");
+        writeObject(FONT_BOLD, "<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica-Bold /Encoding /WinAnsiEncoding >>");
+    }
+
+    /**
+     * Réserve un numéro d'objet, pour une page référencée avant d'être écrite
+     */
+    int reserve() {
+        return nextObject++;
+    }
+
+    /**
+     * Écrit une image JPEG ; retourne son numéro d'objet
+     */
+    int addJpeg(byte[] jpeg, int width, int height) throws IOException {
+        int object = nextObject++;
+        beginObject(object);
+        write("<< /Type /XObject /Subtype /Image /Width " + width + " /Height " + height
+            + " /ColorSpace /DeviceRGB /BitsPerComponent 8 /Filter /DCTDecode /Length " + jpeg.length
+            + " >>\nstream\n");
+        out.write(jpeg);
+        write("\nendstream\nendobj\n");
+        return object;
+    }
+
+    /**
+     * Écrit une page et la vide dans le flux
+     *
+     * @param page   numéro d'objet de la page, obtenu par reserve()
+     * @param images nom de ressource -> numéro d'objet des images utilisées
+     */
+    void addPage(int page, Content content, Map<String, Integer> images, List<Link> links) throws IOException {
+        byte[] compressed = deflate(content.bytes.toByteArray());
+        int contents = nextObject++;
+        beginObject(contents);
+        write("<< /Length " + compressed.length + " /Filter /FlateDecode >>\nstream\n");
+        out.write(compressed);
+        write("\nendstream\nendobj\n");
+
+        StringBuilder dictionary = new StringBuilder(256);
+        dictionary.append("<< /Type /Page /Parent ").append(PAGES).append(" 0 R /MediaBox [0 0 ")
+            .append(number(PAGE_WIDTH)).append(' ').append(number(PAGE_HEIGHT)).append("] /Resources << /Font << /F1 ")
+            .append(FONT_REGULAR).append(" 0 R /F2 ").append(FONT_BOLD).append(" 0 R >>");
+        if (!images.isEmpty()) {
+            dictionary.append(" /XObject <<");
+            for (Map.Entry<String, Integer> image : images.entrySet()) {
+                dictionary.append(" /").append(image.getKey()).append(' ').append(image.getValue()).append(" 0 R");
+            }
+            dictionary.append(" >>");
+        }
+        dictionary.append(" >> /Contents ").append(contents).append(" 0 R");
+        if (!links.isEmpty()) {
+            dictionary.append(" /Annots [");
+            for (Link link : links) {
+                dictionary.append(" << /Type /Annot /Subtype /Link /Border [0 0 0] /Rect [")
+                    .append(number(link.x1)).append(' ').append(number(PAGE_HEIGHT - link.y2)).append(' ')
+                    .append(number(link.x2)).append(' ').append(number(PAGE_HEIGHT - link.y1))
+                    .append("] /Dest [").append(link.targetPage).append(" 0 R /XYZ null null null] >>");
+            }
+            dictionary.append(" ]");
+        }
+        dictionary.append(" >>");
+        writeObject(page, dictionary.toString());
+        out.flush();
+    }
+
+    /**
+     * Écrit l'arbre des pages dans l'ordre d'affichage donné, le catalogue et la table des positions
+     */
+    void finish(List<Integer> pageOrder) throws IOException {
+        StringBuilder kids = new StringBuilder();
+        for (int page : pageOrder) {
+            kids.append(page).append(" 0 R ");
+        }
+        writeObject(PAGES, "<< /Type /Pages /Kids [ " + kids + "] /Count " + pageOrder.size() + " >>");
+        writeObject(CATALOG, "<< /Type /Catalog /Pages " + PAGES + " 0 R >>");
+
+        long xref = out.count;
+        StringBuilder table = new StringBuilder(20 * nextObject + 64);
+        table.append("xref\n0 ").append(nextObject).append("\n0000000000 65535 f \n");
+        for (int object = 1; object < nextObject; object++) {
+            if (offsets[object] == 0) {
+                throw new IOException("Objet PDF " + object + " réservé mais jamais écrit");
+            }
+            table.append(String.format(Locale.ROOT, "%010d 00000 n \n", offsets[object]));
+        }
+        table.append("trailer\n<< /Size ").append(nextObject).append(" /Root ").append(CATALOG)
+            .append(" 0 R >>\nstartxref\n").append(xref).append("\n%%EOF\n");
+        write(table.toString());
+        out.flush();
+    }
+
+    private void writeObject(int object, String body) throws IOException {
+        beginObject(object);
+        write(body);
+        write("\nendobj\n");
+    }
+
+    private void beginObject(int object) throws IOException {
+        if (object >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(object + 1, offsets.length * 2));
+        }
+        offsets[object] = out.count;
+        write(object + " 0 obj\n");
+    }
+
+    private void write(String ascii) throws IOException {
+        out.write(ascii.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 3 + 64);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try (DeflaterOutputStream stream = new DeflaterOutputStream(compressed, deflater, 8192)) {
+            stream.write(data);
+        } finally {
+            deflater.end();
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Nombre PDF : au plus deux décimales, sans notation scientifique
+     */
+    static String number(float value) {
+        int rounded = Math.round(value * 100);
+        if (rounded % 100 == 0) {
+            return Integer.toString(rounded / 100);
+        }
+        return String.format(Locale.ROOT, "%.2f", rounded / 100f);
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
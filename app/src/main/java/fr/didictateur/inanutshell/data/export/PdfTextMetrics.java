@@ -0,0 +1,156 @@
+package fr.didictateur.inanutshell.data.export;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodage WinAnsi et largeurs des polices standard Helvetica / Helvetica-Bold (métriques Adobe,
+ * en millièmes de la taille). Sans Paint ni état : utilisable depuis plusieurs threads de mise en page.
+ */
+final class PdfTextMetrics {
+    private static final String SPECIALS = "€\u0000‚ƒ„…†‡ˆ‰Š‹Œ\u0000Ž\u0000\u0000‘’“”•–—˜™š›œ\u0000žŸ";
+
+    // Caractères 32 à 126
+    private static final short[] HELVETICA_ASCII = {
+        278, 278, 355, 556, 556, 889, 667, 191, 333, 333, 389, 584, 278, 333, 278, 278,
+        556, 556, 556, 556, 556, 556, 556, 556, 556, 556, 278, 278, 584, 584, 584, 556,
+        1015, 667, 667, 722, 722, 667, 611, 778, 722, 278, 500, 667, 556, 833, 722, 778,
+        667, 778, 722, 667, 611, 722, 667, 944, 667, 667, 611, 278, 278, 278, 469, 556,
+        333, 556, 556, 500, 556, 556, 278, 556, 556, 222, 222, 500, 222, 833, 556, 556,
+        556, 556, 333, 500, 278, 556, 500, 722, 500, 500, 500, 334, 260, 334, 584
+    };
+    private static final short[] HELVETICA_BOLD_ASCII = {
+        278, 333, 474, 556, 556, 889, 722, 238, 333, 333, 389, 584, 278, 333, 278, 278,
+        556, 556, 556, 556, 556, 556, 556, 556, 556, 556, 333, 333, 584, 584, 584, 611,
+        975, 722, 722, 722, 722, 667, 611, 778, 722, 278, 556, 722, 611, 833, 722, 778,
+        667, 778, 722, 667, 611, 722, 667, 944, 667, 667, 611, 333, 278, 333, 584, 556,
+        333, 556, 611, 556, 611, 556, 333, 611, 611, 278, 278, 556, 278, 889, 611, 611,
+        611, 611, 389, 556, 333, 611, 556, 778, 556, 556, 500, 389, 280, 389, 584
+    };
+
+    private static final short[] HELVETICA = widths(HELVETICA_ASCII);
+    private static final short[] HELVETICA_BOLD = widths(HELVETICA_BOLD_ASCII);
+
+    private PdfTextMetrics() {}
+
+    /**
+     * Texte en WinAnsi ; les caractères hors de cet encodage deviennent '?'
+     */
+    static byte[] encode(String text) {
+        byte[] encoded = new byte[text.length()];
+        for (int i = 0; i < text.length(); i++) {
+            encoded[i] = (byte) code(text.charAt(i));
+        }
+        return encoded;
+    }
+
+    static float width(String text, boolean bold, float size) {
+        short[] widths = bold ? HELVETICA_BOLD : HELVETICA;
+        int total = 0;
+        for (int i = 0; i < text.length(); i++) {
+            total += widths[code(text.charAt(i))];
+        }
+        return total * size / 1000f;
+    }
+
+    /**
+     * Coupe le texte en lignes d'au plus maxWidth, aux espaces ; un mot trop long est coupé
+     */
+    static List<String> wrap(String text, boolean bold, float size, float maxWidth) {
+        List<String> lines = new ArrayList<>();
+        for (String paragraph : text.split("\r?\n")) {
+            StringBuilder line = new StringBuilder();
+            for (String word : paragraph.trim().split("\\s+")) {
+                if (word.isEmpty()) continue;
+                String candidate = line.length() > 0 ? line + " " + word : word;
+                if (width(candidate, bold, size) <= maxWidth) {
+                    line.setLength(0);
+                    line.append(candidate);
+                    continue;
+                }
+                if (line.length() > 0) {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                }
+                while (width(word, bold, size) > maxWidth && word.length() > 1) {
+                    int cut = word.length() - 1;
+                    while (cut > 1 && width(word.substring(0, cut), bold, size) > maxWidth) {
+                        cut--;
+                    }
+                    lines.add(word.substring(0, cut));
+                    word = word.substring(cut);
+                }
+                line.append(word);
+            }
+            if (line.length() > 0) {
+                lines.add(line.toString());
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Raccourcit le texte avec "…" pour qu'il tienne sur une ligne
+     */
+    static String ellipsize(String text, boolean bold, float size, float maxWidth) {
+        if (width(text, bold, size) <= maxWidth) {
+            return text;
+        }
+        int end = text.length();
+        while (end > 0 && width(text.substring(0, end) + "…", bold, size) > maxWidth) {
+            end--;
+        }
+        return text.substring(0, end).trim() + "…";
+    }
+
+    private static int code(char c) {
+        if (c >= 32 && c <= 126) return c;
+        if (c >= 0xA0 && c <= 0xFF) return c;
+        if (c == '\t' || c == '\u2009' || c == '\u202F') return ' ';
+        int special = SPECIALS.indexOf(c);
+        if (special >= 0 && c != 0) return 0x80 + special;
+        return '?';
+    }
+
+    private static short[] widths(short[] ascii) {
+        short[] widths = new short[256];
+        short fallback = ascii['0' - 32];
+        for (int code = 0; code < 256; code++) {
+            if (code >= 32 && code <= 126) {
+                widths[code] = ascii[code - 32];
+                continue;
+            }
+            char c = code >= 0x80 && code < 0xA0 ? SPECIALS.charAt(code - 0x80) : (char) code;
+            widths[code] = accentedWidth(c, ascii, fallback);
+        }
+        return widths;
+    }
+
+    /**
+     * Les lettres accentuées ont la largeur de leur lettre de base ; quelques signes courants
+     * ont leur propre largeur, les autres prennent celle d'un chiffre
+     */
+    private static short accentedWidth(char c, short[] ascii, short fallback) {
+        String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        char base = decomposed.charAt(0);
+        if (decomposed.length() > 1 && base >= 32 && base <= 126) {
+            return ascii[base - 32];
+        }
+        boolean bold = ascii == HELVETICA_BOLD_ASCII;
+        switch (c) {
+            case '\u00A0': return 278;
+            case '…': case '—': case 'Œ': case 'Æ': return 1000;
+            case 'œ': return 944;
+            case 'æ': return 889;
+            case '‘': case '’': case '‚': return (short) (bold ? 278 : 222);
+            case '“': case '”': case '„': return (short) (bold ? 500 : 333);
+            case '•': return 350;
+            case '°': return 400;
+            case 'ß': return 611;
+            case '×': case '÷': return 584;
+            case '¼': case '½': case '¾': return 834;
+            default: return fallback;
+        }
+    }
+}
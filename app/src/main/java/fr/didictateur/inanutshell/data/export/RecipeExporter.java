@@ -11,7 +11,10 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonArray;
+import com.google.gson.stream.JsonWriter;
 
+import fr.didictateur.inanutshell.data.database.AppDatabase;
+import fr.didictateur.inanutshell.data.database.RecipeDao;
 import fr.didictateur.inanutshell.data.model.Recipe;
 import fr.didictateur.inanutshell.data.model.RecipeIngredient;
 import fr.didictateur.inanutshell.data.model.RecipeInstruction;
@@ -20,16 +23,27 @@ import fr.didictateur.inanutshell.data.model.Instruction;
 import fr.didictateur.inanutshell.data.model.MealPlan;
 import fr.didictateur.inanutshell.data.model.ShoppingList;
 import fr.didictateur.inanutshell.data.model.ShoppingItem;
+import fr.didictateur.inanutshell.offline.OfflineCacheManager;
+import fr.didictateur.inanutshell.utils.ImageUtils;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.Flushable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Gestionnaire pour l'export de recettes et données utilisateur
@@ -42,6 +56,8 @@ import java.util.concurrent.Executors;
 public class RecipeExporter {
     
     private static final String TAG = "RecipeExporter";
+    static final int PAGE_SIZE = 100;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
     private static RecipeExporter instance;
     private ExecutorService executorService;
     private Context context;
@@ -73,6 +89,76 @@ public class RecipeExporter {
         void onProgress(int processed, int total);
     }
     
+    /**
+     * Recettes à exporter, lues page par page : seule la page courante est en mémoire.
+     * Une source se parcourt une seule fois.
+     */
+    public interface RecipeSource {
+        /**
+         * Nombre total de recettes, -1 si inconnu
+         */
+        int count();
+        
+        /**
+         * Page suivante, vide une fois la source épuisée
+         */
+        List<Recipe> nextPage(int limit);
+    }
+    
+    /**
+     * Export en cours : cancel() l'arrête avant la recette suivante et supprime le fichier partiel
+     */
+    public static final class ExportHandle {
+        private volatile boolean cancelled;
+        private volatile Future<?> future;
+        private volatile int pagesWritten;
+        private volatile float pagesPerSecond;
+        
+        public void cancel() {
+            cancelled = true;
+            Future<?> running = future;
+            if (running != null) {
+                running.cancel(true);
+            }
+        }
+        
+        public boolean isCancelled() {
+            return cancelled;
+        }
+        
+        /**
+         * Pages déjà écrites (export PDF)
+         */
+        public int getPagesWritten() {
+            return pagesWritten;
+        }
+        
+        /**
+         * Débit moyen depuis le début de l'export PDF
+         */
+        public float getPagesPerSecond() {
+            return pagesPerSecond;
+        }
+        
+        void recordPages(int pages, long elapsedNanos) {
+            pagesWritten = pages;
+            pagesPerSecond = elapsedNanos > 0 ? pages * 1e9f / elapsedNanos : 0;
+        }
+    }
+    
+    /**
+     * Options de l'export PDF d'un livre de recettes
+     */
+    public static class PdfOptions {
+        public boolean tableOfContents = true;
+        public boolean oneRecipePerPage = false;
+        public boolean includeImages = true;
+    }
+    
+    private interface RecipeWriter {
+        void write(Recipe recipe) throws IOException;
+    }
+    
     private RecipeExporter(Context context) {
         this.context = context;
         this.executorService = Executors.newFixedThreadPool(2);
@@ -145,10 +231,10 @@ public class RecipeExporter {
                 switch (format) {
                     case JSON:
                     case MEALIE_JSON:
-                        exportFile = exportRecipesToJson(recipes, format);
-                        break;
+                    case CSV:
                     case PDF:
-                        exportFile = exportRecipesToPdf(recipes);
+                        exportFile = streamRecipesToFile(listSource(recipes), format, new PdfOptions(),
+                            new ExportHandle(), callback);
                         break;
                     case TEXT:
                         exportFile = exportRecipesToText(recipes);
@@ -156,9 +242,6 @@ public class RecipeExporter {
                     case HTML:
                         exportFile = exportRecipesToHtml(recipes);
                         break;
-                    case CSV:
-                        exportFile = exportRecipesToCsv(recipes);
-                        break;
                     default:
                         callback.onError("Format d'export non supporté pour multiple recettes");
                         return;
@@ -178,6 +261,98 @@ public class RecipeExporter {
         });
     }
     
+    /**
+     * Exporte en flux (JSON, Mealie JSON, CSV ou PDF) les recettes d'une source paginée.
+     * Le retour permet d'annuler l'export ; onError est alors appelé avec "Export annulé".
+     */
+    public ExportHandle exportRecipes(RecipeSource source, ExportFormat format, ExportCallback callback) {
+        return startStreamingExport(source, format, new PdfOptions(), callback);
+    }
+    
+    /**
+     * Exporte en PDF les recettes d'une source paginée, avec table des matières et plusieurs recettes
+     * par page selon les options. Les pages sont écrites au fur et à mesure : le débit est suivi par
+     * ExportHandle.getPagesPerSecond().
+     */
+    public ExportHandle exportRecipesToPdf(RecipeSource source, PdfOptions options, ExportCallback callback) {
+        return startStreamingExport(source, ExportFormat.PDF, options, callback);
+    }
+    
+    private ExportHandle startStreamingExport(RecipeSource source, ExportFormat format, PdfOptions options,
+                                              ExportCallback callback) {
+        ExportHandle handle = new ExportHandle();
+        handle.future = executorService.submit(() -> {
+            try {
+                File exportFile = streamRecipesToFile(source, format, options, handle, callback);
+                Log.d(TAG, "Recettes exportées: " + exportFile.getAbsolutePath());
+                callback.onSuccess(exportFile);
+            } catch (InterruptedIOException e) {
+                Log.d(TAG, "Export annulé");
+                callback.onError("Export annulé");
+            } catch (Exception e) {
+                Log.e(TAG, "Erreur lors de l'export en flux: " + e.getMessage(), e);
+                callback.onError("Erreur lors de l'export: " + e.getMessage());
+            }
+        });
+        return handle;
+    }
+    
+    /**
+     * Exporte en flux toutes les recettes de la base locale
+     */
+    public ExportHandle exportAllRecipes(ExportFormat format, ExportCallback callback) {
+        return exportRecipes(databaseSource(context), format, callback);
+    }
+    
+    /**
+     * Toutes les recettes de la base locale, par pages triées par id (pagination par clé)
+     */
+    public static RecipeSource databaseSource(Context context) {
+        RecipeDao dao = AppDatabase.getInstance(context).recipeDao();
+        return new RecipeSource() {
+            private String lastId = "";
+            
+            @Override
+            public int count() {
+                return dao.getRecipeCount();
+            }
+            
+            @Override
+            public List<Recipe> nextPage(int limit) {
+                List<Recipe> page = dao.getRecipesAfter(lastId, limit);
+                if (!page.isEmpty()) {
+                    lastId = page.get(page.size() - 1).getId();
+                }
+                return page;
+            }
+        };
+    }
+    
+    /**
+     * Recettes déjà chargées (sélection de l'utilisateur)
+     */
+    public static RecipeSource listSource(List<Recipe> recipes) {
+        return new RecipeSource() {
+            private int position;
+            
+            @Override
+            public int count() {
+                return recipes.size();
+            }
+            
+            @Override
+            public List<Recipe> nextPage(int limit) {
+                if (position >= recipes.size()) {
+                    return Collections.emptyList();
+                }
+                int end = Math.min(position + limit, recipes.size());
+                List<Recipe> page = recipes.subList(position, end);
+                position = end;
+                return page;
+            }
+        };
+    }
+    
     // ===== EXPORT JSON =====
     
     private File exportRecipeToJson(Recipe recipe) throws IOException {
@@ -242,78 +417,167 @@ public class RecipeExporter {
         File exportFile = new File(exportDir, fileName);
         
         // Format compatible Mealie
-        JsonObject mealieJson = new JsonObject();
-        mealieJson.addProperty("name", recipe.getName());
-        mealieJson.addProperty("description", recipe.getDescription());
-        mealieJson.addProperty("prepTime", recipe.getPrepTime());
-        mealieJson.addProperty("cookTime", recipe.getCookTime());
-        mealieJson.addProperty("totalTime", recipe.getTotalTime());
-        mealieJson.addProperty("servings", recipe.getRecipeYield() != null ? recipe.getRecipeYield() : "4");
-        
-        // Ingrédients format Mealie
-        JsonArray recipeIngredient = new JsonArray();
-        if (recipe.getRecipeIngredient() != null) {
-            for (RecipeIngredient ingredient : recipe.getRecipeIngredient()) {
-                JsonObject ingJson = new JsonObject();
-                ingJson.addProperty("note", ingredient.getFood() != null ? ingredient.getFood() : "");
-                ingJson.addProperty("quantity", ingredient.getQuantity());
-                ingJson.addProperty("unit", ingredient.getUnit() != null ? ingredient.getUnit() : "");
-                recipeIngredient.add(ingJson);
-            }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(exportFile), StandardCharsets.UTF_8)) {
+            JsonWriter json = newJsonWriter(writer);
+            writeMealieRecipe(json, recipe);
+            json.flush();
         }
-        mealieJson.add("recipeIngredient", recipeIngredient);
         
-        // Instructions format Mealie
-        JsonArray recipeInstructions = new JsonArray();
-        if (recipe.getRecipeInstructions() != null) {
-            for (RecipeInstruction instruction : recipe.getRecipeInstructions()) {
-                JsonObject instJson = new JsonObject();
-                instJson.addProperty("text", instruction.getText());
-                recipeInstructions.add(instJson);
-            }
+        return exportFile;
+    }
+    
+    // ===== EXPORT EN FLUX =====
+    
+    /**
+     * Écrit le fichier d'export en flux ; un export annulé ou en échec ne laisse pas de fichier partiel
+     */
+    private File streamRecipesToFile(RecipeSource source, ExportFormat format, PdfOptions options,
+                                     ExportHandle handle, ExportCallback callback) throws IOException {
+        String extension;
+        switch (format) {
+            case JSON:
+            case MEALIE_JSON:
+                extension = ".json";
+                break;
+            case CSV:
+                extension = ".csv";
+                break;
+            case PDF:
+                extension = ".pdf";
+                break;
+            default:
+                throw new IOException("Format d'export non supporté en flux: " + format);
         }
-        mealieJson.add("recipeInstructions", recipeInstructions);
+        File exportFile = new File(getExportDirectory(), "recettes_export_" +
+            new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date()) + extension);
         
-        // Écrire le fichier
-        try (FileOutputStream fos = new FileOutputStream(exportFile)) {
-            fos.write(gson.toJson(mealieJson).getBytes("UTF-8"));
+        boolean complete = false;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(exportFile), STREAM_BUFFER_SIZE)) {
+            if (format == ExportFormat.PDF) {
+                new PdfExportEngine(options, this::findRecipeImage).export(source, out, handle, callback);
+            } else {
+                writeRecipes(source, format, out, handle, callback);
+            }
+            complete = true;
+        } finally {
+            if (!complete) {
+                exportFile.delete();
+            }
         }
-        
         return exportFile;
     }
     
-    private File exportRecipesToJson(List<Recipe> recipes, ExportFormat format) throws IOException {
-        File exportDir = getExportDirectory();
-        String fileName = "recettes_export_" + 
-            new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date()) + ".json";
-        File exportFile = new File(exportDir, fileName);
-        
-        JsonObject rootJson = new JsonObject();
-        rootJson.addProperty("exportedAt", new Date().toString());
-        rootJson.addProperty("exportedBy", "InANutshell App");
-        rootJson.addProperty("recipeCount", recipes.size());
-        rootJson.addProperty("format", format.name());
+    /**
+     * Écrit les recettes de la source dans out sans le fermer. L'en-tête part avant la première page,
+     * et le flux est vidé après chaque page : un destinataire lent reçoit les données au fil de l'eau.
+     */
+    private void writeRecipes(RecipeSource source, ExportFormat format, OutputStream out,
+                              ExportHandle handle, ExportCallback callback) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        int total = source.count();
+        
+        if (format == ExportFormat.CSV) {
+            writer.write("Nom,Description,Temps Préparation (min),Temps Cuisson (min),Portions,Nombre Ingrédients,Nombre Instructions\n");
+            forEachRecipe(source, total, handle, callback, writer, recipe -> writeCsvRow(writer, recipe));
+            writer.flush();
+            return;
+        }
         
-        JsonArray recipesArray = new JsonArray();
-        for (Recipe recipe : recipes) {
+        JsonWriter json = newJsonWriter(writer);
+        json.beginObject();
+        json.name("exportedAt").value(new Date().toString());
+        json.name("exportedBy").value("InANutshell App");
+        if (total >= 0) {
+            json.name("recipeCount").value(total);
+        }
+        json.name("format").value(format.name());
+        json.name("recipes").beginArray();
+        forEachRecipe(source, total, handle, callback, json, recipe -> {
             if (format == ExportFormat.MEALIE_JSON) {
-                // Format Mealie pour chaque recette
-                JsonObject mealieRecipe = createMealieJsonObject(recipe);
-                recipesArray.add(mealieRecipe);
+                writeMealieRecipe(json, recipe);
             } else {
-                // Format JSON standard
-                JsonObject recipeJson = gson.toJsonTree(recipe).getAsJsonObject();
-                recipesArray.add(recipeJson);
+                gson.toJson(recipe, Recipe.class, json);
             }
+        });
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+    
+    private void forEachRecipe(RecipeSource source, int total, ExportHandle handle, ExportCallback callback,
+                               Flushable sink, RecipeWriter recipeWriter) throws IOException {
+        int processed = 0;
+        List<Recipe> page;
+        while (!(page = source.nextPage(PAGE_SIZE)).isEmpty()) {
+            for (Recipe recipe : page) {
+                if (handle.isCancelled() || Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Export annulé");
+                }
+                recipeWriter.write(recipe);
+            }
+            sink.flush();
+            processed += page.size();
+            callback.onProgress(processed, total);
         }
-        rootJson.add("recipes", recipesArray);
+    }
+    
+    private JsonWriter newJsonWriter(Writer writer) {
+        JsonWriter json = new JsonWriter(writer);
+        json.setIndent("  ");
+        json.setSerializeNulls(false);
+        return json;
+    }
+    
+    private void writeMealieRecipe(JsonWriter json, Recipe recipe) throws IOException {
+        json.beginObject();
+        json.name("name").value(recipe.getName());
+        json.name("description").value(recipe.getDescription());
+        json.name("prepTime").value(recipe.getPrepTime());
+        json.name("cookTime").value(recipe.getCookTime());
+        json.name("totalTime").value(recipe.getTotalTime());
+        json.name("servings").value(recipe.getRecipeYield() != null ? recipe.getRecipeYield() : "4");
         
-        // Écrire le fichier
-        try (FileOutputStream fos = new FileOutputStream(exportFile)) {
-            fos.write(gson.toJson(rootJson).getBytes("UTF-8"));
+        // Ingrédients format Mealie
+        json.name("recipeIngredient").beginArray();
+        if (recipe.getRecipeIngredient() != null) {
+            for (RecipeIngredient ingredient : recipe.getRecipeIngredient()) {
+                json.beginObject();
+                json.name("note").value(ingredient.getFood() != null ? ingredient.getFood() : "");
+                json.name("quantity").value(ingredient.getQuantity());
+                json.name("unit").value(ingredient.getUnit() != null ? ingredient.getUnit() : "");
+                json.endObject();
+            }
         }
+        json.endArray();
         
-        return exportFile;
+        // Instructions format Mealie
+        json.name("recipeInstructions").beginArray();
+        if (recipe.getRecipeInstructions() != null) {
+            for (RecipeInstruction instruction : recipe.getRecipeInstructions()) {
+                json.beginObject();
+                json.name("text").value(instruction.getText());
+                json.endObject();
+            }
+        }
+        json.endArray();
+        json.endObject();
+    }
+    
+    private void writeCsvRow(Writer writer, Recipe recipe) throws IOException {
+        writer.write(escapeCsv(recipe.getName()));
+        writer.write(',');
+        writer.write(escapeCsv(recipe.getDescription()));
+        writer.write(',');
+        writer.write(escapeCsv(recipe.getPrepTime()));
+        writer.write(',');
+        writer.write(escapeCsv(recipe.getCookTime()));
+        writer.write(',');
+        writer.write(escapeCsv(recipe.getRecipeYield()));
+        writer.write(',');
+        writer.write(String.valueOf(recipe.getRecipeIngredient() != null ? recipe.getRecipeIngredient().size() : 0));
+        writer.write(',');
+        writer.write(String.valueOf(recipe.getRecipeInstructions() != null ? recipe.getRecipeInstructions().size() : 0));
+        writer.write('\n');
     }
     
     // ===== EXPORT PDF =====
@@ -440,33 +704,14 @@ public class RecipeExporter {
         return exportFile;
     }
     
-    private File exportRecipesToPdf(List<Recipe> recipes) throws IOException {
-        File exportDir = getExportDirectory();
-        String fileName = "recettes_export_" + 
-            new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date()) + ".pdf";
-        File exportFile = new File(exportDir, fileName);
-        
-        PdfDocument pdfDocument = new PdfDocument();
-        
-        for (Recipe recipe : recipes) {
-            // Créer une page pour chaque recette
-            PdfDocument.PageInfo pageInfo = new PdfDocument.PageInfo.Builder(595, 842, 1).create();
-            PdfDocument.Page page = pdfDocument.startPage(pageInfo);
-            Canvas canvas = page.getCanvas();
-            
-            // Utiliser la même logique que pour une recette individuelle
-            drawRecipeOnCanvas(canvas, recipe);
-            
-            pdfDocument.finishPage(page);
-        }
-        
-        // Écrire le fichier PDF
-        try (FileOutputStream fos = new FileOutputStream(exportFile)) {
-            pdfDocument.writeTo(fos);
-        }
-        pdfDocument.close();
-        
-        return exportFile;
+    /**
+     * Image de la recette en cache hors ligne, seule source locale disponible pour le PDF
+     */
+    private File findRecipeImage(Recipe recipe) {
+        if (recipe.getId() == null) return null;
+        // Photo enregistrée avec la recette (import d'archive, appareil photo), sinon image en cache
+        File image = ImageUtils.findRecipeImageFile(context, recipe.getId());
+        return image != null ? image : OfflineCacheManager.getInstance(context).getCachedImageFile(recipe.getId());
     }
     
     // ===== EXPORT TEXTE =====
@@ -717,39 +962,6 @@ public class RecipeExporter {
         return exportFile;
     }
     
-    // ===== EXPORT CSV =====
-    
-    private File exportRecipesToCsv(List<Recipe> recipes) throws IOException {
-        File exportDir = getExportDirectory();
-        String fileName = "recettes_export_" + 
-            new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date()) + ".csv";
-        File exportFile = new File(exportDir, fileName);
-        
-        StringBuilder csv = new StringBuilder();
-        
-        // En-tête CSV
-        csv.append("Nom,Description,Temps Préparation (min),Temps Cuisson (min),Portions,Nombre Ingrédients,Nombre Instructions\n");
-        
-        // Données
-        for (Recipe recipe : recipes) {
-            csv.append(escapeCsv(recipe.getName())).append(",");
-            csv.append(escapeCsv(recipe.getDescription())).append(",");
-            csv.append(recipe.getPrepTime()).append(",");
-            csv.append(recipe.getCookTime()).append(",");
-            csv.append(recipe.getRecipeYield()).append(",");
-            csv.append(recipe.getRecipeIngredient() != null ? recipe.getRecipeIngredient().size() : 0).append(",");
-            csv.append(recipe.getRecipeInstructions() != null ? recipe.getRecipeInstructions().size() : 0);
-            csv.append("\n");
-        }
-        
-        // Écrire le fichier
-        try (FileOutputStream fos = new FileOutputStream(exportFile)) {
-            fos.write(csv.toString().getBytes("UTF-8"));
-        }
-        
-        return exportFile;
-    }
-    
     // ===== MÉTHODES UTILITAIRES =====
     
     private File getExportDirectory() {
@@ -764,13 +976,6 @@ public class RecipeExporter {
         return fileName.replaceAll("[^a-zA-Z0-9._-]", "_");
     }
     
-    private JsonObject createMealieJsonObject(Recipe recipe) {
-        // Créer objet JSON format Mealie (même logique que exportRecipeToMealieJson)
-        JsonObject mealieJson = new JsonObject();
-        // ... logique complète
-        return mealieJson;
-    }
-    
     private int drawMultiLineText(Canvas canvas, String text, int x, int y, int maxWidth, Paint paint) {
         String[] words = text.split(" ");
         StringBuilder line = new StringBuilder();
@@ -799,11 +1004,6 @@ public class RecipeExporter {
         return totalHeight;
     }
     
-    private void drawRecipeOnCanvas(Canvas canvas, Recipe recipe) {
-        // Logique pour dessiner une recette sur le canvas PDF
-        // (même logique que exportRecipeToPdf mais adaptée)
-    }
-    
     private String formatRecipeForText(Recipe recipe) {
         // Format texte pour une recette (utilisé dans export multiple)
         StringBuilder content = new StringBuilder();
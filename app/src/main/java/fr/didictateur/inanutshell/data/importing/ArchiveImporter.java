@@ -0,0 +1,632 @@
+package fr.didictateur.inanutshell.data.importing;
+
+import android.util.Base64;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import fr.didictateur.inanutshell.data.database.RecipeDao;
+import fr.didictateur.inanutshell.data.importing.RecipeImporter.ArchiveImportCallback;
+import fr.didictateur.inanutshell.data.importing.RecipeImporter.ArchiveImportResult;
+import fr.didictateur.inanutshell.data.importing.RecipeImporter.BulkImportHandle;
+import fr.didictateur.inanutshell.data.model.Recipe;
+import fr.didictateur.inanutshell.data.model.RecipeDeserializer;
+import fr.didictateur.inanutshell.data.model.RecipeIngredient;
+import fr.didictateur.inanutshell.data.model.RecipeInstruction;
+import fr.didictateur.inanutshell.utils.ImageUtils;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Import d'archives de recettes : export Mealie (ZIP), archive Paprika (.paprikarecipes),
+ * ZIP quelconque de fichiers JSON et d'images, ou fichier isolé (JSON, .paprikarecipe).
+ *
+ * L'archive est lue en un seul passage, entrée par entrée, sans être décompressée sur disque.
+ * Le JSON est lu recette par recette (un tableau de milliers de recettes n'est jamais chargé en
+ * entier) et les images sont copiées telles quelles, sans être décodées, dans le dossier persistant
+ * des photos de recettes (voir ImageUtils), avec leur extension d'origine.
+ * La mémoire reste donc bornée par la plus grosse entrée. Les recettes déjà présentes (même nom,
+ * même contenu) sont ignorées ; les autres sont enregistrées par lots de CHUNK_SIZE, une
+ * transaction par lot.
+ */
+final class ArchiveImporter {
+    private static final String TAG = "ArchiveImporter";
+    private static final int CHUNK_SIZE = 50;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Lecture des recettes existantes pour le dédoublonnage
+    private static final int DEDUP_PAGE_SIZE = 200;
+    // Progression signalée au plus tous les PROGRESS_BYTES octets lus, en plus de chaque lot
+    private static final long PROGRESS_BYTES = 256 * 1024;
+
+    private final RecipeDao recipeDao;
+    private final File imageDir;
+    private final File stagingDir;
+    private final Gson gson;
+    private final byte[] copyBuffer = new byte[BUFFER_SIZE];
+
+    // Recettes existantes ou déjà importées : nom normalisé + empreinte du contenu
+    private final Set<String> fingerprints = new HashSet<>();
+    // Clé d'association image <-> recette (slug, dossier ou nom de fichier)
+    private final Map<String, String> recipeIdsByKey = new HashMap<>();
+    private final Map<String, File> stagedImages = new HashMap<>();
+    // Recettes qui ont déjà leur photo : la première image est gardée
+    private final Set<String> recipesWithImage = new HashSet<>();
+    private final Set<String> skippedKeys = new HashSet<>();
+
+    private final List<Recipe> unsavedRecipes = new ArrayList<>();
+    private final Set<String> unsavedRecipeIds = new HashSet<>();
+    // Images des recettes du lot en cours, supprimées si le lot n'est pas enregistré
+    private final List<File> unsavedImages = new ArrayList<>();
+
+    private CountingInputStream counted;
+    private long totalBytes;
+    private BulkImportHandle handle;
+    private ArchiveImportCallback callback;
+    private int imported;
+    private int duplicates;
+    private int failed;
+    private int images;
+    private int stagedCount;
+    private long reportedBytes;
+
+    /**
+     * @param imageDir dossier des photos de recettes, ou null si indisponible (images ignorées)
+     */
+    ArchiveImporter(RecipeDao recipeDao, File imageDir, File stagingDir) {
+        this.recipeDao = recipeDao;
+        this.imageDir = imageDir;
+        this.stagingDir = stagingDir;
+        this.gson = new GsonBuilder()
+            .registerTypeAdapter(Recipe.class, new RecipeDeserializer())
+            .create();
+    }
+
+    /**
+     * Importe l'archive ; le flux n'est pas fermé. Une annulation garde les lots déjà enregistrés :
+     * relancer l'import ne recrée pas ces recettes.
+     *
+     * @param totalBytes taille de l'archive pour la progression, ou -1 si inconnue
+     */
+    ArchiveImportResult run(InputStream in, long totalBytes, BulkImportHandle handle,
+                            ArchiveImportCallback callback) throws IOException {
+        this.totalBytes = totalBytes;
+        this.handle = handle;
+        this.callback = callback;
+        long start = System.nanoTime();
+        loadExistingFingerprints();
+        if (imageDir == null) {
+            Log.w(TAG, "Dossier des images indisponible : les photos de l'archive sont ignorées");
+        } else {
+            imageDir.mkdirs();
+        }
+
+        counted = new CountingInputStream(in);
+        BufferedInputStream input = new BufferedInputStream(counted, BUFFER_SIZE);
+        boolean complete = false;
+        try {
+            input.mark(4);
+            int first = input.read();
+            int second = input.read();
+            input.reset();
+
+            // Les lecteurs intermédiaires sont fermés pour libérer leur Inflater, pas le flux de l'appelant
+            InputStream source = new NonClosingInputStream(input);
+            if (first == 'P' && second == 'K') {
+                readZip(source);
+            } else if (first == 0x1F && second == 0x8B) {
+                readPaprikaRecipe(source, "recette");
+            } else {
+                readJson(source, "recette");
+            }
+            flush();
+            complete = true;
+        } finally {
+            if (!complete) {
+                // Lot non enregistré : ses images n'ont plus de recette (celles des lots
+                // enregistrés ne sont plus dans la liste)
+                for (File image : unsavedImages) {
+                    image.delete();
+                }
+            }
+            for (File staged : stagedImages.values()) {
+                staged.delete();
+            }
+            stagingDir.delete();
+        }
+
+        ArchiveImportResult result = new ArchiveImportResult(imported, duplicates, failed, images);
+        Log.i(TAG, result + " en " + (System.nanoTime() - start) / 1000000 + " ms");
+        return result;
+    }
+
+    // ===== LECTURE DE L'ARCHIVE =====
+
+    private void readZip(InputStream input) throws IOException {
+        try (ZipInputStream zip = new ZipInputStream(input)) {
+            readEntries(zip);
+        }
+    }
+
+    private void readEntries(ZipInputStream zip) throws IOException {
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            checkCancelled();
+            if (entry.isDirectory()) continue;
+
+            String name = entry.getName().replace('\\', '/');
+            String lower = name.toLowerCase(Locale.ROOT);
+            // Fichiers système ajoutés par macOS
+            if (lower.startsWith("__macosx/") || fileName(lower).startsWith("._")) continue;
+
+            // Le flux d'une entrée ne doit pas être fermé : il fermerait toute l'archive
+            InputStream entryStream = new NonClosingInputStream(zip);
+            if (lower.endsWith(".paprikarecipe")) {
+                readPaprikaRecipe(entryStream, name);
+            } else if (lower.endsWith(".json")) {
+                readJson(entryStream, name);
+            } else if (isImage(lower)) {
+                readImage(entryStream, name);
+            }
+            zip.closeEntry();
+            if (counted.count - reportedBytes >= PROGRESS_BYTES) {
+                reportProgress();
+            }
+        }
+    }
+
+    /**
+     * JSON Mealie ou générique : une recette, un tableau de recettes, ou un objet dont le champ
+     * "recipes" est un tableau (export de l'application)
+     */
+    private void readJson(InputStream in, String entryName) throws IOException {
+        try (JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            reader.setLenient(true);
+            JsonToken token = reader.peek();
+            if (token == JsonToken.BEGIN_ARRAY) {
+                readRecipeArray(reader, entryName);
+            } else if (token == JsonToken.BEGIN_OBJECT) {
+                // Les champs sont gardés jusqu'à savoir si l'objet est une recette ou un conteneur
+                JsonObject fields = new JsonObject();
+                boolean container = false;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String field = reader.nextName();
+                    if (field.equals("recipes") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        readRecipeArray(reader, entryName);
+                        container = true;
+                    } else {
+                        fields.add(field, JsonParser.parseReader(reader));
+                    }
+                }
+                reader.endObject();
+                if (!container) {
+                    // Recette seule dans son fichier : son image peut porter le même nom
+                    addJsonRecipe(fields, entryName, imageKey(entryName));
+                }
+            }
+        } catch (IllegalStateException | JsonParseException | MalformedJsonException | EOFException e) {
+            failed++;
+            Log.w(TAG, "JSON illisible: " + entryName + " (" + e.getMessage() + ")");
+        }
+    }
+
+    private void readRecipeArray(JsonReader reader, String entryName) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            checkCancelled();
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                addJsonRecipe(JsonParser.parseReader(reader), entryName, null);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endArray();
+    }
+
+    private void addJsonRecipe(JsonElement json, String entryName, String fileKey) throws IOException {
+        Recipe recipe;
+        try {
+            recipe = gson.fromJson(json, Recipe.class);
+        } catch (RuntimeException e) {
+            failed++;
+            Log.w(TAG, "Recette illisible dans " + entryName + ": " + e.getMessage());
+            return;
+        }
+        if (recipe == null || isEmpty(recipe.getName())) {
+            failed++;
+            return;
+        }
+        String key = !isEmpty(recipe.getSlug()) ? recipe.getSlug().toLowerCase(Locale.ROOT) : fileKey;
+        addRecipe(recipe, key);
+    }
+
+    /**
+     * Recette Paprika : JSON compressé en GZIP, image incluse en Base64
+     */
+    private void readPaprikaRecipe(InputStream in, String entryName) throws IOException {
+        Recipe recipe = new Recipe();
+        String photoData = null;
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new GZIPInputStream(in, BUFFER_SIZE),
+                StandardCharsets.UTF_8))) {
+            reader.setLenient(true);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (field) {
+                    case "name":
+                        recipe.setName(reader.nextString());
+                        break;
+                    case "description":
+                        recipe.setDescription(reader.nextString());
+                        break;
+                    case "servings":
+                        recipe.setRecipeYield(reader.nextString());
+                        break;
+                    case "prep_time":
+                        recipe.setPrepTime(reader.nextString());
+                        break;
+                    case "cook_time":
+                        recipe.setCookTime(reader.nextString());
+                        break;
+                    case "total_time":
+                        recipe.setTotalTime(reader.nextString());
+                        break;
+                    case "ingredients": {
+                        List<RecipeIngredient> ingredients = new ArrayList<>();
+                        for (String line : reader.nextString().split("\r?\n")) {
+                            if (!line.trim().isEmpty()) ingredients.add(new RecipeIngredient(line.trim()));
+                        }
+                        recipe.setRecipeIngredient(ingredients);
+                        break;
+                    }
+                    case "directions": {
+                        List<RecipeInstruction> instructions = new ArrayList<>();
+                        for (String step : reader.nextString().split("\r?\n")) {
+                            if (!step.trim().isEmpty()) instructions.add(new RecipeInstruction(step.trim()));
+                        }
+                        recipe.setRecipeInstructions(instructions);
+                        break;
+                    }
+                    case "categories": {
+                        List<String> categories = new ArrayList<>();
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            categories.add(reader.nextString());
+                        }
+                        reader.endArray();
+                        recipe.setRecipeCategory(categories);
+                        break;
+                    }
+                    case "photo_data":
+                        photoData = reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException | MalformedJsonException | ZipException
+                 | EOFException e) {
+            failed++;
+            Log.w(TAG, "Recette Paprika illisible: " + entryName + " (" + e.getMessage() + ")");
+            return;
+        }
+
+        if (isEmpty(recipe.getName())) {
+            failed++;
+            return;
+        }
+        String recipeId = addRecipe(recipe, null);
+        if (recipeId != null && photoData != null && imageDir != null) {
+            try {
+                byte[] photo = Base64.decode(photoData, Base64.DEFAULT);
+                writeImage(photo, recipeId, ImageUtils.getRecipeImageFile(imageDir, recipeId, imageExtension(photo)));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Image Paprika invalide: " + entryName);
+            }
+        }
+    }
+
+    /**
+     * Image copiée sans décodage : directement à sa place si sa recette est déjà lue,
+     * sinon mise de côté jusqu'à l'arrivée de la recette
+     */
+    private void readImage(InputStream in, String entryName) throws IOException {
+        if (imageDir == null) return;
+        String file = fileName(entryName.toLowerCase(Locale.ROOT));
+        // Mealie fournit aussi des miniatures : seule l'image originale est gardée
+        if (file.startsWith("min-") || file.startsWith("tiny-")) return;
+
+        String key = imageKey(entryName);
+        if (skippedKeys.contains(key)) return;
+        String extension = file.substring(file.lastIndexOf('.') + 1);
+        String recipeId = recipeIdsByKey.get(key);
+        if (recipeId != null) {
+            // Plusieurs images pour une recette : la première est gardée
+            if (recipesWithImage.add(recipeId)) {
+                File target = ImageUtils.getRecipeImageFile(imageDir, recipeId, extension);
+                copyTo(in, target);
+                trackImage(target, recipeId);
+            }
+            return;
+        }
+        if (!stagedImages.containsKey(key)) {
+            stagingDir.mkdirs();
+            // L'extension est gardée pour le nom définitif
+            File staged = new File(stagingDir, (stagedCount++) + "." + extension);
+            copyTo(in, staged);
+            stagedImages.put(key, staged);
+        }
+    }
+
+    // ===== RECETTES =====
+
+    /**
+     * Ajoute la recette au lot en cours, sauf doublon ; retourne son nouvel identifiant
+     */
+    private String addRecipe(Recipe recipe, String key) throws IOException {
+        String fingerprint = fingerprint(recipe);
+        if (!fingerprints.add(fingerprint)) {
+            duplicates++;
+            if (key != null) {
+                skippedKeys.add(key);
+                File staged = stagedImages.remove(key);
+                if (staged != null) staged.delete();
+            }
+            return null;
+        }
+
+        recipe.setId(UUID.randomUUID().toString());
+        unsavedRecipes.add(recipe);
+        unsavedRecipeIds.add(recipe.getId());
+        if (key != null) {
+            recipeIdsByKey.put(key, recipe.getId());
+            File staged = stagedImages.remove(key);
+            if (staged != null) {
+                String name = staged.getName();
+                File target = ImageUtils.getRecipeImageFile(imageDir, recipe.getId(),
+                    name.substring(name.lastIndexOf('.') + 1));
+                if (staged.renameTo(target)) {
+                    recipesWithImage.add(recipe.getId());
+                    trackImage(target, recipe.getId());
+                } else {
+                    staged.delete();
+                }
+            }
+        }
+        if (unsavedRecipes.size() >= CHUNK_SIZE) {
+            flush();
+        }
+        return recipe.getId();
+    }
+
+    private void flush() {
+        if (unsavedRecipes.isEmpty()) return;
+        // Insertion d'une liste par Room : une seule transaction pour le lot
+        recipeDao.insertRecipes(unsavedRecipes);
+        imported += unsavedRecipes.size();
+        unsavedRecipes.clear();
+        unsavedRecipeIds.clear();
+        // Images désormais rattachées à des recettes enregistrées : ne plus les supprimer en cas d'échec
+        unsavedImages.clear();
+        reportProgress();
+    }
+    
+    private void reportProgress() {
+        reportedBytes = counted.count;
+        callback.onProgress(imported, reportedBytes, totalBytes);
+    }
+
+    private void loadExistingFingerprints() {
+        String lastId = "";
+        List<Recipe> page;
+        while (!(page = recipeDao.getRecipesAfter(lastId, DEDUP_PAGE_SIZE)).isEmpty()) {
+            for (Recipe recipe : page) {
+                fingerprints.add(fingerprint(recipe));
+            }
+            lastId = page.get(page.size() - 1).getId();
+        }
+    }
+
+    /**
+     * Nom normalisé, suivi d'un SHA-256 des ingrédients et des étapes : deux recettes de même nom
+     * mais de contenu différent sont toutes deux gardées
+     */
+    private static String fingerprint(Recipe recipe) {
+        StringBuilder content = new StringBuilder();
+        if (recipe.getRecipeIngredient() != null) {
+            for (RecipeIngredient ingredient : recipe.getRecipeIngredient()) {
+                content.append(normalize(ingredient.toString())).append('\n');
+            }
+        }
+        content.append('\u0000');
+        if (recipe.getRecipeInstructions() != null) {
+            for (RecipeInstruction instruction : recipe.getRecipeInstructions()) {
+                content.append(normalize(instruction.getText())).append('\n');
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(content.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder fingerprint = new StringBuilder(normalize(recipe.getName())).append('|');
+            for (byte b : hash) {
+                fingerprint.append(String.format(Locale.ROOT, "%02x", b));
+            }
+            return fingerprint.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    // ===== UTILITAIRES =====
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (handle.isCancelled() || Thread.currentThread().isInterrupted()) {
+            // Les recettes du lot en cours sont gardées, comme les lots précédents
+            flush();
+            throw new InterruptedIOException("Import annulé");
+        }
+    }
+
+    private void copyTo(InputStream in, File target) throws IOException {
+        try (OutputStream out = new FileOutputStream(target)) {
+            int read;
+            while ((read = in.read(copyBuffer)) != -1) {
+                out.write(copyBuffer, 0, read);
+            }
+        } catch (IOException e) {
+            target.delete();
+            throw e;
+        }
+    }
+
+    private void writeImage(byte[] data, String recipeId, File target) throws IOException {
+        try (OutputStream out = new FileOutputStream(target)) {
+            out.write(data);
+        } catch (IOException e) {
+            target.delete();
+            throw e;
+        }
+        recipesWithImage.add(recipeId);
+        trackImage(target, recipeId);
+    }
+
+    /**
+     * Compte l'image ; elle n'est à supprimer en cas d'échec que si sa recette n'est pas encore enregistrée
+     */
+    private void trackImage(File image, String recipeId) {
+        images++;
+        if (unsavedRecipeIds.contains(recipeId)) {
+            unsavedImages.add(image);
+        }
+    }
+
+    /**
+     * Extension d'après la signature du fichier (photos Paprika, sans nom de fichier)
+     */
+    private static String imageExtension(byte[] data) {
+        if (data.length >= 4 && (data[0] & 0xFF) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G') {
+            return "png";
+        }
+        if (data.length >= 12 && data[0] == 'R' && data[1] == 'I' && data[2] == 'F' && data[3] == 'F'
+                && data[8] == 'W' && data[9] == 'E' && data[10] == 'B' && data[11] == 'P') {
+            return "webp";
+        }
+        if (data.length >= 3 && data[0] == 'G' && data[1] == 'I' && data[2] == 'F') {
+            return "gif";
+        }
+        return "jpg";
+    }
+
+    /**
+     * Clé reliant une image à sa recette. Mealie range l'image sous le slug de la recette
+     * (recipes/slug/images/original.webp ou images/slug/original.webp) ; ailleurs, l'image
+     * et le JSON portent le même nom de fichier.
+     */
+    private static String imageKey(String entryName) {
+        String[] parts = entryName.split("/");
+        String file = parts[parts.length - 1];
+        String stem = file.contains(".") ? file.substring(0, file.lastIndexOf('.')) : file;
+        if (stem.equalsIgnoreCase("original") || parts.length > 2 && parts[parts.length - 2].equalsIgnoreCase("images")) {
+            for (int i = parts.length - 2; i >= 0; i--) {
+                if (!parts[i].equalsIgnoreCase("images") && !parts[i].equalsIgnoreCase("recipes")) {
+                    return parts[i].toLowerCase(Locale.ROOT);
+                }
+            }
+        }
+        return stem.toLowerCase(Locale.ROOT);
+    }
+
+    private static String fileName(String entryName) {
+        return entryName.substring(entryName.lastIndexOf('/') + 1);
+    }
+
+    private static boolean isImage(String lowerName) {
+        return lowerName.endsWith(".jpg") || lowerName.endsWith(".jpeg") || lowerName.endsWith(".png")
+            || lowerName.endsWith(".webp") || lowerName.endsWith(".gif");
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static final class NonClosingInputStream extends FilterInputStream {
+        NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
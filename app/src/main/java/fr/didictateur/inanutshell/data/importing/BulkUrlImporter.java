@@ -0,0 +1,469 @@
+package fr.didictateur.inanutshell.data.importing;
+
+import android.util.Log;
+
+import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+
+import fr.didictateur.inanutshell.data.database.AppDatabase;
+import fr.didictateur.inanutshell.data.database.ImportJobDao;
+import fr.didictateur.inanutshell.data.importing.RecipeImporter.BulkImportHandle;
+import fr.didictateur.inanutshell.data.importing.RecipeImporter.ImportStats;
+import fr.didictateur.inanutshell.data.importing.RecipeImporter.MultipleImportCallback;
+import fr.didictateur.inanutshell.data.model.Recipe;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Import en masse d'URLs de recettes.
+ *
+ * Les URLs sont dédoublonnées par URL canonique et enregistrées dans la table import_jobs avant
+ * tout téléchargement : un import interrompu reprend là où il s'était arrêté. Les pages sont
+ * téléchargées et analysées en parallèle, avec au plus MAX_PER_HOST requêtes simultanées et
+ * MIN_HOST_INTERVAL_MS entre deux requêtes vers un même site. Les recettes sont enregistrées par
+ * lots, dans la même transaction que l'état de leurs URLs.
+ */
+final class BulkUrlImporter {
+    private static final String TAG = "BulkUrlImporter";
+
+    private static final int FETCH_THREADS = 6;
+    private static final int MAX_PER_HOST = 2;
+    private static final long MIN_HOST_INTERVAL_MS = 500;
+    // Pause imposée à un site qui répond 429 ou 503
+    private static final long HOST_BACKOFF_MS = 5000;
+    private static final int SAVE_BATCH_SIZE = 20;
+    private static final int MAX_ATTEMPTS = 3;
+    // Limite des variables SQLite par requête
+    private static final int SQL_CHUNK = 500;
+    // Durée de conservation des URLs terminées (dédoublonnage des imports suivants)
+    private static final long FINISHED_JOB_RETENTION_MS = TimeUnit.DAYS.toMillis(30);
+
+    private static final class FetchResult {
+        final ImportJob job;
+        final Recipe recipe;
+        final String pageCanonicalUrl;
+        final String error;
+        final boolean permanent;
+
+        FetchResult(ImportJob job, Recipe recipe, String pageCanonicalUrl, String error, boolean permanent) {
+            this.job = job;
+            this.recipe = recipe;
+            this.pageCanonicalUrl = pageCanonicalUrl;
+            this.error = error;
+            this.permanent = permanent;
+        }
+    }
+
+    private final RecipeImporter importer;
+    private final AppDatabase database;
+    private final ImportJobDao jobDao;
+    private final HostLimiter hostLimiter = new HostLimiter();
+
+    // Temps cumulés par étape, tous threads confondus
+    private final AtomicLong throttleNanos = new AtomicLong();
+    private final AtomicLong fetchNanos = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+    private long saveNanos;
+    private long startedAt;
+    private int total;
+    private int processed;
+    private int duplicates;
+    private int failed;
+    private int retryLater;
+
+    // Enregistrement par lots (thread coordinateur uniquement)
+    private final List<Recipe> unsavedRecipes = new ArrayList<>();
+    private final List<ImportJob> unsavedJobs = new ArrayList<>();
+    private final List<Recipe> imported = new ArrayList<>();
+    private final Set<String> seenUrls = new HashSet<>();
+
+    BulkUrlImporter(RecipeImporter importer, AppDatabase database) {
+        this.importer = importer;
+        this.database = database;
+        this.jobDao = database.importJobDao();
+    }
+
+    /**
+     * Enregistre les URLs dans un nouveau lot et retourne son identifiant. Les URLs déjà importées
+     * sont ignorées, sauf si leur recette a été supprimée ; celles d'un import inachevé rejoignent ce lot.
+     */
+    String enqueue(List<String> urls) {
+        String batchId = UUID.randomUUID().toString();
+        long now = System.currentTimeMillis();
+        Map<String, ImportJob> jobs = new LinkedHashMap<>();
+        for (String url : urls) {
+            if (url == null || url.trim().isEmpty()) continue;
+            String canonical = canonicalize(url);
+            if (jobs.containsKey(canonical)) continue;
+            ImportJob job = new ImportJob();
+            job.canonicalUrl = canonical;
+            job.url = url.trim();
+            job.batchId = batchId;
+            job.createdAt = now;
+            job.updatedAt = now;
+            jobs.put(canonical, job);
+        }
+
+        List<String> canonicalUrls = new ArrayList<>(jobs.keySet());
+        database.runInTransaction(() -> {
+            jobDao.insertJobs(new ArrayList<>(jobs.values()));
+            for (int i = 0; i < canonicalUrls.size(); i += SQL_CHUNK) {
+                List<String> chunk = canonicalUrls.subList(i, Math.min(canonicalUrls.size(), i + SQL_CHUNK));
+                jobDao.reassignUnfinished(chunk, batchId);
+                jobDao.reassignDeleted(chunk, batchId);
+            }
+        });
+        Log.d(TAG, jobs.size() + " URL(s) distincte(s) sur " + urls.size() + " dans le lot " + batchId);
+        return batchId;
+    }
+
+    /**
+     * Lots ayant encore des URLs en attente, après suppression des URLs terminées trop anciennes
+     */
+    List<String> unfinishedBatches() {
+        jobDao.deleteFinishedBefore(System.currentTimeMillis() - FINISHED_JOB_RETENTION_MS);
+        return jobDao.getUnfinishedBatchIds();
+    }
+
+    /**
+     * Importe les URLs en attente des lots donnés ; retourne les recettes enregistrées.
+     * Une annulation enregistre les recettes déjà téléchargées puis lève InterruptedIOException.
+     */
+    List<Recipe> run(List<String> batchIds, BulkImportHandle handle, MultipleImportCallback callback) throws IOException {
+        startedAt = System.nanoTime();
+        List<ImportJob> jobs = new ArrayList<>();
+        for (String batchId : batchIds) {
+            jobs.addAll(jobDao.getPendingJobs(batchId));
+        }
+        jobs = interleaveByHost(jobs);
+        total = jobs.size();
+        if (total == 0) {
+            handle.setStats(snapshot());
+            return imported;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(FETCH_THREADS, total));
+        try {
+            CompletionService<FetchResult> completed = new ExecutorCompletionService<>(pool);
+            for (ImportJob job : jobs) {
+                completed.submit(() -> fetch(job, handle));
+            }
+
+            while (processed < total && !handle.isCancelled()) {
+                FetchResult result;
+                try {
+                    result = completed.take().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    // fetch() ne laisse passer que des erreurs inattendues : l'URL reste en attente
+                    Log.e(TAG, "Erreur inattendue pendant l'import", e.getCause());
+                    processed++;
+                    retryLater++;
+                    continue;
+                }
+                if (result == null) {
+                    // Tâche annulée avant son téléchargement
+                    break;
+                }
+
+                apply(result);
+                processed++;
+                if (unsavedJobs.size() >= SAVE_BATCH_SIZE) {
+                    flush();
+                }
+                handle.setStats(snapshot());
+                callback.onProgress(processed, total);
+            }
+            // Les recettes déjà téléchargées sont gardées, même en cas d'annulation
+            flush();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        ImportStats stats = snapshot();
+        handle.setStats(stats);
+        Log.i(TAG, stats.toString());
+        if (handle.isCancelled() || Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Import annulé");
+        }
+        return imported;
+    }
+
+    // ===== TÉLÉCHARGEMENT ET ANALYSE (threads du pool) =====
+
+    private FetchResult fetch(ImportJob job, BulkImportHandle handle) throws InterruptedException {
+        if (handle.isCancelled()) {
+            return null;
+        }
+        String host = hostOf(job.canonicalUrl);
+        Connection.Response response;
+        long waitStart = System.nanoTime();
+        hostLimiter.acquire(host);
+        long fetchStart = System.nanoTime();
+        throttleNanos.addAndGet(fetchStart - waitStart);
+        try {
+            response = Jsoup.connect(job.url)
+                .userAgent(RecipeImporter.USER_AGENT)
+                .timeout(RecipeImporter.FETCH_TIMEOUT_MS)
+                .execute();
+            response.bufferUp();
+        } catch (HttpStatusException e) {
+            int status = e.getStatusCode();
+            if (status == 429 || status == 503) {
+                hostLimiter.backOff(host, HOST_BACKOFF_MS);
+            }
+            boolean permanent = status >= 400 && status < 500 && status != 408 && status != 429;
+            return new FetchResult(job, null, null, "HTTP " + status, permanent);
+        } catch (MalformedURLException | IllegalArgumentException e) {
+            return new FetchResult(job, null, null, "URL invalide: " + e.getMessage(), true);
+        } catch (IOException e) {
+            return new FetchResult(job, null, null, "Erreur de connexion: " + e.getMessage(), false);
+        } finally {
+            hostLimiter.release(host);
+            fetchNanos.addAndGet(System.nanoTime() - fetchStart);
+        }
+
+        long parseStart = System.nanoTime();
+        try (InputStream body = response.bodyStream()) {
+            RecipeExtractor.Result extracted = importer.extractor().extract(body, response.charset(), job.url);
+            if (extracted.recipe == null) {
+                return new FetchResult(job, null, null, "Aucune recette trouvée", true);
+            }
+            String pageCanonical = extracted.canonicalUrl != null ? canonicalize(extracted.canonicalUrl) : null;
+            return new FetchResult(job, extracted.recipe, pageCanonical, null, false);
+        } catch (IOException | RuntimeException e) {
+            return new FetchResult(job, null, null, "Erreur lors de l'analyse: " + e.getMessage(), true);
+        } finally {
+            parseNanos.addAndGet(System.nanoTime() - parseStart);
+        }
+    }
+
+    // ===== ENREGISTREMENT (thread coordinateur) =====
+
+    private void apply(FetchResult result) {
+        ImportJob job = result.job;
+        job.updatedAt = System.currentTimeMillis();
+
+        if (result.recipe == null) {
+            job.attempts++;
+            job.lastError = result.error;
+            if (result.permanent || job.attempts >= MAX_ATTEMPTS) {
+                job.status = ImportJob.STATUS_FAILED;
+                failed++;
+            } else {
+                // Reste en attente : repris au prochain resumeBulkImports()
+                retryLater++;
+            }
+            Log.w(TAG, "Import impossible " + job.url + ": " + result.error);
+            unsavedJobs.add(job);
+            return;
+        }
+
+        // Deux liens vers la même page (redirection, paramètres) : la page déclare son URL canonique
+        String pageCanonical = result.pageCanonicalUrl;
+        boolean duplicate = seenUrls.contains(job.canonicalUrl)
+            || (pageCanonical != null && !pageCanonical.equals(job.canonicalUrl)
+                && (seenUrls.contains(pageCanonical) || jobDao.countDone(pageCanonical) > 0));
+        seenUrls.add(job.canonicalUrl);
+        if (pageCanonical != null) {
+            seenUrls.add(pageCanonical);
+        }
+
+        job.status = ImportJob.STATUS_DONE;
+        job.lastError = null;
+        if (duplicate) {
+            duplicates++;
+        } else {
+            Recipe recipe = result.recipe;
+            recipe.setId(UUID.randomUUID().toString());
+            job.recipeId = recipe.getId();
+            unsavedRecipes.add(recipe);
+        }
+        unsavedJobs.add(job);
+    }
+
+    private void flush() {
+        if (unsavedJobs.isEmpty()) return;
+        long start = System.nanoTime();
+        database.runInTransaction(() -> {
+            if (!unsavedRecipes.isEmpty()) {
+                database.recipeDao().insertRecipes(unsavedRecipes);
+            }
+            jobDao.updateJobs(unsavedJobs);
+        });
+        saveNanos += System.nanoTime() - start;
+        imported.addAll(unsavedRecipes);
+        unsavedRecipes.clear();
+        unsavedJobs.clear();
+    }
+
+    private ImportStats snapshot() {
+        return new ImportStats(total, processed, imported.size() + unsavedRecipes.size(), duplicates, failed,
+            retryLater, throttleNanos.get(), fetchNanos.get(), parseNanos.get(), saveNanos,
+            System.nanoTime() - startedAt);
+    }
+
+    // ===== UTILITAIRES =====
+
+    /**
+     * Alterne les sites dans l'ordre de traitement : les threads ne s'accumulent pas sur
+     * un même site en attendant leur tour
+     */
+    private static List<ImportJob> interleaveByHost(List<ImportJob> jobs) {
+        Map<String, Deque<ImportJob>> byHost = new LinkedHashMap<>();
+        for (ImportJob job : jobs) {
+            String host = hostOf(job.canonicalUrl);
+            Deque<ImportJob> queue = byHost.get(host);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                byHost.put(host, queue);
+            }
+            queue.add(job);
+        }
+        List<ImportJob> ordered = new ArrayList<>(jobs.size());
+        while (!byHost.isEmpty()) {
+            Iterator<Deque<ImportJob>> queues = byHost.values().iterator();
+            while (queues.hasNext()) {
+                Deque<ImportJob> queue = queues.next();
+                ordered.add(queue.poll());
+                if (queue.isEmpty()) {
+                    queues.remove();
+                }
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * URL normalisée pour le dédoublonnage : schéma et hôte en minuscules, sans port par défaut,
+     * fragment, barre finale ni paramètres de suivi (utm_*, fbclid, gclid)
+     */
+    static String canonicalize(String url) {
+        String trimmed = url.trim();
+        if (!trimmed.contains("://")) {
+            trimmed = "https://" + trimmed;
+        }
+        try {
+            URI uri = new URI(trimmed);
+            String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+            String host = uri.getHost() != null ? uri.getHost().toLowerCase(Locale.ROOT) : "";
+            int port = uri.getPort();
+            if ((port == 80 && scheme.equals("http")) || (port == 443 && scheme.equals("https"))) {
+                port = -1;
+            }
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            if (path.length() > 1 && path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+
+            StringBuilder canonical = new StringBuilder(scheme).append("://").append(host);
+            if (port != -1) {
+                canonical.append(':').append(port);
+            }
+            canonical.append(path);
+            if (uri.getRawQuery() != null) {
+                String separator = "?";
+                for (String parameter : uri.getRawQuery().split("&")) {
+                    String name = parameter.split("=", 2)[0].toLowerCase(Locale.ROOT);
+                    if (parameter.isEmpty() || name.startsWith("utm_") || name.equals("fbclid") || name.equals("gclid")) {
+                        continue;
+                    }
+                    canonical.append(separator).append(parameter);
+                    separator = "&";
+                }
+            }
+            return canonical.toString();
+        } catch (URISyntaxException | NullPointerException e) {
+            return trimmed;
+        }
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = new URI(url).getHost();
+            return host != null ? host : "";
+        } catch (URISyntaxException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Limite par site : nombre de requêtes simultanées et délai minimal entre deux débuts de requête
+     */
+    private static final class HostLimiter {
+        private static final class HostSlot {
+            final Semaphore permits = new Semaphore(MAX_PER_HOST, true);
+            long nextStart;
+        }
+
+        private final Map<String, HostSlot> slots = new HashMap<>();
+
+        void acquire(String host) throws InterruptedException {
+            HostSlot slot = slot(host);
+            slot.permits.acquire();
+            long wait;
+            synchronized (slot) {
+                long now = System.nanoTime();
+                long start = Math.max(now, slot.nextStart);
+                slot.nextStart = start + TimeUnit.MILLISECONDS.toNanos(MIN_HOST_INTERVAL_MS);
+                wait = start - now;
+            }
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    slot.permits.release();
+                    throw e;
+                }
+            }
+        }
+
+        void release(String host) {
+            slot(host).permits.release();
+        }
+
+        void backOff(String host, long millis) {
+            HostSlot slot = slot(host);
+            synchronized (slot) {
+                slot.nextStart = Math.max(slot.nextStart, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+            }
+        }
+
+        private synchronized HostSlot slot(String host) {
+            HostSlot slot = slots.get(host);
+            if (slot == null) {
+                slot = new HostSlot();
+                slots.put(host, slot);
+            }
+            return slot;
+        }
+    }
+}
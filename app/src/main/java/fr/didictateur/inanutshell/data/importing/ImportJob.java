@@ -0,0 +1,33 @@
+package fr.didictateur.inanutshell.data.importing;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * URL d'un import en masse, persistée pour pouvoir reprendre l'import après un arrêt de l'application.
+ * La clé est l'URL canonique : une même recette n'est importée qu'une fois, quel que soit le lien suivi.
+ */
+@Entity(tableName = "import_jobs", indices = {@Index("batchId")})
+public class ImportJob {
+    public static final int STATUS_PENDING = 0;
+    public static final int STATUS_DONE = 1;
+    public static final int STATUS_FAILED = 2;
+    
+    @PrimaryKey
+    @NonNull
+    public String canonicalUrl = "";
+    
+    public String url;              // URL telle que fournie par l'utilisateur
+    public String batchId;          // Import en masse auquel appartient l'URL
+    public int status = STATUS_PENDING;
+    public int attempts;            // Tentatives de téléchargement déjà faites
+    public String lastError;
+    public String recipeId;         // Recette créée (null pour un doublon)
+    public long createdAt;
+    public long updatedAt;
+    
+    public ImportJob() {
+    }
+}
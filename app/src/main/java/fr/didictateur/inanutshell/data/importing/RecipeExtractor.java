@@ -0,0 +1,364 @@
+package fr.didictateur.inanutshell.data.importing;
+
+import android.util.Log;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import fr.didictateur.inanutshell.data.model.Recipe;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extraction de la recette d'une page web sans construire son DOM quand c'est possible.
+ *
+ * Le HTML est lu en flux et seuls les blocs script application/ld+json sont gardés ; la lecture
+ * s'arrête au premier bloc qui décrit une recette, souvent dans l'en-tête de la page. Sans JSON-LD
+ * exploitable, les octets déjà lus et le reste de la page sont confiés à Jsoup (Microdata, puis
+ * heuristiques HTML). Le résultat est mémorisé par site : pour un site sans JSON-LD, la page
+ * suivante part directement vers Jsoup.
+ */
+final class RecipeExtractor {
+    private static final String TAG = "RecipeExtractor";
+    private static final int MAX_CACHED_HOSTS = 256;
+    // Taille maximale d'un bloc JSON-LD ; au-delà, le bloc est ignoré
+    private static final int MAX_BLOCK_SIZE = 2 * 1024 * 1024;
+    // Début de page examiné pour trouver le jeu de caractères déclaré
+    private static final int CHARSET_SNIFF_SIZE = 1024;
+    private static final Pattern META_CHARSET =
+        Pattern.compile("<meta[^>]+charset\\s*=\\s*[\"']?([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ATTRIBUTE =
+        Pattern.compile("([\\w:-]+)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s>]+))");
+
+    private enum Strategy {
+        JSON_LD,
+        DOM
+    }
+
+    /**
+     * Recette trouvée et URL canonique déclarée par la page (null si absente ou non vue)
+     */
+    static final class Result {
+        final Recipe recipe;
+        final String canonicalUrl;
+
+        Result(Recipe recipe, String canonicalUrl) {
+            this.recipe = recipe;
+            this.canonicalUrl = canonicalUrl;
+        }
+    }
+
+    private final RecipeImporter importer;
+    private final Map<String, Strategy> strategies = new LinkedHashMap<String, Strategy>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Strategy> eldest) {
+            return size() > MAX_CACHED_HOSTS;
+        }
+    };
+
+    RecipeExtractor(RecipeImporter importer) {
+        this.importer = importer;
+    }
+
+    /**
+     * Lit la page et en extrait la recette ; le flux n'est pas fermé
+     *
+     * @param charset jeu de caractères annoncé par le serveur, ou null
+     */
+    Result extract(InputStream body, String charset, String url) throws IOException {
+        String host = hostOf(url);
+        RecordingInputStream recorded = new RecordingInputStream(body);
+        HtmlScanner scanner = null;
+
+        if (strategy(host) != Strategy.DOM) {
+            byte[] prefix = readPrefix(recorded);
+            Charset decoding = charsetOf(charset, prefix);
+            scanner = new HtmlScanner(new InputStreamReader(
+                new SequenceInputStream(new ByteArrayInputStream(prefix), recorded), decoding));
+            String block;
+            while ((block = scanner.nextJsonLd()) != null) {
+                Recipe recipe = importer.parseJsonLdBlock(block);
+                if (recipe != null) {
+                    remember(host, Strategy.JSON_LD);
+                    return new Result(recipe, resolve(url, scanner.canonicalHref));
+                }
+            }
+        }
+
+        // Pas de JSON-LD exploitable : analyse complète de la page
+        recorded.drain();
+        Document doc = Jsoup.parse(new ByteArrayInputStream(recorded.bytes()), charset, url);
+        Element link = doc.selectFirst("link[rel=canonical]");
+        String canonical = link != null && !link.absUrl("href").isEmpty() ? link.absUrl("href") : null;
+
+        if (scanner == null) {
+            // Site mémorisé sans JSON-LD : vérifier qu'il n'en a pas ajouté depuis
+            Recipe recipe = importer.parseJsonLd(doc);
+            if (recipe != null) {
+                remember(host, Strategy.JSON_LD);
+                return new Result(recipe, canonical);
+            }
+        }
+        remember(host, Strategy.DOM);
+        return new Result(importer.parseWithoutJsonLd(doc), canonical);
+    }
+
+    private synchronized Strategy strategy(String host) {
+        return strategies.get(host);
+    }
+
+    private synchronized void remember(String host, Strategy strategy) {
+        if (strategies.put(host, strategy) != strategy) {
+            Log.d(TAG, "Stratégie d'extraction pour " + host + ": " + strategy);
+        }
+    }
+
+    private static byte[] readPrefix(InputStream in) throws IOException {
+        byte[] prefix = new byte[CHARSET_SNIFF_SIZE];
+        int length = 0;
+        int read;
+        while (length < prefix.length && (read = in.read(prefix, length, prefix.length - length)) != -1) {
+            length += read;
+        }
+        return length == prefix.length ? prefix : java.util.Arrays.copyOf(prefix, length);
+    }
+
+    /**
+     * Jeu de caractères de l'en-tête HTTP, sinon celui déclaré dans la page, sinon UTF-8
+     */
+    private static Charset charsetOf(String declared, byte[] prefix) {
+        String name = declared;
+        if (name == null) {
+            Matcher matcher = META_CHARSET.matcher(new String(prefix, StandardCharsets.ISO_8859_1));
+            if (matcher.find()) {
+                name = matcher.group(1);
+            }
+        }
+        try {
+            return name != null ? Charset.forName(name) : StandardCharsets.UTF_8;
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private static String resolve(String base, String href) {
+        if (href == null || href.isEmpty()) return null;
+        try {
+            return new URI(base).resolve(href.trim()).toString();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = new URI(url).getHost();
+            return host != null ? host.toLowerCase(Locale.ROOT) : "";
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    /**
+     * Parcours du HTML en flux, à la recherche des balises script et link. Le contenu des autres
+     * scripts est sauté pour ne pas confondre du code JavaScript avec des balises.
+     */
+    private static final class HtmlScanner {
+        private final Reader reader;
+        private final char[] chunk = new char[16 * 1024];
+        private final StringBuilder window = new StringBuilder();
+        private boolean eof;
+        String canonicalHref;
+
+        HtmlScanner(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Contenu du bloc JSON-LD suivant, ou null en fin de page
+         */
+        String nextJsonLd() throws IOException {
+            while (true) {
+                int tag = indexOfTag(0);
+                if (tag < 0) {
+                    // Garder la fin de la fenêtre : une balise peut être coupée entre deux lectures
+                    window.delete(0, Math.max(0, window.length() - 7));
+                    if (!fill()) return null;
+                    continue;
+                }
+                int end = window.indexOf(">", tag);
+                while (end < 0) {
+                    if (!fill()) return null;
+                    end = window.indexOf(">", tag);
+                }
+                String opening = window.substring(tag, end + 1);
+                window.delete(0, end + 1);
+
+                if (startsWithIgnoreCase(opening, "<link")) {
+                    Map<String, String> attributes = attributes(opening);
+                    String rel = attributes.get("rel");
+                    if (canonicalHref == null && rel != null && rel.toLowerCase(Locale.ROOT).contains("canonical")) {
+                        canonicalHref = attributes.get("href");
+                    }
+                    continue;
+                }
+
+                String type = attributes(opening).get("type");
+                boolean jsonLd = type != null && type.trim().toLowerCase(Locale.ROOT).equals("application/ld+json");
+                String content = readUntilScriptEnd(jsonLd);
+                if (jsonLd && content != null) {
+                    return content;
+                }
+            }
+        }
+
+        /**
+         * Lit jusqu'à la balise fermante ; retourne le contenu s'il est demandé et pas trop long
+         */
+        private String readUntilScriptEnd(boolean keep) throws IOException {
+            int searchFrom = 0;
+            boolean tooLong = false;
+            while (true) {
+                int close = indexOfIgnoreCase("</script", searchFrom);
+                if (close >= 0) {
+                    String content = keep && !tooLong ? window.substring(0, close) : null;
+                    window.delete(0, close);
+                    return content;
+                }
+                if (!keep || window.length() > MAX_BLOCK_SIZE) {
+                    tooLong = keep;
+                    window.delete(0, Math.max(0, window.length() - 8));
+                }
+                searchFrom = Math.max(0, window.length() - 8);
+                if (!fill()) return null;
+            }
+        }
+
+        private int indexOfTag(int from) {
+            int script = indexOfIgnoreCase("<script", from);
+            int link = indexOfIgnoreCase("<link", from);
+            if (script < 0) return link;
+            if (link < 0) return script;
+            return Math.min(script, link);
+        }
+
+        private int indexOfIgnoreCase(String needle, int from) {
+            int last = window.length() - needle.length();
+            for (int i = from; i <= last; i++) {
+                if (regionMatches(i, needle)) {
+                    // "<script" ne doit pas correspondre à "<scripts" ou "<linked"
+                    int after = i + needle.length();
+                    if (needle.charAt(0) == '<' && after < window.length() && Character.isLetterOrDigit(window.charAt(after))) {
+                        continue;
+                    }
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean regionMatches(int offset, String needle) {
+            for (int j = 0; j < needle.length(); j++) {
+                if (Character.toLowerCase(window.charAt(offset + j)) != needle.charAt(j)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean fill() throws IOException {
+            if (eof) return false;
+            int read = reader.read(chunk);
+            if (read == -1) {
+                eof = true;
+                return false;
+            }
+            window.append(chunk, 0, read);
+            return true;
+        }
+
+        private static boolean startsWithIgnoreCase(String text, String prefix) {
+            return text.regionMatches(true, 0, prefix, 0, prefix.length());
+        }
+
+        private static Map<String, String> attributes(String tag) {
+            Map<String, String> attributes = new LinkedHashMap<>();
+            Matcher matcher = ATTRIBUTE.matcher(tag);
+            while (matcher.find()) {
+                String value = matcher.group(2) != null ? matcher.group(2)
+                    : matcher.group(3) != null ? matcher.group(3) : matcher.group(4);
+                attributes.put(matcher.group(1).toLowerCase(Locale.ROOT), value);
+            }
+            return attributes;
+        }
+    }
+
+    /**
+     * Garde une copie des octets lus, pour confier la page entière à Jsoup si besoin
+     */
+    private static final class RecordingInputStream extends FilterInputStream {
+        private final ByteArrayOutputStream copy = new ByteArrayOutputStream(32 * 1024);
+
+        RecordingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                copy.write(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Tout octet doit passer par read() pour être copié
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        void drain() throws IOException {
+            byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // Copié par read()
+            }
+        }
+
+        byte[] bytes() {
+            return copy.toByteArray();
+        }
+    }
+}
@@ -5,23 +5,32 @@ import android.util.Log;
 import org.json.JSONObject;
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONTokener;
+import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
+import fr.didictateur.inanutshell.data.database.AppDatabase;
 import fr.didictateur.inanutshell.data.model.Recipe;
 import fr.didictateur.inanutshell.data.model.Ingredient;
 import fr.didictateur.inanutshell.data.model.Instruction;
 import fr.didictateur.inanutshell.data.network.NetworkManager;
+import fr.didictateur.inanutshell.utils.ImageUtils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.InputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Gestionnaire pour l'import de recettes depuis différentes sources
@@ -32,10 +41,13 @@ import java.util.concurrent.Executors;
 public class RecipeImporter {
     
     private static final String TAG = "RecipeImporter";
+    static final String USER_AGENT = "Mozilla/5.0 (compatible; InANutshell Recipe Importer)";
+    static final int FETCH_TIMEOUT_MS = 10000;
     private static RecipeImporter instance;
     private ExecutorService executorService;
     private NetworkManager networkManager;
     private Context context;
+    private final RecipeExtractor extractor = new RecipeExtractor(this);
     
     // Formats supportés
     public enum ImportFormat {
@@ -60,10 +72,126 @@ public class RecipeImporter {
         void onProgress(int processed, int total);
     }
     
+    public interface ArchiveImportCallback {
+        void onSuccess(ArchiveImportResult result);
+        void onError(String error);
+        /**
+         * @param totalBytes taille de l'archive, -1 si inconnue
+         */
+        void onProgress(int imported, long bytesRead, long totalBytes);
+    }
+    
+    /**
+     * Bilan d'un import d'archive ; les recettes sont déjà enregistrées en base
+     */
+    public static final class ArchiveImportResult {
+        public final int imported;
+        public final int duplicates;
+        public final int failed;
+        public final int images;
+        
+        ArchiveImportResult(int imported, int duplicates, int failed, int images) {
+            this.imported = imported;
+            this.duplicates = duplicates;
+            this.failed = failed;
+            this.images = images;
+        }
+        
+        @Override
+        public String toString() {
+            return imported + " recettes importées, " + duplicates + " doublons, " + failed + " illisibles, "
+                + images + " images";
+        }
+    }
+    
+    /**
+     * Import en masse en cours : cancel() l'arrête après avoir enregistré les recettes déjà téléchargées.
+     * Les URLs restantes sont reprises par resumeBulkImports() ; une archive peut être réimportée,
+     * ses recettes déjà enregistrées sont reconnues comme doublons.
+     */
+    public static final class BulkImportHandle {
+        private volatile boolean cancelled;
+        private volatile Future<?> future;
+        private volatile ImportStats stats;
+        
+        public void cancel() {
+            cancelled = true;
+            Future<?> running = future;
+            if (running != null) {
+                running.cancel(true);
+            }
+        }
+        
+        public boolean isCancelled() {
+            return cancelled;
+        }
+        
+        /**
+         * Dernier état d'un import d'URLs, null avant le premier résultat (et pour une archive)
+         */
+        public ImportStats getStats() {
+            return stats;
+        }
+        
+        void setStats(ImportStats stats) {
+            this.stats = stats;
+        }
+    }
+    
+    /**
+     * Débit et temps par étape d'un import en masse. Les temps d'attente, de téléchargement et
+     * d'analyse sont cumulés sur tous les threads ; elapsedNanos est le temps réel écoulé.
+     */
+    public static final class ImportStats {
+        public final int total;
+        public final int processed;
+        public final int imported;
+        public final int duplicates;
+        public final int failed;
+        public final int retryLater;
+        public final long throttleNanos;
+        public final long fetchNanos;
+        public final long parseNanos;
+        public final long saveNanos;
+        public final long elapsedNanos;
+        
+        ImportStats(int total, int processed, int imported, int duplicates, int failed, int retryLater,
+                    long throttleNanos, long fetchNanos, long parseNanos, long saveNanos, long elapsedNanos) {
+            this.total = total;
+            this.processed = processed;
+            this.imported = imported;
+            this.duplicates = duplicates;
+            this.failed = failed;
+            this.retryLater = retryLater;
+            this.throttleNanos = throttleNanos;
+            this.fetchNanos = fetchNanos;
+            this.parseNanos = parseNanos;
+            this.saveNanos = saveNanos;
+            this.elapsedNanos = elapsedNanos;
+        }
+        
+        public float urlsPerSecond() {
+            return elapsedNanos > 0 ? processed * 1e9f / elapsedNanos : 0;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                "%d/%d URLs en %d ms (%.1f URL/s) : %d importées, %d doublons, %d échecs, %d à reprendre ; "
+                    + "attente %d ms, téléchargement %d ms, analyse %d ms, enregistrement %d ms",
+                processed, total, elapsedNanos / 1000000, urlsPerSecond(), imported, duplicates, failed, retryLater,
+                throttleNanos / 1000000, fetchNanos / 1000000, parseNanos / 1000000, saveNanos / 1000000);
+        }
+    }
+    
     private RecipeImporter(Context context) {
+        this(context, Executors.newFixedThreadPool(3), NetworkManager.getInstance(context));
+    }
+    
+    RecipeImporter(Context context, ExecutorService executorService, NetworkManager networkManager) {
         this.context = context;
-        this.executorService = Executors.newFixedThreadPool(3);
-        this.networkManager = NetworkManager.getInstance(context);
+        this.executorService = executorService;
+        this.networkManager = networkManager;
     }
     
     public static synchronized RecipeImporter getInstance(Context context) {
@@ -83,21 +211,15 @@ public class RecipeImporter {
             try {
                 Log.d(TAG, "Importation depuis URL: " + url);
                 
-                // Télécharger la page web
-                Document doc = Jsoup.connect(url)
-                    .userAgent("Mozilla/5.0 (compatible; InANutshell Recipe Importer)")
-                    .timeout(10000)
-                    .get();
-                
-                Recipe recipe = null;
+                // Télécharger la page web en flux : la lecture s'arrête dès que la recette est trouvée
+                Connection.Response response = Jsoup.connect(url)
+                    .userAgent(USER_AGENT)
+                    .timeout(FETCH_TIMEOUT_MS)
+                    .execute();
                 
-                // Essayer différentes méthodes de parsing
-                recipe = parseJsonLd(doc);
-                if (recipe == null) {
-                    recipe = parseMicrodata(doc);
-                }
-                if (recipe == null) {
-                    recipe = parseGenericHtml(doc);
+                Recipe recipe;
+                try (InputStream body = response.bodyStream()) {
+                    recipe = extractor.extract(body, response.charset(), url).recipe;
                 }
                 
                 if (recipe != null) {
@@ -119,65 +241,122 @@ public class RecipeImporter {
     }
     
     /**
-     * Importe plusieurs recettes depuis une liste d'URLs
+     * Importe et enregistre les recettes d'une liste d'URLs, en parallèle et sans surcharger
+     * un même site. Les URLs en double sont ignorées ; l'import peut être annulé puis repris
+     * avec resumeBulkImports().
      */
-    public void importFromUrls(List<String> urls, MultipleImportCallback callback) {
-        executorService.execute(() -> {
-            List<Recipe> recipes = new ArrayList<>();
-            int processed = 0;
-            
-            for (String url : urls) {
-                try {
-                    importFromUrlSynchronous(url, new ImportCallback() {
-                        @Override
-                        public void onSuccess(Recipe recipe) {
-                            synchronized (recipes) {
-                                recipes.add(recipe);
-                            }
-                        }
-                        
-                        @Override
-                        public void onError(String error) {
-                            Log.w(TAG, "Erreur import URL " + url + ": " + error);
-                        }
-                    });
-                } catch (Exception e) {
-                    Log.e(TAG, "Erreur import URL " + url, e);
-                }
-                
-                processed++;
-                callback.onProgress(processed, urls.size());
+    public BulkImportHandle importFromUrls(List<String> urls, MultipleImportCallback callback) {
+        BulkImportHandle handle = new BulkImportHandle();
+        handle.future = executorService.submit(() -> {
+            BulkUrlImporter bulkImporter = new BulkUrlImporter(this, AppDatabase.getInstance(context));
+            List<String> batchIds = new ArrayList<>();
+            try {
+                batchIds.add(bulkImporter.enqueue(urls));
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Impossible d'enregistrer l'import en masse", e);
+                callback.onError("Erreur lors de l'import: " + e.getMessage());
+                return;
             }
-            
+            runBulkImport(bulkImporter, batchIds, handle, callback);
+        });
+        return handle;
+    }
+    
+    /**
+     * Reprend les imports en masse interrompus (arrêt de l'application, annulation, erreurs réseau)
+     * et oublie les URLs terminées depuis longtemps. Sans import en attente, le callback n'est pas appelé.
+     */
+    public BulkImportHandle resumeBulkImports(MultipleImportCallback callback) {
+        BulkImportHandle handle = new BulkImportHandle();
+        handle.future = executorService.submit(() -> {
+            BulkUrlImporter bulkImporter = new BulkUrlImporter(this, AppDatabase.getInstance(context));
+            List<String> batchIds;
+            try {
+                batchIds = bulkImporter.unfinishedBatches();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Impossible de lire les imports en attente", e);
+                callback.onError("Erreur lors de l'import: " + e.getMessage());
+                return;
+            }
+            if (batchIds.isEmpty()) {
+                return;
+            }
+            Log.d(TAG, "Reprise de " + batchIds.size() + " import(s) en masse");
+            runBulkImport(bulkImporter, batchIds, handle, callback);
+        });
+        return handle;
+    }
+    
+    private void runBulkImport(BulkUrlImporter bulkImporter, List<String> batchIds,
+                               BulkImportHandle handle, MultipleImportCallback callback) {
+        try {
+            List<Recipe> recipes = bulkImporter.run(batchIds, handle, callback);
             if (recipes.size() > 0) {
                 callback.onSuccess(recipes);
             } else {
                 callback.onError("Aucune recette n'a pu être importée");
             }
-        });
+        } catch (InterruptedIOException e) {
+            Log.d(TAG, "Import en masse annulé");
+            callback.onError("Import annulé");
+        } catch (Exception e) {
+            Log.e(TAG, "Erreur lors de l'import en masse: " + e.getMessage(), e);
+            callback.onError("Erreur lors de l'import: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Extracteur partagé, pour que la stratégie mémorisée par site serve à tous les imports
+     */
+    RecipeExtractor extractor() {
+        return extractor;
+    }
+    
+    /**
+     * Recette d'une page déjà analysée par Jsoup, sans JSON-LD : Microdata, puis heuristiques HTML
+     */
+    Recipe parseWithoutJsonLd(Document doc) {
+        Recipe recipe = parseMicrodata(doc);
+        if (recipe == null) {
+            recipe = parseGenericHtml(doc);
+        }
+        return recipe;
     }
     
     // ===== PARSING JSON-LD (Schema.org) =====
     
-    private Recipe parseJsonLd(Document doc) {
+    Recipe parseJsonLd(Document doc) {
+        for (Element script : doc.select("script[type=application/ld+json]")) {
+            Recipe recipe = parseJsonLdBlock(script.html());
+            if (recipe != null) {
+                return recipe;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Recette d'un bloc JSON-LD : objet Recipe, tableau d'objets ou @graph. Un bloc invalide
+     * n'empêche pas d'essayer les suivants.
+     */
+    Recipe parseJsonLdBlock(String jsonContent) {
         try {
-            Elements scripts = doc.select("script[type=application/ld+json]");
+            Object value = new JSONTokener(jsonContent.trim()).nextValue();
+            JSONArray candidates;
+            if (value instanceof JSONArray) {
+                candidates = (JSONArray) value;
+            } else if (value instanceof JSONObject && ((JSONObject) value).has("@graph")) {
+                candidates = ((JSONObject) value).getJSONArray("@graph");
+            } else if (value instanceof JSONObject) {
+                candidates = new JSONArray().put(value);
+            } else {
+                return null;
+            }
             
-            for (Element script : scripts) {
-                String jsonContent = script.html();
-                JSONObject json = new JSONObject(jsonContent);
-                
-                // Gérer les arrays JSON-LD
-                if (json.has("@graph")) {
-                    JSONArray graph = json.getJSONArray("@graph");
-                    for (int i = 0; i < graph.length(); i++) {
-                        JSONObject item = graph.getJSONObject(i);
-                        if (isRecipeObject(item)) {
-                            return parseRecipeFromJsonLd(item);
-                        }
-                    }
-                } else if (isRecipeObject(json)) {
-                    return parseRecipeFromJsonLd(json);
+            for (int i = 0; i < candidates.length(); i++) {
+                JSONObject item = candidates.optJSONObject(i);
+                if (item != null && isRecipeObject(item)) {
+                    return parseRecipeFromJsonLd(item);
                 }
             }
         } catch (JSONException e) {
@@ -401,6 +580,37 @@ public class RecipeImporter {
         });
     }
     
+    /**
+     * Importe une archive de recettes (export Mealie, Paprika, ZIP de JSON et d'images) en flux.
+     * Les recettes sont enregistrées par lots et leurs images copiées dans le cache ; le flux
+     * est fermé à la fin de l'import.
+     *
+     * @param totalBytes taille de l'archive pour la progression, ou -1 si inconnue
+     */
+    public BulkImportHandle importArchive(InputStream inputStream, long totalBytes, ArchiveImportCallback callback) {
+        BulkImportHandle handle = new BulkImportHandle();
+        handle.future = executorService.submit(() -> {
+            File stagingDir = new File(context.getCacheDir(), "archive_import_" + System.nanoTime());
+            ArchiveImporter archiveImporter = new ArchiveImporter(AppDatabase.getInstance(context).recipeDao(),
+                ImageUtils.getRecipeImageDirectory(context), stagingDir);
+            try (InputStream in = inputStream) {
+                ArchiveImportResult result = archiveImporter.run(in, totalBytes, handle, callback);
+                if (result.imported > 0 || result.duplicates > 0) {
+                    callback.onSuccess(result);
+                } else {
+                    callback.onError("Aucune recette trouvée dans l'archive");
+                }
+            } catch (InterruptedIOException e) {
+                Log.d(TAG, "Import d'archive annulé");
+                callback.onError("Import annulé");
+            } catch (Exception e) {
+                Log.e(TAG, "Erreur lors de l'import d'archive: " + e.getMessage(), e);
+                callback.onError("Erreur lors de l'import: " + e.getMessage());
+            }
+        });
+        return handle;
+    }
+    
     // ===== PARSING JSON MEALIE =====
     
     private Recipe parseMealieJson(JSONObject json) throws JSONException {
@@ -536,41 +746,17 @@ public class RecipeImporter {
         return ingredient;
     }
     
-    /**
-     * Import synchrone depuis URL (pour usage interne)
-     */
-    private void importFromUrlSynchronous(String url, ImportCallback callback) throws Exception {
-        Document doc = Jsoup.connect(url)
-            .userAgent("Mozilla/5.0 (compatible; InANutshell Recipe Importer)")
-            .timeout(10000)
-            .get();
-        
-        Recipe recipe = parseJsonLd(doc);
-        if (recipe == null) {
-            recipe = parseMicrodata(doc);
-        }
-        if (recipe == null) {
-            recipe = parseGenericHtml(doc);
-        }
-        
-        if (recipe != null) {
-            // recipe.setSource(url);
-            callback.onSuccess(recipe);
-        } else {
-            callback.onError("Aucune recette trouvée");
-        }
-    }
-    
     /**
      * Lit un InputStream en String
      */
     private String readInputStream(InputStream inputStream) throws IOException {
-        StringBuilder result = new StringBuilder();
-        byte[] buffer = new byte[1024];
+        // Décodage en une fois : un caractère multi-octets peut être coupé entre deux lectures
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
         int length;
         while ((length = inputStream.read(buffer)) != -1) {
-            result.append(new String(buffer, 0, length, "UTF-8"));
+            result.write(buffer, 0, length);
         }
-        return result.toString();
+        return result.toString("UTF-8");
     }
 }
@@ -4,11 +4,15 @@ import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
 import androidx.lifecycle.LiveData;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * DAO pour la gestion des repas planifiés
@@ -71,6 +75,9 @@ public interface MealPlanDao {
     @Query("SELECT * FROM meal_plans WHERE server_id = :serverId")
     MealPlan getMealPlanByServerIdSync(String serverId);
     
+    @Query("SELECT * FROM meal_plans WHERE server_id IN (:serverIds)")
+    List<MealPlan> getMealPlansByServerIdsSync(List<String> serverIds);
+    
     @Query("UPDATE meal_plans SET is_synced = 1, needs_sync = 0, last_sync_date = :syncDate WHERE id = :id")
     void markAsSynced(int id, Date syncDate);
     
@@ -83,6 +90,21 @@ public interface MealPlanDao {
     @Query("SELECT * FROM meal_plans WHERE last_sync_date IS NULL OR last_sync_date < :since ORDER BY created_at ASC")
     List<MealPlan> getMealPlansSyncedBefore(Date since);
     
+    @Query("SELECT * FROM meal_plans ORDER BY id ASC")
+    List<MealPlan> getAllMealPlansSync();
+    
+    /**
+     * Page de meal plans triés par id, après l'id donné (0 pour la première page), pour la sauvegarde
+     */
+    @Query("SELECT * FROM meal_plans WHERE id > :afterId ORDER BY id ASC LIMIT :limit")
+    List<MealPlan> getMealPlansAfter(int afterId, int limit);
+    
+    @Query("SELECT COUNT(*) FROM meal_plans")
+    int getMealPlanCount();
+    
+    @Query("DELETE FROM meal_plans")
+    void deleteAllMealPlans();
+    
     // Méthodes synchrones pour les opérations en arrière-plan
     @Insert
     long insertSync(MealPlan mealPlan);
@@ -90,6 +112,53 @@ public interface MealPlanDao {
     @Update
     void updateSync(MealPlan mealPlan);
     
+    @Update
+    void updateAllSync(List<MealPlan> mealPlans);
+    
+    @Insert
+    List<Long> insertAllSync(List<MealPlan> mealPlans);
+    
+    /**
+     * Insère ou met à jour des meal plans serveur en une seule transaction.
+     * La recherche des existants se fait par requêtes IN (...) plutôt qu'une par meal plan ;
+     * les meal plans modifiés localement et pas encore envoyés sont conservés.
+     *
+     * @return nombre de meal plans écrits
+     */
+    @Transaction
+    default int upsertServerMealPlans(List<MealPlan> serverPlans) {
+        // Limite SQLite de 999 paramètres par requête
+        final int maxParams = 500;
+        
+        Map<String, MealPlan> existingByServerId = new HashMap<>();
+        List<String> serverIds = new ArrayList<>(serverPlans.size());
+        for (MealPlan plan : serverPlans) {
+            if (plan.serverId != null) serverIds.add(plan.serverId);
+        }
+        for (int i = 0; i < serverIds.size(); i += maxParams) {
+            List<String> chunk = serverIds.subList(i, Math.min(i + maxParams, serverIds.size()));
+            for (MealPlan existing : getMealPlansByServerIdsSync(chunk)) {
+                existingByServerId.put(existing.serverId, existing);
+            }
+        }
+        
+        List<MealPlan> toInsert = new ArrayList<>();
+        List<MealPlan> toUpdate = new ArrayList<>();
+        for (MealPlan plan : serverPlans) {
+            MealPlan existing = plan.serverId != null ? existingByServerId.get(plan.serverId) : null;
+            if (existing == null) {
+                toInsert.add(plan);
+            } else if (!existing.needsSync) {
+                plan.id = existing.id;
+                toUpdate.add(plan);
+            }
+        }
+        
+        if (!toInsert.isEmpty()) insertAllSync(toInsert);
+        if (!toUpdate.isEmpty()) updateAllSync(toUpdate);
+        return toInsert.size() + toUpdate.size();
+    }
+    
     @Query("SELECT * FROM meal_plans WHERE id = :id")
     MealPlan getByIdSync(int id);
 }
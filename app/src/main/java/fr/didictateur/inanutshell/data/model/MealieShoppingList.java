@@ -0,0 +1,92 @@
+package fr.didictateur.inanutshell.data.model;
+
+import com.google.gson.annotations.SerializedName;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Modèle de liste de courses compatible avec l'API Mealie
+ * Basé sur l'API Mealie v1.x groups/shopping/lists endpoint
+ */
+public class MealieShoppingList {
+
+    @SerializedName("id")
+    private String id;
+
+    @SerializedName("name")
+    private String name;
+
+    @SerializedName("list_items")
+    private List<Item> listItems;
+
+    @SerializedName("update_at")
+    private String updateAt;
+
+    /**
+     * Article d'une liste de courses Mealie
+     */
+    public static class Item {
+
+        @SerializedName("id")
+        private String id;
+
+        @SerializedName("note")
+        private String note;
+
+        @SerializedName("quantity")
+        private double quantity;
+
+        @SerializedName("checked")
+        private boolean checked;
+
+        @SerializedName("position")
+        private int position;
+
+        public Item() {}
+
+        public Item(String note, double quantity, boolean checked, int position) {
+            this.note = note;
+            this.quantity = quantity;
+            this.checked = checked;
+            this.position = position;
+        }
+
+        public String getId() { return id; }
+        public void setId(String id) { this.id = id; }
+
+        public String getNote() { return note; }
+        public void setNote(String note) { this.note = note; }
+
+        public double getQuantity() { return quantity; }
+        public void setQuantity(double quantity) { this.quantity = quantity; }
+
+        public boolean isChecked() { return checked; }
+        public void setChecked(boolean checked) { this.checked = checked; }
+
+        public int getPosition() { return position; }
+        public void setPosition(int position) { this.position = position; }
+    }
+
+    // Constructeurs
+    public MealieShoppingList() {
+        this.listItems = new ArrayList<>();
+    }
+
+    public MealieShoppingList(String name) {
+        this();
+        this.name = name;
+    }
+
+    // Getters et Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public List<Item> getListItems() { return listItems; }
+    public void setListItems(List<Item> listItems) { this.listItems = listItems; }
+
+    public String getUpdateAt() { return updateAt; }
+    public void setUpdateAt(String updateAt) { this.updateAt = updateAt; }
+}
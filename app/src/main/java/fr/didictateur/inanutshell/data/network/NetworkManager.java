@@ -4,15 +4,22 @@ import fr.didictateur.inanutshell.MealieApplication;
 import fr.didictateur.inanutshell.data.api.MealieApiService;
 import fr.didictateur.inanutshell.config.ServerConfig;
 import fr.didictateur.inanutshell.config.MultiServerManager;
+import fr.didictateur.inanutshell.config.ServerScorer;
 import fr.didictateur.inanutshell.network.RetryInterceptor;
+import fr.didictateur.inanutshell.network.GzipRequestInterceptor;
+import fr.didictateur.inanutshell.network.HttpClientProvider;
+import fr.didictateur.inanutshell.network.CircuitBreakerInterceptor;
+import fr.didictateur.inanutshell.network.CircuitBreakerRegistry;
 import fr.didictateur.inanutshell.network.NetworkStateManager;
+import fr.didictateur.inanutshell.network.RequestScheduler;
+import fr.didictateur.inanutshell.network.ServerTlsProvider;
 import fr.didictateur.inanutshell.cache.SmartCacheInterceptor;
 import fr.didictateur.inanutshell.network.ErrorHandler;
 import fr.didictateur.inanutshell.performance.PerformanceManager;
+import fr.didictateur.inanutshell.performance.NetworkMetricsInterceptor;
 import fr.didictateur.inanutshell.logging.AppLogger;
 import okhttp3.OkHttpClient;
 import okhttp3.logging.HttpLoggingInterceptor;
-import okhttp3.Cache;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 import android.content.Context;
@@ -24,16 +31,21 @@ public class NetworkManager {
     private static NetworkManager instance;
     private MealieApiService apiService;
     private Retrofit retrofit;
+    private final java.util.Map<String, Retrofit> retrofitByServer = new java.util.concurrent.ConcurrentHashMap<>();
     
     // Nouveaux gestionnaires techniques intégrés
     private MultiServerManager multiServerManager;
     private RetryInterceptor retryInterceptor;
     private SmartCacheInterceptor cacheInterceptor;
+    private GzipRequestInterceptor gzipInterceptor;
     private NetworkStateManager networkStateManager;
     private ErrorHandler errorHandler;
     private PerformanceManager performanceManager;
     private AppLogger logger;
     private Context context;
+    private fr.didictateur.inanutshell.sync.SyncSnapshotStore snapshotStore;
+    private final java.util.concurrent.ExecutorService writeExecutor = java.util.concurrent.Executors.newSingleThreadExecutor();
+    private final android.os.Handler mainHandler = new android.os.Handler(android.os.Looper.getMainLooper());
     
     private NetworkManager() {
         // L'initialisation sera faite dans initialize()
@@ -56,6 +68,7 @@ public class NetworkManager {
             // Intercepteurs avec constructeurs corrects
             this.retryInterceptor = new RetryInterceptor(); // Constructor par défaut
             this.cacheInterceptor = new SmartCacheInterceptor(context, SmartCacheInterceptor.CacheStrategy.BALANCED);
+            this.gzipInterceptor = new GzipRequestInterceptor(context);
             
             logger.logInfo("NetworkManager", "Tous les composants techniques initialisés");
         } catch (Exception e) {
@@ -68,6 +81,7 @@ public class NetworkManager {
             this.multiServerManager = null;
             this.retryInterceptor = null;
             this.cacheInterceptor = null;
+            this.gzipInterceptor = null;
         }
         
         // Observer les changements de serveur pour reconfigurer
@@ -118,21 +132,42 @@ public class NetworkManager {
      * Configuration de Retrofit avec un serveur spécifique (nouvelle méthode intégrée)
      */
     private void setupRetrofitWithServer(ServerConfig server) {
+        HttpClientProvider clientProvider = HttpClientProvider.getInstance(context);
+        
+        // Connexion ouverte en avance vers le serveur actif
+        clientProvider.prewarm(server);
+        
+        // Réutiliser le Retrofit déjà construit pour ce serveur et cette configuration
+        String retrofitKey = server.getId() + "|" + server.getApiUrl() + "|" + server.getTimeoutSeconds()
+            + "|" + server.isAllowSelfSigned();
+        Retrofit cached = retrofitByServer.get(retrofitKey);
+        if (cached != null) {
+            retrofit = cached;
+            apiService = retrofit.create(MealieApiService.class);
+            return;
+        }
+        
         if (logger != null) {
             logger.logInfo("NetworkManager", "Setting up Retrofit with server: " + server.getName());
         }
         
-        // Configuration du client HTTP avec tous les intercepteurs techniques
-        OkHttpClient.Builder httpClient = new OkHttpClient.Builder()
-            .connectTimeout(server.getTimeoutSeconds(), TimeUnit.SECONDS)
-            .readTimeout(server.getTimeoutSeconds(), TimeUnit.SECONDS)
-            .writeTimeout(server.getTimeoutSeconds(), TimeUnit.SECONDS);
+        // Client dérivé du client racine (pool, dispatcher et cache partagés)
+        // avec tous les intercepteurs techniques
+        OkHttpClient.Builder httpClient = clientProvider.newServerBuilder(server);
+        
+        // Statuts HTTP par endpoint (les phases sont mesurées par l'EventListener du client racine)
+        if (performanceManager != null) {
+            httpClient.addInterceptor(new NetworkMetricsInterceptor(performanceManager.getNetworkMetrics()));
+        }
         
-        // Ajouter le cache intelligent
-        if (cacheInterceptor != null && context != null) {
-            Cache cache = SmartCacheInterceptor.createOptimizedCache(context);
-            httpClient.cache(cache);
-            httpClient.addInterceptor(cacheInterceptor);
+        // Ajouter le cache intelligent (le cache disque est porté par le client racine),
+        // lié à ce client pour que les revalidations passent par le même serveur
+        SmartCacheInterceptor.ServerInterceptor serverCacheInterceptor = null;
+        if (cacheInterceptor != null) {
+            serverCacheInterceptor = cacheInterceptor.forServer();
+            httpClient.addInterceptor(serverCacheInterceptor);
+            // Durée de fraîcheur par défaut quand le serveur n'en fournit pas
+            httpClient.addNetworkInterceptor(cacheInterceptor.getFreshnessInterceptor());
         }
         
         // Ajouter le retry automatique
@@ -140,6 +175,19 @@ public class NetworkManager {
             httpClient.addInterceptor(retryInterceptor);
         }
         
+        // Disjoncteur du serveur : échec immédiat si le circuit est ouvert,
+        // placé après le retry pour compter chaque tentative
+        httpClient.addInterceptor(new CircuitBreakerInterceptor(
+            CircuitBreakerRegistry.getInstance().forServer(server)));
+        
+        // Mesure de la latence et des erreurs réelles pour la sélection du serveur
+        httpClient.addInterceptor(ServerScorer.getInstance().interceptorFor(server));
+        
+        // Compression des corps de requête si le serveur l'accepte
+        if (gzipInterceptor != null) {
+            httpClient.addInterceptor(gzipInterceptor);
+        }
+        
         // Logging (uniquement en debug)
         if (android.util.Log.isLoggable("NetworkManager", android.util.Log.DEBUG)) {
             HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
@@ -147,9 +195,10 @@ public class NetworkManager {
             httpClient.addInterceptor(loggingInterceptor);
         }
         
-        // Certificats auto-signés si autorisés
-        if (server.isAllowSelfSigned()) {
-            // TODO: Ajouter la configuration SSL pour certificats auto-signés
+        // Certificats auto-signés si autorisés : épinglage à la première connexion,
+        // trust manager propre à ce serveur
+        if (server.isAllowSelfSigned() && context != null) {
+            ServerTlsProvider.getInstance(context).configure(httpClient, server);
         }
         
         String baseUrl = server.getApiUrl();
@@ -167,14 +216,20 @@ public class NetworkManager {
                 new fr.didictateur.inanutshell.data.model.RecipeDeserializer())
             .create();
         
+        OkHttpClient client = httpClient.build();
+        if (serverCacheInterceptor != null) {
+            serverCacheInterceptor.attachClient(client);
+        }
+        
         // Configuration de Retrofit
         retrofit = new Retrofit.Builder()
             .baseUrl(baseUrl)
-            .client(httpClient.build())
+            .client(client)
             .addConverterFactory(GsonConverterFactory.create(gson))
             .build();
         
         apiService = retrofit.create(MealieApiService.class);
+        retrofitByServer.put(retrofitKey, retrofit);
         
         if (logger != null) {
             logger.logInfo("NetworkManager", "Retrofit configured successfully for server: " + server.getName());
@@ -185,8 +240,8 @@ public class NetworkManager {
      * Configuration Retrofit legacy pour compatibilité
      */
     private void setupRetrofitLegacy() {
-        // Configuration du client HTTP
-        OkHttpClient.Builder httpClient = new OkHttpClient.Builder()
+        // Configuration du client HTTP, dérivé du client racine
+        OkHttpClient.Builder httpClient = HttpClientProvider.getInstance(context).getRootClient().newBuilder()
             .connectTimeout(30, TimeUnit.SECONDS)
             .readTimeout(30, TimeUnit.SECONDS)
             .writeTimeout(30, TimeUnit.SECONDS);
@@ -311,6 +366,40 @@ public class NetworkManager {
         return url != null && !url.isEmpty() && token != null && !token.isEmpty();
     }
     
+    /**
+     * Enveloppe un callback pour que les appels idempotents soient rejoués
+     * sans bloquer le dispatcher OkHttp
+     */
+    public <T> retrofit2.Callback<T> withRetry(retrofit2.Callback<T> callback) {
+        if (retryInterceptor == null) {
+            return callback;
+        }
+        return new fr.didictateur.inanutshell.network.RetryingCallback<>(retryInterceptor, callback);
+    }
+    
+    /**
+     * Envoie l'appel via l'ordonnanceur de priorités, avec rejeu des appels idempotents
+     */
+    private <T> RequestScheduler.Ticket enqueue(retrofit2.Call<T> call, RequestScheduler.Priority priority,
+                                                Object tag, retrofit2.Callback<T> callback) {
+        return RequestScheduler.getInstance().enqueue(call, priority, tag, callback, this::withRetry);
+    }
+    
+    /**
+     * Annule les requêtes en attente ou en vol portant cette étiquette ; leurs callbacks ne sont pas appelés
+     */
+    public void cancelRequests(Object tag) {
+        RequestScheduler.getInstance().cancel(tag);
+    }
+    
+    public SmartCacheInterceptor getCacheInterceptor() {
+        return cacheInterceptor;
+    }
+    
+    public GzipRequestInterceptor getGzipInterceptor() {
+        return gzipInterceptor;
+    }
+    
     public OkHttpClient getOkHttpClient() {
         // Récupérer le client OkHttp de Retrofit
         if (retrofit != null) {
@@ -380,7 +469,7 @@ public class NetworkManager {
         retrofit2.Call<fr.didictateur.inanutshell.data.response.LoginResponse> call = 
             apiService.login(email, password);
         
-        call.enqueue(new retrofit2.Callback<fr.didictateur.inanutshell.data.response.LoginResponse>() {
+        enqueue(call, RequestScheduler.Priority.INTERACTIVE, null, new retrofit2.Callback<fr.didictateur.inanutshell.data.response.LoginResponse>() {
             @Override
             public void onResponse(retrofit2.Call<fr.didictateur.inanutshell.data.response.LoginResponse> call, 
                                  retrofit2.Response<fr.didictateur.inanutshell.data.response.LoginResponse> response) {
@@ -495,7 +584,7 @@ public class NetworkManager {
         retrofit2.Call<fr.didictateur.inanutshell.data.response.RecipeListResponse> call = 
             apiService.getRecipes(authHeader, 1, 50, "name", "asc", "");
         
-        call.enqueue(new retrofit2.Callback<fr.didictateur.inanutshell.data.response.RecipeListResponse>() {
+        enqueue(call, RequestScheduler.Priority.INTERACTIVE, null, new retrofit2.Callback<fr.didictateur.inanutshell.data.response.RecipeListResponse>() {
             @Override
             public void onResponse(retrofit2.Call<fr.didictateur.inanutshell.data.response.RecipeListResponse> call, 
                                  retrofit2.Response<fr.didictateur.inanutshell.data.response.RecipeListResponse> response) {
@@ -525,6 +614,15 @@ public class NetworkManager {
     
     // Get recipes with pagination
     public void getRecipesPage(int page, int perPage, RecipesCallback callback) {
+        getRecipesPage(page, perPage, RequestScheduler.Priority.INTERACTIVE, null, callback);
+    }
+    
+    /**
+     * Page de recettes avec classe de priorité ; tag permet d'annuler la requête
+     * via cancelRequests (ex: écran quitté)
+     */
+    public void getRecipesPage(int page, int perPage, RequestScheduler.Priority priority, Object tag,
+                               RecipesCallback callback) {
         String authHeader = getAuthHeader();
         if (authHeader.isEmpty()) {
             callback.onError("Non authentifié");
@@ -534,7 +632,7 @@ public class NetworkManager {
         retrofit2.Call<fr.didictateur.inanutshell.data.response.RecipeListResponse> call = 
             apiService.getRecipes(authHeader, page, perPage, "name", "asc", "");
         
-        call.enqueue(new retrofit2.Callback<fr.didictateur.inanutshell.data.response.RecipeListResponse>() {
+        enqueue(call, priority, tag, new retrofit2.Callback<fr.didictateur.inanutshell.data.response.RecipeListResponse>() {
             @Override
             public void onResponse(retrofit2.Call<fr.didictateur.inanutshell.data.response.RecipeListResponse> call, 
                                  retrofit2.Response<fr.didictateur.inanutshell.data.response.RecipeListResponse> response) {
@@ -643,7 +741,7 @@ public class NetworkManager {
         retrofit2.Call<okhttp3.ResponseBody> call = 
             apiService.createRecipe(authHeader, recipe);
         
-        call.enqueue(new retrofit2.Callback<okhttp3.ResponseBody>() {
+        enqueue(call, RequestScheduler.Priority.INTERACTIVE, null, new retrofit2.Callback<okhttp3.ResponseBody>() {
             @Override
             public void onResponse(retrofit2.Call<okhttp3.ResponseBody> call, 
                                  retrofit2.Response<okhttp3.ResponseBody> response) {
@@ -692,7 +790,7 @@ public class NetworkManager {
         
         retrofit2.Call<Void> call = apiService.deleteRecipe(authHeader, recipeId);
         
-        call.enqueue(new retrofit2.Callback<Void>() {
+        enqueue(call, RequestScheduler.Priority.INTERACTIVE, null, new retrofit2.Callback<Void>() {
             @Override
             public void onResponse(retrofit2.Call<Void> call, retrofit2.Response<Void> response) {
                 android.util.Log.d("NetworkManager", "Delete recipe response code: " + response.code());
@@ -723,11 +821,86 @@ public class NetworkManager {
             callback.onError("Non authentifié");
             return;
         }
+        if (context == null || recipe.getId() == null) {
+            updateRecipeFull(authHeader, recipeId, recipe, callback);
+            return;
+        }
+        
+        // Écritures sérialisées : chaque diff part de la version enregistrée par l'écriture précédente
+        writeExecutor.execute(() -> {
+            try {
+                fr.didictateur.inanutshell.data.model.Recipe updatedRecipe = updateRecipeSynchronous(authHeader, recipeId, recipe);
+                mainHandler.post(() -> callback.onSuccess(updatedRecipe));
+            } catch (Exception e) {
+                String errorMsg = handleError(e, "Erreur lors de la modification");
+                mainHandler.post(() -> callback.onError(errorMsg));
+            }
+        });
+    }
+    
+    /**
+     * Version synchrone : PATCH des seuls champs modifiés depuis la dernière version synchronisée,
+     * PUT complet si elle est inconnue ou si le serveur ne gère pas PATCH
+     */
+    private fr.didictateur.inanutshell.data.model.Recipe updateRecipeSynchronous(String authHeader, String recipeId,
+            fr.didictateur.inanutshell.data.model.Recipe recipe) throws Exception {
+        fr.didictateur.inanutshell.sync.SyncSnapshotStore store = getSnapshotStore();
+        com.google.gson.JsonObject base = store.loadRecipeJson(recipe.getId());
+        fr.didictateur.inanutshell.data.model.Recipe updatedRecipe = null;
+        
+        if (base != null) {
+            com.google.gson.JsonObject current = RecipePatch.toTree(recipe);
+            com.google.gson.JsonObject patch = RecipePatch.build(base, current);
+            if (patch.size() == 0) {
+                android.util.Log.d("NetworkManager", "Recipe unchanged since last sync: " + recipeId);
+                return recipe;
+            }
+            
+            byte[] body = RecipePatch.toBytes(patch);
+            android.util.Log.d("NetworkManager", String.format(java.util.Locale.ROOT,
+                "PATCH recipe %s: %d field(s), %d bytes instead of %d",
+                recipeId, patch.size(), body.length, RecipePatch.toBytes(current).length));
+            
+            retrofit2.Response<fr.didictateur.inanutshell.data.model.Recipe> response = RequestScheduler.getInstance().execute(
+                apiService.patchRecipe(authHeader, recipeId, RecipePatch.toRequestBody(body)),
+                RequestScheduler.Priority.INTERACTIVE);
+            if (response.isSuccessful()) {
+                updatedRecipe = response.body() != null ? response.body() : recipe;
+            } else if (response.code() != 405 && response.code() != 501) {
+                throw new Exception("Erreur lors de la modification: " + response.code());
+            }
+        }
+        
+        if (updatedRecipe == null) {
+            retrofit2.Response<fr.didictateur.inanutshell.data.model.Recipe> response = RequestScheduler.getInstance().execute(
+                apiService.updateRecipe(authHeader, recipeId, recipe), RequestScheduler.Priority.INTERACTIVE);
+            if (!response.isSuccessful()) {
+                throw new Exception("Erreur lors de la modification: " + response.code());
+            }
+            updatedRecipe = response.body() != null ? response.body() : recipe;
+        }
         
+        // Nouvelle base pour le prochain diff
+        store.saveRecipe(updatedRecipe.getId() != null ? updatedRecipe : recipe);
+        return updatedRecipe;
+    }
+    
+    private synchronized fr.didictateur.inanutshell.sync.SyncSnapshotStore getSnapshotStore() {
+        if (snapshotStore == null) {
+            snapshotStore = new fr.didictateur.inanutshell.sync.SyncSnapshotStore(context);
+        }
+        return snapshotStore;
+    }
+    
+    /**
+     * PUT de la recette complète (recette sans identifiant local)
+     */
+    private void updateRecipeFull(String authHeader, String recipeId, fr.didictateur.inanutshell.data.model.Recipe recipe,
+                                  UpdateRecipeCallback callback) {
         retrofit2.Call<fr.didictateur.inanutshell.data.model.Recipe> call = 
             apiService.updateRecipe(authHeader, recipeId, recipe);
         
-        call.enqueue(new retrofit2.Callback<fr.didictateur.inanutshell.data.model.Recipe>() {
+        enqueue(call, RequestScheduler.Priority.INTERACTIVE, null, new retrofit2.Callback<fr.didictateur.inanutshell.data.model.Recipe>() {
             @Override
             public void onResponse(retrofit2.Call<fr.didictateur.inanutshell.data.model.Recipe> call, 
                                  retrofit2.Response<fr.didictateur.inanutshell.data.model.Recipe> response) {
@@ -772,7 +945,7 @@ public class NetworkManager {
         retrofit2.Call<fr.didictateur.inanutshell.data.model.Recipe> call = 
             apiService.getRecipe(authHeader, recipeId);
         
-        call.enqueue(new retrofit2.Callback<fr.didictateur.inanutshell.data.model.Recipe>() {
+        enqueue(call, RequestScheduler.Priority.INTERACTIVE, null, new retrofit2.Callback<fr.didictateur.inanutshell.data.model.Recipe>() {
             @Override
             public void onResponse(retrofit2.Call<fr.didictateur.inanutshell.data.model.Recipe> call, 
                                  retrofit2.Response<fr.didictateur.inanutshell.data.model.Recipe> response) {
@@ -837,7 +1010,7 @@ public class NetworkManager {
         retrofit2.Call<java.util.List<fr.didictateur.inanutshell.data.model.Tool>> call = 
             apiService.getTools("Bearer " + token);
             
-        call.enqueue(new retrofit2.Callback<java.util.List<fr.didictateur.inanutshell.data.model.Tool>>() {
+        enqueue(call, RequestScheduler.Priority.INTERACTIVE, null, new retrofit2.Callback<java.util.List<fr.didictateur.inanutshell.data.model.Tool>>() {
             @Override
             public void onResponse(retrofit2.Call<java.util.List<fr.didictateur.inanutshell.data.model.Tool>> call, 
                                  retrofit2.Response<java.util.List<fr.didictateur.inanutshell.data.model.Tool>> response) {
@@ -1006,7 +1179,7 @@ public class NetworkManager {
         retrofit2.Call<fr.didictateur.inanutshell.data.response.MealPlanListResponse> call = 
             apiService.getMealPlans(authHeader, 1, 1000, startDate, endDate);
         
-        call.enqueue(new retrofit2.Callback<fr.didictateur.inanutshell.data.response.MealPlanListResponse>() {
+        enqueue(call, RequestScheduler.Priority.INTERACTIVE, null, new retrofit2.Callback<fr.didictateur.inanutshell.data.response.MealPlanListResponse>() {
             @Override
             public void onResponse(retrofit2.Call<fr.didictateur.inanutshell.data.response.MealPlanListResponse> call, 
                                  retrofit2.Response<fr.didictateur.inanutshell.data.response.MealPlanListResponse> response) {
@@ -1104,7 +1277,7 @@ public class NetworkManager {
         retrofit2.Call<fr.didictateur.inanutshell.data.model.MealieMealPlan> call = 
             apiService.createMealPlan(authHeader, mealPlan);
         
-        call.enqueue(new retrofit2.Callback<fr.didictateur.inanutshell.data.model.MealieMealPlan>() {
+        enqueue(call, RequestScheduler.Priority.INTERACTIVE, null, new retrofit2.Callback<fr.didictateur.inanutshell.data.model.MealieMealPlan>() {
             @Override
             public void onResponse(retrofit2.Call<fr.didictateur.inanutshell.data.model.MealieMealPlan> call, 
                                  retrofit2.Response<fr.didictateur.inanutshell.data.model.MealieMealPlan> response) {
@@ -1142,7 +1315,7 @@ public class NetworkManager {
         retrofit2.Call<fr.didictateur.inanutshell.data.model.MealieMealPlan> call = 
             apiService.updateMealPlan(authHeader, planId, mealPlan);
         
-        call.enqueue(new retrofit2.Callback<fr.didictateur.inanutshell.data.model.MealieMealPlan>() {
+        enqueue(call, RequestScheduler.Priority.INTERACTIVE, null, new retrofit2.Callback<fr.didictateur.inanutshell.data.model.MealieMealPlan>() {
             @Override
             public void onResponse(retrofit2.Call<fr.didictateur.inanutshell.data.model.MealieMealPlan> call, 
                                  retrofit2.Response<fr.didictateur.inanutshell.data.model.MealieMealPlan> response) {
@@ -1178,7 +1351,7 @@ public class NetworkManager {
         
         retrofit2.Call<Void> call = apiService.deleteMealPlan(authHeader, planId);
         
-        call.enqueue(new retrofit2.Callback<Void>() {
+        enqueue(call, RequestScheduler.Priority.INTERACTIVE, null, new retrofit2.Callback<Void>() {
             @Override
             public void onResponse(retrofit2.Call<Void> call, retrofit2.Response<Void> response) {
                 if (response.isSuccessful()) {
@@ -0,0 +1,52 @@
+package fr.didictateur.inanutshell.data.network;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import fr.didictateur.inanutshell.data.model.Recipe;
+import fr.didictateur.inanutshell.sync.SyncPayloadCodec;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+
+/**
+ * Corps de PATCH d'une recette : champs modifiés depuis la dernière version synchronisée.
+ * Un champ vidé est envoyé à null pour être effacé côté serveur.
+ */
+final class RecipePatch {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    // Champs propres à l'appareil ou gérés par le serveur, jamais envoyés
+    private static final Set<String> EXCLUDED_FIELDS = new HashSet<>(Arrays.asList(
+        "favorite", "userRating", "difficulty", "userId", "dateUpdated", "updatedAt"));
+
+    // Même sérialisation que SyncSnapshotStore, pour comparer des arbres équivalents
+    private static final Gson TREE_GSON = new Gson();
+    private static final Gson BODY_GSON = new GsonBuilder().serializeNulls().create();
+
+    private RecipePatch() {
+    }
+
+    static JsonObject toTree(Recipe recipe) {
+        return TREE_GSON.toJsonTree(recipe).getAsJsonObject();
+    }
+
+    static JsonObject build(JsonObject base, JsonObject current) {
+        JsonObject patch = SyncPayloadCodec.diff(base, current);
+        for (String field : EXCLUDED_FIELDS) {
+            patch.remove(field);
+        }
+        return patch;
+    }
+
+    static byte[] toBytes(JsonObject json) {
+        return BODY_GSON.toJson(json).getBytes(java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    static RequestBody toRequestBody(byte[] bytes) {
+        return RequestBody.create(bytes, JSON);
+    }
+}
@@ -0,0 +1,45 @@
+package fr.didictateur.inanutshell.data.response;
+
+import com.google.gson.annotations.SerializedName;
+import fr.didictateur.inanutshell.data.model.MealieShoppingList;
+import java.util.List;
+
+/**
+ * Réponse API paginée pour les listes de courses Mealie
+ */
+public class ShoppingListListResponse {
+
+    @SerializedName("items")
+    private List<MealieShoppingList> items;
+
+    @SerializedName("total")
+    private int total;
+
+    @SerializedName("page")
+    private int page;
+
+    @SerializedName("per_page")
+    private int perPage;
+
+    @SerializedName("total_pages")
+    private int totalPages;
+
+    // Constructeurs
+    public ShoppingListListResponse() {}
+
+    // Getters et Setters
+    public List<MealieShoppingList> getItems() { return items; }
+    public void setItems(List<MealieShoppingList> items) { this.items = items; }
+
+    public int getTotal() { return total; }
+    public void setTotal(int total) { this.total = total; }
+
+    public int getPage() { return page; }
+    public void setPage(int page) { this.page = page; }
+
+    public int getPerPage() { return perPage; }
+    public void setPerPage(int perPage) { this.perPage = perPage; }
+
+    public int getTotalPages() { return totalPages; }
+    public void setTotalPages(int totalPages) { this.totalPages = totalPages; }
+}
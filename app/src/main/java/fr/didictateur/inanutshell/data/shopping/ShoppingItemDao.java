@@ -4,6 +4,7 @@ import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
 import androidx.lifecycle.LiveData;
 
@@ -84,4 +85,38 @@ public interface ShoppingItemDao {
     
     @Query("DELETE FROM shopping_items WHERE shopping_list_id = :listId AND is_checked = 1")
     void deleteCheckedItems(int listId);
+    
+    @Query("SELECT * FROM shopping_items WHERE shopping_list_id = :listId ORDER BY category, name")
+    List<ShoppingItem> getItemsByListIdSync(int listId);
+    
+    @Query("SELECT * FROM shopping_items ORDER BY shopping_list_id ASC, id ASC")
+    List<ShoppingItem> getAllItemsSync();
+    
+    /**
+     * Page d'articles de toutes les listes, triés par id, après l'id donné (0 pour la première page)
+     */
+    @Query("SELECT * FROM shopping_items WHERE id > :afterId ORDER BY id ASC LIMIT :limit")
+    List<ShoppingItem> getItemsAfter(int afterId, int limit);
+    
+    // Articles de plusieurs listes (au plus 999 ids par requête)
+    @Query("SELECT * FROM shopping_items WHERE shopping_list_id IN (:listIds) ORDER BY id ASC")
+    List<ShoppingItem> getItemsByListIdsSync(List<Integer> listIds);
+    
+    @Query("SELECT COUNT(*) FROM shopping_items")
+    int getItemCount();
+    
+    @Query("DELETE FROM shopping_items")
+    void deleteAllItems();
+    
+    /**
+     * Remplace tous les articles d'une liste en une seule transaction (synchronisation)
+     */
+    @Transaction
+    default void replaceItemsForList(int listId, List<ShoppingItem> items) {
+        deleteByListId(listId);
+        for (ShoppingItem item : items) {
+            item.shoppingListId = listId;
+        }
+        insertAll(items);
+    }
 }
@@ -50,6 +50,16 @@ public class ShoppingList {
     @ColumnInfo(name = "source_id")
     public String sourceId; // ID de la recette ou du planning
     
+    // Champs de synchronisation avec Mealie
+    @ColumnInfo(name = "server_id")
+    public String serverId; // ID sur le serveur Mealie
+    
+    @ColumnInfo(name = "needs_sync")
+    public boolean needsSync; // Indique si nécessite synchronisation
+    
+    @ColumnInfo(name = "last_sync_date")
+    public Date lastSyncDate; // Dernière synchronisation
+    
     // Enum pour la source de génération
     public enum GenerationSource {
         MANUAL("Manuelle"),
@@ -75,6 +85,7 @@ public class ShoppingList {
         this.totalItems = 0;
         this.checkedItems = 0;
         this.generationSource = GenerationSource.MANUAL;
+        this.needsSync = true;
     }
     
     @Ignore
@@ -189,6 +200,31 @@ public class ShoppingList {
         this.sourceId = sourceId;
     }
     
+    // Getters et Setters pour synchronisation
+    public String getServerId() {
+        return serverId;
+    }
+    
+    public void setServerId(String serverId) {
+        this.serverId = serverId;
+    }
+    
+    public boolean needsSync() {
+        return needsSync;
+    }
+    
+    public void setNeedsSync(boolean needsSync) {
+        this.needsSync = needsSync;
+    }
+    
+    public Date getLastSyncDate() {
+        return lastSyncDate;
+    }
+    
+    public void setLastSyncDate(Date lastSyncDate) {
+        this.lastSyncDate = lastSyncDate;
+    }
+    
     // Méthodes utilitaires
     public int getProgress() {
         if (totalItems == 0) return 0;
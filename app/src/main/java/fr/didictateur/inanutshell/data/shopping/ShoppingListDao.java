@@ -52,15 +52,61 @@ public interface ShoppingListDao {
     @Query("SELECT COUNT(*) FROM shopping_lists WHERE is_completed = 0")
     int getActiveListsCount();
     
-    @Query("UPDATE shopping_lists SET is_completed = 1, completed_at = :completedAt WHERE id = :id")
+    @Query("UPDATE shopping_lists SET is_completed = 1, completed_at = :completedAt, updated_at = :completedAt, needs_sync = 1 WHERE id = :id")
     void markAsCompleted(int id, Date completedAt);
     
-    @Query("UPDATE shopping_lists SET is_completed = 0, completed_at = null WHERE id = :id")
-    void markAsActive(int id);
+    @Query("UPDATE shopping_lists SET is_completed = 0, completed_at = null, updated_at = :updatedAt, needs_sync = 1 WHERE id = :id")
+    void markAsActive(int id, Date updatedAt);
     
-    @Query("UPDATE shopping_lists SET total_items = :totalItems, checked_items = :checkedItems, updated_at = :updatedAt WHERE id = :id")
+    @Query("UPDATE shopping_lists SET total_items = :totalItems, checked_items = :checkedItems, updated_at = :updatedAt, needs_sync = 1 WHERE id = :id")
     void updateItemCounts(int id, int totalItems, int checkedItems, Date updatedAt);
     
     @Query("DELETE FROM shopping_lists WHERE is_completed = 1 AND completed_at < :beforeDate")
     void deleteOldCompletedLists(Date beforeDate);
+    
+    // Méthodes de synchronisation avec Mealie
+    @Query("SELECT * FROM shopping_lists WHERE needs_sync = 1 ORDER BY updated_at ASC")
+    List<ShoppingList> getUnsyncedListsSync();
+    
+    @Query("SELECT * FROM shopping_lists WHERE server_id = :serverId")
+    ShoppingList getByServerIdSync(String serverId);
+    
+    // Au plus 999 paramètres SQLite : découper la liste côté appelant
+    @Query("SELECT * FROM shopping_lists WHERE server_id IN (:serverIds)")
+    List<ShoppingList> getByServerIdsSync(List<String> serverIds);
+    
+    @Query("UPDATE shopping_lists SET server_id = :serverId, needs_sync = 0, last_sync_date = :syncDate WHERE id = :id")
+    void markAsSynced(int id, String serverId, Date syncDate);
+    
+    /**
+     * Marque la liste synchronisée seulement si elle n'a pas été modifiée depuis l'envoi.
+     * Retourne 0 si une modification locale est arrivée pendant la requête.
+     */
+    @Query("UPDATE shopping_lists SET server_id = :serverId, needs_sync = 0, last_sync_date = :syncDate " +
+           "WHERE id = :id AND updated_at = :sentUpdatedAt")
+    int markAsSyncedIfUnchanged(int id, String serverId, Date syncDate, Date sentUpdatedAt);
+    
+    @Query("UPDATE shopping_lists SET server_id = :serverId WHERE id = :id")
+    void setServerId(int id, String serverId);
+    
+    @Query("SELECT COUNT(*) FROM shopping_lists WHERE needs_sync = 1")
+    int getUnsyncedCount();
+    
+    @Query("SELECT * FROM shopping_lists ORDER BY id ASC")
+    List<ShoppingList> getAllListsSync();
+    
+    /**
+     * Page de listes triées par id, après l'id donné (0 pour la première page), pour la sauvegarde
+     */
+    @Query("SELECT * FROM shopping_lists WHERE id > :afterId ORDER BY id ASC LIMIT :limit")
+    List<ShoppingList> getListsAfter(int afterId, int limit);
+    
+    @Query("DELETE FROM shopping_lists")
+    void deleteAllLists();
+    
+    @Insert
+    long insertSync(ShoppingList shoppingList);
+    
+    @Update
+    void updateSync(ShoppingList shoppingList);
 }
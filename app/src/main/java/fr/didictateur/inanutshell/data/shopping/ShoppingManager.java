@@ -83,7 +83,7 @@ public class ShoppingManager {
     public void reopenShoppingList(int listId, ShoppingCallback<Void> callback) {
         executorService.execute(() -> {
             try {
-                shoppingListDao.markAsActive(listId);
+                shoppingListDao.markAsActive(listId, new Date());
                 callback.onSuccess(null);
             } catch (Exception e) {
                 callback.onError(e);
@@ -9,12 +9,16 @@ import fr.didictateur.inanutshell.data.meal.MealPlan;
 import fr.didictateur.inanutshell.data.meal.MealPlanDao;
 import fr.didictateur.inanutshell.data.response.MealPlanListResponse;
 import fr.didictateur.inanutshell.data.network.NetworkManager;
+import fr.didictateur.inanutshell.network.RequestScheduler;
+import fr.didictateur.inanutshell.sync.BatchSyncExecutor;
 
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -29,19 +33,36 @@ public class MealPlanSyncManager {
     private static final String TAG = "MealPlanSync";
     private static MealPlanSyncManager instance;
     
+    // Envoi : tentatives par meal plan et taille des lots d'écriture du statut
+    private static final int MAX_UPLOAD_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 2000;
+    private static final int STATUS_FLUSH_BATCH = 20;
+    
+    // Téléchargement : taille de page, fenêtre de dates par requête et cadence de progression
+    private static final int DOWNLOAD_PAGE_SIZE = 100;
+    private static final long DOWNLOAD_WINDOW_MS = 31L * 24 * 60 * 60 * 1000;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    
     private final Context context;
     private final MealPlanDao mealPlanDao;
     private final NetworkManager networkManager;
     private final ExecutorService executor;
+    private BatchSyncExecutor uploader;
     
-    // Format de date pour l'API Mealie
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+    // Format de date pour l'API Mealie (SimpleDateFormat n'est pas thread-safe)
+    private final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        }
+    };
     
     private MealPlanSyncManager(Context context, MealPlanDao mealPlanDao) {
         this.context = context.getApplicationContext();
         this.mealPlanDao = mealPlanDao;
         this.networkManager = NetworkManager.getInstance(context);
         this.executor = Executors.newSingleThreadExecutor();
+        this.uploader = new BatchSyncExecutor(BatchSyncExecutor.DEFAULT_PARALLELISM);
     }
     
     public static synchronized MealPlanSyncManager getInstance(Context context, MealPlanDao mealPlanDao) {
@@ -51,6 +72,16 @@ public class MealPlanSyncManager {
         return instance;
     }
     
+    /**
+     * Configure le nombre d'envois simultanés vers le serveur
+     */
+    public synchronized void setUploadParallelism(int parallelism) {
+        if (parallelism == uploader.getParallelism()) return;
+        BatchSyncExecutor previous = uploader;
+        uploader = new BatchSyncExecutor(parallelism);
+        previous.shutdown();
+    }
+    
     /**
      * Interface pour les callbacks de synchronisation
      */
@@ -95,7 +126,10 @@ public class MealPlanSyncManager {
     }
     
     /**
-     * Télécharge les meal plans depuis le serveur
+     * Télécharge les meal plans depuis le serveur.
+     * La plage de dates est découpée en fenêtres paginées ; chaque page est écrite
+     * par un upsert groupé en une transaction et la progression est limitée en fréquence.
+     * Doit être appelée depuis l'executor.
      */
     private void downloadMealPlansFromServer(Date startDate, Date endDate, SyncCallback callback) {
         String authHeader = networkManager.getAuthHeader();
@@ -105,62 +139,79 @@ public class MealPlanSyncManager {
         }
         
         MealieApiService apiService = networkManager.getApiService();
-        String start = dateFormat.format(startDate);
-        String end = dateFormat.format(endDate);
+        long startedAt = System.currentTimeMillis();
+        long writeTimeMs = 0;
+        int processed = 0;
+        int expected = 0;
+        long lastProgressAt = 0;
         
-        Call<MealPlanListResponse> call = apiService.getMealPlans(authHeader, 1, 1000, start, end);
-        
-        call.enqueue(new Callback<MealPlanListResponse>() {
-            @Override
-            public void onResponse(Call<MealPlanListResponse> call, Response<MealPlanListResponse> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    List<MealieMealPlan> serverMealPlans = response.body().getItems();
-                    Log.d(TAG, "Téléchargé " + serverMealPlans.size() + " meal plans du serveur");
+        try {
+            for (long windowStart = startDate.getTime(); windowStart <= endDate.getTime(); windowStart += DOWNLOAD_WINDOW_MS) {
+                long windowEnd = Math.min(windowStart + DOWNLOAD_WINDOW_MS - 1, endDate.getTime());
+                String start = dateFormat.get().format(new Date(windowStart));
+                String end = dateFormat.get().format(new Date(windowEnd));
+                
+                int page = 1;
+                int pages = 1;
+                do {
+                    Response<MealPlanListResponse> response = RequestScheduler.getInstance().execute(
+                        apiService.getMealPlans(authHeader, page, DOWNLOAD_PAGE_SIZE, start, end),
+                        RequestScheduler.Priority.BACKGROUND);
+                    if (!response.isSuccessful() || response.body() == null) {
+                        Log.e(TAG, "Erreur API meal plans: " + response.code());
+                        callback.onError("Erreur serveur: " + response.code());
+                        return;
+                    }
                     
-                    // Convertir et sauvegarder les meal plans en local
-                    executor.execute(() -> {
-                        try {
-                            int processed = 0;
-                            for (MealieMealPlan serverPlan : serverMealPlans) {
-                                MealPlan localPlan = convertMealieToLocal(serverPlan);
-                                if (localPlan != null) {
-                                    // Vérifier si existe déjà en local
-                                    MealPlan existing = mealPlanDao.getMealPlanByServerIdSync(serverPlan.getId());
-                                    if (existing != null) {
-                                        // Mettre à jour
-                                        localPlan.id = existing.id;
-                                        mealPlanDao.updateSync(localPlan);
-                                    } else {
-                                        // Insérer nouveau
-                                        mealPlanDao.insertSync(localPlan);
-                                    }
-                                }
-                                processed++;
-                                final int current = processed;
-                                callback.onProgress(current, serverMealPlans.size());
-                            }
-                            callback.onSuccess("Téléchargé " + processed + " meal plans");
-                        } catch (Exception e) {
-                            Log.e(TAG, "Erreur sauvegarde meal plans", e);
-                            callback.onError("Erreur sauvegarde: " + e.getMessage());
-                        }
-                    });
-                } else {
-                    Log.e(TAG, "Erreur API meal plans: " + response.code());
-                    callback.onError("Erreur serveur: " + response.code());
-                }
-            }
-            
-            @Override
-            public void onFailure(Call<MealPlanListResponse> call, Throwable t) {
-                Log.e(TAG, "Erreur réseau meal plans", t);
-                callback.onError("Erreur réseau: " + t.getMessage());
+                    MealPlanListResponse body = response.body();
+                    List<MealieMealPlan> serverMealPlans = body.getItems();
+                    if (serverMealPlans == null || serverMealPlans.isEmpty()) break;
+                    if (page == 1) {
+                        expected += Math.max(body.getTotal(), serverMealPlans.size());
+                    }
+                    pages = body.getPages();
+                    
+                    List<MealPlan> localPlans = new ArrayList<>(serverMealPlans.size());
+                    for (MealieMealPlan serverPlan : serverMealPlans) {
+                        MealPlan localPlan = convertMealieToLocal(serverPlan);
+                        if (localPlan != null) localPlans.add(localPlan);
+                    }
+                    
+                    long writeStartedAt = System.currentTimeMillis();
+                    mealPlanDao.upsertServerMealPlans(localPlans);
+                    writeTimeMs += System.currentTimeMillis() - writeStartedAt;
+                    processed += serverMealPlans.size();
+                    
+                    long now = System.currentTimeMillis();
+                    if (now - lastProgressAt >= PROGRESS_INTERVAL_MS) {
+                        lastProgressAt = now;
+                        callback.onProgress(processed, Math.max(expected, processed));
+                    }
+                    
+                    if (serverMealPlans.size() < DOWNLOAD_PAGE_SIZE) break;
+                    page++;
+                } while (page <= pages || pages == 0);
             }
-        });
+        } catch (IOException e) {
+            Log.e(TAG, "Erreur réseau meal plans", e);
+            callback.onError("Erreur réseau: " + e.getMessage());
+            return;
+        } catch (Exception e) {
+            Log.e(TAG, "Erreur sauvegarde meal plans", e);
+            callback.onError("Erreur sauvegarde: " + e.getMessage());
+            return;
+        }
+        
+        callback.onProgress(processed, Math.max(processed, 1));
+        Log.d(TAG, "Téléchargé " + processed + " meal plans en " + (System.currentTimeMillis() - startedAt)
+            + " ms (écriture " + writeTimeMs + " ms)");
+        callback.onSuccess("Téléchargé " + processed + " meal plans");
     }
     
     /**
-     * Upload les meal plans locaux vers le serveur
+     * Upload les meal plans locaux vers le serveur.
+     * Les envois sont parallélisés, le statut est écrit par lots et seuls
+     * les échecs sont renvoyés lors des tentatives suivantes.
      */
     private void uploadLocalMealPlans(SyncCallback callback) {
         executor.execute(() -> {
@@ -174,47 +225,49 @@ public class MealPlanSyncManager {
                     return;
                 }
                 
-                String authHeader = networkManager.getAuthHeader();
-                MealieApiService apiService = networkManager.getApiService();
+                int total = localPlans.size();
+                int uploaded = 0;
+                BatchSyncExecutor batchUploader = uploader;
                 
-                int processed = 0;
-                int errors = 0;
-                
-                for (MealPlan localPlan : localPlans) {
-                    try {
-                        MealieMealPlan mealiePlan = convertLocalToMealie(localPlan);
+                for (int start = 0; start < total; start += STATUS_FLUSH_BATCH) {
+                    List<MealPlan> pending = new ArrayList<>(
+                        localPlans.subList(start, Math.min(start + STATUS_FLUSH_BATCH, total)));
+                    
+                    for (int attempt = 1; attempt <= MAX_UPLOAD_ATTEMPTS && !pending.isEmpty(); attempt++) {
+                        if (attempt > 1) {
+                            Thread.sleep(RETRY_DELAY_MS * (attempt - 1));
+                        }
                         
-                        // Upload vers le serveur
-                        Call<MealieMealPlan> call = apiService.createMealPlan(authHeader, mealiePlan);
-                        Response<MealieMealPlan> response = call.execute();
+                        final int alreadyUploaded = uploaded;
+                        BatchSyncExecutor.BatchResult<MealPlan> result = batchUploader.execute(
+                            pending,
+                            this::sendMealPlan,
+                            (processed, batchTotal) -> callback.onProgress(total + alreadyUploaded + processed, total * 2)
+                        );
                         
-                        if (response.isSuccessful() && response.body() != null) {
-                            // Marquer comme synchronisé
-                            localPlan.serverId = response.body().getId();
-                            localPlan.isSynced = true;
-                            localPlan.lastSyncDate = new Date();
-                            mealPlanDao.updateSync(localPlan);
-                            Log.d(TAG, "Meal plan uploadé: " + localPlan.recipeName);
-                        } else {
-                            Log.e(TAG, "Erreur upload meal plan: " + response.code());
-                            errors++;
+                        // Statut des succès écrit en une seule transaction
+                        if (!result.getSucceeded().isEmpty()) {
+                            mealPlanDao.updateAllSync(result.getSucceeded());
+                            uploaded += result.getSucceeded().size();
                         }
-                        
-                    } catch (Exception e) {
-                        Log.e(TAG, "Erreur upload meal plan individuel", e);
-                        errors++;
+                        pending = result.getFailed();
                     }
                     
-                    processed++;
-                    callback.onProgress(localPlans.size() + processed, localPlans.size() * 2);
+                    if (!pending.isEmpty()) {
+                        Log.e(TAG, pending.size() + " meal plans non envoyés après " + MAX_UPLOAD_ATTEMPTS + " tentatives");
+                    }
                 }
                 
+                int errors = total - uploaded;
                 if (errors == 0) {
-                    callback.onSuccess("Synchronisation terminée avec succès - " + processed + " meal plans uploadés");
+                    callback.onSuccess("Synchronisation terminée avec succès - " + uploaded + " meal plans uploadés");
                 } else {
-                    callback.onError("Synchronisation terminée avec " + errors + " erreurs sur " + processed + " meal plans");
+                    callback.onError("Synchronisation terminée avec " + errors + " erreurs sur " + total + " meal plans");
                 }
                 
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                callback.onError("Upload interrompu");
             } catch (Exception e) {
                 Log.e(TAG, "Erreur upload meal plans", e);
                 callback.onError("Erreur upload: " + e.getMessage());
@@ -222,17 +275,49 @@ public class MealPlanSyncManager {
         });
     }
     
+    /**
+     * Envoie un meal plan (création ou mise à jour selon serverId) de façon bloquante.
+     * En cas de succès, met à jour les champs de synchronisation en mémoire
+     * sans écrire en base ; l'appelant persiste le statut.
+     */
+    public void sendMealPlan(MealPlan localPlan) throws IOException {
+        String authHeader = networkManager.getAuthHeader();
+        if (authHeader.isEmpty()) {
+            throw new IOException("Non authentifié");
+        }
+        
+        MealieApiService apiService = networkManager.getApiService();
+        MealieMealPlan mealiePlan = convertLocalToMealie(localPlan);
+        
+        Call<MealieMealPlan> call = localPlan.serverId == null
+            ? apiService.createMealPlan(authHeader, mealiePlan)
+            : apiService.updateMealPlan(authHeader, localPlan.serverId, mealiePlan);
+        Response<MealieMealPlan> response = RequestScheduler.getInstance().execute(
+            call, RequestScheduler.Priority.BACKGROUND);
+        
+        if (!response.isSuccessful()) {
+            throw new IOException("Erreur upload meal plan: " + response.code());
+        }
+        
+        if (localPlan.serverId == null && response.body() != null) {
+            localPlan.serverId = response.body().getId();
+        }
+        localPlan.setSynced(true);
+        localPlan.lastSyncDate = new Date();
+        Log.d(TAG, "Meal plan uploadé: " + localPlan.recipeName);
+    }
+    
     /**
      * Convertit un MealieMealPlan en MealPlan local
      */
-    private MealPlan convertMealieToLocal(MealieMealPlan mealiePlan) {
+    public MealPlan convertMealieToLocal(MealieMealPlan mealiePlan) {
         try {
             MealPlan localPlan = new MealPlan();
             
             localPlan.serverId = mealiePlan.getId();
             localPlan.recipeId = mealiePlan.getRecipeId();
             localPlan.recipeName = mealiePlan.getTitle();
-            localPlan.mealDate = dateFormat.parse(mealiePlan.getDate());
+            localPlan.mealDate = dateFormat.get().parse(mealiePlan.getDate());
             localPlan.mealType = convertMealieTypeToLocal(mealiePlan.getEntryType());
             localPlan.notes = mealiePlan.getText();
             localPlan.servings = 1; // Default, Mealie n'a pas cette info
@@ -250,10 +335,10 @@ public class MealPlanSyncManager {
     /**
      * Convertit un MealPlan local en MealieMealPlan
      */
-    private MealieMealPlan convertLocalToMealie(MealPlan localPlan) {
+    public MealieMealPlan convertLocalToMealie(MealPlan localPlan) {
         MealieMealPlan mealiePlan = new MealieMealPlan();
         
-        mealiePlan.setDate(dateFormat.format(localPlan.mealDate));
+        mealiePlan.setDate(dateFormat.get().format(localPlan.mealDate));
         mealiePlan.setEntryType(convertLocalTypeToMealie(localPlan.mealType));
         mealiePlan.setTitle(localPlan.recipeName);
         mealiePlan.setText(localPlan.notes);
@@ -315,7 +400,8 @@ public class MealPlanSyncManager {
         MealieApiService apiService = networkManager.getApiService();
         
         Call<MealieMealPlan> call = apiService.createMealPlan(authHeader, mealiePlan);
-        call.enqueue(new Callback<MealieMealPlan>() {
+        RequestScheduler.getInstance().enqueue(call, RequestScheduler.Priority.BACKGROUND, null,
+                new Callback<MealieMealPlan>() {
             @Override
             public void onResponse(Call<MealieMealPlan> call, Response<MealieMealPlan> response) {
                 if (response.isSuccessful() && response.body() != null) {
@@ -336,7 +422,7 @@ public class MealPlanSyncManager {
             public void onFailure(Call<MealieMealPlan> call, Throwable t) {
                 callback.onError("Erreur réseau: " + t.getMessage());
             }
-        });
+        }, networkManager::withRetry);
     }
     
     private void updateMealPlanOnServer(MealPlan mealPlan, SyncCallback callback) {
@@ -350,7 +436,8 @@ public class MealPlanSyncManager {
         MealieApiService apiService = networkManager.getApiService();
         
         Call<MealieMealPlan> call = apiService.updateMealPlan(authHeader, mealPlan.serverId, mealiePlan);
-        call.enqueue(new Callback<MealieMealPlan>() {
+        RequestScheduler.getInstance().enqueue(call, RequestScheduler.Priority.BACKGROUND, null,
+                new Callback<MealieMealPlan>() {
             @Override
             public void onResponse(Call<MealieMealPlan> call, Response<MealieMealPlan> response) {
                 if (response.isSuccessful()) {
@@ -368,6 +455,6 @@ public class MealPlanSyncManager {
             public void onFailure(Call<MealieMealPlan> call, Throwable t) {
                 callback.onError("Erreur réseau: " + t.getMessage());
             }
-        });
+        }, networkManager::withRetry);
     }
 }
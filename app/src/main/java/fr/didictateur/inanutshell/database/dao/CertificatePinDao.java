@@ -0,0 +1,30 @@
+package fr.didictateur.inanutshell.database.dao;
+
+import androidx.room.*;
+import java.util.List;
+import fr.didictateur.inanutshell.config.CertificatePin;
+
+/**
+ * DAO pour les certificats épinglés des serveurs auto-signés
+ */
+@Dao
+public interface CertificatePinDao {
+    
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(CertificatePin pin);
+    
+    @Query("SELECT * FROM certificate_pins")
+    List<CertificatePin> getAll();
+    
+    @Query("SELECT * FROM certificate_pins WHERE hostPort = :hostPort")
+    CertificatePin get(String hostPort);
+    
+    @Query("UPDATE certificate_pins SET lastSeen = :timestamp WHERE hostPort = :hostPort")
+    void touch(String hostPort, long timestamp);
+    
+    @Query("DELETE FROM certificate_pins WHERE hostPort = :hostPort")
+    void delete(String hostPort);
+    
+    @Query("DELETE FROM certificate_pins WHERE serverId = :serverId")
+    void deleteForServer(int serverId);
+}
@@ -0,0 +1,144 @@
+package fr.didictateur.inanutshell.network;
+
+import android.content.Context;
+import android.util.Log;
+import fr.didictateur.inanutshell.AppDatabase;
+import fr.didictateur.inanutshell.config.CertificatePin;
+import fr.didictateur.inanutshell.database.dao.CertificatePinDao;
+import java.security.cert.X509Certificate;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import okio.ByteString;
+
+/**
+ * Certificats épinglés (trust on first use) des serveurs auto-signés.
+ *
+ * Les empreintes sont chargées en mémoire au démarrage et les écritures partent sur un thread dédié :
+ * la vérification pendant la poignée de main TLS ne touche jamais la base.
+ */
+public class CertificatePinStore {
+    private static final String TAG = "CertificatePinStore";
+    private static CertificatePinStore instance;
+
+    private static final long LOAD_TIMEOUT_MS = 2000;
+    private static final long TOUCH_INTERVAL_MS = 60 * 60 * 1000; // lastSeen écrit au plus une fois par heure
+
+    private final CertificatePinDao pinDao;
+    private final Map<String, CertificatePin> pins = new ConcurrentHashMap<>();
+    // Dernier certificat refusé par hôte, en mémoire seulement
+    private final Map<String, PinningTrustManager.PinMismatchException> mismatches = new ConcurrentHashMap<>();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final ExecutorService io = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "CertificatePinStore");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private CertificatePinStore(Context context) {
+        this(AppDatabase.getInstance(context).certificatePinDao());
+    }
+
+    CertificatePinStore(CertificatePinDao pinDao) {
+        this.pinDao = pinDao;
+        io.execute(() -> {
+            try {
+                for (CertificatePin pin : pinDao.getAll()) {
+                    pins.put(pin.hostPort, pin);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Impossible de charger les certificats épinglés", e);
+            } finally {
+                loaded.countDown();
+            }
+        });
+    }
+
+    public static synchronized CertificatePinStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new CertificatePinStore(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Indique si les empreintes sont chargées ; attend au plus LOAD_TIMEOUT_MS la première fois
+     */
+    boolean awaitLoaded() {
+        try {
+            return loaded.await(LOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public CertificatePin get(String hostPort) {
+        return pins.get(hostPort);
+    }
+
+    /**
+     * Épingle le certificat du serveur (première connexion ou nouvelle confiance accordée)
+     */
+    public void pin(String hostPort, int serverId, X509Certificate certificate) {
+        long now = System.currentTimeMillis();
+        CertificatePin pin = new CertificatePin();
+        pin.hostPort = hostPort;
+        pin.serverId = serverId;
+        pin.spkiSha256 = spkiSha256(certificate);
+        pin.subject = certificate.getSubjectX500Principal().getName();
+        pin.notAfter = certificate.getNotAfter().getTime();
+        pin.firstSeen = now;
+        pin.lastSeen = now;
+
+        pins.put(hostPort, pin);
+        mismatches.remove(hostPort);
+        io.execute(() -> pinDao.upsert(pin));
+    }
+
+    void touch(CertificatePin pin) {
+        long now = System.currentTimeMillis();
+        if (now - pin.lastSeen < TOUCH_INTERVAL_MS) return;
+        pin.lastSeen = now;
+        io.execute(() -> pinDao.touch(pin.hostPort, now));
+    }
+
+    /**
+     * Oublie le certificat épinglé : la prochaine connexion l'épinglera à nouveau
+     */
+    public void forget(String hostPort) {
+        pins.remove(hostPort);
+        mismatches.remove(hostPort);
+        io.execute(() -> pinDao.delete(hostPort));
+    }
+
+    void recordMismatch(PinningTrustManager.PinMismatchException mismatch) {
+        mismatches.put(mismatch.getHostPort(), mismatch);
+    }
+
+    /**
+     * Dernier certificat refusé pour cet hôte depuis le démarrage, ou null
+     */
+    public PinningTrustManager.PinMismatchException getMismatch(String hostPort) {
+        return mismatches.get(hostPort);
+    }
+
+    public void forgetServer(int serverId) {
+        Iterator<CertificatePin> it = pins.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().serverId == serverId) it.remove();
+        }
+        io.execute(() -> pinDao.deleteForServer(serverId));
+    }
+
+    /**
+     * SHA-256 de la clé publique (SubjectPublicKeyInfo), en Base64 (même format que CertificatePinner)
+     */
+    public static String spkiSha256(X509Certificate certificate) {
+        return ByteString.of(certificate.getPublicKey().getEncoded()).sha256().base64();
+    }
+}
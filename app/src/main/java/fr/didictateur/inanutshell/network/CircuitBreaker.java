@@ -0,0 +1,150 @@
+package fr.didictateur.inanutshell.network;
+
+/**
+ * Disjoncteur d'un serveur Mealie, alimenté par les requêtes réelles et les sondes de santé.
+ *
+ * - CLOSED : trafic normal ; FAILURE_THRESHOLD échecs consécutifs ouvrent le circuit
+ * - OPEN : les requêtes échouent immédiatement jusqu'à la fin du délai d'ouverture
+ * - HALF_OPEN : une seule requête d'essai ; succès = CLOSED, échec = OPEN avec délai doublé
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Notifié à chaque changement d'état
+     */
+    public interface StateListener {
+        void onStateChanged(CircuitBreaker breaker, State previous, State current);
+    }
+
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long BASE_OPEN_DURATION_MS = 5000;    // 5 secondes
+    private static final long MAX_OPEN_DURATION_MS = 120000;   // 2 minutes
+
+    private final int serverId;
+    private final StateListener listener;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openDurationMs = BASE_OPEN_DURATION_MS;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    CircuitBreaker(int serverId, StateListener listener) {
+        this.serverId = serverId;
+        this.listener = listener;
+    }
+
+    public int getServerId() {
+        return serverId;
+    }
+
+    /**
+     * Indique si une requête peut partir ; en HALF_OPEN, réserve l'unique requête d'essai
+     */
+    public boolean allowRequest() {
+        State previous;
+        boolean allowed;
+        synchronized (this) {
+            previous = state;
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.OPEN) {
+                if (System.currentTimeMillis() - openedAt < openDurationMs) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = false;
+            }
+            allowed = !trialInFlight;
+            trialInFlight = true;
+        }
+        notifyIfChanged(previous);
+        return allowed;
+    }
+
+    /**
+     * Indique si le serveur peut recevoir du trafic, sans réserver de requête d'essai
+     */
+    public synchronized boolean isAvailable() {
+        return state == State.CLOSED ||
+            (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMs) ||
+            (state == State.HALF_OPEN && !trialInFlight);
+    }
+
+    public void recordSuccess() {
+        State previous;
+        synchronized (this) {
+            previous = state;
+            consecutiveFailures = 0;
+            trialInFlight = false;
+            state = State.CLOSED;
+            openDurationMs = BASE_OPEN_DURATION_MS;
+        }
+        notifyIfChanged(previous);
+    }
+
+    public void recordFailure() {
+        State previous;
+        synchronized (this) {
+            previous = state;
+            consecutiveFailures++;
+            trialInFlight = false;
+            if (state == State.HALF_OPEN) {
+                open(Math.min(openDurationMs * 2, MAX_OPEN_DURATION_MS));
+            } else if (state == State.CLOSED && consecutiveFailures >= FAILURE_THRESHOLD) {
+                open(BASE_OPEN_DURATION_MS);
+            }
+        }
+        notifyIfChanged(previous);
+    }
+
+    /**
+     * Libère la requête d'essai sans résultat (appel annulé ou réponse servie par le cache)
+     */
+    public synchronized void releaseTrial() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    /**
+     * Une sonde de santé réussie sur un circuit ouvert autorise immédiatement un essai
+     */
+    public void recordProbeSuccess() {
+        State previous;
+        synchronized (this) {
+            previous = state;
+            if (state != State.OPEN) {
+                consecutiveFailures = 0;
+                return;
+            }
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        notifyIfChanged(previous);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void open(long durationMs) {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        openDurationMs = durationMs;
+    }
+
+    private void notifyIfChanged(State previous) {
+        State current = getState();
+        if (previous != current && listener != null) {
+            listener.onStateChanged(this, previous, current);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package fr.didictateur.inanutshell.network;
+
+import java.io.IOException;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Interceptor qui fait échouer immédiatement les requêtes vers un serveur dont le circuit
+ * est ouvert, et qui alimente le disjoncteur avec le résultat de chaque requête.
+ * Seules les réponses venues du réseau comptent : un appel annulé ou une réponse servie
+ * par le cache OkHttp ne dit rien de l'état du serveur et libère seulement l'essai HALF_OPEN.
+ */
+public class CircuitBreakerInterceptor implements Interceptor {
+
+    private final CircuitBreaker breaker;
+
+    public CircuitBreakerInterceptor(CircuitBreaker breaker) {
+        this.breaker = breaker;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        Request request = chain.request();
+        // Lecture du cache seul : ni refusée ni comptée
+        if (request.cacheControl().onlyIfCached()) {
+            return chain.proceed(request);
+        }
+        if (!breaker.allowRequest()) {
+            throw new CircuitOpenException(request.url().host());
+        }
+
+        boolean recorded = false;
+        try {
+            Response response = chain.proceed(request);
+            if (response.networkResponse() != null && !chain.call().isCanceled()) {
+                // Les 4xx sont des erreurs de la requête, pas du serveur
+                if (response.code() >= 500) {
+                    breaker.recordFailure();
+                } else {
+                    breaker.recordSuccess();
+                }
+                recorded = true;
+            }
+            return response;
+        } catch (IOException e) {
+            if (!chain.call().isCanceled()) {
+                breaker.recordFailure();
+                recorded = true;
+            }
+            throw e;
+        } finally {
+            if (!recorded) {
+                breaker.releaseTrial();
+            }
+        }
+    }
+
+    /**
+     * Levée lorsqu'une requête est refusée par un circuit ouvert
+     */
+    public static class CircuitOpenException extends IOException {
+        public CircuitOpenException(String host) {
+            super("Circuit ouvert pour " + host + ", requête annulée");
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package fr.didictateur.inanutshell.network;
+
+import android.util.Log;
+import fr.didictateur.inanutshell.config.ServerConfig;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Disjoncteurs par serveur, partagés entre NetworkManager (requêtes réelles)
+ * et MultiServerManager (sondes de santé et basculement)
+ */
+public class CircuitBreakerRegistry implements CircuitBreaker.StateListener {
+    private static final String TAG = "CircuitBreakerRegistry";
+    private static CircuitBreakerRegistry instance;
+
+    private final Map<Integer, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final List<CircuitBreaker.StateListener> listeners = new CopyOnWriteArrayList<>();
+
+    private CircuitBreakerRegistry() {
+    }
+
+    public static synchronized CircuitBreakerRegistry getInstance() {
+        if (instance == null) {
+            instance = new CircuitBreakerRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Disjoncteur associé à un serveur (créé à la demande)
+     */
+    public CircuitBreaker forServer(ServerConfig server) {
+        CircuitBreaker breaker = breakers.get(server.getId());
+        if (breaker == null) {
+            breaker = new CircuitBreaker(server.getId(), this);
+            CircuitBreaker existing = breakers.putIfAbsent(server.getId(), breaker);
+            if (existing != null) {
+                breaker = existing;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Indique si un serveur peut recevoir du trafic
+     */
+    public boolean isAvailable(ServerConfig server) {
+        CircuitBreaker breaker = breakers.get(server.getId());
+        return breaker == null || breaker.isAvailable();
+    }
+
+    public void remove(ServerConfig server) {
+        breakers.remove(server.getId());
+    }
+
+    public void addListener(CircuitBreaker.StateListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(CircuitBreaker.StateListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void onStateChanged(CircuitBreaker breaker, CircuitBreaker.State previous, CircuitBreaker.State current) {
+        Log.i(TAG, "Circuit du serveur " + breaker.getServerId() + ": " + previous + " -> " + current);
+        for (CircuitBreaker.StateListener listener : listeners) {
+            listener.onStateChanged(breaker, previous, current);
+        }
+    }
+}
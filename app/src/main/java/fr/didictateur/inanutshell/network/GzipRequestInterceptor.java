@@ -0,0 +1,166 @@
+package fr.didictateur.inanutshell.network;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Compression GZIP des corps de requête (JSON, texte) pour les serveurs qui l'acceptent.
+ *
+ * Mealie ne décompresse les requêtes que derrière un proxy configuré pour : la prise en charge
+ * est donc découverte par hôte, et les corps partent en clair tant qu'elle n'est pas confirmée.
+ * Seule une requête rejouable sans effet de bord (PUT, DELETE, ou en-tête Idempotency-Key,
+ * voir RetryPolicy.isIdempotent) sert de sonde : elle part compressée, et si le serveur la refuse
+ * (400, 415, 422) puis accepte la version en clair, l'hôte est marqué comme non compatible.
+ * Un POST n'est jamais compressé avant confirmation, donc jamais renvoyé.
+ * Le résultat est conservé dans les préférences.
+ */
+public class GzipRequestInterceptor implements Interceptor {
+    private static final String TAG = "GzipRequestInterceptor";
+    private static final String PREFS_NAME = "gzip_request_support";
+
+    // En dessous, l'en-tête GZIP et le dictionnaire vide ne font rien gagner
+    private static final long MIN_COMPRESS_BYTES = 1024;
+
+    private enum Support { UNKNOWN, SUPPORTED, UNSUPPORTED }
+
+    private final SharedPreferences prefs;
+    private final Map<String, Support> supportByHost = new ConcurrentHashMap<>();
+
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    public GzipRequestInterceptor(Context context) {
+        this(context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+    }
+
+    /**
+     * @param prefs préférences de persistance, ou null pour ne garder le résultat qu'en mémoire
+     */
+    GzipRequestInterceptor(SharedPreferences prefs) {
+        this.prefs = prefs;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        Request request = chain.request();
+        RequestBody body = request.body();
+        String host = request.url().host();
+        Support support = support(host);
+        boolean replayable = RetryPolicy.isIdempotent(request);
+
+        if (body == null || body.isOneShot() || request.header("Content-Encoding") != null
+                || !isCompressible(body.contentType()) || support == Support.UNSUPPORTED
+                // Prise en charge inconnue : seule une requête rejouable peut servir de sonde
+                || (support == Support.UNKNOWN && !replayable)) {
+            return chain.proceed(request);
+        }
+
+        long rawSize = body.contentLength();
+        if (rawSize >= 0 && rawSize < MIN_COMPRESS_BYTES) {
+            return chain.proceed(request);
+        }
+
+        Buffer raw = new Buffer();
+        body.writeTo(raw);
+        rawSize = raw.size();
+        if (rawSize < MIN_COMPRESS_BYTES) {
+            return chain.proceed(request);
+        }
+
+        byte[] plain = raw.readByteArray();
+        Buffer gzipped = new Buffer();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(gzipped))) {
+            sink.write(plain);
+        }
+        long gzippedSize = gzipped.size();
+
+        Request compressed = request.newBuilder()
+            .header("Content-Encoding", "gzip")
+            .method(request.method(), RequestBody.create(gzipped.readByteString(), body.contentType()))
+            .build();
+
+        Response response = chain.proceed(compressed);
+        if (response.isSuccessful()) {
+            rawBytes.addAndGet(rawSize);
+            compressedBytes.addAndGet(gzippedSize);
+            setSupport(host, Support.SUPPORTED);
+            return response;
+        }
+        if (support != Support.UNKNOWN || !replayable || !isEncodingRejection(response.code())) {
+            return response;
+        }
+
+        // Refus probable de l'encodage : la requête n'a pas été appliquée, la rejouer en clair
+        response.close();
+        fallbacks.incrementAndGet();
+        Response plainResponse = chain.proceed(request.newBuilder()
+            .method(request.method(), RequestBody.create(plain, body.contentType()))
+            .build());
+        if (plainResponse.code() < 400) {
+            Log.i(TAG, "Requêtes compressées refusées par " + host + ", envoi en clair désormais");
+            setSupport(host, Support.UNSUPPORTED);
+        }
+        return plainResponse;
+    }
+
+    /**
+     * Octets économisés par la compression depuis le démarrage
+     */
+    public long getSavedBytes() {
+        return rawBytes.get() - compressedBytes.get();
+    }
+
+    public String getStatsSummary() {
+        long raw = rawBytes.get();
+        long compressed = compressedBytes.get();
+        return String.format(java.util.Locale.ROOT,
+            "GZIP requêtes: %d o → %d o (%.0f%% économisés), %d renvoi(s) en clair",
+            raw, compressed, raw > 0 ? 100.0 * (raw - compressed) / raw : 0.0, fallbacks.get());
+    }
+
+    private Support support(String host) {
+        Support support = supportByHost.get(host);
+        if (support == null) {
+            support = prefs != null
+                ? Support.valueOf(prefs.getString(host, Support.UNKNOWN.name()))
+                : Support.UNKNOWN;
+            supportByHost.put(host, support);
+        }
+        return support;
+    }
+
+    private void setSupport(String host, Support support) {
+        if (supportByHost.put(host, support) != support && prefs != null) {
+            prefs.edit().putString(host, support.name()).apply();
+        }
+    }
+
+    private static boolean isCompressible(MediaType contentType) {
+        if (contentType == null) return false;
+        String subtype = contentType.subtype();
+        return "text".equals(contentType.type())
+            || subtype.equals("json") || subtype.endsWith("+json")
+            || subtype.equals("xml") || subtype.equals("x-www-form-urlencoded");
+    }
+
+    private static boolean isEncodingRejection(int code) {
+        return code == 400 || code == 415 || code == 422;
+    }
+}
@@ -0,0 +1,128 @@
+package fr.didictateur.inanutshell.network;
+
+import android.content.Context;
+import android.util.Log;
+import fr.didictateur.inanutshell.cache.SmartCacheInterceptor;
+import fr.didictateur.inanutshell.config.ServerConfig;
+import fr.didictateur.inanutshell.performance.NetworkMetricsListener;
+import fr.didictateur.inanutshell.performance.PerformanceManager;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Client OkHttp racine de l'application.
+ *
+ * Le pool de connexions, le dispatcher (et donc ses threads) et le cache disque sont partagés ;
+ * chaque serveur obtient un client dérivé par newBuilder() qui ne change que les timeouts
+ * et les intercepteurs. Les connexions HTTP/2 et les sessions TLS sont ainsi réutilisées
+ * entre NetworkManager, MultiServerManager et les services d'upload.
+ */
+public class HttpClientProvider {
+    private static final String TAG = "HttpClientProvider";
+    private static HttpClientProvider instance;
+
+    // Mealie est un serveur unique par hôte : peu de connexions, gardées longtemps
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final int MAX_REQUESTS = 32;
+    private static final int MAX_REQUESTS_PER_HOST = 8;
+    private static final int DEFAULT_TIMEOUT_SECONDS = 30;
+
+    private final OkHttpClient rootClient;
+    private final ServerTlsProvider tlsProvider;
+    private volatile String lastPrewarmedUrl;
+
+    private HttpClientProvider(Context context) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+            .dispatcher(dispatcher)
+            .connectTimeout(DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .readTimeout(DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .writeTimeout(DEFAULT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .eventListenerFactory(NetworkMetricsListener.factory(
+                PerformanceManager.getInstance().getNetworkMetrics()));
+
+        // Un seul objet Cache par répertoire : deux instances sur le même dossier le corrompent
+        if (context != null) {
+            builder.cache(SmartCacheInterceptor.createOptimizedCache(context.getApplicationContext()));
+        }
+
+        this.rootClient = builder.build();
+        this.tlsProvider = context != null ? ServerTlsProvider.getInstance(context.getApplicationContext()) : null;
+    }
+
+    public static synchronized HttpClientProvider getInstance(Context context) {
+        if (instance == null) {
+            instance = new HttpClientProvider(context);
+        }
+        return instance;
+    }
+
+    public OkHttpClient getRootClient() {
+        return rootClient;
+    }
+
+    /**
+     * Builder dérivé du client racine avec les timeouts du serveur
+     */
+    public OkHttpClient.Builder newServerBuilder(ServerConfig server) {
+        return rootClient.newBuilder()
+            .connectTimeout(server.getTimeoutSeconds(), TimeUnit.SECONDS)
+            .readTimeout(server.getTimeoutSeconds(), TimeUnit.SECONDS)
+            .writeTimeout(server.getTimeoutSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Ouvre une connexion (TCP, TLS, négociation HTTP/2) vers le serveur actif
+     * pour que la première vraie requête ne paie pas la poignée de main.
+     * La connexion est ouverte avec la configuration TLS du serveur : même Address OkHttp
+     * que le client du serveur, donc réutilisée depuis le pool partagé.
+     */
+    public void prewarm(ServerConfig server) {
+        String url = server.getApiUrl() + "/app/about";
+        if (url.equals(lastPrewarmedUrl)) return;
+        lastPrewarmedUrl = url;
+
+        Request request;
+        try {
+            request = new Request.Builder().url(url).head().build();
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "URL invalide, pas de préchauffage: " + url);
+            return;
+        }
+
+        OkHttpClient.Builder builder = newServerBuilder(server);
+        if (tlsProvider != null) {
+            // Sans effet si le serveur n'autorise pas les certificats auto-signés
+            tlsProvider.configure(builder, server);
+        }
+
+        long start = System.currentTimeMillis();
+        builder.build().newCall(request).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                response.close();
+                Log.d(TAG, "Connexion préchauffée vers " + server.getName() + " en " +
+                    (System.currentTimeMillis() - start) + "ms");
+            }
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                lastPrewarmedUrl = null;
+                Log.d(TAG, "Préchauffage impossible pour " + server.getName() + ": " + e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,119 @@
+package fr.didictateur.inanutshell.network;
+
+import android.util.Log;
+import fr.didictateur.inanutshell.config.CertificatePin;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Trust manager d'un seul serveur auto-signé.
+ *
+ * Une chaîne reconnue par les autorités du système est acceptée comme d'habitude.
+ * Sinon, le certificat du serveur est épinglé à la première connexion (TOFU), puis seul
+ * un certificat avec la même clé publique est accepté ; un changement lève une
+ * {@link PinMismatchException} au lieu d'être accepté silencieusement.
+ */
+public class PinningTrustManager implements X509TrustManager {
+    private static final String TAG = "PinningTrustManager";
+
+    private final String hostPort;
+    private final int serverId;
+    private final CertificatePinStore pinStore;
+    private final X509TrustManager systemTrustManager;
+
+    public PinningTrustManager(String hostPort, int serverId, CertificatePinStore pinStore,
+                               X509TrustManager systemTrustManager) {
+        this.hostPort = hostPort;
+        this.serverId = serverId;
+        this.pinStore = pinStore;
+        this.systemTrustManager = systemTrustManager;
+    }
+
+    /**
+     * Levée lorsque le serveur présente une autre clé que celle épinglée
+     */
+    public static class PinMismatchException extends CertificateException {
+        private final String hostPort;
+        private final String expected;
+        private final String actual;
+        private final transient X509Certificate presented;
+
+        PinMismatchException(String hostPort, String expected, String actual, X509Certificate presented) {
+            super("Certificat inattendu pour " + hostPort + " : sha256/" + actual +
+                  " au lieu de sha256/" + expected);
+            this.hostPort = hostPort;
+            this.expected = expected;
+            this.actual = actual;
+            this.presented = presented;
+        }
+
+        public String getHostPort() { return hostPort; }
+        public String getExpected() { return expected; }
+        public String getActual() { return actual; }
+        public X509Certificate getPresentedCertificate() { return presented; }
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        systemTrustManager.checkClientTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        if (chain == null || chain.length == 0) {
+            throw new CertificateException("Chaîne de certificats vide pour " + hostPort);
+        }
+
+        try {
+            systemTrustManager.checkServerTrusted(chain, authType);
+            return;
+        } catch (CertificateException systemRejected) {
+            // Certificat auto-signé ou autorité privée : vérification par épinglage
+        }
+
+        if (!pinStore.awaitLoaded()) {
+            throw new CertificateException("Certificats épinglés non disponibles pour " + hostPort);
+        }
+
+        X509Certificate leaf = chain[0];
+        String fingerprint = CertificatePinStore.spkiSha256(leaf);
+        CertificatePin pin = pinStore.get(hostPort);
+        if (pin == null) {
+            Log.w(TAG, "Première connexion à " + hostPort + ", certificat épinglé : sha256/" + fingerprint);
+            pinStore.pin(hostPort, serverId, leaf);
+            return;
+        }
+        if (!fingerprint.equals(pin.spkiSha256)) {
+            PinMismatchException mismatch = new PinMismatchException(hostPort, pin.spkiSha256, fingerprint, leaf);
+            // Conservé pour les paramètres du serveur, où l'utilisateur peut accepter le nouveau certificat
+            pinStore.recordMismatch(mismatch);
+            throw mismatch;
+        }
+        pinStore.touch(pin);
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return systemTrustManager.getAcceptedIssuers();
+    }
+
+    /**
+     * Indique si le pair de la session présente la clé épinglée ; les certificats auto-signés
+     * portent souvent un nom (ou une IP) différent de l'URL, la clé épinglée suffit alors
+     */
+    boolean isPinnedPeer(SSLSession session) {
+        CertificatePin pin = pinStore.get(hostPort);
+        if (pin == null) return false;
+        try {
+            Certificate[] peer = session.getPeerCertificates();
+            return peer.length > 0 && peer[0] instanceof X509Certificate &&
+                pin.spkiSha256.equals(CertificatePinStore.spkiSha256((X509Certificate) peer[0]));
+        } catch (SSLPeerUnverifiedException e) {
+            return false;
+        }
+    }
+}
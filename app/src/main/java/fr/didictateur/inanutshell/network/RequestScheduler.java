@@ -0,0 +1,353 @@
+package fr.didictateur.inanutshell.network;
+
+import android.util.Log;
+import fr.didictateur.inanutshell.performance.LatencyHistogram;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Ordonnanceur des requêtes par classe de priorité, placé devant le dispatcher OkHttp.
+ *
+ * - INTERACTIVE : l'utilisateur attend le résultat (détail d'une recette, sauvegarde).
+ * - PREFETCH : anticipation (page suivante de la liste, images).
+ * - BACKGROUND : synchronisation et envois en masse.
+ *
+ * Chaque classe a sa limite de requêtes en vol. Les limites PREFETCH + BACKGROUND restent
+ * sous la limite par hôte du dispatcher : il reste toujours des connexions libres pour une
+ * requête interactive, qui ne fait plus la queue derrière des dizaines de miniatures.
+ * Une classe basse ne démarre pas de nouvelle requête tant qu'une classe plus haute attend.
+ * Les requêtes portent une étiquette (le plus souvent l'écran appelant) : cancel(tag) annule
+ * celles qui sont devenues inutiles, en attente ou en vol, sans appeler leur callback.
+ */
+public class RequestScheduler {
+    private static final String TAG = "RequestScheduler";
+    private static RequestScheduler instance;
+
+    public enum Priority {
+        INTERACTIVE(8),
+        PREFETCH(3),
+        // Autant que BatchSyncExecutor.DEFAULT_PARALLELISM : les envois par lots ne sont pas bridés,
+        // et PREFETCH + BACKGROUND (7) laisse une connexion libre sous les 8 par hôte
+        BACKGROUND(4);
+
+        final int maxInFlight;
+
+        Priority(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+    }
+
+    private final List<ArrayDeque<Ticket>> queues = new ArrayList<>();
+    private final int[] running = new int[Priority.values().length];
+    private final List<Ticket> inFlight = new ArrayList<>();
+
+    // Attente dans la file et durée totale (file + requête), par classe
+    private final LatencyHistogram[] queueWait = new LatencyHistogram[Priority.values().length];
+    private final LatencyHistogram[] totalLatency = new LatencyHistogram[Priority.values().length];
+
+    private RequestScheduler() {
+        for (Priority priority : Priority.values()) {
+            queues.add(new ArrayDeque<>());
+            queueWait[priority.ordinal()] = new LatencyHistogram();
+            totalLatency[priority.ordinal()] = new LatencyHistogram();
+        }
+    }
+
+    public static synchronized RequestScheduler getInstance() {
+        if (instance == null) {
+            instance = new RequestScheduler();
+        }
+        return instance;
+    }
+
+    /**
+     * Requête planifiée ; l'annulation est sans effet une fois le résultat livré
+     */
+    public final class Ticket {
+        final Priority priority;
+        final Object tag;
+        private final long submittedAt = System.nanoTime();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile boolean cancelled;
+        private Runnable start;
+        private Runnable cancelAction;
+
+        Ticket(Priority priority, Object tag) {
+            this.priority = priority;
+            this.tag = tag;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public void cancel() {
+            cancelTicket(this);
+        }
+    }
+
+    /**
+     * Planifie un appel Retrofit asynchrone. Le callback n'est pas appelé si la requête est annulée.
+     */
+    public <T> Ticket enqueue(retrofit2.Call<T> call, Priority priority, Object tag,
+                              retrofit2.Callback<T> callback) {
+        return enqueue(call, priority, tag, callback, UnaryOperator.identity());
+    }
+
+    /**
+     * Variante où le callback protégé est enveloppé avant l'envoi (ex: RetryingCallback) :
+     * la place est gardée jusqu'au résultat final, tentatives comprises
+     */
+    public <T> Ticket enqueue(retrofit2.Call<T> call, Priority priority, Object tag,
+                              retrofit2.Callback<T> callback,
+                              UnaryOperator<retrofit2.Callback<T>> wrapper) {
+        Ticket ticket = new Ticket(priority, tag);
+        retrofit2.Callback<T> guarded = new retrofit2.Callback<T>() {
+            @Override
+            public void onResponse(retrofit2.Call<T> c, retrofit2.Response<T> response) {
+                if (finish(ticket)) {
+                    callback.onResponse(c, response);
+                }
+            }
+
+            @Override
+            public void onFailure(retrofit2.Call<T> c, Throwable t) {
+                if (finish(ticket)) {
+                    callback.onFailure(c, t);
+                }
+            }
+        };
+        retrofit2.Callback<T> wrapped = wrapper.apply(guarded);
+        if (wrapped instanceof RetryingCallback) {
+            // Annuler aussi les tentatives relancées par le callback, pas seulement l'appel initial
+            RetryingCallback<T> retrying = (RetryingCallback<T>) wrapped;
+            ticket.start = () -> retrying.enqueue(call);
+            ticket.cancelAction = retrying::cancel;
+        } else {
+            ticket.start = () -> {
+                deferRetries(call);
+                call.enqueue(wrapped);
+            };
+            ticket.cancelAction = call::cancel;
+        }
+        submit(ticket);
+        return ticket;
+    }
+
+    /**
+     * Planifie un appel OkHttp asynchrone. Le callback n'est pas appelé si la requête est annulée.
+     */
+    public Ticket enqueue(okhttp3.Call call, Priority priority, Object tag, okhttp3.Callback callback) {
+        Ticket ticket = new Ticket(priority, tag);
+        okhttp3.Callback guarded = new okhttp3.Callback() {
+            @Override
+            public void onResponse(@NotNull okhttp3.Call c, @NotNull okhttp3.Response response) throws IOException {
+                if (finish(ticket)) {
+                    callback.onResponse(c, response);
+                } else {
+                    response.close();
+                }
+            }
+
+            @Override
+            public void onFailure(@NotNull okhttp3.Call c, @NotNull IOException e) {
+                if (finish(ticket)) {
+                    callback.onFailure(c, e);
+                }
+            }
+        };
+        ticket.start = () -> {
+            RetryInterceptor.deferRetries(call.request());
+            call.enqueue(guarded);
+        };
+        ticket.cancelAction = call::cancel;
+        submit(ticket);
+        return ticket;
+    }
+    
+    /**
+     * Un appel asynchrone n'est jamais rejoué sur le thread du dispatcher par RetryInterceptor
+     */
+    static void deferRetries(retrofit2.Call<?> call) {
+        try {
+            RetryInterceptor.deferRetries(call.request());
+        } catch (RuntimeException e) {
+            // Requête impossible à construire : enqueue() rapporte l'erreur au callback
+        }
+    }
+
+    /**
+     * Exécute un appel Retrofit de façon synchrone après avoir obtenu une place dans sa classe.
+     * À appeler depuis un thread d'arrière-plan.
+     */
+    public <T> retrofit2.Response<T> execute(retrofit2.Call<T> call, Priority priority) throws IOException {
+        Ticket ticket = new Ticket(priority, null);
+        CountDownLatch slot = new CountDownLatch(1);
+        ticket.start = slot::countDown;
+        ticket.cancelAction = call::cancel;
+        submit(ticket);
+
+        try {
+            slot.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelTicket(ticket);
+            throw new InterruptedIOException("Attente d'une place interrompue");
+        }
+
+        try {
+            return call.execute();
+        } finally {
+            finish(ticket);
+        }
+    }
+
+    /**
+     * Annule toutes les requêtes portant cette étiquette
+     */
+    public void cancel(Object tag) {
+        if (tag == null) return;
+
+        List<Ticket> matching = new ArrayList<>();
+        synchronized (this) {
+            for (ArrayDeque<Ticket> queue : queues) {
+                for (Ticket ticket : queue) {
+                    if (tag.equals(ticket.tag)) matching.add(ticket);
+                }
+            }
+            for (Ticket ticket : inFlight) {
+                if (tag.equals(ticket.tag)) matching.add(ticket);
+            }
+        }
+        for (Ticket ticket : matching) {
+            cancelTicket(ticket);
+        }
+        if (!matching.isEmpty()) {
+            Log.d(TAG, matching.size() + " requête(s) annulée(s) pour " + tag);
+        }
+    }
+
+    private void cancelTicket(Ticket ticket) {
+        ticket.cancelled = true;
+        boolean wasQueued;
+        synchronized (this) {
+            wasQueued = queues.get(ticket.priority.ordinal()).remove(ticket);
+        }
+        if (wasQueued) {
+            ticket.finished.set(true);
+            return;
+        }
+        // En vol : libérer la place tout de suite, le résultat tardif sera ignoré
+        ticket.cancelAction.run();
+        finish(ticket);
+    }
+
+    private void submit(Ticket ticket) {
+        synchronized (this) {
+            queues.get(ticket.priority.ordinal()).add(ticket);
+        }
+        promote();
+    }
+
+    /**
+     * Libère la place du ticket ; retourne true si le résultat doit être livré
+     */
+    private boolean finish(Ticket ticket) {
+        if (!ticket.finished.compareAndSet(false, true)) {
+            return false;
+        }
+        synchronized (this) {
+            if (inFlight.remove(ticket)) {
+                running[ticket.priority.ordinal()]--;
+            }
+        }
+        totalLatency[ticket.priority.ordinal()].recordNanos(System.nanoTime() - ticket.submittedAt);
+        promote();
+        return !ticket.cancelled;
+    }
+
+    /**
+     * Démarre les requêtes en attente dans l'ordre des priorités, dans la limite de chaque classe
+     */
+    private void promote() {
+        List<Ticket> ready = new ArrayList<>();
+        synchronized (this) {
+            boolean higherWaiting = false;
+            for (Priority priority : Priority.values()) {
+                ArrayDeque<Ticket> queue = queues.get(priority.ordinal());
+                if (!higherWaiting) {
+                    Iterator<Ticket> it = queue.iterator();
+                    while (it.hasNext() && running[priority.ordinal()] < priority.maxInFlight) {
+                        Ticket ticket = it.next();
+                        it.remove();
+                        running[priority.ordinal()]++;
+                        inFlight.add(ticket);
+                        ready.add(ticket);
+                    }
+                }
+                higherWaiting |= !queue.isEmpty();
+            }
+        }
+
+        // Démarrage hors verrou : enqueue() peut appeler le callback de façon synchrone
+        for (Ticket ticket : ready) {
+            queueWait[ticket.priority.ordinal()].recordNanos(System.nanoTime() - ticket.submittedAt);
+            try {
+                ticket.start.run();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Impossible de démarrer la requête", e);
+                finish(ticket);
+            }
+        }
+    }
+
+    public synchronized int getQueuedCount(Priority priority) {
+        return queues.get(priority.ordinal()).size();
+    }
+
+    public synchronized int getRunningCount(Priority priority) {
+        return running[priority.ordinal()];
+    }
+
+    public LatencyHistogram getQueueWait(Priority priority) {
+        return queueWait[priority.ordinal()];
+    }
+
+    public LatencyHistogram getTotalLatency(Priority priority) {
+        return totalLatency[priority.ordinal()];
+    }
+
+    public void resetStats() {
+        for (Priority priority : Priority.values()) {
+            queueWait[priority.ordinal()].reset();
+            totalLatency[priority.ordinal()].reset();
+        }
+    }
+
+    /**
+     * Résumé par classe : en vol, en attente, attente p50/p95 et durée totale p50/p95
+     */
+    public String getStatsSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (Priority priority : Priority.values()) {
+            LatencyHistogram wait = queueWait[priority.ordinal()];
+            LatencyHistogram total = totalLatency[priority.ordinal()];
+            if (summary.length() > 0) summary.append('\n');
+            summary.append(String.format(Locale.ROOT,
+                "%s: %d en vol, %d en attente, attente p50=%.0fms p95=%.0fms, total p50=%.0fms p95=%.0fms (%d)",
+                priority, getRunningCount(priority), getQueuedCount(priority),
+                wait.getPercentileMillis(50), wait.getPercentileMillis(95),
+                total.getPercentileMillis(50), total.getPercentileMillis(95), total.getCount()));
+        }
+        return summary.toString();
+    }
+}
@@ -2,8 +2,9 @@ package fr.didictateur.inanutshell.network;
 
 import android.util.Log;
 import java.io.IOException;
-import java.net.SocketTimeoutException;
-import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import okhttp3.Interceptor;
 import okhttp3.Request;
@@ -11,16 +12,22 @@ import okhttp3.Response;
 import org.jetbrains.annotations.NotNull;
 
 /**
- * Interceptor pour la gestion automatique des tentatives de retry en cas d'erreur réseau
+ * Interceptor pour la gestion automatique des tentatives de retry en cas d'erreur réseau.
+ * Les décisions (idempotence, Retry-After, budget par hôte) sont déléguées à RetryPolicy.
+ *
+ * Les appels asynchrones (RequestScheduler, RetryingCallback) sont enregistrés avant leur
+ * envoi : aucune attente n'est faite ici pour eux, la réponse est rendue telle quelle et
+ * RetryingCallback replanifie l'appel s'il en a un. Les appels synchrones (execute depuis
+ * nos propres executors) sont rejoués sur place.
  */
 public class RetryInterceptor implements Interceptor {
     private static final String TAG = "RetryInterceptor";
     
-    // Configuration du retry
-    private final int maxRetries;
-    private final long baseDelayMs;
-    private final double backoffMultiplier;
-    private final long maxDelayMs;
+    private final RetryPolicy policy;
+    
+    // Requêtes d'origine des appels asynchrones, sans retry sur place (comparées par identité)
+    private static final Set<Request> deferredRetries =
+        Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<Request, Boolean>()));
     
     // Compteurs pour les statistiques
     private final AtomicInteger totalRequests = new AtomicInteger(0);
@@ -28,14 +35,19 @@ public class RetryInterceptor implements Interceptor {
     private final AtomicInteger retriedRequests = new AtomicInteger(0);
     
     public RetryInterceptor() {
-        this(3, 1000, 2.0, 10000);
+        this(new RetryPolicy());
     }
     
     public RetryInterceptor(int maxRetries, long baseDelayMs, double backoffMultiplier, long maxDelayMs) {
-        this.maxRetries = maxRetries;
-        this.baseDelayMs = baseDelayMs;
-        this.backoffMultiplier = backoffMultiplier;
-        this.maxDelayMs = maxDelayMs;
+        this(new RetryPolicy(maxRetries, baseDelayMs, backoffMultiplier, maxDelayMs));
+    }
+    
+    public RetryInterceptor(RetryPolicy policy) {
+        this.policy = policy;
+    }
+    
+    public RetryPolicy getPolicy() {
+        return policy;
     }
     
     @NotNull
@@ -43,138 +55,72 @@ public class RetryInterceptor implements Interceptor {
     public Response intercept(@NotNull Chain chain) throws IOException {
         Request request = chain.request();
         totalRequests.incrementAndGet();
+        policy.recordRequest(request);
         
-        Response response = null;
-        IOException lastException = null;
+        boolean inline = !deferredRetries.contains(chain.call().request());
         
-        // Tentatives avec exponential backoff
-        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+        for (int attempt = 1; ; attempt++) {
+            Response response;
             try {
-                if (attempt > 0) {
-                    // Calculer le délai d'attente avec exponential backoff
-                    long delay = calculateDelay(attempt);
-                    Log.d(TAG, String.format("Retry attempt %d/%d for %s after %dms", 
-                        attempt, maxRetries, request.url(), delay));
-                    
-                    try {
-                        Thread.sleep(delay);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        throw new IOException("Request interrupted during retry delay", e);
-                    }
-                    
-                    retriedRequests.incrementAndGet();
-                }
-                
                 response = chain.proceed(request);
-                
-                // Vérifier si la réponse est un succès ou si on doit retry
-                if (response.isSuccessful()) {
-                    successfulRequests.incrementAndGet();
-                    return response;
-                } else if (!shouldRetry(response.code(), attempt)) {
-                    // Erreur qui ne justifie pas un retry (4xx errors)
-                    Log.w(TAG, String.format("Non-retryable error %d for %s", 
-                        response.code(), request.url()));
-                    return response;
-                } else if (attempt < maxRetries) {
-                    // Fermer la réponse avant de retry
-                    response.close();
-                    Log.w(TAG, String.format("Server error %d, will retry %s", 
-                        response.code(), request.url()));
-                } else {
-                    // Dernière tentative échouée
-                    Log.e(TAG, String.format("Max retries exceeded for %s, final response: %d", 
-                        request.url(), response.code()));
-                    return response;
-                }
-                
             } catch (IOException e) {
-                lastException = e;
-                
-                if (!shouldRetryException(e) || attempt >= maxRetries) {
-                    Log.e(TAG, String.format("Network error for %s, attempt %d/%d: %s", 
-                        request.url(), attempt + 1, maxRetries + 1, e.getMessage()));
+                long delay = inline ? policy.retryDelay(request, e, attempt) : RetryPolicy.NO_RETRY;
+                if (delay == RetryPolicy.NO_RETRY) {
+                    Log.e(TAG, String.format("Network error for %s, attempt %d: %s", 
+                        request.url(), attempt, e.getMessage()));
                     throw e;
                 }
-                
-                Log.w(TAG, String.format("Network error for %s, attempt %d/%d: %s. Retrying...", 
-                    request.url(), attempt + 1, maxRetries + 1, e.getMessage()));
+                Log.w(TAG, String.format("Network error for %s, attempt %d: %s. Retrying in %dms", 
+                    request.url(), attempt, e.getMessage(), delay));
+                waitBeforeRetry(delay);
+                continue;
             }
+            
+            if (response.isSuccessful()) {
+                successfulRequests.incrementAndGet();
+                return response;
+            }
+            
+            long delay = inline ? policy.retryDelay(request, response, attempt) : RetryPolicy.NO_RETRY;
+            if (delay == RetryPolicy.NO_RETRY) {
+                Log.w(TAG, String.format("No retry for %s %s, response: %d", 
+                    request.method(), request.url(), response.code()));
+                return response;
+            }
+            
+            // Fermer la réponse avant de retry
+            response.close();
+            Log.w(TAG, String.format("Server error %d, retrying %s in %dms", 
+                response.code(), request.url(), delay));
+            waitBeforeRetry(delay);
         }
-        
-        // Si on arrive ici, toutes les tentatives ont échoué
-        if (lastException != null) {
-            throw lastException;
-        }
-        
-        // Ne devrait jamais arriver, mais au cas où
-        return response;
     }
     
-    /**
-     * Calcule le délai d'attente avec exponential backoff
-     */
-    private long calculateDelay(int attempt) {
-        long delay = (long) (baseDelayMs * Math.pow(backoffMultiplier, attempt - 1));
-        
-        // Ajouter un peu de jitter pour éviter le thundering herd
-        double jitter = 0.1 * delay * Math.random();
-        delay += (long) jitter;
-        
-        return Math.min(delay, maxDelayMs);
+    private void waitBeforeRetry(long delay) throws IOException {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Request interrupted during retry delay", e);
+        }
+        retriedRequests.incrementAndGet();
     }
     
     /**
-     * Détermine si on doit retry basé sur le code de statut HTTP
+     * Indique qu'un appel part en asynchrone : ses retries ne doivent pas attendre sur le
+     * thread du dispatcher et sont laissés à RetryingCallback
+     * 
+     * @param originalRequest requête d'origine de l'appel, avant les interceptors
      */
-    private boolean shouldRetry(int responseCode, int attempt) {
-        // Retry sur les erreurs serveur (5xx) et certaines erreurs client
-        switch (responseCode) {
-            case 408: // Request Timeout
-            case 429: // Too Many Requests
-            case 500: // Internal Server Error
-            case 502: // Bad Gateway
-            case 503: // Service Unavailable
-            case 504: // Gateway Timeout
-                return true;
-            case 401: // Unauthorized - peut être temporaire
-            case 403: // Forbidden - peut être temporaire
-                return attempt == 0; // Retry une seule fois
-            default:
-                return false;
-        }
+    static void deferRetries(Request originalRequest) {
+        deferredRetries.add(originalRequest);
     }
     
     /**
-     * Détermine si on doit retry basé sur le type d'exception
+     * Comptabilise un retry planifié par RetryingCallback
      */
-    private boolean shouldRetryException(IOException exception) {
-        // Retry sur les erreurs de connexion temporaires
-        if (exception instanceof SocketTimeoutException) {
-            return true; // Timeout - probablement temporaire
-        }
-        
-        if (exception instanceof UnknownHostException) {
-            return true; // DNS/résolution nom - peut être temporaire
-        }
-        
-        // Vérifier les messages d'erreur pour d'autres cas temporaires
-        String message = exception.getMessage();
-        if (message != null) {
-            message = message.toLowerCase();
-            
-            // Erreurs de connexion temporaires
-            if (message.contains("connection reset") ||
-                message.contains("connection refused") ||
-                message.contains("network is unreachable") ||
-                message.contains("no route to host") ||
-                message.contains("software caused connection abort")) {
-                return true;
-            }
-        }
-        
-        return false;
+    void recordScheduledRetry() {
+        retriedRequests.incrementAndGet();
     }
     
     /**
@@ -0,0 +1,267 @@
+package fr.didictateur.inanutshell.network;
+
+import android.util.Log;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Politique de retry partagée entre RetryInterceptor et RetryingCallback.
+ *
+ * - Seules les requêtes idempotentes (GET, HEAD, PUT, DELETE, OPTIONS) ou portant
+ *   un en-tête Idempotency-Key sont rejouées : un POST createRecipe ne doit pas créer de doublon.
+ * - L'en-tête Retry-After (secondes ou date HTTP) est respecté ; s'il dépasse le délai
+ *   maximal, on abandonne plutôt que de bloquer.
+ * - Un budget de retry par hôte (token bucket) limite les retries à une fraction du trafic
+ *   pour ne pas surcharger un serveur Mealie déjà en difficulté.
+ */
+public class RetryPolicy {
+    private static final String TAG = "RetryPolicy";
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    /** Décision : ne pas rejouer la requête */
+    public static final long NO_RETRY = -1;
+
+    // Budget : chaque requête crédite RETRY_RATIO jeton, chaque retry en consomme un
+    private static final double RETRY_RATIO = 0.1;
+    private static final double MAX_RETRY_TOKENS = 10.0;
+
+    private final int maxRetries;
+    private final long baseDelayMs;
+    private final double backoffMultiplier;
+    private final long maxDelayMs;
+
+    private final Map<String, RetryBudget> budgets = new ConcurrentHashMap<>();
+    private volatile ScheduledExecutorService scheduler;
+
+    public RetryPolicy() {
+        this(3, 1000, 2.0, 10000);
+    }
+
+    public RetryPolicy(int maxRetries, long baseDelayMs, double backoffMultiplier, long maxDelayMs) {
+        this.maxRetries = maxRetries;
+        this.baseDelayMs = baseDelayMs;
+        this.backoffMultiplier = backoffMultiplier;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Enregistre une requête initiale (non rejouée) dans le budget de son hôte
+     */
+    public void recordRequest(Request request) {
+        budgetFor(request).deposit();
+    }
+
+    /**
+     * Indique si la requête peut être rejouée sans risque d'effet de bord
+     */
+    public static boolean isIdempotent(Request request) {
+        if (request.header(IDEMPOTENCY_KEY_HEADER) != null) {
+            return true;
+        }
+        switch (request.method()) {
+            case "GET":
+            case "HEAD":
+            case "PUT":
+            case "DELETE":
+            case "OPTIONS":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Délai avant de rejouer une requête ayant reçu cette réponse, ou NO_RETRY.
+     * Consomme un jeton du budget de l'hôte si le retry est accordé.
+     *
+     * @param attempt numéro de la tentative à venir (1 pour le premier retry)
+     */
+    public long retryDelay(Request request, Response response, int attempt) {
+        // Le 504 d'une lecture du cache seul signifie « absent du cache », pas une panne
+        if (request.cacheControl().onlyIfCached()) {
+            return NO_RETRY;
+        }
+        if (attempt > maxRetries || !isIdempotent(request) || !isRetryableStatus(response.code(), attempt)) {
+            return NO_RETRY;
+        }
+
+        long delay = backoffDelay(attempt);
+        long retryAfter = parseRetryAfter(response);
+        if (retryAfter > maxDelayMs) {
+            Log.w(TAG, String.format("Retry-After de %dms pour %s, abandon", retryAfter, request.url().host()));
+            return NO_RETRY;
+        }
+        if (retryAfter >= 0) {
+            delay = retryAfter;
+        }
+
+        return acquire(request) ? delay : NO_RETRY;
+    }
+
+    /**
+     * Délai avant de rejouer une requête ayant échoué avec cette exception, ou NO_RETRY
+     */
+    public long retryDelay(Request request, IOException exception, int attempt) {
+        if (attempt > maxRetries || !isIdempotent(request) || !isRetryableException(exception)) {
+            return NO_RETRY;
+        }
+        return acquire(request) ? backoffDelay(attempt) : NO_RETRY;
+    }
+
+    /**
+     * Planificateur partagé pour rejouer les appels asynchrones sans bloquer le dispatcher OkHttp
+     */
+    public ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            synchronized (this) {
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "RetryScheduler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Jetons de retry restants pour un hôte
+     */
+    public double getAvailableTokens(String host) {
+        RetryBudget budget = budgets.get(host);
+        return budget != null ? budget.available() : MAX_RETRY_TOKENS;
+    }
+
+    private boolean acquire(Request request) {
+        if (budgetFor(request).tryAcquire()) {
+            return true;
+        }
+        Log.w(TAG, "Budget de retry épuisé pour " + request.url().host());
+        return false;
+    }
+
+    private RetryBudget budgetFor(Request request) {
+        String host = request.url().host();
+        RetryBudget budget = budgets.get(host);
+        if (budget == null) {
+            budget = new RetryBudget();
+            RetryBudget existing = budgets.putIfAbsent(host, budget);
+            if (existing != null) {
+                budget = existing;
+            }
+        }
+        return budget;
+    }
+
+    /**
+     * Calcule le délai d'attente avec exponential backoff
+     */
+    private long backoffDelay(int attempt) {
+        long delay = (long) (baseDelayMs * Math.pow(backoffMultiplier, attempt - 1));
+
+        // Ajouter un peu de jitter pour éviter le thundering herd
+        double jitter = 0.1 * delay * Math.random();
+        delay += (long) jitter;
+
+        return Math.min(delay, maxDelayMs);
+    }
+
+    /**
+     * Délai demandé par le serveur via Retry-After en millisecondes, -1 si absent
+     */
+    private long parseRetryAfter(Response response) {
+        String value = response.header("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            Date date = response.headers().getDate("Retry-After");
+            return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : -1;
+        }
+    }
+
+    /**
+     * Détermine si on doit retry basé sur le code de statut HTTP
+     */
+    private boolean isRetryableStatus(int responseCode, int attempt) {
+        switch (responseCode) {
+            case 408: // Request Timeout
+            case 429: // Too Many Requests
+            case 500: // Internal Server Error
+            case 502: // Bad Gateway
+            case 503: // Service Unavailable
+            case 504: // Gateway Timeout
+                return true;
+            case 401: // Unauthorized - peut être temporaire
+            case 403: // Forbidden - peut être temporaire
+                return attempt == 1; // Retry une seule fois
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Détermine si on doit retry basé sur le type d'exception
+     */
+    private boolean isRetryableException(IOException exception) {
+        // Circuit ouvert : le serveur est connu comme indisponible
+        if (exception instanceof CircuitBreakerInterceptor.CircuitOpenException) {
+            return false;
+        }
+        if (exception instanceof SocketTimeoutException || exception instanceof UnknownHostException) {
+            return true;
+        }
+
+        String message = exception.getMessage();
+        if (message != null) {
+            message = message.toLowerCase();
+            return message.contains("connection reset") ||
+                message.contains("connection refused") ||
+                message.contains("network is unreachable") ||
+                message.contains("no route to host") ||
+                message.contains("software caused connection abort");
+        }
+        return false;
+    }
+
+    /**
+     * Token bucket : crédité par les requêtes initiales, débité par les retries
+     */
+    private static class RetryBudget {
+        private double tokens = MAX_RETRY_TOKENS;
+
+        synchronized void deposit() {
+            tokens = Math.min(MAX_RETRY_TOKENS, tokens + RETRY_RATIO);
+        }
+
+        synchronized boolean tryAcquire() {
+            if (tokens < 1.0) {
+                return false;
+            }
+            tokens -= 1.0;
+            return true;
+        }
+
+        synchronized double available() {
+            return tokens;
+        }
+    }
+}
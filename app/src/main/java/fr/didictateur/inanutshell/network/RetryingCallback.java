@@ -0,0 +1,93 @@
+package fr.didictateur.inanutshell.network;
+
+import android.util.Log;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Callback Retrofit qui rejoue les appels asynchrones selon la RetryPolicy.
+ * Le backoff est planifié sur le scheduler de la politique au lieu de bloquer
+ * un thread du dispatcher OkHttp ; le callback délégué ne reçoit que le résultat final.
+ * L'appel est lancé par {@link #enqueue(Call)} pour que {@link #cancel()} atteigne aussi
+ * la tentative en cours et empêche les suivantes.
+ */
+public class RetryingCallback<T> implements Callback<T> {
+    private static final String TAG = "RetryingCallback";
+
+    private final RetryInterceptor retryInterceptor;
+    private final Callback<T> delegate;
+    private int attempt = 1;
+    private volatile Call<T> currentCall;
+    private volatile boolean cancelled;
+
+    public RetryingCallback(RetryInterceptor retryInterceptor, Callback<T> delegate) {
+        this.retryInterceptor = retryInterceptor;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Lance la première tentative
+     */
+    public void enqueue(Call<T> call) {
+        currentCall = call;
+        // Les retries sont planifiés ici, pas sur le thread du dispatcher
+        RequestScheduler.deferRetries(call);
+        call.enqueue(this);
+    }
+
+    /**
+     * Annule la tentative en cours et toute tentative planifiée
+     */
+    public void cancel() {
+        cancelled = true;
+        Call<T> call = currentCall;
+        if (call != null) {
+            call.cancel();
+        }
+    }
+
+    @Override
+    public void onResponse(Call<T> call, Response<T> response) {
+        if (!response.isSuccessful() && !cancelled) {
+            long delay = retryInterceptor.getPolicy().retryDelay(call.request(), response.raw(), attempt);
+            if (delay != RetryPolicy.NO_RETRY) {
+                Log.w(TAG, String.format("Server error %d, retrying %s in %dms",
+                    response.code(), call.request().url(), delay));
+                scheduleRetry(call, delay);
+                return;
+            }
+        }
+        delegate.onResponse(call, response);
+    }
+
+    @Override
+    public void onFailure(Call<T> call, Throwable t) {
+        if (t instanceof IOException && !call.isCanceled() && !cancelled) {
+            long delay = retryInterceptor.getPolicy().retryDelay(call.request(), (IOException) t, attempt);
+            if (delay != RetryPolicy.NO_RETRY) {
+                Log.w(TAG, String.format("Network error for %s: %s. Retrying in %dms",
+                    call.request().url(), t.getMessage(), delay));
+                scheduleRetry(call, delay);
+                return;
+            }
+        }
+        delegate.onFailure(call, t);
+    }
+
+    private void scheduleRetry(Call<T> call, long delay) {
+        attempt++;
+        retryInterceptor.recordScheduledRetry();
+        retryInterceptor.getPolicy().getScheduler().schedule(() -> {
+            if (cancelled) return;
+            Call<T> retry = call.clone();
+            currentCall = retry;
+            // Annulation arrivée entre-temps : cancel() a pu voir l'appel précédent
+            if (cancelled) return;
+            RequestScheduler.deferRetries(retry);
+            retry.enqueue(this);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+}
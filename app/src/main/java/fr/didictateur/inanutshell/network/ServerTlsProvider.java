@@ -0,0 +1,187 @@
+package fr.didictateur.inanutshell.network;
+
+import android.content.Context;
+import android.util.Log;
+import fr.didictateur.inanutshell.config.ServerConfig;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+
+/**
+ * Configuration TLS propre à chaque serveur qui autorise les certificats auto-signés.
+ *
+ * Un SSLContext avec son {@link PinningTrustManager} est créé une fois par hôte:port et réutilisé :
+ * - son cache de sessions permet de reprendre une session TLS (ID ou ticket, activés par la
+ *   plateforme OkHttp sur Android 10+) au lieu de refaire une poignée de main complète ;
+ * - la même fabrique de sockets et le même vérificateur de nom d'hôte donnent la même Address OkHttp,
+ *   donc les connexions du pool partagé sont réutilisées entre clients dérivés.
+ * Les autres serveurs gardent la configuration TLS du client racine.
+ */
+public class ServerTlsProvider {
+    private static final String TAG = "ServerTlsProvider";
+    private static ServerTlsProvider instance;
+
+    private static final int SESSION_CACHE_SIZE = 32;
+    private static final int SESSION_TIMEOUT_SECONDS = 24 * 60 * 60;
+
+    private final CertificatePinStore pinStore;
+    private final X509TrustManager systemTrustManager;
+    private final Map<String, ServerTls> byHostPort = new ConcurrentHashMap<>();
+
+    /**
+     * Éléments TLS d'un serveur, à passer au builder OkHttp
+     */
+    private static class ServerTls {
+        final SSLContext sslContext;
+        final PinningTrustManager trustManager;
+        final HostnameVerifier hostnameVerifier;
+
+        ServerTls(SSLContext sslContext, PinningTrustManager trustManager, HostnameVerifier hostnameVerifier) {
+            this.sslContext = sslContext;
+            this.trustManager = trustManager;
+            this.hostnameVerifier = hostnameVerifier;
+        }
+    }
+
+    private ServerTlsProvider(Context context) {
+        this(CertificatePinStore.getInstance(context));
+    }
+
+    ServerTlsProvider(CertificatePinStore pinStore) {
+        this.pinStore = pinStore;
+        this.systemTrustManager = systemTrustManager();
+    }
+
+    public static synchronized ServerTlsProvider getInstance(Context context) {
+        if (instance == null) {
+            instance = new ServerTlsProvider(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Applique la configuration TLS du serveur au builder ; sans effet si le serveur
+     * n'autorise pas les certificats auto-signés ou n'est pas en HTTPS
+     */
+    public void configure(OkHttpClient.Builder builder, ServerConfig server) {
+        String hostPort = hostPort(server);
+        if (!server.isAllowSelfSigned() || hostPort == null || systemTrustManager == null) {
+            return;
+        }
+
+        ServerTls tls = byHostPort.get(hostPort);
+        if (tls == null) {
+            try {
+                tls = create(hostPort, server.getId());
+            } catch (GeneralSecurityException e) {
+                Log.e(TAG, "Configuration TLS impossible pour " + hostPort, e);
+                return;
+            }
+            ServerTls existing = byHostPort.putIfAbsent(hostPort, tls);
+            if (existing != null) {
+                tls = existing;
+            }
+        }
+
+        builder.sslSocketFactory(tls.sslContext.getSocketFactory(), tls.trustManager)
+            .hostnameVerifier(tls.hostnameVerifier);
+    }
+
+    /**
+     * Dernier certificat refusé pour ce serveur (clé différente de celle épinglée), ou null
+     */
+    public PinningTrustManager.PinMismatchException getPinMismatch(ServerConfig server) {
+        String hostPort = hostPort(server);
+        return hostPort != null ? pinStore.getMismatch(hostPort) : null;
+    }
+
+    /**
+     * Accorde la confiance au nouveau certificat du serveur (ex: certificat régénéré volontairement).
+     * Le certificat refusé affiché à l'utilisateur est épinglé directement ; sans refus connu,
+     * l'épingle est oubliée et la prochaine connexion l'épinglera à nouveau.
+     */
+    public void resetTrust(ServerConfig server) {
+        String hostPort = hostPort(server);
+        if (hostPort == null) return;
+        PinningTrustManager.PinMismatchException mismatch = pinStore.getMismatch(hostPort);
+        if (mismatch != null && mismatch.getPresentedCertificate() != null) {
+            pinStore.pin(hostPort, server.getId(), mismatch.getPresentedCertificate());
+        } else {
+            pinStore.forget(hostPort);
+        }
+        ServerTls tls = byHostPort.get(hostPort);
+        if (tls != null) {
+            invalidateSessions(tls.sslContext.getClientSessionContext());
+        }
+    }
+
+    /**
+     * À appeler lors de la suppression d'un serveur
+     */
+    public void removeServer(ServerConfig server) {
+        pinStore.forgetServer(server.getId());
+        String hostPort = hostPort(server);
+        if (hostPort != null) {
+            byHostPort.remove(hostPort);
+        }
+    }
+
+    private ServerTls create(String hostPort, int serverId) throws GeneralSecurityException {
+        PinningTrustManager trustManager = new PinningTrustManager(hostPort, serverId, pinStore, systemTrustManager);
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[] { trustManager }, null);
+
+        SSLSessionContext sessions = sslContext.getClientSessionContext();
+        sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+        sessions.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+
+        HostnameVerifier defaultVerifier = HttpsURLConnection.getDefaultHostnameVerifier();
+        HostnameVerifier hostnameVerifier = (hostname, session) ->
+            defaultVerifier.verify(hostname, session) || trustManager.isPinnedPeer(session);
+
+        return new ServerTls(sslContext, trustManager, hostnameVerifier);
+    }
+
+    private static void invalidateSessions(SSLSessionContext sessions) {
+        java.util.Enumeration<byte[]> ids = sessions.getIds();
+        while (ids.hasMoreElements()) {
+            javax.net.ssl.SSLSession session = sessions.getSession(ids.nextElement());
+            if (session != null) {
+                session.invalidate();
+            }
+        }
+    }
+
+    private static String hostPort(ServerConfig server) {
+        HttpUrl url = server.getBaseUrl() != null ? HttpUrl.parse(server.getBaseUrl()) : null;
+        if (url == null || !url.isHttps()) {
+            return null;
+        }
+        return url.host() + ":" + url.port();
+    }
+
+    private static X509TrustManager systemTrustManager() {
+        try {
+            TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            factory.init((KeyStore) null);
+            for (TrustManager trustManager : factory.getTrustManagers()) {
+                if (trustManager instanceof X509TrustManager) {
+                    return (X509TrustManager) trustManager;
+                }
+            }
+        } catch (GeneralSecurityException e) {
+            Log.e(TAG, "Trust manager du système indisponible", e);
+        }
+        return null;
+    }
+}
@@ -177,6 +177,14 @@ public class OfflineCacheManager {
         return null;
     }
     
+    /**
+     * Fichier de l'image en cache disque, null s'il n'y en a pas (sans la décoder ni remplir le cache mémoire)
+     */
+    public File getCachedImageFile(String recipeId) {
+        File imageFile = new File(imagesCacheDir, "recipe_" + recipeId + ".jpg");
+        return imageFile.isFile() ? imageFile : null;
+    }
+    
     public Bitmap getCachedImage(String recipeId) {
         // Vérifier le cache mémoire
         Bitmap bitmap = imageMemoryCache.get(recipeId);
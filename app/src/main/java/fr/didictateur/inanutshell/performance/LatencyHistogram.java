@@ -0,0 +1,106 @@
+package fr.didictateur.inanutshell.performance;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogramme de latences log-linéaire, dans l'esprit de HdrHistogram :
+ * chaque puissance de deux est découpée en SUB_BUCKETS intervalles égaux, ce qui donne
+ * une précision relative d'environ 6% de 1µs à plusieurs heures, en mémoire constante.
+ * L'enregistrement est sans verrou et peut être appelé depuis n'importe quel thread.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;   // 16
+    private static final int MAGNITUDES = 33;                       // Jusqu'à 2^36 µs (≈ 19 h)
+
+    private final AtomicLongArray counts = new AtomicLongArray(MAGNITUDES * SUB_BUCKETS);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Enregistre une valeur en microsecondes
+     */
+    public void recordMicros(long micros) {
+        if (micros < 0) micros = 0;
+        counts.incrementAndGet(bucketIndex(micros));
+        totalCount.incrementAndGet();
+        totalMicros.addAndGet(micros);
+
+        long max;
+        do {
+            max = maxMicros.get();
+        } while (micros > max && !maxMicros.compareAndSet(max, micros));
+    }
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public double getMeanMillis() {
+        long count = totalCount.get();
+        return count > 0 ? totalMicros.get() / 1000.0 / count : 0.0;
+    }
+
+    public double getMaxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    /**
+     * Valeur du percentile demandé (0-100) en millisecondes, borne haute de son intervalle
+     */
+    public double getPercentileMillis(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) return 0.0;
+
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), maxMicros.get()) / 1000.0;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    /**
+     * Les valeurs < SUB_BUCKETS sont exactes ; au-delà, magnitude = position du bit de poids fort
+     * et sous-intervalle = les SUB_BUCKET_BITS bits suivants
+     */
+    private static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS + 1;
+        if (magnitude >= MAGNITUDES) {
+            return MAGNITUDES * SUB_BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (magnitude - 1)) - SUB_BUCKETS;
+        return magnitude * SUB_BUCKETS + subBucket;
+    }
+
+    private static long bucketUpperBound(int index) {
+        int magnitude = index / SUB_BUCKETS;
+        int subBucket = index % SUB_BUCKETS;
+        if (magnitude == 0) {
+            return subBucket;
+        }
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (magnitude - 1)) - 1;
+    }
+}
@@ -0,0 +1,184 @@
+package fr.didictateur.inanutshell.performance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import okhttp3.HttpUrl;
+
+/**
+ * Métriques réseau par endpoint normalisé (ex: GET /api/recipes/{slug}) :
+ * histogrammes des phases (DNS, connexion, TLS, TTFB, lecture du corps, total),
+ * octets échangés et efficacité du cache HTTP.
+ * Alimenté par NetworkMetricsListener (phases, octets, cache) et NetworkMetricsInterceptor (statuts HTTP).
+ */
+public class NetworkMetrics {
+
+    private static final int MAX_ENDPOINTS = 200;
+    private static final String OTHER_ENDPOINT = "(autres)";
+
+    private static final Pattern UUID = Pattern.compile(
+        "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+
+    // Collections Mealie dont le segment suivant est un identifiant ou un slug
+    private static final Set<String> SLUG_COLLECTIONS = new HashSet<>(Arrays.asList(
+        "recipes", "foods", "units", "tags", "categories", "tools", "mealplans",
+        "lists", "items", "users", "cookbooks", "shared"));
+    // Sous-routes littérales qui ne sont pas des slugs
+    private static final Set<String> LITERAL_SEGMENTS = new HashSet<>(Arrays.asList(
+        "create", "create-url", "create-from-zip", "bulk-actions", "exports", "timeline",
+        "self", "today", "random", "summary", "slug", "image", "assets", "comments"));
+
+    private final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Métriques accumulées pour un endpoint
+     */
+    public static class EndpointStats {
+        public final String endpoint;
+        public final LatencyHistogram dns = new LatencyHistogram();
+        public final LatencyHistogram connect = new LatencyHistogram();
+        public final LatencyHistogram tls = new LatencyHistogram();
+        public final LatencyHistogram ttfb = new LatencyHistogram();
+        public final LatencyHistogram bodyRead = new LatencyHistogram();
+        public final LatencyHistogram total = new LatencyHistogram();
+
+        final AtomicLong calls = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong httpErrors = new AtomicLong();
+        final AtomicLong bytesSent = new AtomicLong();
+        final AtomicLong bytesReceived = new AtomicLong();
+        final AtomicLong cacheHits = new AtomicLong();
+        final AtomicLong conditionalHits = new AtomicLong();
+        final AtomicLong cacheMisses = new AtomicLong();
+        final AtomicLong tlsResumed = new AtomicLong();
+
+        EndpointStats(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        public long getCalls() { return calls.get(); }
+        public long getFailures() { return failures.get(); }
+        public long getHttpErrors() { return httpErrors.get(); }
+        public long getBytesSent() { return bytesSent.get(); }
+        public long getBytesReceived() { return bytesReceived.get(); }
+        public long getCacheHits() { return cacheHits.get(); }
+        public long getConditionalHits() { return conditionalHits.get(); }
+        public long getCacheMisses() { return cacheMisses.get(); }
+        public long getTlsHandshakes() { return tls.getCount(); }
+        public long getTlsResumed() { return tlsResumed.get(); }
+
+        /**
+         * Part des appels servis par le cache (directement ou après revalidation 304)
+         */
+        public double getCacheHitRate() {
+            long hits = cacheHits.get() + conditionalHits.get();
+            long lookups = hits + cacheMisses.get();
+            return lookups > 0 ? (double) hits / lookups : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                "%s: %d appels (%d échecs, %d erreurs HTTP), total p50=%.0fms p95=%.0fms p99=%.0fms, " +
+                "ttfb p50=%.0fms, dns p50=%.0fms, connect p50=%.0fms, tls p50=%.0fms (%d/%d repris), " +
+                "corps p50=%.0fms, %d o envoyés / %d o reçus, cache %.0f%%",
+                endpoint, calls.get(), failures.get(), httpErrors.get(),
+                total.getPercentileMillis(50), total.getPercentileMillis(95), total.getPercentileMillis(99),
+                ttfb.getPercentileMillis(50), dns.getPercentileMillis(50),
+                connect.getPercentileMillis(50), tls.getPercentileMillis(50), tlsResumed.get(), tls.getCount(),
+                bodyRead.getPercentileMillis(50), bytesSent.get(), bytesReceived.get(),
+                getCacheHitRate() * 100);
+        }
+    }
+
+    /**
+     * Statistiques d'un endpoint, créées à la demande. Le nombre d'endpoints est borné
+     * pour qu'une URL non reconnue ne fasse pas grossir la table indéfiniment.
+     */
+    public EndpointStats forEndpoint(String method, HttpUrl url) {
+        String key = method + " " + normalizePath(url);
+        EndpointStats stats = endpoints.get(key);
+        if (stats != null) return stats;
+
+        if (endpoints.size() >= MAX_ENDPOINTS) {
+            key = OTHER_ENDPOINT;
+        }
+        EndpointStats created = new EndpointStats(key);
+        EndpointStats existing = endpoints.putIfAbsent(key, created);
+        return existing != null ? existing : created;
+    }
+
+    /**
+     * Statistiques triées par latence p95 décroissante
+     */
+    public List<EndpointStats> getEndpointStats() {
+        List<EndpointStats> list = new ArrayList<>(endpoints.values());
+        Collections.sort(list, (a, b) -> Double.compare(
+            b.total.getPercentileMillis(95), a.total.getPercentileMillis(95)));
+        return list;
+    }
+
+    /**
+     * Taux de succès du cache HTTP sur l'ensemble des endpoints
+     */
+    public double getCacheHitRate() {
+        long hits = 0;
+        long lookups = 0;
+        for (EndpointStats stats : endpoints.values()) {
+            long endpointHits = stats.cacheHits.get() + stats.conditionalHits.get();
+            hits += endpointHits;
+            lookups += endpointHits + stats.cacheMisses.get();
+        }
+        return lookups > 0 ? (double) hits / lookups : 0.0;
+    }
+
+    /**
+     * Poignées de main TLS et part reprise depuis une session existante, tous endpoints confondus
+     */
+    public String getTlsSummary() {
+        long handshakes = 0;
+        long resumed = 0;
+        for (EndpointStats stats : endpoints.values()) {
+            handshakes += stats.tls.getCount();
+            resumed += stats.tlsResumed.get();
+        }
+        return String.format(Locale.ROOT, "TLS: %d poignée(s) de main, %d reprise(s) de session", handshakes, resumed);
+    }
+
+    public void reset() {
+        endpoints.clear();
+    }
+
+    /**
+     * Remplace les identifiants du chemin par des variables de gabarit :
+     * /api/recipes/tarte-aux-pommes → /api/recipes/{slug}, UUID et nombres → {id}
+     */
+    static String normalizePath(HttpUrl url) {
+        StringBuilder path = new StringBuilder();
+        String previous = null;
+        for (String segment : url.pathSegments()) {
+            if (segment.isEmpty()) continue;
+
+            path.append('/');
+            if (UUID.matcher(segment).matches() || NUMBER.matcher(segment).matches()) {
+                path.append("{id}");
+            } else if (previous != null && SLUG_COLLECTIONS.contains(previous)
+                    && !LITERAL_SEGMENTS.contains(segment)) {
+                path.append("{slug}");
+            } else {
+                path.append(segment);
+            }
+            previous = segment;
+        }
+        return path.length() > 0 ? path.toString() : "/";
+    }
+}
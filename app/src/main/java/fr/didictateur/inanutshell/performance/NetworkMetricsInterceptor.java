@@ -0,0 +1,31 @@
+package fr.didictateur.inanutshell.performance;
+
+import java.io.IOException;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Interceptor complémentaire de NetworkMetricsListener : compte les réponses HTTP en erreur
+ * (4xx/5xx), que l'EventListener ne distingue pas d'un succès
+ */
+public class NetworkMetricsInterceptor implements Interceptor {
+
+    private final NetworkMetrics metrics;
+
+    public NetworkMetricsInterceptor(NetworkMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+        if (response.code() >= 400) {
+            metrics.forEndpoint(request.method(), request.url()).httpErrors.incrementAndGet();
+        }
+        return response;
+    }
+}
@@ -0,0 +1,148 @@
+package fr.didictateur.inanutshell.performance;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * EventListener OkHttp qui mesure chaque phase d'un appel (DNS, connexion, TLS, TTFB,
+ * lecture du corps) et les événements du cache HTTP, pour l'endpoint de l'appel.
+ * Une instance par appel, créée par {@link #factory(NetworkMetrics)}.
+ */
+public class NetworkMetricsListener extends EventListener {
+
+    private final NetworkMetrics.EndpointStats stats;
+
+    private long callStart;
+    private long dnsStart;
+    private long connectStart;
+    private long secureConnectStart;
+    private long secureConnectStartWallMs;
+    private long requestHeadersStart;
+    private long responseBodyStart;
+
+    private NetworkMetricsListener(NetworkMetrics.EndpointStats stats) {
+        this.stats = stats;
+    }
+
+    public static EventListener.Factory factory(NetworkMetrics metrics) {
+        return call -> new NetworkMetricsListener(
+            metrics.forEndpoint(call.request().method(), call.request().url()));
+    }
+
+    @Override
+    public void callStart(@NotNull Call call) {
+        callStart = System.nanoTime();
+        stats.calls.incrementAndGet();
+    }
+
+    @Override
+    public void dnsStart(@NotNull Call call, @NotNull String domainName) {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(@NotNull Call call, @NotNull String domainName, @NotNull List<InetAddress> addresses) {
+        stats.dns.recordNanos(System.nanoTime() - dnsStart);
+    }
+
+    @Override
+    public void connectStart(@NotNull Call call, @NotNull InetSocketAddress address, @NotNull Proxy proxy) {
+        connectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectStart(@NotNull Call call) {
+        secureConnectStart = System.nanoTime();
+        secureConnectStartWallMs = System.currentTimeMillis();
+    }
+
+    @Override
+    public void secureConnectEnd(@NotNull Call call, @Nullable Handshake handshake) {
+        stats.tls.recordNanos(System.nanoTime() - secureConnectStart);
+    }
+
+    @Override
+    public void connectEnd(@NotNull Call call, @NotNull InetSocketAddress address, @NotNull Proxy proxy,
+                           @Nullable Protocol protocol) {
+        stats.connect.recordNanos(System.nanoTime() - connectStart);
+    }
+
+    @Override
+    public void connectionAcquired(@NotNull Call call, @NotNull Connection connection) {
+        if (secureConnectStartWallMs == 0 || !(connection.socket() instanceof SSLSocket)) return;
+
+        // Une session reprise (ID ou ticket) garde la date de création de la poignée de main d'origine
+        SSLSession session = ((SSLSocket) connection.socket()).getSession();
+        if (session.getCreationTime() < secureConnectStartWallMs) {
+            stats.tlsResumed.incrementAndGet();
+        }
+        secureConnectStartWallMs = 0;
+    }
+
+    @Override
+    public void requestHeadersStart(@NotNull Call call) {
+        requestHeadersStart = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(@NotNull Call call, long byteCount) {
+        stats.bytesSent.addAndGet(byteCount);
+    }
+
+    @Override
+    public void responseHeadersStart(@NotNull Call call) {
+        if (requestHeadersStart > 0) {
+            stats.ttfb.recordNanos(System.nanoTime() - requestHeadersStart);
+        }
+    }
+
+    @Override
+    public void responseBodyStart(@NotNull Call call) {
+        responseBodyStart = System.nanoTime();
+    }
+
+    @Override
+    public void responseBodyEnd(@NotNull Call call, long byteCount) {
+        stats.bodyRead.recordNanos(System.nanoTime() - responseBodyStart);
+        stats.bytesReceived.addAndGet(byteCount);
+    }
+
+    @Override
+    public void cacheHit(@NotNull Call call, @NotNull Response response) {
+        stats.cacheHits.incrementAndGet();
+    }
+
+    @Override
+    public void cacheConditionalHit(@NotNull Call call, @NotNull Response cachedResponse) {
+        stats.conditionalHits.incrementAndGet();
+    }
+
+    @Override
+    public void cacheMiss(@NotNull Call call) {
+        stats.cacheMisses.incrementAndGet();
+    }
+
+    @Override
+    public void callEnd(@NotNull Call call) {
+        stats.total.recordNanos(System.nanoTime() - callStart);
+    }
+
+    @Override
+    public void callFailed(@NotNull Call call, @NotNull IOException ioe) {
+        stats.total.recordNanos(System.nanoTime() - callStart);
+        stats.failures.incrementAndGet();
+    }
+}
@@ -3,6 +3,7 @@ package fr.didictateur.inanutshell.performance;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -34,6 +35,7 @@ public class PerformanceManager {
     private final AtomicLong cacheHits;
     private final AtomicInteger activeThreads;
     private final ConcurrentHashMap<String, OperationMetrics> operationMetrics;
+    private final NetworkMetrics networkMetrics;
     
     // Configuration
     private static final int CORE_POOL_SIZE = 2;
@@ -71,6 +73,7 @@ public class PerformanceManager {
         this.cacheHits = new AtomicLong(0);
         this.activeThreads = new AtomicInteger(0);
         this.operationMetrics = new ConcurrentHashMap<>();
+        this.networkMetrics = new NetworkMetrics();
         
         // Nettoyage périodique du cache
         scheduleCacheCleanup();
@@ -290,10 +293,19 @@ public class PerformanceManager {
             resultCache.size(),
             runningTasks.size(),
             getAverageResponseTime(),
-            getCacheHitRate()
+            getCacheHitRate(),
+            networkMetrics.getCacheHitRate(),
+            networkMetrics.getEndpointStats()
         );
     }
     
+    /**
+     * Métriques réseau par endpoint, alimentées par les clients OkHttp
+     */
+    public NetworkMetrics getNetworkMetrics() {
+        return networkMetrics;
+    }
+    
     /**
      * Calcule le temps de réponse moyen
      */
@@ -428,10 +440,13 @@ public class PerformanceManager {
         public final int runningTasks;
         public final double averageResponseTime;
         public final double cacheHitRate;
+        public final double httpCacheHitRate;
+        public final List<NetworkMetrics.EndpointStats> endpoints;
         
         public PerformanceStats(long totalOperations, long cacheHits, int activeThreads,
                               int cacheSize, int runningTasks, double averageResponseTime, 
-                              double cacheHitRate) {
+                              double cacheHitRate, double httpCacheHitRate,
+                              List<NetworkMetrics.EndpointStats> endpoints) {
             this.totalOperations = totalOperations;
             this.cacheHits = cacheHits;
             this.activeThreads = activeThreads;
@@ -439,14 +454,18 @@ public class PerformanceManager {
             this.runningTasks = runningTasks;
             this.averageResponseTime = averageResponseTime;
             this.cacheHitRate = cacheHitRate;
+            this.httpCacheHitRate = httpCacheHitRate;
+            this.endpoints = endpoints;
         }
         
         @Override
         public String toString() {
             return String.format(
-                "PerformanceStats{operations=%d, cache=%d/%d (%.1f%%), threads=%d, tasks=%d, avgTime=%.1fms}",
+                "PerformanceStats{operations=%d, cache=%d/%d (%.1f%%), threads=%d, tasks=%d, avgTime=%.1fms, " +
+                "endpoints=%d, httpCache=%.1f%%}",
                 totalOperations, cacheHits, totalOperations, cacheHitRate * 100,
-                activeThreads, runningTasks, averageResponseTime
+                activeThreads, runningTasks, averageResponseTime,
+                endpoints.size(), httpCacheHitRate * 100
             );
         }
     }
@@ -0,0 +1,131 @@
+package fr.didictateur.inanutshell.sync;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Exécuteur partagé pour les envois de synchronisation par lots
+ * Limite le nombre de requêtes simultanées et collecte succès / échecs
+ */
+public class BatchSyncExecutor {
+
+    private static final String TAG = "BatchSyncExecutor";
+
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    private final ExecutorService workers;
+    private final int parallelism;
+
+    /**
+     * Traitement bloquant d'un élément (appel réseau synchrone)
+     */
+    public interface ItemTask<T> {
+        void run(T item) throws Exception;
+    }
+
+    /**
+     * Progression d'un lot
+     */
+    public interface ProgressListener {
+        void onProgress(int processed, int total);
+    }
+
+    /**
+     * Résultat d'un lot : éléments envoyés et éléments en échec
+     */
+    public static class BatchResult<T> {
+        private final List<T> succeeded;
+        private final List<T> failed;
+
+        BatchResult(List<T> succeeded, List<T> failed) {
+            this.succeeded = succeeded;
+            this.failed = failed;
+        }
+
+        public List<T> getSucceeded() { return succeeded; }
+        public List<T> getFailed() { return failed; }
+        public boolean hasFailures() { return !failed.isEmpty(); }
+    }
+
+    public BatchSyncExecutor(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        this.workers = Executors.newFixedThreadPool(this.parallelism);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Exécute la tâche sur chaque élément avec au plus {@code parallelism} appels simultanés.
+     * Bloque jusqu'à la fin du lot.
+     */
+    public <T> BatchResult<T> execute(List<T> items, ItemTask<T> task, ProgressListener listener)
+            throws InterruptedException {
+        if (items == null || items.isEmpty()) {
+            return new BatchResult<>(Collections.<T>emptyList(), Collections.<T>emptyList());
+        }
+
+        CompletionService<T> completion = new ExecutorCompletionService<>(workers);
+        List<Future<T>> futures = new ArrayList<>(items.size());
+        List<T> submitted = new ArrayList<>(items);
+
+        for (T item : submitted) {
+            futures.add(completion.submit(() -> {
+                task.run(item);
+                return item;
+            }));
+        }
+
+        List<T> succeeded = new ArrayList<>(submitted.size());
+        int total = submitted.size();
+        int processed = 0;
+
+        try {
+            for (int i = 0; i < total; i++) {
+                Future<T> done = completion.take();
+                try {
+                    succeeded.add(done.get());
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Échec d'un élément du lot", e.getCause());
+                }
+                processed++;
+                if (listener != null) {
+                    listener.onProgress(processed, total);
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+
+        // Les échecs sont les éléments soumis absents des succès (ordre d'origine conservé)
+        Set<T> succeededSet = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+        succeededSet.addAll(succeeded);
+        List<T> failed = new ArrayList<>();
+        for (T item : submitted) {
+            if (!succeededSet.contains(item)) {
+                failed.add(item);
+            }
+        }
+
+        return new BatchResult<>(succeeded, failed);
+    }
+
+    public void shutdown() {
+        workers.shutdown();
+    }
+}
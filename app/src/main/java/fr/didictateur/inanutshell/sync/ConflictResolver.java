@@ -15,15 +15,24 @@ public class ConflictResolver {
     private static final String TAG = "ConflictResolver";
     
     private final Map<String, ConflictResolution> activeConflicts = new ConcurrentHashMap<>();
+    private final RecipeMerger recipeMerger = new RecipeMerger();
     
     /**
      * Ajoute un conflit à résoudre
      */
     public void addConflict(Object localVersion, Object serverVersion) {
+        addConflict(localVersion, serverVersion, null);
+    }
+    
+    /**
+     * Ajoute un conflit avec l'ancêtre commun (dernière version synchronisée)
+     * pour permettre une fusion à trois voies
+     */
+    public void addConflict(Object localVersion, Object serverVersion, Object baseVersion) {
         String id = generateConflictId(localVersion);
         ConflictResolution.Type type = determineConflictType(localVersion);
         
-        ConflictResolution conflict = new ConflictResolution(id, type, localVersion, serverVersion);
+        ConflictResolution conflict = new ConflictResolution(id, type, localVersion, serverVersion, baseVersion);
         activeConflicts.put(id, conflict);
         
         Log.d(TAG, "Nouveau conflit ajouté: " + conflict.getConflictDescription());
@@ -64,7 +73,7 @@ public class ConflictResolver {
                 conflict.resolveWithServer();
                 break;
             case MERGE:
-                Object merged = performMerge(conflict.getLocalVersion(), conflict.getServerVersion());
+                Object merged = performMerge(conflict);
                 conflict.resolveWithMerge(merged);
                 break;
             case ASK_USER:
@@ -160,6 +169,20 @@ public class ConflictResolver {
         
         if (local == null || server == null) return;
         
+        // Avec l'ancêtre commun : fusion à trois voies, seuls les vrais chevauchements restent manuels
+        Recipe base = conflict.getBaseRecipe();
+        if (base != null) {
+            RecipeMerger.Result result = recipeMerger.merge(base, local, server);
+            if (!result.hasConflicts()) {
+                conflict.resolveWithMerge(result.getMerged());
+                Log.d(TAG, "Auto-résolution: fusion à trois voies réussie");
+            } else {
+                conflict.setConflictingFields(result.getConflicts());
+                Log.d(TAG, "Conflit sur les champs " + result.getConflicts() + ", résolution manuelle");
+            }
+            return;
+        }
+        
         // Règle 1: Si une version est beaucoup plus récente (> 1 heure)
         long timeDiff = Math.abs(local.getUpdatedAtTimestamp() - server.getUpdatedAtTimestamp());
         if (timeDiff > 3600000) { // 1 heure
@@ -280,7 +303,22 @@ public class ConflictResolver {
         return local + "\n\n[Fusion serveur]: " + server;
     }
     
-    private Object performMerge(Object localVersion, Object serverVersion) {
+    private Object performMerge(ConflictResolution conflict) {
+        Object localVersion = conflict.getLocalVersion();
+        Object serverVersion = conflict.getServerVersion();
+        
+        if (conflict.getBaseVersion() instanceof Recipe && localVersion instanceof Recipe && serverVersion instanceof Recipe) {
+            // Champs modifiés des deux côtés : la version la plus récente gagne, champ par champ
+            RecipeMerger.Result result = recipeMerger.merge(
+                (Recipe) conflict.getBaseVersion(), (Recipe) localVersion, (Recipe) serverVersion);
+            if (result.hasConflicts()) {
+                conflict.setConflictingFields(result.getConflicts());
+                Log.d(TAG, "Fusion " + conflict.getId() + " : champs résolus par date de modification "
+                    + result.getConflicts());
+            }
+            return result.getMerged();
+        }
+        
         if (localVersion instanceof Recipe && serverVersion instanceof Recipe) {
             return performRecipeMerge((Recipe) localVersion, (Recipe) serverVersion);
         }
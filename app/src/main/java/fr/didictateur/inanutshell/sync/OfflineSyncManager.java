@@ -5,6 +5,9 @@ import android.content.SharedPreferences;
 import android.util.Log;
 import androidx.room.Room;
 
+import fr.didictateur.inanutshell.data.database.AppDatabase;
+import fr.didictateur.inanutshell.data.database.RecipeDao;
+import fr.didictateur.inanutshell.data.model.Recipe;
 import fr.didictateur.inanutshell.sync.model.SyncItem;
 import fr.didictateur.inanutshell.sync.database.OfflineSyncDatabase;
 import fr.didictateur.inanutshell.sync.database.PendingSync;
@@ -29,6 +32,7 @@ public class OfflineSyncManager {
     private final PendingSyncDao pendingSyncDao;
     private final SharedPreferences prefs;
     private final ExecutorService executorService;
+    private final SyncPayloadCodec payloadCodec;
     
     private boolean offlineModeEnabled = true;
     
@@ -38,6 +42,11 @@ public class OfflineSyncManager {
         this.pendingSyncDao = database.pendingSyncDao();
         this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         this.executorService = Executors.newSingleThreadExecutor();
+        RecipeDao recipeDao = AppDatabase.getInstance(context).recipeDao();
+        this.payloadCodec = new SyncPayloadCodec(new SyncSnapshotStore(context), recipeId -> {
+            List<Recipe> recipes = recipeDao.getRecipesByIds(Collections.singletonList(recipeId));
+            return recipes.isEmpty() ? null : recipes.get(0);
+        });
         
         // Charger les préférences
         loadPreferences();
@@ -59,7 +68,8 @@ public class OfflineSyncManager {
                 PendingSync pendingSync = convertToPendingSync(item);
                 pendingSyncDao.insert(pendingSync);
                 
-                Log.d(TAG, "Élément stocké pour sync offline: " + item);
+                Log.d(TAG, "Élément stocké pour sync offline: " + item + " (" 
+                    + (pendingSync.payload != null ? pendingSync.payload.length : 0) + " octets)");
                 
             } catch (Exception e) {
                 Log.e(TAG, "Erreur lors du stockage offline", e);
@@ -133,6 +143,27 @@ public class OfflineSyncManager {
         });
     }
     
+    /**
+     * Écarte un élément dont les données ne peuvent plus être décodées :
+     * marqué en échec permanent, il n'est plus relu par la file
+     */
+    public void quarantine(SyncItem item) {
+        executorService.execute(() -> {
+            try {
+                PendingSync pending = pendingSyncDao.getByItemId(item.getId(), item.getType().name(), item.getAction().name());
+                if (pending != null) {
+                    pending.status = PendingSync.Status.FAILED;
+                    pending.lastAttempt = System.currentTimeMillis();
+                    pendingSyncDao.update(pending);
+                    Log.w(TAG, "Élément illisible mis de côté: " + item);
+                }
+                
+            } catch (Exception e) {
+                Log.e(TAG, "Erreur lors de la mise de côté d'un élément pending", e);
+            }
+        });
+    }
+    
     /**
      * Gère un échec de synchronisation
      */
@@ -227,12 +258,12 @@ public class OfflineSyncManager {
         offlineModeEnabled = prefs.getBoolean(KEY_ENABLED, true);
     }
     
-    private PendingSync convertToPendingSync(SyncItem item) {
+    private PendingSync convertToPendingSync(SyncItem item) throws java.io.IOException {
         PendingSync pending = new PendingSync();
         pending.itemId = item.getId();
         pending.type = item.getType().name();
         pending.action = item.getAction().name();
-        pending.data = serializeData(item.getData());
+        pending.payload = payloadCodec.encode(item);
         pending.deviceId = item.getDeviceId();
         pending.timestamp = item.getTimestamp();
         pending.status = PendingSync.Status.PENDING;
@@ -246,16 +277,37 @@ public class OfflineSyncManager {
         try {
             SyncItem.Type type = SyncItem.Type.valueOf(pending.type);
             SyncItem.Action action = SyncItem.Action.valueOf(pending.action);
-            Object data = deserializeData(pending.data, type);
             
-            SyncItem item = new SyncItem(
-                pending.itemId,
-                type,
-                action,
-                pending.timestamp,
-                pending.deviceId,
-                data
-            );
+            SyncItem item;
+            if (pending.payload != null) {
+                // Décodage différé : uniquement au moment de l'envoi
+                byte[] payload = pending.payload;
+                String itemId = pending.itemId;
+                item = new SyncItem(
+                    pending.itemId,
+                    type,
+                    action,
+                    pending.timestamp,
+                    pending.deviceId,
+                    () -> {
+                        try {
+                            return payloadCodec.decode(payload, type, itemId);
+                        } catch (java.io.IOException e) {
+                            Log.e(TAG, "Données pending illisibles pour " + itemId, e);
+                            return null;
+                        }
+                    }
+                );
+            } else {
+                item = new SyncItem(
+                    pending.itemId,
+                    type,
+                    action,
+                    pending.timestamp,
+                    pending.deviceId,
+                    deserializeData(pending.data, type)
+                );
+            }
             
             // Restaurer le retry count
             for (int i = 0; i < pending.retryCount; i++) {
@@ -270,16 +322,10 @@ public class OfflineSyncManager {
         }
     }
     
-    private String serializeData(Object data) {
-        // Pour simplifier, on utilise toString()
-        // Dans une vraie implémentation, utiliser JSON ou autre format
-        if (data == null) return "";
-        return data.toString();
-    }
-    
+    /**
+     * Lecture des éléments stockés dans l'ancien format texte
+     */
     private Object deserializeData(String data, SyncItem.Type type) {
-        // Pour simplifier, on retourne la string
-        // Dans une vraie implémentation, désérialiser depuis JSON
         if (data == null || data.isEmpty()) return null;
         
         switch (type) {
@@ -0,0 +1,320 @@
+package fr.didictateur.inanutshell.sync;
+
+import fr.didictateur.inanutshell.data.model.Category;
+import fr.didictateur.inanutshell.data.model.Nutrition;
+import fr.didictateur.inanutshell.data.model.Recipe;
+import fr.didictateur.inanutshell.data.model.RecipeIngredient;
+import fr.didictateur.inanutshell.data.model.RecipeInstruction;
+import fr.didictateur.inanutshell.data.model.Tag;
+import fr.didictateur.inanutshell.data.model.Tool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Fusion à trois voies d'une recette : ancêtre commun (dernière version synchronisée),
+ * version locale et version serveur.
+ * Chaque champ et chaque élément de liste est comparé directement sur les objets ;
+ * seuls les changements concurrents et différents sur un même champ / élément sont des conflits.
+ *
+ * Règle pour un conflit : dernier écrivain gagnant par champ. La valeur retenue est celle
+ * de la version dont updatedAt est le plus récent (la version locale en cas d'égalité),
+ * et le champ est toujours rapporté dans {@link Result#getConflicts()}. Dans une liste,
+ * la règle s'applique élément par élément : les changements sans conflit des deux côtés
+ * sont conservés, et un élément modifié d'un côté et supprimé de l'autre est gardé.
+ */
+public class RecipeMerger {
+
+    /**
+     * Résultat d'une fusion : recette fusionnée et champs en conflit
+     */
+    public static class Result {
+        private final Recipe merged;
+        private final List<String> conflicts;
+
+        Result(Recipe merged, List<String> conflicts) {
+            this.merged = merged;
+            this.conflicts = conflicts;
+        }
+
+        public Recipe getMerged() { return merged; }
+        public List<String> getConflicts() { return conflicts; }
+        public boolean hasConflicts() { return !conflicts.isEmpty(); }
+    }
+
+    private interface Equality<T> {
+        boolean same(T a, T b);
+    }
+
+    private interface KeyFunction<T> {
+        String key(T item);
+    }
+
+    private static final Equality<Object> EQUALS = Objects::equals;
+
+    public Result merge(Recipe base, Recipe local, Recipe server) {
+        List<String> conflicts = new ArrayList<>(0);
+        Recipe merged = new Recipe();
+        boolean serverWins = server.getUpdatedAtTimestamp() > local.getUpdatedAtTimestamp();
+
+        // Identité et champs propres à l'appareil : version locale
+        merged.setId(local.getId());
+        merged.setSlug(local.getSlug() != null ? local.getSlug() : server.getSlug());
+        merged.setCreatedAt(local.getCreatedAt());
+        merged.setDateAdded(local.getDateAdded());
+        merged.setFavorite(local.isFavorite());
+        merged.setUserRating(local.getUserRating());
+        merged.setUserId(local.getUserId());
+
+        merged.setName(mergeValue("name", base.getName(), local.getName(), server.getName(), EQUALS, serverWins, conflicts));
+        merged.setDescription(mergeValue("description", base.getDescription(), local.getDescription(), server.getDescription(), EQUALS, serverWins, conflicts));
+        merged.setImage(mergeValue("image", base.getImage(), local.getImage(), server.getImage(), EQUALS, serverWins, conflicts));
+        merged.setTotalTime(mergeValue("totalTime", base.getTotalTime(), local.getTotalTime(), server.getTotalTime(), EQUALS, serverWins, conflicts));
+        merged.setPrepTime(mergeValue("prepTime", base.getPrepTime(), local.getPrepTime(), server.getPrepTime(), EQUALS, serverWins, conflicts));
+        merged.setCookTime(mergeValue("cookTime", base.getCookTime(), local.getCookTime(), server.getCookTime(), EQUALS, serverWins, conflicts));
+        merged.setPerformTime(mergeValue("performTime", base.getPerformTime(), local.getPerformTime(), server.getPerformTime(), EQUALS, serverWins, conflicts));
+        merged.setRecipeYield(mergeValue("recipeYield", base.getRecipeYield(), local.getRecipeYield(), server.getRecipeYield(), EQUALS, serverWins, conflicts));
+        merged.setRating(mergeValue("rating", base.getRating(), local.getRating(), server.getRating(), EQUALS, serverWins, conflicts));
+        merged.setDifficulty(mergeValue("difficulty", base.getDifficulty(), local.getDifficulty(), server.getDifficulty(), EQUALS, serverWins, conflicts));
+        merged.setNutrition(mergeValue("nutrition", base.getNutrition(), local.getNutrition(), server.getNutrition(),
+            RecipeMerger::sameNutrition, serverWins, conflicts));
+        merged.setRecipeCategory(mergeValue("recipeCategory", base.getRecipeCategory(), local.getRecipeCategory(), server.getRecipeCategory(), EQUALS, serverWins, conflicts));
+        merged.setRecipeCuisine(mergeValue("recipeCuisine", base.getRecipeCuisine(), local.getRecipeCuisine(), server.getRecipeCuisine(), EQUALS, serverWins, conflicts));
+
+        merged.setRecipeIngredient(mergeList("recipeIngredient",
+            base.getRecipeIngredient(), local.getRecipeIngredient(), server.getRecipeIngredient(),
+            RecipeMerger::ingredientKey, RecipeMerger::sameIngredient, serverWins, conflicts));
+        merged.setRecipeInstructions(mergeList("recipeInstructions",
+            base.getRecipeInstructions(), local.getRecipeInstructions(), server.getRecipeInstructions(),
+            RecipeMerger::instructionKey, RecipeMerger::sameInstruction, serverWins, conflicts));
+        merged.setTags(mergeList("tags",
+            base.getTags(), local.getTags(), server.getTags(),
+            tag -> firstNonNull(tag.getId(), tag.getSlug(), tag.getName()),
+            RecipeMerger::sameTag, serverWins, conflicts));
+        merged.setCategories(mergeList("categories",
+            base.getCategories(), local.getCategories(), server.getCategories(),
+            category -> firstNonNull(category.getId(), category.getSlug(), category.getName()),
+            RecipeMerger::sameCategory, serverWins, conflicts));
+        merged.setTools(mergeList("tools",
+            base.getTools(), local.getTools(), server.getTools(),
+            tool -> firstNonNull(tool.getId(), tool.getSlug(), tool.getName()),
+            RecipeMerger::sameTool, serverWins, conflicts));
+
+        merged.updateTimestamp();
+        return new Result(merged, conflicts);
+    }
+
+    /**
+     * Indique si deux versions d'une recette ont le même contenu synchronisé
+     */
+    public boolean sameContent(Recipe a, Recipe b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+        return Objects.equals(a.getName(), b.getName())
+            && Objects.equals(a.getDescription(), b.getDescription())
+            && Objects.equals(a.getImage(), b.getImage())
+            && Objects.equals(a.getTotalTime(), b.getTotalTime())
+            && Objects.equals(a.getPrepTime(), b.getPrepTime())
+            && Objects.equals(a.getCookTime(), b.getCookTime())
+            && Objects.equals(a.getPerformTime(), b.getPerformTime())
+            && Objects.equals(a.getRecipeYield(), b.getRecipeYield())
+            && Objects.equals(a.getRating(), b.getRating())
+            && Objects.equals(a.getDifficulty(), b.getDifficulty())
+            && same(RecipeMerger::sameNutrition, a.getNutrition(), b.getNutrition())
+            && Objects.equals(a.getRecipeCategory(), b.getRecipeCategory())
+            && Objects.equals(a.getRecipeCuisine(), b.getRecipeCuisine())
+            && sameList(a.getRecipeIngredient(), b.getRecipeIngredient(), RecipeMerger::sameIngredient)
+            && sameList(a.getRecipeInstructions(), b.getRecipeInstructions(), RecipeMerger::sameInstruction)
+            && sameList(a.getTags(), b.getTags(), RecipeMerger::sameTag)
+            && sameList(a.getCategories(), b.getCategories(), RecipeMerger::sameCategory)
+            && sameList(a.getTools(), b.getTools(), RecipeMerger::sameTool);
+    }
+
+    // ===== FUSION =====
+
+    private static <T> T mergeValue(String field, T base, T local, T server, Equality<? super T> eq,
+                                    boolean serverWins, List<String> conflicts) {
+        if (same(eq, local, server)) return local;
+        if (same(eq, base, local)) return server;
+        if (same(eq, base, server)) return local;
+        conflicts.add(field);
+        return serverWins ? server : local;
+    }
+
+    /**
+     * Fusion d'une liste par clé d'élément : ajouts et suppressions de chaque côté sont appliqués,
+     * un élément modifié des deux côtés différemment (ou modifié d'un côté et supprimé de l'autre)
+     * est un conflit. L'ordre local est conservé, les ajouts serveur sont ajoutés à la fin.
+     */
+    private static <T> List<T> mergeList(String field, List<T> base, List<T> local, List<T> server,
+                                         KeyFunction<T> keyFunction, Equality<T> eq,
+                                         boolean serverWins, List<String> conflicts) {
+        List<T> b = base != null ? base : Collections.<T>emptyList();
+        List<T> l = local != null ? local : Collections.<T>emptyList();
+        List<T> s = server != null ? server : Collections.<T>emptyList();
+
+        // Cas courants sans allocation : un seul côté a changé
+        if (sameList(l, s, eq)) return local;
+        if (sameList(b, l, eq)) return server;
+        if (sameList(b, s, eq)) return local;
+
+        Map<String, T> baseByKey = index(b, keyFunction);
+        Map<String, T> localByKey = index(l, keyFunction);
+        Map<String, T> serverByKey = index(s, keyFunction);
+
+        List<T> merged = new ArrayList<>(Math.max(l.size(), s.size()));
+        boolean conflict = false;
+
+        for (Map.Entry<String, T> entry : localByKey.entrySet()) {
+            String key = entry.getKey();
+            T localItem = entry.getValue();
+            T baseItem = baseByKey.get(key);
+            T serverItem = serverByKey.get(key);
+
+            if (baseItem == null) {
+                // Ajout local (ou ajout identique des deux côtés)
+                if (serverItem != null && !eq.same(localItem, serverItem)) {
+                    conflict = true;
+                    merged.add(serverWins ? serverItem : localItem);
+                } else {
+                    merged.add(localItem);
+                }
+            } else if (serverItem == null) {
+                // Supprimé sur le serveur : conflit si modifié localement
+                if (!eq.same(baseItem, localItem)) {
+                    conflict = true;
+                    merged.add(localItem);
+                }
+            } else if (eq.same(localItem, serverItem) || eq.same(baseItem, serverItem)) {
+                merged.add(localItem);
+            } else if (eq.same(baseItem, localItem)) {
+                merged.add(serverItem);
+            } else {
+                // Modifié différemment des deux côtés
+                conflict = true;
+                merged.add(serverWins ? serverItem : localItem);
+            }
+        }
+
+        for (Map.Entry<String, T> entry : serverByKey.entrySet()) {
+            String key = entry.getKey();
+            if (localByKey.containsKey(key)) continue;
+
+            T serverItem = entry.getValue();
+            T baseItem = baseByKey.get(key);
+            if (baseItem == null) {
+                // Ajout serveur
+                merged.add(serverItem);
+            } else if (!eq.same(baseItem, serverItem)) {
+                // Supprimé localement mais modifié sur le serveur
+                conflict = true;
+                merged.add(serverItem);
+            }
+        }
+
+        if (conflict) {
+            conflicts.add(field);
+        }
+        return merged;
+    }
+
+    private static <T> Map<String, T> index(List<T> items, KeyFunction<T> keyFunction) {
+        Map<String, T> byKey = new LinkedHashMap<>(items.size() * 2);
+        Map<String, Integer> occurrences = null;
+        for (T item : items) {
+            String key = String.valueOf(keyFunction.key(item));
+            if (byKey.containsKey(key)) {
+                // Doublons (ex: deux fois "sel") : suffixe d'occurrence pour garder des clés stables
+                if (occurrences == null) occurrences = new HashMap<>();
+                Integer count = occurrences.get(key);
+                int next = count == null ? 2 : count + 1;
+                occurrences.put(key, next);
+                key = key + "#" + next;
+            }
+            byKey.put(key, item);
+        }
+        return byKey;
+    }
+
+    private static <T> boolean sameList(List<T> a, List<T> b, Equality<? super T> eq) {
+        if (a == b) return true;
+        int sizeA = a != null ? a.size() : 0;
+        int sizeB = b != null ? b.size() : 0;
+        if (sizeA != sizeB) return false;
+        for (int i = 0; i < sizeA; i++) {
+            if (!same(eq, a.get(i), b.get(i))) return false;
+        }
+        return true;
+    }
+
+    private static <T> boolean same(Equality<? super T> eq, T a, T b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+        return eq.same(a, b);
+    }
+
+    // ===== CLÉS ET ÉGALITÉS =====
+
+    private static String ingredientKey(RecipeIngredient ingredient) {
+        return firstNonNull(ingredient.getReferenceId(), ingredient.getOriginalText(), ingredient.getDisplay(),
+            ingredient.getFood() + "|" + ingredient.getNote());
+    }
+
+    private static boolean sameIngredient(RecipeIngredient a, RecipeIngredient b) {
+        return Double.compare(a.getQuantity(), b.getQuantity()) == 0
+            && Objects.equals(a.getUnit(), b.getUnit())
+            && Objects.equals(a.getFood(), b.getFood())
+            && Objects.equals(a.getNote(), b.getNote())
+            && Objects.equals(a.getDisplay(), b.getDisplay())
+            && Objects.equals(a.getTitle(), b.getTitle())
+            && Objects.equals(a.getOriginalText(), b.getOriginalText());
+    }
+
+    private static String instructionKey(RecipeInstruction instruction) {
+        return firstNonNull(instruction.getId(), instruction.getText());
+    }
+
+    private static boolean sameInstruction(RecipeInstruction a, RecipeInstruction b) {
+        return Objects.equals(a.getTitle(), b.getTitle())
+            && Objects.equals(a.getSummary(), b.getSummary())
+            && Objects.equals(a.getText(), b.getText())
+            && Objects.equals(a.getIngredientReferences(), b.getIngredientReferences());
+    }
+
+    private static boolean sameNutrition(Nutrition a, Nutrition b) {
+        return Objects.equals(a.getCalories(), b.getCalories())
+            && Objects.equals(a.getFatContent(), b.getFatContent())
+            && Objects.equals(a.getProteinContent(), b.getProteinContent())
+            && Objects.equals(a.getCarbohydrateContent(), b.getCarbohydrateContent())
+            && Objects.equals(a.getFiberContent(), b.getFiberContent())
+            && Objects.equals(a.getSugarContent(), b.getSugarContent())
+            && Objects.equals(a.getSodiumContent(), b.getSodiumContent());
+    }
+
+    private static boolean sameTag(Tag a, Tag b) {
+        return Objects.equals(a.getId(), b.getId()) && Objects.equals(a.getName(), b.getName())
+            && Objects.equals(a.getSlug(), b.getSlug());
+    }
+
+    private static boolean sameCategory(Category a, Category b) {
+        return Objects.equals(a.getId(), b.getId()) && Objects.equals(a.getName(), b.getName())
+            && Objects.equals(a.getSlug(), b.getSlug());
+    }
+
+    private static boolean sameTool(Tool a, Tool b) {
+        return Objects.equals(a.getId(), b.getId()) && Objects.equals(a.getName(), b.getName())
+            && Objects.equals(a.getSlug(), b.getSlug());
+    }
+
+    private static String firstNonNull(String... values) {
+        for (String value : values) {
+            if (value != null) return value;
+        }
+        return null;
+    }
+}
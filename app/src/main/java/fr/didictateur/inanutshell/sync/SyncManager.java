@@ -6,15 +6,33 @@ import android.util.Log;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
+import fr.didictateur.inanutshell.data.api.MealieApiService;
+import fr.didictateur.inanutshell.data.meal.MealPlan;
+import fr.didictateur.inanutshell.data.meal.MealPlanDao;
+import fr.didictateur.inanutshell.data.model.MealieMealPlan;
+import fr.didictateur.inanutshell.data.model.MealieShoppingList;
 import fr.didictateur.inanutshell.data.model.Recipe;
 import fr.didictateur.inanutshell.data.database.AppDatabase;
 import fr.didictateur.inanutshell.data.network.NetworkManager;
+import fr.didictateur.inanutshell.data.response.MealPlanListResponse;
+import fr.didictateur.inanutshell.data.response.ShoppingListListResponse;
+import fr.didictateur.inanutshell.data.shopping.ShoppingItem;
+import fr.didictateur.inanutshell.data.shopping.ShoppingItemDao;
+import fr.didictateur.inanutshell.data.shopping.ShoppingList;
+import fr.didictateur.inanutshell.data.shopping.ShoppingListDao;
+import fr.didictateur.inanutshell.data.sync.MealPlanSyncManager;
+import fr.didictateur.inanutshell.network.RequestScheduler;
 import fr.didictateur.inanutshell.sync.model.SyncItem;
 import fr.didictateur.inanutshell.sync.model.SyncStatus;
 import fr.didictateur.inanutshell.sync.model.ConflictResolution;
 
+import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import retrofit2.Response;
 
 /**
  * Gestionnaire principal de synchronisation temps réel
@@ -28,6 +46,11 @@ public class SyncManager {
     private static final String KEY_DEVICE_ID = "device_id";
     private static final String KEY_SYNC_ENABLED = "sync_enabled";
     
+    // Pagination et fenêtre de téléchargement
+    private static final int PAGE_SIZE = 100;
+    private static final int ID_QUERY_CHUNK = 500;
+    private static final long MEAL_PLAN_WINDOW_MS = 30L * 24 * 60 * 60 * 1000; // ±30 jours
+    
     private static SyncManager instance;
     private final Context context;
     private final AppDatabase database;
@@ -35,6 +58,19 @@ public class SyncManager {
     private final SharedPreferences syncPrefs;
     private final ExecutorService executorService;
     
+    // Meal plans et listes de courses
+    private final fr.didictateur.inanutshell.data.AppDatabase appDatabase;
+    private final MealPlanDao mealPlanDao;
+    private final ShoppingListDao shoppingListDao;
+    private final ShoppingItemDao shoppingItemDao;
+    private final MealPlanSyncManager mealPlanSyncManager;
+    
+    // Infrastructure partagée : envois parallèles bornés et marqueurs incrémentaux
+    private final BatchSyncExecutor batchExecutor;
+    private final SyncWatermarks watermarks;
+    private final AtomicInteger passTotal = new AtomicInteger();
+    private final AtomicInteger passProcessed = new AtomicInteger();
+    
     // État de synchronisation
     private final MutableLiveData<SyncStatus> syncStatus = new MutableLiveData<>();
     private final MutableLiveData<List<SyncItem>> pendingItems = new MutableLiveData<>();
@@ -43,6 +79,8 @@ public class SyncManager {
     // Gestion des conflits
     private final ConflictResolver conflictResolver;
     private final OfflineSyncManager offlineManager;
+    private final SyncSnapshotStore snapshotStore;
+    private final RecipeMerger recipeMerger = new RecipeMerger();
     
     // Configuration
     private boolean autoSyncEnabled = true;
@@ -56,8 +94,17 @@ public class SyncManager {
         this.syncPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         this.executorService = Executors.newCachedThreadPool();
         
+        this.appDatabase = fr.didictateur.inanutshell.data.AppDatabase.getInstance(context);
+        this.mealPlanDao = appDatabase.mealPlanDao();
+        this.shoppingListDao = appDatabase.shoppingListDao();
+        this.shoppingItemDao = appDatabase.shoppingItemDao();
+        this.mealPlanSyncManager = MealPlanSyncManager.getInstance(context, mealPlanDao);
+        this.batchExecutor = new BatchSyncExecutor(BatchSyncExecutor.DEFAULT_PARALLELISM);
+        this.watermarks = new SyncWatermarks(syncPrefs);
+        
         this.conflictResolver = new ConflictResolver();
         this.offlineManager = new OfflineSyncManager(context);
+        this.snapshotStore = new SyncSnapshotStore(context);
         
         initializeDeviceId();
         initializeSyncStatus();
@@ -115,14 +162,21 @@ public class SyncManager {
         
         executorService.execute(() -> {
             try {
+                long passStartedAt = System.currentTimeMillis();
+                passTotal.set(0);
+                passProcessed.set(0);
+                
                 // 1. Synchroniser les recettes
                 syncRecipes();
                 
-                // 2. Synchroniser les meal plans
-                syncMealPlans();
+                // 2. Synchroniser les meal plans (téléchargement + collecte des modifications locales)
+                List<SyncItem> uploads = new ArrayList<>(syncMealPlans(passStartedAt));
                 
                 // 3. Synchroniser les listes de courses
-                syncShoppingLists();
+                uploads.addAll(syncShoppingLists(passStartedAt));
+                
+                // Un seul lot pour tous les envois, en parallèle
+                uploadBatch(uploads);
                 
                 // 4. Traiter les conflits
                 processConflicts();
@@ -159,6 +213,46 @@ public class SyncManager {
         }
     }
     
+    /**
+     * Synchronise un meal plan spécifique
+     */
+    public void syncMealPlan(MealPlan mealPlan, SyncItem.Action action) {
+        SyncItem item = new SyncItem(
+            String.valueOf(mealPlan.id),
+            SyncItem.Type.MEAL_PLAN,
+            action,
+            System.currentTimeMillis(),
+            deviceId,
+            mealPlan
+        );
+        
+        addToSyncQueue(item);
+        
+        if (autoSyncEnabled) {
+            processSyncQueue();
+        }
+    }
+    
+    /**
+     * Synchronise une liste de courses spécifique
+     */
+    public void syncShoppingList(ShoppingList shoppingList, SyncItem.Action action) {
+        SyncItem item = new SyncItem(
+            String.valueOf(shoppingList.id),
+            SyncItem.Type.SHOPPING_LIST,
+            action,
+            System.currentTimeMillis(),
+            deviceId,
+            shoppingList
+        );
+        
+        addToSyncQueue(item);
+        
+        if (autoSyncEnabled) {
+            processSyncQueue();
+        }
+    }
+    
     /**
      * Active/désactive la synchronisation automatique
      */
@@ -222,14 +316,419 @@ public class SyncManager {
         });
     }
     
-    private void syncMealPlans() {
+    /**
+     * Télécharge les meal plans modifiés depuis le dernier marqueur puis
+     * retourne les meal plans locaux à envoyer
+     */
+    private List<SyncItem> syncMealPlans(long passStartedAt) {
         Log.d(TAG, "Synchronisation des meal plans");
-        // TODO: Implémenter la sync des meal plans
+        
+        try {
+            String authHeader = requireAuthHeader();
+            MealieApiService apiService = networkManager.getApiService();
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+            String start = dateFormat.format(new Date(passStartedAt - MEAL_PLAN_WINDOW_MS));
+            String end = dateFormat.format(new Date(passStartedAt + MEAL_PLAN_WINDOW_MS));
+            String queryFilter = watermarks.buildQueryFilter(SyncItem.Type.MEAL_PLAN);
+            String coveredStart = watermarks.getWindowStart(SyncItem.Type.MEAL_PLAN);
+            String coveredEnd = watermarks.getWindowEnd(SyncItem.Type.MEAL_PLAN);
+            
+            // Le marqueur ne vaut que pour la fenêtre déjà téléchargée (dates yyyy-MM-dd comparables)
+            int downloaded;
+            if (queryFilter == null || coveredStart == null || coveredEnd == null
+                    || coveredEnd.compareTo(start) < 0 || coveredStart.compareTo(end) > 0) {
+                downloaded = downloadMealPlans(apiService, authHeader, start, end, null);
+            } else {
+                String overlapStart = start.compareTo(coveredStart) > 0 ? start : coveredStart;
+                String overlapEnd = end.compareTo(coveredEnd) < 0 ? end : coveredEnd;
+                downloaded = downloadMealPlans(apiService, authHeader, overlapStart, overlapEnd, queryFilter);
+                
+                // Jours entrés dans la fenêtre depuis la dernière passe : téléchargement complet
+                if (end.compareTo(coveredEnd) > 0) {
+                    downloaded += downloadMealPlans(apiService, authHeader, coveredEnd, end, null);
+                }
+                if (start.compareTo(coveredStart) < 0) {
+                    downloaded += downloadMealPlans(apiService, authHeader, start, coveredStart, null);
+                }
+            }
+            
+            watermarks.advance(SyncItem.Type.MEAL_PLAN, passStartedAt, start, end);
+            Log.d(TAG, downloaded + " meal plans téléchargés");
+            
+        } catch (Exception e) {
+            Log.w(TAG, "Impossible de télécharger les meal plans: " + e.getMessage());
+            offlineManager.handleSyncFailure(SyncItem.Type.MEAL_PLAN);
+        }
+        
+        List<SyncItem> uploads = new ArrayList<>();
+        for (MealPlan plan : mealPlanDao.getUnsyncedMealPlansSync()) {
+            uploads.add(new SyncItem(
+                String.valueOf(plan.id),
+                SyncItem.Type.MEAL_PLAN,
+                plan.serverId == null ? SyncItem.Action.CREATE : SyncItem.Action.UPDATE,
+                System.currentTimeMillis(),
+                deviceId,
+                plan
+            ));
+        }
+        return uploads;
     }
     
-    private void syncShoppingLists() {
+    /**
+     * Télécharge par pages les meal plans d'un intervalle de dates
+     * 
+     * @param queryFilter filtre "modifié depuis", ou null pour tout l'intervalle
+     */
+    private int downloadMealPlans(MealieApiService apiService, String authHeader,
+                                  String start, String end, String queryFilter) throws Exception {
+        return forEachPage(page -> {
+            Response<MealPlanListResponse> response = RequestScheduler.getInstance().execute(
+                apiService.getMealPlansUpdatedSince(authHeader, page, PAGE_SIZE, start, end, queryFilter),
+                RequestScheduler.Priority.BACKGROUND);
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("Erreur serveur meal plans: " + response.code());
+            }
+            return response.body().getItems();
+        }, this::saveServerMealPlans);
+    }
+    
+    /**
+     * Télécharge les listes de courses modifiées depuis le dernier marqueur puis
+     * retourne les listes locales à envoyer
+     */
+    private List<SyncItem> syncShoppingLists(long passStartedAt) {
         Log.d(TAG, "Synchronisation des listes de courses");
-        // TODO: Implémenter la sync des listes de courses
+        
+        try {
+            String authHeader = requireAuthHeader();
+            MealieApiService apiService = networkManager.getApiService();
+            String queryFilter = watermarks.buildQueryFilter(SyncItem.Type.SHOPPING_LIST);
+            
+            int downloaded = forEachPage(page -> {
+                Response<ShoppingListListResponse> response = RequestScheduler.getInstance().execute(
+                    apiService.getShoppingLists(authHeader, page, PAGE_SIZE, queryFilter),
+                    RequestScheduler.Priority.BACKGROUND);
+                if (!response.isSuccessful() || response.body() == null) {
+                    throw new IOException("Erreur serveur listes de courses: " + response.code());
+                }
+                return withItems(apiService, authHeader, response.body().getItems());
+            }, this::saveServerShoppingLists);
+            
+            watermarks.advance(SyncItem.Type.SHOPPING_LIST, passStartedAt);
+            Log.d(TAG, downloaded + " listes de courses téléchargées");
+            
+        } catch (Exception e) {
+            Log.w(TAG, "Impossible de télécharger les listes de courses: " + e.getMessage());
+            offlineManager.handleSyncFailure(SyncItem.Type.SHOPPING_LIST);
+        }
+        
+        List<SyncItem> uploads = new ArrayList<>();
+        for (ShoppingList list : shoppingListDao.getUnsyncedListsSync()) {
+            uploads.add(new SyncItem(
+                String.valueOf(list.id),
+                SyncItem.Type.SHOPPING_LIST,
+                list.serverId == null ? SyncItem.Action.CREATE : SyncItem.Action.UPDATE,
+                System.currentTimeMillis(),
+                deviceId,
+                list
+            ));
+        }
+        return uploads;
+    }
+    
+    /**
+     * Enregistre une page de meal plans serveur en une transaction.
+     * Les meal plans modifiés localement et pas encore envoyés sont conservés.
+     */
+    private void saveServerMealPlans(List<MealieMealPlan> serverPlans) {
+        List<MealPlan> localPlans = new ArrayList<>(serverPlans.size());
+        for (MealieMealPlan serverPlan : serverPlans) {
+            MealPlan localPlan = mealPlanSyncManager.convertMealieToLocal(serverPlan);
+            if (localPlan != null) localPlans.add(localPlan);
+        }
+        mealPlanDao.upsertServerMealPlans(localPlans);
+    }
+    
+    /**
+     * La page paginée ne contient que le résumé des listes : les articles sont
+     * récupérés par le détail, sinon l'enregistrement viderait les listes locales
+     */
+    private List<MealieShoppingList> withItems(MealieApiService apiService, String authHeader,
+                                               List<MealieShoppingList> summaries) throws IOException {
+        if (summaries == null) return null;
+        
+        List<MealieShoppingList> lists = new ArrayList<>(summaries.size());
+        for (MealieShoppingList summary : summaries) {
+            if (summary.getListItems() != null && !summary.getListItems().isEmpty()) {
+                lists.add(summary);
+                continue;
+            }
+            Response<MealieShoppingList> response = RequestScheduler.getInstance().execute(
+                apiService.getShoppingList(authHeader, summary.getId()),
+                RequestScheduler.Priority.BACKGROUND);
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("Erreur serveur liste de courses " + summary.getId() + ": " + response.code());
+            }
+            lists.add(response.body());
+        }
+        return lists;
+    }
+    
+    /**
+     * Enregistre une page de listes de courses serveur en une transaction.
+     * Les listes modifiées localement et pas encore envoyées sont conservées.
+     */
+    private void saveServerShoppingLists(List<MealieShoppingList> serverLists) {
+        appDatabase.runInTransaction(() -> {
+            Map<String, ShoppingList> existingByServerId = loadByServerIds(serverLists);
+            
+            for (MealieShoppingList serverList : serverLists) {
+                ShoppingList existing = existingByServerId.get(serverList.getId());
+                if (existing != null && existing.needsSync) continue;
+                
+                ShoppingList localList = existing != null ? existing : new ShoppingList();
+                localList.name = serverList.getName();
+                localList.serverId = serverList.getId();
+                localList.needsSync = false;
+                localList.lastSyncDate = new Date();
+                localList.updatedAt = new Date();
+                
+                // Sans articles dans la réponse, les articles locaux restent en place
+                List<ShoppingItem> items = null;
+                if (serverList.getListItems() != null) {
+                    items = convertShoppingItemsToLocal(serverList.getListItems());
+                    int checked = 0;
+                    for (ShoppingItem item : items) {
+                        if (item.isChecked) checked++;
+                    }
+                    localList.totalItems = items.size();
+                    localList.checkedItems = checked;
+                }
+                
+                int listId;
+                if (existing == null) {
+                    listId = (int) shoppingListDao.insertSync(localList);
+                } else {
+                    shoppingListDao.updateSync(localList);
+                    listId = localList.id;
+                }
+                if (items != null) {
+                    shoppingItemDao.replaceItemsForList(listId, items);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Charge en une requête par tranche les listes locales déjà liées à ces listes serveur
+     */
+    private Map<String, ShoppingList> loadByServerIds(List<MealieShoppingList> serverLists) {
+        List<String> serverIds = new ArrayList<>(serverLists.size());
+        for (MealieShoppingList serverList : serverLists) {
+            if (serverList.getId() != null) serverIds.add(serverList.getId());
+        }
+        
+        Map<String, ShoppingList> byServerId = new HashMap<>();
+        for (int from = 0; from < serverIds.size(); from += ID_QUERY_CHUNK) {
+            List<String> chunk = serverIds.subList(from, Math.min(from + ID_QUERY_CHUNK, serverIds.size()));
+            for (ShoppingList list : shoppingListDao.getByServerIdsSync(chunk)) {
+                byServerId.put(list.serverId, list);
+            }
+        }
+        return byServerId;
+    }
+    
+    /**
+     * Envoie un lot d'éléments avec un nombre borné de requêtes simultanées.
+     * Les échecs sont conservés pour la synchronisation hors ligne.
+     */
+    private void uploadBatch(List<SyncItem> items) throws InterruptedException {
+        if (items.isEmpty()) return;
+        
+        Log.d(TAG, "Envoi de " + items.size() + " éléments (" + batchExecutor.getParallelism() + " en parallèle)");
+        passTotal.addAndGet(items.size());
+        
+        BatchSyncExecutor.BatchResult<SyncItem> result = batchExecutor.execute(
+            items,
+            this::uploadSyncItem,
+            (processed, total) -> updateSyncProgress(passProcessed.incrementAndGet())
+        );
+        
+        for (SyncItem item : result.getSucceeded()) {
+            removePendingItem(item);
+        }
+        for (SyncItem item : result.getFailed()) {
+            item.incrementRetryCount();
+            offlineManager.storePendingItem(item);
+        }
+    }
+    
+    /**
+     * Envoi bloquant d'un élément meal plan ou liste de courses
+     */
+    private void uploadSyncItem(SyncItem item) throws Exception {
+        switch (item.getType()) {
+            case MEAL_PLAN:
+                uploadMealPlan(item);
+                break;
+            case SHOPPING_LIST:
+                uploadShoppingList(item);
+                break;
+            default:
+                throw new IllegalArgumentException("Type non géré par le lot: " + item.getType());
+        }
+    }
+    
+    private void uploadMealPlan(SyncItem item) throws Exception {
+        if (!(item.getData() instanceof MealPlan)) {
+            throw new IllegalStateException("Données meal plan invalides: " + item);
+        }
+        MealPlan plan = (MealPlan) item.getData();
+        String authHeader = requireAuthHeader();
+        MealieApiService apiService = networkManager.getApiService();
+        
+        if (item.getAction() == SyncItem.Action.DELETE) {
+            if (plan.serverId != null) {
+                Response<Void> response = apiService.deleteMealPlan(authHeader, plan.serverId).execute();
+                if (!response.isSuccessful() && response.code() != 404) {
+                    throw new IOException("Erreur suppression meal plan: " + response.code());
+                }
+            }
+            return;
+        }
+        
+        mealPlanSyncManager.sendMealPlan(plan);
+        mealPlanDao.updateSync(plan);
+    }
+    
+    private void uploadShoppingList(SyncItem item) throws Exception {
+        if (!(item.getData() instanceof ShoppingList)) {
+            throw new IllegalStateException("Données liste de courses invalides: " + item);
+        }
+        ShoppingList list = (ShoppingList) item.getData();
+        String authHeader = requireAuthHeader();
+        MealieApiService apiService = networkManager.getApiService();
+        
+        if (item.getAction() == SyncItem.Action.DELETE) {
+            if (list.serverId != null) {
+                Response<Void> response = apiService.deleteShoppingList(authHeader, list.serverId).execute();
+                if (!response.isSuccessful() && response.code() != 404) {
+                    throw new IOException("Erreur suppression liste de courses: " + response.code());
+                }
+            }
+            return;
+        }
+        
+        MealieShoppingList body = convertShoppingListToMealie(list, shoppingItemDao.getItemsByListIdSync(list.id));
+        Response<MealieShoppingList> response = list.serverId == null
+            ? apiService.createShoppingList(authHeader, body).execute()
+            : apiService.updateShoppingList(authHeader, list.serverId, body).execute();
+        
+        if (!response.isSuccessful()) {
+            throw new IOException("Erreur envoi liste de courses: " + response.code());
+        }
+        String serverId = list.serverId;
+        if (serverId == null && response.body() != null) {
+            serverId = response.body().getId();
+        }
+        // Une modification locale pendant l'envoi garde la liste à synchroniser
+        if (list.updatedAt == null) {
+            shoppingListDao.markAsSynced(list.id, serverId, new Date());
+            return;
+        }
+        int marked = shoppingListDao.markAsSyncedIfUnchanged(list.id, serverId, new Date(), list.updatedAt);
+        if (marked == 0 && serverId != null) {
+            shoppingListDao.setServerId(list.id, serverId);
+            Log.d(TAG, "Liste " + list.id + " modifiée pendant l'envoi, resynchronisation au prochain passage");
+        }
+    }
+    
+    private MealieShoppingList convertShoppingListToMealie(ShoppingList list, List<ShoppingItem> items) {
+        MealieShoppingList mealieList = new MealieShoppingList(list.name);
+        mealieList.setId(list.serverId);
+        
+        List<MealieShoppingList.Item> mealieItems = new ArrayList<>(items.size());
+        int position = 0;
+        for (ShoppingItem item : items) {
+            mealieItems.add(new MealieShoppingList.Item(
+                item.name,
+                parseQuantity(item.quantity),
+                item.isChecked,
+                position++
+            ));
+        }
+        mealieList.setListItems(mealieItems);
+        return mealieList;
+    }
+    
+    private List<ShoppingItem> convertShoppingItemsToLocal(List<MealieShoppingList.Item> mealieItems) {
+        List<ShoppingItem> items = new ArrayList<>();
+        if (mealieItems == null) return items;
+        
+        for (MealieShoppingList.Item mealieItem : mealieItems) {
+            ShoppingItem item = new ShoppingItem();
+            item.name = mealieItem.getNote();
+            item.quantity = formatQuantity(mealieItem.getQuantity());
+            item.category = ShoppingItem.Category.OTHER;
+            item.isChecked = mealieItem.isChecked();
+            items.add(item);
+        }
+        return items;
+    }
+    
+    private double parseQuantity(String quantity) {
+        if (quantity == null) return 1;
+        String number = quantity.trim().split("\\s+")[0].replace(',', '.');
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+    
+    private String formatQuantity(double quantity) {
+        if (quantity == Math.rint(quantity)) {
+            return String.valueOf((long) quantity);
+        }
+        return String.valueOf(quantity);
+    }
+    
+    /**
+     * Source paginée : retourne les éléments d'une page (1-indexée)
+     */
+    private interface PageFetcher<T> {
+        List<T> fetch(int page) throws Exception;
+    }
+    
+    private interface PageConsumer<T> {
+        void accept(List<T> items);
+    }
+    
+    /**
+     * Parcourt toutes les pages jusqu'à une page incomplète
+     */
+    private <T> int forEachPage(PageFetcher<T> fetcher, PageConsumer<T> consumer) throws Exception {
+        int page = 1;
+        int count = 0;
+        while (true) {
+            List<T> items = fetcher.fetch(page);
+            if (items == null || items.isEmpty()) break;
+            
+            consumer.accept(items);
+            count += items.size();
+            
+            if (items.size() < PAGE_SIZE) break;
+            page++;
+        }
+        return count;
+    }
+    
+    private String requireAuthHeader() throws IOException {
+        String authHeader = networkManager.getAuthHeader();
+        if (authHeader == null || authHeader.isEmpty()) {
+            throw new IOException("Non authentifié");
+        }
+        return authHeader;
     }
     
     private void mergeRecipes(List<Recipe> local, List<Recipe> server) {
@@ -239,15 +738,19 @@ public class SyncManager {
             if (localRecipe == null) {
                 // Nouvelle recette du serveur
                 database.recipeDao().insert(serverRecipe);
+                snapshotStore.saveRecipe(serverRecipe);
                 Log.d(TAG, "Nouvelle recette ajoutée: " + serverRecipe.getName());
             } else {
-                // Vérifier s'il y a un conflit
-                if (hasConflict(localRecipe, serverRecipe)) {
+                Recipe baseRecipe = snapshotStore.loadRecipe(serverRecipe.getId());
+                if (baseRecipe != null) {
+                    mergeWithBase(baseRecipe, localRecipe, serverRecipe);
+                } else if (hasConflict(localRecipe, serverRecipe)) {
                     conflictResolver.addConflict(localRecipe, serverRecipe);
                 } else {
                     // Prendre la version la plus récente
                     if (serverRecipe.getUpdatedAtTimestamp() > localRecipe.getUpdatedAtTimestamp()) {
                         database.recipeDao().update(serverRecipe);
+                        snapshotStore.saveRecipe(serverRecipe);
                         Log.d(TAG, "Recette mise à jour: " + serverRecipe.getName());
                     }
                 }
@@ -255,6 +758,40 @@ public class SyncManager {
         }
     }
     
+    /**
+     * Fusion à trois voies avec la dernière version synchronisée.
+     * Seuls les champs modifiés différemment des deux côtés deviennent un conflit manuel.
+     */
+    private void mergeWithBase(Recipe base, Recipe local, Recipe server) {
+        boolean localChanged = !recipeMerger.sameContent(base, local);
+        boolean serverChanged = !recipeMerger.sameContent(base, server);
+        
+        if (!serverChanged) {
+            // Rien de nouveau côté serveur ; les modifications locales partent par la file
+            return;
+        }
+        
+        if (!localChanged) {
+            database.recipeDao().update(server);
+            snapshotStore.saveRecipe(server);
+            Log.d(TAG, "Recette mise à jour: " + server.getName());
+            return;
+        }
+        
+        RecipeMerger.Result result = recipeMerger.merge(base, local, server);
+        if (result.hasConflicts()) {
+            conflictResolver.addConflict(local, server, base);
+            return;
+        }
+        
+        Recipe merged = result.getMerged();
+        database.recipeDao().update(merged);
+        // Le serveur est la nouvelle base ; la fusion part comme mise à jour
+        snapshotStore.saveRecipe(server);
+        syncRecipe(merged, SyncItem.Action.UPDATE);
+        Log.d(TAG, "Recette fusionnée automatiquement: " + merged.getName());
+    }
+    
     private Recipe findRecipeById(List<Recipe> recipes, String id) {
         for (Recipe recipe : recipes) {
             if (recipe.getId().equals(id)) {
@@ -291,9 +828,31 @@ public class SyncManager {
     
     private void processSyncQueue() {
         executorService.execute(() -> {
-            while (!syncQueue.isEmpty()) {
-                SyncItem item = syncQueue.poll();
-                processSyncItem(item);
+            // Les recettes passent par NetworkManager, le reste est envoyé en un seul lot
+            List<SyncItem> batch = new ArrayList<>();
+            SyncItem item;
+            while ((item = syncQueue.poll()) != null) {
+                if (item.getData() == null) {
+                    // Données pending illisibles : l'élément ne pourra jamais partir
+                    Log.w(TAG, "Élément sans données écarté: " + item);
+                    offlineManager.quarantine(item);
+                    removePendingItem(item);
+                    continue;
+                }
+                if (item.getType() == SyncItem.Type.MEAL_PLAN || item.getType() == SyncItem.Type.SHOPPING_LIST) {
+                    batch.add(item);
+                } else {
+                    processSyncItem(item);
+                }
+            }
+            
+            try {
+                uploadBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (SyncItem pending : batch) {
+                    offlineManager.storePendingItem(pending);
+                }
             }
         });
     }
@@ -323,6 +882,7 @@ public class SyncManager {
                     @Override
                     public void onSuccess(Recipe createdRecipe) {
                         Log.d(TAG, "Recette créée sur le serveur: " + createdRecipe.getName());
+                        executorService.execute(() -> snapshotStore.saveRecipe(createdRecipe));
                         removePendingItem(item);
                     }
                     
@@ -339,6 +899,7 @@ public class SyncManager {
                     @Override
                     public void onSuccess(Recipe updatedRecipe) {
                         Log.d(TAG, "Recette mise à jour sur le serveur: " + updatedRecipe.getName());
+                        executorService.execute(() -> snapshotStore.saveRecipe(updatedRecipe));
                         removePendingItem(item);
                     }
                     
@@ -355,6 +916,7 @@ public class SyncManager {
                     @Override
                     public void onSuccess() {
                         Log.d(TAG, "Recette supprimée du serveur: " + recipe.getName());
+                        executorService.execute(() -> snapshotStore.deleteRecipe(recipe.getId()));
                         removePendingItem(item);
                     }
                     
@@ -369,13 +931,23 @@ public class SyncManager {
     }
     
     private void processMealPlanSync(SyncItem item) {
-        // TODO: Implémenter la sync des meal plans
-        Log.d(TAG, "Sync meal plan non implémentée");
+        uploadOrStore(item);
     }
     
     private void processShoppingListSync(SyncItem item) {
-        // TODO: Implémenter la sync des listes de courses
-        Log.d(TAG, "Sync shopping list non implémentée");
+        uploadOrStore(item);
+    }
+    
+    private void uploadOrStore(SyncItem item) {
+        try {
+            uploadSyncItem(item);
+            Log.d(TAG, "Élément synchronisé: " + item);
+            removePendingItem(item);
+        } catch (Exception e) {
+            Log.w(TAG, "Erreur sync " + item.getType() + ": " + e.getMessage());
+            item.incrementRetryCount();
+            offlineManager.storePendingItem(item);
+        }
     }
     
     private void removePendingItem(SyncItem item) {
@@ -402,6 +974,19 @@ public class SyncManager {
         syncStatus.postValue(current);
     }
     
+    private void updateSyncProgress(int processed) {
+        SyncStatus current = syncStatus.getValue();
+        long lastSync = current != null ? current.getLastSync() : getLastSyncTimestamp();
+        int total = passTotal.get();
+        syncStatus.postValue(new SyncStatus(
+            SyncStatus.State.SYNCING,
+            lastSync,
+            total,
+            processed,
+            "Envoi " + processed + "/" + total
+        ));
+    }
+    
     private long getLastSyncTimestamp() {
         return syncPrefs.getLong(KEY_LAST_SYNC, 0);
     }
@@ -0,0 +1,191 @@
+package fr.didictateur.inanutshell.sync;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import fr.didictateur.inanutshell.data.meal.MealPlan;
+import fr.didictateur.inanutshell.data.model.Recipe;
+import fr.didictateur.inanutshell.data.shopping.ShoppingList;
+import fr.didictateur.inanutshell.sync.database.SyncSnapshot;
+import fr.didictateur.inanutshell.sync.model.SyncItem;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodage compact et versionné des données de la file de synchronisation hors ligne.
+ *
+ * Format v1 : [version:1][kind:1][corps]
+ * - KIND_EMPTY : pas de corps
+ * - KIND_FULL  : objet complet, JSON compressé GZIP
+ * - KIND_PATCH : [baseSyncedAt:8] puis les seuls champs modifiés par rapport à la
+ *                dernière version synchronisée (SyncSnapshotStore), JSON compressé GZIP.
+ *                Un champ supprimé est encodé par null. baseSyncedAt identifie la version
+ *                de base ; si elle a été remplacée ou supprimée depuis, le patch est
+ *                abandonné au profit de la recette locale complète.
+ *
+ * Le décodage est fait à la demande, au moment de l'envoi (voir SyncItem.PayloadLoader).
+ */
+public class SyncPayloadCodec {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final byte KIND_EMPTY = 0;
+    private static final byte KIND_FULL = 1;
+    private static final byte KIND_PATCH = 2;
+
+    /**
+     * Lecture de la version locale complète d'une recette, utilisée quand un patch ne peut
+     * plus être appliqué à sa base
+     */
+    public interface LocalRecipeLoader {
+        Recipe load(String recipeId);
+    }
+
+    private final SyncSnapshotStore snapshotStore;
+    private final LocalRecipeLoader localRecipeLoader;
+    private final Gson gson = new Gson();
+
+    public SyncPayloadCodec(SyncSnapshotStore snapshotStore, LocalRecipeLoader localRecipeLoader) {
+        this.snapshotStore = snapshotStore;
+        this.localRecipeLoader = localRecipeLoader;
+    }
+
+    /**
+     * Encode les données d'un élément ; les mises à jour de recette sont encodées
+     * en patch lorsque la version synchronisée est connue.
+     */
+    public byte[] encode(SyncItem item) throws IOException {
+        Object data = item.getData();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FORMAT_VERSION);
+
+        if (data == null) {
+            out.writeByte(KIND_EMPTY);
+            return bytes.toByteArray();
+        }
+
+        JsonElement tree = gson.toJsonTree(data);
+        if (!tree.isJsonObject()) {
+            throw new IOException("Données non encodables: " + data.getClass().getSimpleName());
+        }
+        JsonObject current = tree.getAsJsonObject();
+
+        if (item.getType() == SyncItem.Type.RECIPE && item.getAction() == SyncItem.Action.UPDATE) {
+            SyncSnapshot snapshot = snapshotStore.getRecipeSnapshot(item.getId());
+            JsonObject base = snapshotStore.toJson(snapshot);
+            if (base != null) {
+                out.writeByte(KIND_PATCH);
+                out.writeLong(snapshot.syncedAt);
+                out.flush();
+                writeCompressed(bytes, diff(base, current));
+                return bytes.toByteArray();
+            }
+        }
+
+        out.writeByte(KIND_FULL);
+        out.flush();
+        writeCompressed(bytes, current);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Décode les données encodées par {@link #encode}
+     */
+    public Object decode(byte[] payload, SyncItem.Type type, String itemId) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Version d'encodage inconnue: " + version);
+        }
+
+        byte kind = in.readByte();
+        switch (kind) {
+            case KIND_EMPTY:
+                return null;
+            case KIND_FULL:
+                return gson.fromJson(readCompressed(in), targetClass(type));
+            case KIND_PATCH: {
+                long baseSyncedAt = in.readLong();
+                JsonObject patch = readCompressed(in);
+                SyncSnapshot snapshot = snapshotStore.getRecipeSnapshot(itemId);
+                JsonObject base = snapshot != null && snapshot.syncedAt == baseSyncedAt
+                    ? snapshotStore.toJson(snapshot) : null;
+                if (base == null) {
+                    // Base remplacée ou supprimée depuis l'encodage : envoyer la recette complète
+                    Recipe local = localRecipeLoader.load(itemId);
+                    if (local == null) {
+                        throw new IOException("Version de base et recette locale absentes pour le patch de " + itemId);
+                    }
+                    return local;
+                }
+                for (Map.Entry<String, JsonElement> field : patch.entrySet()) {
+                    if (field.getValue().isJsonNull()) {
+                        base.remove(field.getKey());
+                    } else {
+                        base.add(field.getKey(), field.getValue());
+                    }
+                }
+                return gson.fromJson(base, targetClass(type));
+            }
+            default:
+                throw new IOException("Type d'encodage inconnu: " + kind);
+        }
+    }
+
+    /**
+     * Champs de premier niveau qui diffèrent entre la base et la version courante ;
+     * un champ absent de la version courante vaut null
+     */
+    public static JsonObject diff(JsonObject base, JsonObject current) {
+        JsonObject patch = new JsonObject();
+        for (Map.Entry<String, JsonElement> field : current.entrySet()) {
+            if (!field.getValue().equals(base.get(field.getKey()))) {
+                patch.add(field.getKey(), field.getValue());
+            }
+        }
+        for (Map.Entry<String, JsonElement> field : base.entrySet()) {
+            if (!current.has(field.getKey())) {
+                patch.add(field.getKey(), JsonNull.INSTANCE);
+            }
+        }
+        return patch;
+    }
+
+    private Class<?> targetClass(SyncItem.Type type) {
+        switch (type) {
+            case RECIPE: return Recipe.class;
+            case MEAL_PLAN: return MealPlan.class;
+            case SHOPPING_LIST: return ShoppingList.class;
+            case USER_PROFILE:
+            default: return JsonObject.class;
+        }
+    }
+
+    private void writeCompressed(ByteArrayOutputStream bytes, JsonObject json) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            gson.toJson(json, writer);
+        }
+    }
+
+    private JsonObject readCompressed(DataInputStream in) throws IOException {
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(in), StandardCharsets.UTF_8)) {
+            return JsonParser.parseReader(reader).getAsJsonObject();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package fr.didictateur.inanutshell.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import fr.didictateur.inanutshell.data.model.Recipe;
+import fr.didictateur.inanutshell.sync.database.OfflineSyncDatabase;
+import fr.didictateur.inanutshell.sync.database.SyncSnapshot;
+import fr.didictateur.inanutshell.sync.database.SyncSnapshotDao;
+import fr.didictateur.inanutshell.sync.model.SyncItem;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stockage compressé de la dernière version synchronisée de chaque recette.
+ * Sert d'ancêtre commun à la fusion à trois voies du ConflictResolver.
+ * Les méthodes sont bloquantes et doivent être appelées hors du thread principal.
+ */
+public class SyncSnapshotStore {
+
+    private static final String TAG = "SyncSnapshotStore";
+
+    private final SyncSnapshotDao snapshotDao;
+    private final Gson gson = new Gson();
+
+    public SyncSnapshotStore(Context context) {
+        this(OfflineSyncDatabase.getInstance(context).syncSnapshotDao());
+    }
+    
+    SyncSnapshotStore(SyncSnapshotDao snapshotDao) {
+        this.snapshotDao = snapshotDao;
+    }
+
+    /**
+     * Enregistre la version d'une recette telle qu'elle vient d'être synchronisée
+     */
+    public void saveRecipe(Recipe recipe) {
+        if (recipe == null || recipe.getId() == null) return;
+
+        try {
+            SyncSnapshot snapshot = new SyncSnapshot();
+            snapshot.type = SyncItem.Type.RECIPE.name();
+            snapshot.itemId = recipe.getId();
+            snapshot.data = compress(recipe);
+            snapshot.syncedAt = System.currentTimeMillis();
+            snapshotDao.upsert(snapshot);
+        } catch (IOException e) {
+            Log.w(TAG, "Impossible d'enregistrer la version synchronisée de " + recipe.getId(), e);
+        }
+    }
+
+    /**
+     * Retourne la dernière version synchronisée d'une recette, ou null si inconnue
+     */
+    public Recipe loadRecipe(String recipeId) {
+        if (recipeId == null) return null;
+
+        SyncSnapshot snapshot = snapshotDao.get(SyncItem.Type.RECIPE.name(), recipeId);
+        if (snapshot == null || snapshot.data == null) return null;
+
+        try (Reader reader = new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(snapshot.data)), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, Recipe.class);
+        } catch (Exception e) {
+            Log.w(TAG, "Version synchronisée illisible pour " + recipeId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Retourne la dernière version synchronisée sous forme d'arbre JSON, ou null si inconnue
+     */
+    public JsonObject loadRecipeJson(String recipeId) {
+        return toJson(getRecipeSnapshot(recipeId));
+    }
+
+    /**
+     * Retourne l'enregistrement brut de la dernière version synchronisée, ou null si inconnue
+     */
+    public SyncSnapshot getRecipeSnapshot(String recipeId) {
+        if (recipeId == null) return null;
+        return snapshotDao.get(SyncItem.Type.RECIPE.name(), recipeId);
+    }
+
+    /**
+     * Décompresse un enregistrement en arbre JSON, ou null s'il est vide ou illisible
+     */
+    public JsonObject toJson(SyncSnapshot snapshot) {
+        if (snapshot == null || snapshot.data == null) return null;
+
+        try (Reader reader = new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(snapshot.data)), StandardCharsets.UTF_8)) {
+            JsonElement element = JsonParser.parseReader(reader);
+            return element.isJsonObject() ? element.getAsJsonObject() : null;
+        } catch (Exception e) {
+            Log.w(TAG, "Version synchronisée illisible pour " + snapshot.itemId, e);
+            return null;
+        }
+    }
+
+    public void deleteRecipe(String recipeId) {
+        snapshotDao.delete(SyncItem.Type.RECIPE.name(), recipeId);
+    }
+
+    private byte[] compress(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            gson.toJson(value, writer);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,93 @@
+package fr.didictateur.inanutshell.sync;
+
+import android.content.SharedPreferences;
+
+import fr.didictateur.inanutshell.sync.model.SyncItem;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Marqueurs de synchronisation incrémentale par type d'élément
+ * Seules les modifications serveur postérieures au marqueur sont téléchargées
+ */
+public class SyncWatermarks {
+
+    private static final String KEY_PREFIX = "watermark_";
+    private static final String KEY_WINDOW_START = "_window_start";
+    private static final String KEY_WINDOW_END = "_window_end";
+
+    // Marge pour absorber les décalages d'horloge entre l'appareil et le serveur
+    private static final long CLOCK_SKEW_MARGIN_MS = 5 * 60 * 1000L;
+
+    private final SharedPreferences prefs;
+
+    public SyncWatermarks(SharedPreferences prefs) {
+        this.prefs = prefs;
+    }
+
+    /**
+     * Retourne le dernier marqueur enregistré pour ce type (0 si jamais synchronisé)
+     */
+    public long get(SyncItem.Type type) {
+        return prefs.getLong(KEY_PREFIX + type.name(), 0);
+    }
+
+    /**
+     * Enregistre le début d'une passe réussie comme nouveau marqueur
+     */
+    public void advance(SyncItem.Type type, long passStartedAt) {
+        prefs.edit()
+            .putLong(KEY_PREFIX + type.name(), passStartedAt)
+            .apply();
+    }
+
+    /**
+     * Enregistre le marqueur avec la fenêtre de dates (yyyy-MM-dd) réellement téléchargée
+     * Le marqueur ne vaut que pour cette fenêtre
+     */
+    public void advance(SyncItem.Type type, long passStartedAt, String windowStart, String windowEnd) {
+        prefs.edit()
+            .putLong(KEY_PREFIX + type.name(), passStartedAt)
+            .putString(KEY_PREFIX + type.name() + KEY_WINDOW_START, windowStart)
+            .putString(KEY_PREFIX + type.name() + KEY_WINDOW_END, windowEnd)
+            .apply();
+    }
+
+    /**
+     * Début de la fenêtre couverte par le marqueur (null si aucune)
+     */
+    public String getWindowStart(SyncItem.Type type) {
+        return prefs.getString(KEY_PREFIX + type.name() + KEY_WINDOW_START, null);
+    }
+
+    /**
+     * Fin de la fenêtre couverte par le marqueur (null si aucune)
+     */
+    public String getWindowEnd(SyncItem.Type type) {
+        return prefs.getString(KEY_PREFIX + type.name() + KEY_WINDOW_END, null);
+    }
+
+    public void reset(SyncItem.Type type) {
+        prefs.edit()
+            .remove(KEY_PREFIX + type.name())
+            .remove(KEY_PREFIX + type.name() + KEY_WINDOW_START)
+            .remove(KEY_PREFIX + type.name() + KEY_WINDOW_END)
+            .apply();
+    }
+
+    /**
+     * Construit le filtre Mealie "modifié depuis" ou null pour une synchronisation complète
+     */
+    public String buildQueryFilter(SyncItem.Type type) {
+        long watermark = get(type);
+        if (watermark <= 0) {
+            return null;
+        }
+        SimpleDateFormat isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
+        isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return "update_at >= \"" + isoFormat.format(new Date(watermark - CLOCK_SKEW_MARGIN_MS)) + "\"";
+    }
+}
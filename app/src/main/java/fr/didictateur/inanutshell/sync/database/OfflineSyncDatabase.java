@@ -1,17 +1,20 @@
 package fr.didictateur.inanutshell.sync.database;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 import android.content.Context;
 
 /**
  * Base de données Room pour la synchronisation offline
  */
 @Database(
-    entities = {PendingSync.class},
-    version = 1,
+    entities = {PendingSync.class, SyncSnapshot.class},
+    version = 3,
     exportSchema = false
 )
 @TypeConverters({SyncTypeConverters.class})
@@ -21,6 +24,25 @@ public abstract class OfflineSyncDatabase extends RoomDatabase {
     private static volatile OfflineSyncDatabase instance;
     
     public abstract PendingSyncDao pendingSyncDao();
+    public abstract SyncSnapshotDao syncSnapshotDao();
+    
+    // 1 → 2 : ajout de la table des dernières versions synchronisées, sans vider la file d'attente
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `sync_snapshots` (" +
+                "`type` TEXT NOT NULL, `itemId` TEXT NOT NULL, `data` BLOB, " +
+                "`syncedAt` INTEGER NOT NULL, PRIMARY KEY(`type`, `itemId`))");
+        }
+    };
+    
+    // 2 → 3 : colonne du payload encodé ; les anciennes lignes texte restent lisibles
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `pending_sync` ADD COLUMN `payload` BLOB");
+        }
+    };
     
     public static OfflineSyncDatabase getInstance(Context context) {
         if (instance == null) {
@@ -31,6 +53,7 @@ public abstract class OfflineSyncDatabase extends RoomDatabase {
                         OfflineSyncDatabase.class,
                         DATABASE_NAME
                     )
+                    .addMigrations(MIGRATION_1_2, MIGRATION_2_3)
                     .fallbackToDestructiveMigration()
                     .build();
                 }
@@ -21,7 +21,8 @@ public class PendingSync {
     public String itemId;           // ID de l'élément à synchroniser
     public String type;             // Type d'élément (RECIPE, MEAL_PLAN, etc.)
     public String action;           // Action à effectuer (CREATE, UPDATE, DELETE)
-    public String data;             // Données sérialisées de l'élément
+    public String data;             // Données sérialisées (ancien format texte)
+    public byte[] payload;          // Données encodées par SyncPayloadCodec
     public String deviceId;         // ID de l'appareil source
     public long timestamp;          // Timestamp de création
     public Status status;           // Statut actuel
@@ -0,0 +1,23 @@
+package fr.didictateur.inanutshell.sync.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+
+/**
+ * Dernière version synchronisée d'un élément (ancêtre commun pour la fusion à trois voies)
+ */
+@Entity(tableName = "sync_snapshots", primaryKeys = {"type", "itemId"})
+public class SyncSnapshot {
+    
+    @NonNull
+    public String type = "";        // Type d'élément (RECIPE, MEAL_PLAN, etc.)
+    
+    @NonNull
+    public String itemId = "";      // ID de l'élément
+    
+    public byte[] data;             // Version synchronisée compressée (GZIP)
+    public long syncedAt;           // Timestamp de la synchronisation
+    
+    public SyncSnapshot() {
+    }
+}
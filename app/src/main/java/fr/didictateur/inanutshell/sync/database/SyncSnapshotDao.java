@@ -0,0 +1,22 @@
+package fr.didictateur.inanutshell.sync.database;
+
+import androidx.room.*;
+
+/**
+ * DAO pour les versions synchronisées servant d'ancêtre commun
+ */
+@Dao
+public interface SyncSnapshotDao {
+    
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(SyncSnapshot snapshot);
+    
+    @Query("SELECT * FROM sync_snapshots WHERE type = :type AND itemId = :itemId")
+    SyncSnapshot get(String type, String itemId);
+    
+    @Query("DELETE FROM sync_snapshots WHERE type = :type AND itemId = :itemId")
+    void delete(String type, String itemId);
+    
+    @Query("DELETE FROM sync_snapshots")
+    void deleteAll();
+}
@@ -24,16 +24,23 @@ public class ConflictResolution {
     private final Type type;
     private final Object localVersion;
     private final Object serverVersion;
+    private final Object baseVersion;   // Dernière version synchronisée (ancêtre commun), peut être null
+    private java.util.List<String> conflictingFields = java.util.Collections.emptyList();
     private Strategy strategy;
     private Object resolvedVersion;
     private boolean resolved;
     private long timestamp;
     
     public ConflictResolution(String id, Type type, Object localVersion, Object serverVersion) {
+        this(id, type, localVersion, serverVersion, null);
+    }
+    
+    public ConflictResolution(String id, Type type, Object localVersion, Object serverVersion, Object baseVersion) {
         this.id = id;
         this.type = type;
         this.localVersion = localVersion;
         this.serverVersion = serverVersion;
+        this.baseVersion = baseVersion;
         this.strategy = Strategy.ASK_USER; // Par défaut, demander à l'utilisateur
         this.resolved = false;
         this.timestamp = System.currentTimeMillis();
@@ -44,11 +51,17 @@ public class ConflictResolution {
     public Type getType() { return type; }
     public Object getLocalVersion() { return localVersion; }
     public Object getServerVersion() { return serverVersion; }
+    public Object getBaseVersion() { return baseVersion; }
+    public java.util.List<String> getConflictingFields() { return conflictingFields; }
     public Strategy getStrategy() { return strategy; }
     public Object getResolvedVersion() { return resolvedVersion; }
     public boolean isResolved() { return resolved; }
     public long getTimestamp() { return timestamp; }
     
+    public void setConflictingFields(java.util.List<String> conflictingFields) {
+        this.conflictingFields = conflictingFields;
+    }
+    
     // Méthodes de résolution
     public void resolveWithLocal() {
         this.strategy = Strategy.USE_LOCAL;
@@ -83,6 +96,10 @@ public class ConflictResolution {
         return type == Type.RECIPE_CONFLICT ? (Recipe) serverVersion : null;
     }
     
+    public Recipe getBaseRecipe() {
+        return type == Type.RECIPE_CONFLICT ? (Recipe) baseVersion : null;
+    }
+    
     public String getConflictDescription() {
         switch (type) {
             case RECIPE_CONFLICT:
@@ -23,9 +23,17 @@ public class SyncItem {
     private final Action action;
     private final long timestamp;
     private final String deviceId;
-    private final Object data;
+    private Object data;
+    private PayloadLoader payloadLoader;
     private int retryCount;
     
+    /**
+     * Décodage différé des données (ex: éléments relus depuis la file hors ligne)
+     */
+    public interface PayloadLoader {
+        Object load();
+    }
+    
     public SyncItem(String id, Type type, Action action, long timestamp, String deviceId, Object data) {
         this.id = id;
         this.type = type;
@@ -36,13 +44,27 @@ public class SyncItem {
         this.retryCount = 0;
     }
     
+    /**
+     * Élément dont les données ne sont décodées qu'au premier appel de getData()
+     */
+    public SyncItem(String id, Type type, Action action, long timestamp, String deviceId, PayloadLoader payloadLoader) {
+        this(id, type, action, timestamp, deviceId, (Object) null);
+        this.payloadLoader = payloadLoader;
+    }
+    
     // Getters
     public String getId() { return id; }
     public Type getType() { return type; }
     public Action getAction() { return action; }
     public long getTimestamp() { return timestamp; }
     public String getDeviceId() { return deviceId; }
-    public Object getData() { return data; }
+    public synchronized Object getData() {
+        if (payloadLoader != null) {
+            data = payloadLoader.load();
+            payloadLoader = null;
+        }
+        return data;
+    }
     public int getRetryCount() { return retryCount; }
     
     // Méthodes
@@ -223,6 +223,7 @@ public class CloudBackupActivity extends AppCompatActivity implements CloudBacku
             "Google Drive",
             "Dropbox", 
             "OneDrive",
+            "Stockage local",
             "Aucun"
         };
         
@@ -241,6 +242,9 @@ public class CloudBackupActivity extends AppCompatActivity implements CloudBacku
                     case 2:
                         selectedProvider = CloudBackupManager.CloudProvider.ONEDRIVE;
                         break;
+                    case 3:
+                        selectedProvider = CloudBackupManager.CloudProvider.LOCAL;
+                        break;
                     default:
                         selectedProvider = CloudBackupManager.CloudProvider.NONE;
                         break;
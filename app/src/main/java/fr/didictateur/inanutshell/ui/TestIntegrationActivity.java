@@ -10,6 +10,7 @@ import fr.didictateur.inanutshell.data.network.NetworkManager;
 import fr.didictateur.inanutshell.logging.AppLogger;
 import fr.didictateur.inanutshell.performance.PerformanceManager;
 import fr.didictateur.inanutshell.network.NetworkStateManager;
+import fr.didictateur.inanutshell.network.RequestScheduler;
 import fr.didictateur.inanutshell.config.MultiServerManager;
 import java.util.List;
 
@@ -24,11 +25,16 @@ public class TestIntegrationActivity extends AppCompatActivity {
     private NetworkStateManager networkStateManager;
     private MultiServerManager multiServerManager;
     
+    private static final int BACKGROUND_LOAD = 40;
+    private static final int INTERACTIVE_PROBES = 5;
+    
     private TextView statusText;
     private Button testConnectionBtn;
     private Button testRecipesBtn;
     private Button testPerformanceBtn;
     private Button testMultiServerBtn;
+    private Button networkMetricsBtn;
+    private Button testPriorityBtn;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -87,6 +93,14 @@ public class TestIntegrationActivity extends AppCompatActivity {
         testMultiServerBtn.setText("Test Multi-Serveur");
         layout.addView(testMultiServerBtn);
         
+        networkMetricsBtn = new Button(this);
+        networkMetricsBtn.setText("Métriques Réseau");
+        layout.addView(networkMetricsBtn);
+        
+        testPriorityBtn = new Button(this);
+        testPriorityBtn.setText("Test Priorités Réseau");
+        layout.addView(testPriorityBtn);
+        
         setContentView(layout);
     }
     
@@ -95,6 +109,8 @@ public class TestIntegrationActivity extends AppCompatActivity {
         testRecipesBtn.setOnClickListener(v -> testRecipesWithPerformance());
         testPerformanceBtn.setOnClickListener(v -> testPerformanceManagerDirectly());
         testMultiServerBtn.setOnClickListener(v -> testMultiServerFailover());
+        networkMetricsBtn.setOnClickListener(v -> showNetworkMetrics());
+        testPriorityBtn.setOnClickListener(v -> testInteractiveUnderLoad());
     }
     
     /**
@@ -218,6 +234,81 @@ public class TestIntegrationActivity extends AppCompatActivity {
         }
     }
     
+    /**
+     * Test 5: Latences et efficacité du cache par endpoint
+     */
+    private void showNetworkMetrics() {
+        PerformanceManager.PerformanceStats stats = performanceManager.getPerformanceStats();
+        
+        StringBuilder message = new StringBuilder();
+        message.append(String.format("Cache HTTP: %.0f%% sur %d endpoints", 
+            stats.httpCacheHitRate * 100, stats.endpoints.size()));
+        if (networkManager.getCacheInterceptor() != null) {
+            message.append("\n").append(networkManager.getCacheInterceptor().getCounters());
+        }
+        message.append("\n").append(performanceManager.getNetworkMetrics().getTlsSummary());
+        if (networkManager.getGzipInterceptor() != null) {
+            message.append("\n").append(networkManager.getGzipInterceptor().getStatsSummary());
+        }
+        for (fr.didictateur.inanutshell.performance.NetworkMetrics.EndpointStats endpoint : stats.endpoints) {
+            message.append("\n• ").append(endpoint);
+        }
+        
+        updateStatus(message.toString());
+        logger.logInfo("TestIntegration", stats.toString());
+    }
+    
+    /**
+     * Test 6: Latence des requêtes interactives pendant une charge d'arrière-plan saturante
+     */
+    private void testInteractiveUnderLoad() {
+        updateStatus("Test des priorités: " + BACKGROUND_LOAD + " pages en arrière-plan...");
+        
+        RequestScheduler scheduler = RequestScheduler.getInstance();
+        scheduler.resetStats();
+        Object loadTag = new Object();
+        
+        NetworkManager.RecipesCallback ignored = new NetworkManager.RecipesCallback() {
+            @Override
+            public void onSuccess(List<Recipe> recipes) {
+            }
+            
+            @Override
+            public void onError(String error) {
+            }
+        };
+        for (int page = 1; page <= BACKGROUND_LOAD; page++) {
+            networkManager.getRecipesPage(page, 50, RequestScheduler.Priority.BACKGROUND, loadTag, ignored);
+        }
+        
+        // Requêtes interactives envoyées pendant que la charge est en cours
+        java.util.concurrent.atomic.AtomicInteger remaining = new java.util.concurrent.atomic.AtomicInteger(INTERACTIVE_PROBES);
+        for (int i = 0; i < INTERACTIVE_PROBES; i++) {
+            long start = System.currentTimeMillis();
+            networkManager.getRecipesPage(1, 1, new NetworkManager.RecipesCallback() {
+                @Override
+                public void onSuccess(List<Recipe> recipes) {
+                    done(null);
+                }
+                
+                @Override
+                public void onError(String error) {
+                    done(error);
+                }
+                
+                private void done(String error) {
+                    updateStatus((error == null ? "✓" : "✗ " + error) + " Interactive: " +
+                        (System.currentTimeMillis() - start) + "ms");
+                    if (remaining.decrementAndGet() == 0) {
+                        networkManager.cancelRequests(loadTag);
+                        updateStatus(scheduler.getStatsSummary());
+                        logger.logInfo("TestIntegration", scheduler.getStatsSummary());
+                    }
+                }
+            });
+        }
+    }
+    
     private void updateStatus(String message) {
         runOnUiThread(() -> {
             statusText.setText(statusText.getText() + "\n" + message);
@@ -267,6 +267,9 @@ public class MultipleImagesActivity extends AppCompatActivity implements
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        // Pas besoin de nettoyer le singleton ici
+        // La liste d'images en attente ne sera plus affichée
+        if (imageManager != null && recipeId != null && isFinishing()) {
+            imageManager.cancelImageRequests(recipeId);
+        }
     }
 }
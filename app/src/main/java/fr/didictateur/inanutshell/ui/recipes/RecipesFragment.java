@@ -28,6 +28,7 @@ import fr.didictateur.inanutshell.R;
 import fr.didictateur.inanutshell.databinding.FragmentRecipesBinding;
 import fr.didictateur.inanutshell.data.model.Recipe;
 import fr.didictateur.inanutshell.data.network.NetworkManager;
+import fr.didictateur.inanutshell.network.RequestScheduler;
 import fr.didictateur.inanutshell.ui.main.MainActivity;
 import fr.didictateur.inanutshell.ui.search.SearchFilters;
 import fr.didictateur.inanutshell.ui.search.SearchFilterListener;
@@ -104,6 +105,14 @@ public class RecipesFragment extends Fragment implements RecipeAdapter.OnRecipeC
         }
     }
     
+    @Override
+    public void onDestroyView() {
+        // Les pages demandées pour cet écran ne sont plus utiles
+        NetworkManager.getInstance().cancelRequests(this);
+        isLoading = false;
+        super.onDestroyView();
+    }
+    
 
     
     private void setupRecyclerView() {
@@ -434,7 +443,8 @@ public class RecipesFragment extends Fragment implements RecipeAdapter.OnRecipeC
             return;
         }
         
-        // Réinitialiser la pagination lors d'un refresh
+        // Réinitialiser la pagination lors d'un refresh (les pages en cours sont devenues inutiles)
+        NetworkManager.getInstance().cancelRequests(this);
         currentPage = 1;
         isLoading = false;
         isLastPage = false;
@@ -580,7 +590,9 @@ public class RecipesFragment extends Fragment implements RecipeAdapter.OnRecipeC
         }
         
         // Charger la page suivante depuis le réseau
-        NetworkManager.getInstance().getRecipesPage(currentPage, ITEMS_PER_PAGE, new NetworkManager.RecipesCallback() {
+        // Anticipation : ne doit pas retarder l'ouverture d'une recette, annulée si l'écran est quitté
+        NetworkManager.getInstance().getRecipesPage(currentPage, ITEMS_PER_PAGE,
+                RequestScheduler.Priority.PREFETCH, this, new NetworkManager.RecipesCallback() {
             @Override
             public void onSuccess(List<Recipe> newRecipes) {
                 if (getActivity() != null) {
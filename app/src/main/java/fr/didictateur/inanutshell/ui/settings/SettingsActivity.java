@@ -2,13 +2,19 @@ package fr.didictateur.inanutshell.ui.settings;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.view.View;
 import android.widget.Toast;
 
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.databinding.DataBindingUtil;
 
 import fr.didictateur.inanutshell.R;
+import fr.didictateur.inanutshell.config.MultiServerManager;
+import fr.didictateur.inanutshell.config.ServerConfig;
 import fr.didictateur.inanutshell.databinding.ActivitySettingsBinding;
+import fr.didictateur.inanutshell.network.PinningTrustManager;
+import fr.didictateur.inanutshell.network.ServerTlsProvider;
 import fr.didictateur.inanutshell.ui.setup.SetupActivity;
 import fr.didictateur.inanutshell.utils.MealiePreferences;
 
@@ -48,6 +54,41 @@ public class SettingsActivity extends AppCompatActivity {
         }
     }
     
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // Un refus peut survenir pendant que l'écran est en arrière-plan
+        showCertificateMismatch();
+    }
+    
+    /**
+     * Certificat auto-signé refusé car différent de celui épinglé : affiche la nouvelle
+     * empreinte et propose de lui faire confiance
+     */
+    private void showCertificateMismatch() {
+        ServerConfig server = MultiServerManager.getInstance(this).getCurrentServer();
+        PinningTrustManager.PinMismatchException mismatch = server != null
+            ? ServerTlsProvider.getInstance(this).getPinMismatch(server) : null;
+        if (mismatch == null) {
+            binding.layoutCertificateMismatch.setVisibility(View.GONE);
+            return;
+        }
+        
+        binding.tvCertificateMismatch.setText(getString(R.string.certificate_mismatch_message,
+            mismatch.getHostPort(), mismatch.getActual(), mismatch.getExpected()));
+        binding.layoutCertificateMismatch.setVisibility(View.VISIBLE);
+        binding.btnTrustCertificate.setOnClickListener(v -> new AlertDialog.Builder(this)
+            .setTitle(R.string.trust_new_certificate)
+            .setMessage(getString(R.string.trust_new_certificate_confirm, mismatch.getActual()))
+            .setPositiveButton(R.string.trust_new_certificate, (dialog, which) -> {
+                ServerTlsProvider.getInstance(this).resetTrust(server);
+                Toast.makeText(this, getString(R.string.certificate_trusted), Toast.LENGTH_SHORT).show();
+                showCertificateMismatch();
+            })
+            .setNegativeButton(R.string.cancel, null)
+            .show());
+    }
+    
     private void setupListeners() {
         binding.btnReconfigure.setOnClickListener(v -> {
             startActivity(new Intent(this, SetupActivity.class));
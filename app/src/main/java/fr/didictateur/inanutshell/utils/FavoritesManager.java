@@ -2,6 +2,7 @@ package fr.didictateur.inanutshell.utils;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -49,6 +50,12 @@ public class FavoritesManager {
         android.util.Log.d("FavoritesManager", "Added recipe " + recipeId + " to favorites");
     }
     
+    public void addAllToFavorites(Collection<String> recipeIds) {
+        favoriteRecipeIds.addAll(recipeIds);
+        saveFavorites();
+        android.util.Log.d("FavoritesManager", "Added " + recipeIds.size() + " recipes to favorites");
+    }
+    
     public void removeFromFavorites(String recipeId) {
         favoriteRecipeIds.remove(recipeId);
         saveFavorites();
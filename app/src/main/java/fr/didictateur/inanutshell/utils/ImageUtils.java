@@ -35,6 +35,8 @@ public class ImageUtils {
     public static final int REQUEST_CODE_CAMERA = 1002;
     public static final int REQUEST_CODE_PERMISSIONS = 1003;
     
+    private static final String RECIPE_IMAGE_PREFIX = "recipe_";
+    
     private static final String[] REQUIRED_PERMISSIONS = {
         Manifest.permission.READ_EXTERNAL_STORAGE,
         Manifest.permission.CAMERA,
@@ -126,7 +128,7 @@ public class ImageUtils {
         try {
             String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
             String imageFileName = "RECIPE_" + timeStamp + "_";
-            File storageDir = context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+            File storageDir = getRecipeImageDirectory(context);
             return File.createTempFile(imageFileName, ".jpg", storageDir);
         } catch (IOException ex) {
             return null;
@@ -282,6 +284,31 @@ public class ImageUtils {
         return null;
     }
     
+    /**
+     * Dossier persistant des photos de recettes, inclus dans les sauvegardes (null si indisponible)
+     */
+    public static File getRecipeImageDirectory(Context context) {
+        return context.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+    }
+    
+    /**
+     * Photo d'une recette dans ce dossier, avec l'extension d'origine (jpg, png, webp...)
+     */
+    public static File getRecipeImageFile(File directory, String recipeId, String extension) {
+        return new File(directory, RECIPE_IMAGE_PREFIX + recipeId + "." + extension);
+    }
+    
+    /**
+     * Photo enregistrée pour une recette, quelle que soit son extension, ou null
+     */
+    public static File findRecipeImageFile(Context context, String recipeId) {
+        File directory = getRecipeImageDirectory(context);
+        if (directory == null || recipeId == null) return null;
+        String prefix = RECIPE_IMAGE_PREFIX + recipeId + ".";
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(prefix));
+        return files != null && files.length > 0 ? files[0] : null;
+    }
+    
     /**
      * Sauvegarder une miniature dans le cache
      */
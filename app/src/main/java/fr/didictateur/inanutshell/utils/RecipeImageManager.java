@@ -14,6 +14,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import fr.didictateur.inanutshell.data.network.NetworkManager;
+import fr.didictateur.inanutshell.network.RequestScheduler;
 
 /**
  * Gestionnaire avancé pour les images de recettes
@@ -127,7 +128,8 @@ public class RecipeImageManager {
                     .header("Authorization", "Bearer " + networkManager.getAuthToken())
                     .build();
                 
-                networkManager.getOkHttpClient().newCall(request).enqueue(new okhttp3.Callback() {
+                RequestScheduler.getInstance().enqueue(networkManager.getOkHttpClient().newCall(request),
+                        RequestScheduler.Priority.INTERACTIVE, null, new okhttp3.Callback() {
                     @Override
                     public void onFailure(okhttp3.Call call, java.io.IOException e) {
                         Log.e(TAG, "Erreur suppression image", e);
@@ -170,6 +172,17 @@ public class RecipeImageManager {
         });
     }
     
+    /**
+     * Annuler le chargement des images d'une recette qui n'est plus affichée
+     */
+    public void cancelImageRequests(String recipeId) {
+        RequestScheduler.getInstance().cancel(imagesTag(recipeId));
+    }
+    
+    private static String imagesTag(String recipeId) {
+        return "images:" + recipeId;
+    }
+    
     /**
      * Obtenir toutes les images d'une recette
      */
@@ -194,7 +207,9 @@ public class RecipeImageManager {
                     .header("Authorization", "Bearer " + networkManager.getAuthToken())
                     .build();
                 
-                networkManager.getOkHttpClient().newCall(request).enqueue(new okhttp3.Callback() {
+                // Anticipation : cède la place aux requêtes interactives, annulable par recette
+                RequestScheduler.getInstance().enqueue(networkManager.getOkHttpClient().newCall(request),
+                        RequestScheduler.Priority.PREFETCH, imagesTag(recipeId), new okhttp3.Callback() {
                     @Override
                     public void onFailure(okhttp3.Call call, java.io.IOException e) {
                         Log.e(TAG, "Erreur chargement images", e);
@@ -0,0 +1,325 @@
+package fr.didictateur.inanutshell.cloud;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import fr.didictateur.inanutshell.cloud.CloudBackupManager.BackupSection;
+import fr.didictateur.inanutshell.cloud.CloudBackupManager.ShoppingListData;
+import fr.didictateur.inanutshell.data.meal.MealPlan;
+import fr.didictateur.inanutshell.data.model.Recipe;
+import fr.didictateur.inanutshell.data.shopping.ShoppingItem;
+import fr.didictateur.inanutshell.data.shopping.ShoppingList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Format des sauvegardes cloud : aller-retour de chaque section, sections inconnues ou plus
+ * récentes sautées, lecture partielle et débit sur 10 000 recettes
+ */
+public class BackupSerializerTest {
+    private static final int MAGIC = 0x494E4253;
+    private static final int BENCHMARK_RECIPE_COUNT = 10_000;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private BackupSerializer serializer;
+
+    @Before
+    public void setUp() {
+        serializer = new BackupSerializer(tempFolder.getRoot());
+    }
+
+    @Test
+    public void everySectionRoundTrips() throws IOException {
+        BackupSerializer.BackupContent content = new BackupSerializer.BackupContent();
+        content.recipes = BackupSerializer.of(Arrays.asList(recipe(1), recipe(2)));
+        MealPlan mealPlan = new MealPlan("recipe-1", "Tarte", new Date(1704067200000L), MealPlan.MealType.values()[0]);
+        content.mealPlans = BackupSerializer.of(Collections.singletonList(mealPlan));
+        ShoppingList list = new ShoppingList("Courses", "Semaine");
+        List<ShoppingItem> items = Arrays.asList(
+            new ShoppingItem(1, "Farine", "500 g", ShoppingItem.Category.values()[0]),
+            new ShoppingItem(1, "Beurre", "250 g", ShoppingItem.Category.values()[0]));
+        content.shoppingLists = BackupSerializer.of(Collections.singletonList(new ShoppingListData(list, items)));
+        content.favorites = BackupSerializer.of(Arrays.asList("recipe-1", "recipe-2"));
+        Map<String, Float> ratings = new LinkedHashMap<>();
+        ratings.put("recipe-1", 4.5f);
+        content.ratings = BackupSerializer.of(ratings.entrySet());
+        Map<String, Object> settings = settings();
+        content.settings = BackupSerializer.of(new ArrayList<Map.Entry<String, ?>>(settings.entrySet()));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Map<BackupSection, Integer> counts = serializer.write(content, out);
+        RecordingHandler handler = new RecordingHandler();
+        Set<BackupSection> read = serializer.read(new ByteArrayInputStream(out.toByteArray()),
+            EnumSet.allOf(BackupSection.class), handler);
+
+        assertEquals(EnumSet.allOf(BackupSection.class), read);
+        assertEquals(Integer.valueOf(2), counts.get(BackupSection.RECIPES));
+        assertEquals(Integer.valueOf(settings.size()), counts.get(BackupSection.SETTINGS));
+        assertEquals(Arrays.asList("recipe-1", "recipe-2"), handler.recipeIds);
+        assertEquals("Description de la recette 2", handler.recipes.get(1).getDescription());
+        assertEquals(1, handler.mealPlans.size());
+        assertEquals("Tarte", handler.mealPlans.get(0).recipeName);
+        assertEquals(mealPlan.mealDate, handler.mealPlans.get(0).mealDate);
+        assertEquals(mealPlan.mealType, handler.mealPlans.get(0).mealType);
+        assertEquals("Courses", handler.shoppingLists.get(0).list.name);
+        assertEquals("Beurre", handler.shoppingLists.get(0).items.get(1).name);
+        assertEquals(Arrays.asList("recipe-1", "recipe-2"), handler.favorites);
+        assertEquals(ratings, handler.ratings);
+        assertEquals(settings, handler.settings);
+        assertEquals(Integer.valueOf(2), handler.endCounts.get(BackupSection.RECIPES));
+    }
+
+    @Test
+    public void onlyWantedSectionsAreRead() throws IOException {
+        BackupSerializer.BackupContent content = new BackupSerializer.BackupContent();
+        content.recipes = BackupSerializer.of(Arrays.asList(recipe(1), recipe(2)));
+        content.favorites = BackupSerializer.of(Collections.singletonList("recipe-1"));
+
+        RecordingHandler handler = new RecordingHandler();
+        Set<BackupSection> read = serializer.read(new ByteArrayInputStream(write(content)),
+            EnumSet.of(BackupSection.FAVORITES), handler);
+
+        assertEquals(EnumSet.of(BackupSection.FAVORITES), read);
+        assertTrue(handler.recipes.isEmpty());
+        assertEquals(Collections.singletonList("recipe-1"), handler.favorites);
+    }
+
+    /**
+     * Sauvegarde d'une version plus récente : section d'id inconnu, section connue en version 2,
+     * et anciennes sections commentaires (6) et utilisateurs (7), toutes sautées sans bloquer la suite
+     */
+    @Test
+    public void unknownAndNewerSectionsAreSkipped() throws IOException {
+        StreamBuilder stream = new StreamBuilder()
+            .section(99, 1, record(new byte[] {1, 2, 3}), record("inconnu".getBytes(StandardCharsets.UTF_8)))
+            .section(6, 1)
+            .section(7, 1)
+            .section(BackupSection.RECIPES.id, 2, record("{format:2}".getBytes(StandardCharsets.UTF_8)))
+            .section(BackupSection.FAVORITES.id, 1, record("recipe-1".getBytes(StandardCharsets.UTF_8)));
+
+        RecordingHandler handler = new RecordingHandler();
+        Set<BackupSection> read = serializer.read(new ByteArrayInputStream(stream.build()),
+            EnumSet.allOf(BackupSection.class), handler);
+
+        assertEquals(EnumSet.of(BackupSection.FAVORITES), read);
+        assertTrue(handler.recipes.isEmpty());
+        assertFalse(handler.endCounts.containsKey(BackupSection.RECIPES));
+        assertEquals(Collections.singletonList("recipe-1"), handler.favorites);
+    }
+
+    @Test
+    public void truncatedBackupIsRejected() throws IOException {
+        BackupSerializer.BackupContent content = new BackupSerializer.BackupContent();
+        content.recipes = BackupSerializer.of(Arrays.asList(recipe(1), recipe(2)));
+        byte[] bytes = write(content);
+
+        try {
+            serializer.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 10)),
+                EnumSet.allOf(BackupSection.class), new RecordingHandler());
+            fail("Une sauvegarde tronquée doit être refusée");
+        } catch (IOException expected) {
+            // attendu
+        }
+    }
+
+    @Test
+    public void pagedSourceReadsEveryPage() throws IOException {
+        List<Recipe> recipes = new ArrayList<>();
+        for (int i = 0; i < 450; i++) {
+            recipes.add(recipe(i));
+        }
+        List<Integer> pageSizes = new ArrayList<>();
+        BackupSerializer.BackupContent content = new BackupSerializer.BackupContent();
+        content.recipes = BackupSerializer.paged(200, (last, limit) -> {
+            int from = last == null ? 0 : recipes.indexOf(last) + 1;
+            List<Recipe> page = recipes.subList(from, Math.min(from + limit, recipes.size()));
+            pageSizes.add(page.size());
+            return page;
+        });
+
+        Map<BackupSection, Integer> counts = serializer.write(content, new ByteArrayOutputStream());
+
+        assertEquals(Integer.valueOf(450), counts.get(BackupSection.RECIPES));
+        assertEquals(Arrays.asList(200, 200, 50), pageSizes);
+    }
+
+    /**
+     * Débit d'écriture puis de lecture de 10 000 recettes, avant compression et chiffrement
+     */
+    @Test
+    public void tenThousandRecipesThroughput() throws IOException {
+        List<Recipe> recipes = new ArrayList<>(BENCHMARK_RECIPE_COUNT);
+        for (int i = 0; i < BENCHMARK_RECIPE_COUNT; i++) {
+            recipes.add(recipe(i));
+        }
+        BackupSerializer.BackupContent content = new BackupSerializer.BackupContent();
+        content.recipes = BackupSerializer.of(recipes);
+        // Préchauffage du JIT et de Gson
+        write(content);
+
+        long start = System.nanoTime();
+        byte[] bytes = write(content);
+        long writeNanos = System.nanoTime() - start;
+
+        RecordingHandler handler = new RecordingHandler();
+        start = System.nanoTime();
+        serializer.read(new ByteArrayInputStream(bytes), EnumSet.of(BackupSection.RECIPES), handler);
+        long readNanos = System.nanoTime() - start;
+
+        System.out.println(BENCHMARK_RECIPE_COUNT + " recettes, " + (bytes.length / 1024) + " Ko : écriture "
+            + rate(bytes.length, writeNanos) + ", lecture " + rate(bytes.length, readNanos));
+        assertEquals(BENCHMARK_RECIPE_COUNT, handler.recipes.size());
+        assertEquals(Integer.valueOf(BENCHMARK_RECIPE_COUNT), handler.endCounts.get(BackupSection.RECIPES));
+    }
+
+    private byte[] write(BackupSerializer.BackupContent content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.write(content, out);
+        return out.toByteArray();
+    }
+
+    private static String rate(long bytes, long nanos) {
+        double seconds = nanos / (double) TimeUnit.SECONDS.toNanos(1);
+        return String.format(java.util.Locale.ROOT, "%.1f Mo/s (%.0f recettes/s)",
+            bytes / seconds / (1024 * 1024), BENCHMARK_RECIPE_COUNT / seconds);
+    }
+
+    private static Recipe recipe(int index) {
+        Recipe recipe = new Recipe();
+        recipe.setId("recipe-" + index);
+        recipe.setName("Recette " + index);
+        recipe.setDescription("Description de la recette " + index);
+        recipe.setRecipeYield("4 personnes");
+        return recipe;
+    }
+
+    private static Map<String, Object> settings() {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("theme", "sombre");
+        settings.put("notifications", true);
+        settings.put("portions", 4);
+        settings.put("derniere_synchro", 1704067200000L);
+        settings.put("taille_texte", 1.25f);
+        settings.put("categories", new HashSet<>(Arrays.asList("Desserts", "Entrées")));
+        return settings;
+    }
+
+    private static byte[] record(byte[] payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(payload.length);
+        out.write(payload);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Fichier construit à la main, pour simuler une version plus récente du format
+     */
+    private static final class StreamBuilder {
+        private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private int sectionCount;
+
+        StreamBuilder section(int id, int version, byte[]... records) throws IOException {
+            ByteArrayOutputStream section = new ByteArrayOutputStream();
+            for (byte[] record : records) {
+                section.write(record);
+            }
+            DataOutputStream entry = new DataOutputStream(index);
+            entry.writeShort(id);
+            entry.writeShort(version);
+            entry.writeInt(records.length);
+            entry.writeLong(section.size());
+            section.writeTo(body);
+            sectionCount++;
+            return this;
+        }
+
+        byte[] build() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeShort(BackupSerializer.SCHEMA_VERSION);
+            out.writeShort(sectionCount);
+            index.writeTo(out);
+            body.writeTo(out);
+            return bytes.toByteArray();
+        }
+    }
+
+    private static final class RecordingHandler implements BackupSerializer.SectionHandler {
+        final List<Recipe> recipes = new ArrayList<>();
+        final List<String> recipeIds = new ArrayList<>();
+        final List<MealPlan> mealPlans = new ArrayList<>();
+        final List<ShoppingListData> shoppingLists = new ArrayList<>();
+        final List<String> favorites = new ArrayList<>();
+        final Map<String, Float> ratings = new LinkedHashMap<>();
+        final Map<String, Object> settings = new HashMap<>();
+        final Map<BackupSection, Integer> endCounts = new HashMap<>();
+
+        @Override
+        public void beginSection(BackupSection section) {
+        }
+
+        @Override
+        public void recipe(Recipe recipe) {
+            recipes.add(recipe);
+            recipeIds.add(recipe.getId());
+        }
+
+        @Override
+        public void mealPlan(MealPlan mealPlan) {
+            mealPlans.add(mealPlan);
+        }
+
+        @Override
+        public void shoppingList(ShoppingListData list) {
+            shoppingLists.add(list);
+        }
+
+        @Override
+        public void favorite(String recipeId) {
+            favorites.add(recipeId);
+        }
+
+        @Override
+        public void rating(String recipeId, float rating) {
+            ratings.put(recipeId, rating);
+        }
+
+        @Override
+        public void setting(String key, Object value) {
+            settings.put(key, value);
+        }
+
+        @Override
+        public void endSection(BackupSection section, int count) {
+            endCounts.put(section, count);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package fr.didictateur.inanutshell.data.export;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Structure du PDF écrit au fil de l'eau : chaque position de la table xref pointe sur son objet,
+ * startxref sur la table, ordre d'affichage des pages, et débit en pages par seconde
+ */
+public class PdfStreamWriterTest {
+    private static final int BENCHMARK_PAGE_COUNT = 2_000;
+
+    @Test
+    public void xrefOffsetsPointAtTheirObjects() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PdfStreamWriter writer = new PdfStreamWriter(out);
+        int image = writer.addJpeg(new byte[] {(byte) 0xFF, (byte) 0xD8, 'j', 'p', 'e', 'g', (byte) 0xFF, (byte) 0xD9}, 1, 1);
+        List<Integer> pages = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int page = writer.reserve();
+            writer.addPage(page, content("Crème brûlée (page " + i + ")"),
+                Collections.singletonMap("Im1", image), Collections.<PdfStreamWriter.Link>emptyList());
+            pages.add(page);
+        }
+        writer.finish(pages);
+        byte[] pdf = out.toByteArray();
+        String text = new String(pdf, StandardCharsets.ISO_8859_1);
+
+        assertTrue(text.startsWith("%PDF-1.4\n"));
+        assertTrue(text.endsWith("%%EOF\n"));
+        long xref = startXref(text);
+        assertTrue(text.startsWith("xref\n", (int) xref));
+
+        List<Long> offsets = xrefOffsets(text, (int) xref);
+        assertEquals(size(text), offsets.size() + 1);
+        for (int object = 1; object <= offsets.size(); object++) {
+            int offset = offsets.get(object - 1).intValue();
+            assertTrue("Objet " + object + " attendu à " + offset,
+                text.startsWith(object + " 0 obj\n", offset));
+        }
+    }
+
+    @Test
+    public void pagesAreListedInDisplayOrder() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PdfStreamWriter writer = new PdfStreamWriter(out);
+        int toc = writer.reserve();
+        int recipe = writer.reserve();
+        writer.addPage(recipe, content("Tarte"), Collections.<String, Integer>emptyMap(),
+            Collections.<PdfStreamWriter.Link>emptyList());
+        // Table des matières écrite en dernier, affichée en premier
+        writer.addPage(toc, content("Sommaire"), Collections.<String, Integer>emptyMap(),
+            Collections.singletonList(new PdfStreamWriter.Link(50, 100, 300, 120, recipe)));
+        writer.finish(Arrays.asList(toc, recipe));
+        String text = new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+
+        assertTrue(text.contains("/Kids [ " + toc + " 0 R " + recipe + " 0 R ] /Count 2"));
+        assertTrue(text.contains("/Dest [" + recipe + " 0 R /XYZ null null null]"));
+    }
+
+    @Test
+    public void reservedButUnwrittenPageFails() throws IOException {
+        PdfStreamWriter writer = new PdfStreamWriter(new ByteArrayOutputStream());
+        int written = writer.reserve();
+        writer.reserve();
+        writer.addPage(written, content("Tarte"), Collections.<String, Integer>emptyMap(),
+            Collections.<PdfStreamWriter.Link>emptyList());
+
+        try {
+            writer.finish(Collections.singletonList(written));
+            fail("Un objet réservé mais jamais écrit doit faire échouer finish()");
+        } catch (IOException expected) {
+            // attendu
+        }
+    }
+
+    @Test
+    public void numbersHaveAtMostTwoDecimals() {
+        assertEquals("842", PdfStreamWriter.number(842f));
+        assertEquals("0.50", PdfStreamWriter.number(0.5f));
+        assertEquals("12.35", PdfStreamWriter.number(12.346f));
+        assertEquals("0", PdfStreamWriter.number(0.0001f));
+    }
+
+    /**
+     * Pages de texte écrites vers un flux qui jette les octets : coût de l'écriture seule
+     */
+    @Test
+    public void pagesPerSecond() throws IOException {
+        PdfStreamWriter.Content[] contents = new PdfStreamWriter.Content[BENCHMARK_PAGE_COUNT];
+        for (int i = 0; i < BENCHMARK_PAGE_COUNT; i++) {
+            contents[i] = new PdfStreamWriter.Content();
+            for (int line = 0; line < 40; line++) {
+                contents[i].text(line == 0, line == 0 ? 18 : 11, 50, 60 + line * 18,
+                    "Étape " + line + " : mélanger la farine et le beurre, puis laisser reposer.");
+            }
+        }
+        CountingSink sink = new CountingSink();
+
+        long start = System.nanoTime();
+        PdfStreamWriter writer = new PdfStreamWriter(sink);
+        List<Integer> pages = new ArrayList<>(BENCHMARK_PAGE_COUNT);
+        Map<String, Integer> noImages = Collections.emptyMap();
+        List<PdfStreamWriter.Link> noLinks = Collections.emptyList();
+        for (PdfStreamWriter.Content content : contents) {
+            int page = writer.reserve();
+            writer.addPage(page, content, noImages, noLinks);
+            pages.add(page);
+        }
+        writer.finish(pages);
+        long elapsed = System.nanoTime() - start;
+
+        double seconds = elapsed / (double) TimeUnit.SECONDS.toNanos(1);
+        System.out.println(String.format(java.util.Locale.ROOT, "%d pages, %d Ko : %.0f pages/s",
+            BENCHMARK_PAGE_COUNT, sink.count / 1024, BENCHMARK_PAGE_COUNT / seconds));
+        assertTrue(sink.count > 0);
+    }
+
+    private static PdfStreamWriter.Content content(String title) {
+        PdfStreamWriter.Content content = new PdfStreamWriter.Content();
+        content.text(true, 18, 50, 60, title);
+        content.line(50, 70, 545, 70, 0.5f, 0.7f);
+        content.image("Im1", 50, 80, 200, 150);
+        return content;
+    }
+
+    private static long startXref(String pdf) {
+        Matcher matcher = Pattern.compile("startxref\n(\\d+)\n%%EOF\n$").matcher(pdf);
+        assertTrue(matcher.find());
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private static int size(String pdf) {
+        Matcher matcher = Pattern.compile("/Size (\\d+)").matcher(pdf);
+        assertTrue(matcher.find());
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    /**
+     * Positions des objets 1..n, entrée libre 0 exclue ; chaque ligne fait 20 octets
+     */
+    private static List<Long> xrefOffsets(String pdf, int xref) {
+        String[] lines = pdf.substring(xref).split("\n");
+        assertEquals("xref", lines[0]);
+        int count = Integer.parseInt(lines[1].split(" ")[1]);
+        assertEquals("0000000000 65535 f ", lines[2]);
+        List<Long> offsets = new ArrayList<>(count - 1);
+        for (int i = 3; i < count + 2; i++) {
+            assertEquals(19, lines[i].length());
+            assertTrue(lines[i].endsWith(" 00000 n "));
+            offsets.add(Long.parseLong(lines[i].substring(0, 10)));
+        }
+        return offsets;
+    }
+
+    private static final class CountingSink extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
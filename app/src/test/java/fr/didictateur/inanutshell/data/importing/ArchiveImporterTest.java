@@ -0,0 +1,401 @@
+package fr.didictateur.inanutshell.data.importing;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import fr.didictateur.inanutshell.data.database.RecipeDao;
+import fr.didictateur.inanutshell.data.importing.RecipeImporter.ArchiveImportCallback;
+import fr.didictateur.inanutshell.data.importing.RecipeImporter.ArchiveImportResult;
+import fr.didictateur.inanutshell.data.importing.RecipeImporter.BulkImportHandle;
+import fr.didictateur.inanutshell.data.model.Recipe;
+import fr.didictateur.inanutshell.utils.ImageUtils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Import d'archives construites en mémoire : export Mealie, archive et recette Paprika,
+ * association des images, dédoublonnage par empreinte et reprise après annulation
+ */
+public class ArchiveImporterTest {
+    private static final byte[] WEBP = "RIFF....WEBPVP8 quiche".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, 't', 'a', 't', 'i', 'n', (byte) 0xFF, (byte) 0xD9};
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private InMemoryRecipeDao recipeDao;
+    private File imageDir;
+    private File stagingDir;
+
+    @Before
+    public void setUp() throws IOException {
+        recipeDao = new InMemoryRecipeDao();
+        imageDir = tempFolder.newFolder("images");
+        stagingDir = new File(tempFolder.getRoot(), "staging");
+    }
+
+    @Test
+    public void mealieExportMatchesImagesBeforeAndAfterTheirRecipe() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        // Image lue avant sa recette : mise de côté puis rattachée
+        entries.put("recipes/quiche/images/original.webp", WEBP);
+        entries.put("recipes/quiche/images/min-original.webp", "miniature".getBytes(StandardCharsets.US_ASCII));
+        entries.put("recipes/quiche/quiche.json", json("{\"name\":\"Quiche lorraine\","
+            + "\"recipeIngredient\":[\"3 œufs\",\"200 g de lardons\"],"
+            + "\"recipeInstructions\":[{\"text\":\"Cuire 35 min\"}]}"));
+        entries.put("recipes/tarte-tatin/tarte-tatin.json", json("{\"name\":\"Tarte Tatin\","
+            + "\"recipeIngredient\":[\"6 pommes\"]}"));
+        entries.put("recipes/tarte-tatin/images/original.jpg", JPEG);
+        entries.put("__MACOSX/recipes/quiche/._quiche.json", new byte[] {0, 5, 22, 7});
+
+        ArchiveImportResult result = run(zip(entries));
+
+        assertEquals(2, result.imported);
+        assertEquals(0, result.duplicates);
+        assertEquals(0, result.failed);
+        assertEquals(2, result.images);
+        Recipe quiche = recipeDao.byName("Quiche lorraine");
+        assertEquals(2, quiche.getRecipeIngredient().size());
+        assertEquals("Cuire 35 min", quiche.getRecipeInstructions().get(0).getText());
+        assertArrayEquals(WEBP, imageOf(quiche, "webp"));
+        assertArrayEquals(JPEG, imageOf(recipeDao.byName("Tarte Tatin"), "jpg"));
+        assertEquals(2, imageDir.listFiles().length);
+        assertFalse(stagingDir.exists());
+    }
+
+    @Test
+    public void recipesArrayOfAppExport() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("export/recipes.json", json("{\"version\":2,\"recipes\":["
+            + "{\"name\":\"Crème brûlée\",\"recipeInstructions\":[\"Cuire au bain-marie\"]},"
+            + "\"pas une recette\","
+            + "{\"name\":\"Flan\"}]}"));
+
+        ArchiveImportResult result = run(zip(entries));
+
+        assertEquals(2, result.imported);
+        assertNotNull(recipeDao.byName("Crème brûlée"));
+        assertNotNull(recipeDao.byName("Flan"));
+    }
+
+    @Test
+    public void paprikaArchive() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("Crêpes.paprikarecipe", gzip(json("{\"name\":\"Crêpes\",\"servings\":\"4\","
+            + "\"prep_time\":\"10 min\",\"cook_time\":\"20 min\",\"description\":null,"
+            + "\"ingredients\":\"250 g de farine\\n\\n4 œufs\\r\\n50 cl de lait\","
+            + "\"directions\":\"Mélanger\\nLaisser reposer 1 h\\nCuire\","
+            + "\"categories\":[\"Desserts\",\"Bretagne\"],\"uid\":\"A1B2\",\"rating\":5}")));
+        entries.put("Galettes.paprikarecipe", gzip(json("{\"name\":\"Galettes\",\"ingredients\":\"Sarrasin\"}")));
+
+        ArchiveImportResult result = run(zip(entries));
+
+        assertEquals(2, result.imported);
+        Recipe crepes = recipeDao.byName("Crêpes");
+        assertEquals("4", crepes.getRecipeYield());
+        assertEquals("10 min", crepes.getPrepTime());
+        assertEquals("20 min", crepes.getCookTime());
+        assertEquals(3, crepes.getRecipeIngredient().size());
+        assertEquals("4 œufs", crepes.getRecipeIngredient().get(1).toString());
+        assertEquals(3, crepes.getRecipeInstructions().size());
+        assertEquals("Laisser reposer 1 h", crepes.getRecipeInstructions().get(1).getText());
+        assertEquals(Arrays.asList("Desserts", "Bretagne"), crepes.getRecipeCategory());
+    }
+
+    @Test
+    public void singlePaprikaRecipeFile() throws IOException {
+        ArchiveImportResult result = run(gzip(json("{\"name\":\"Kouign-amann\",\"ingredients\":\"Beurre\\nSucre\"}")));
+
+        assertEquals(1, result.imported);
+        assertEquals(2, recipeDao.byName("Kouign-amann").getRecipeIngredient().size());
+    }
+
+    /**
+     * Même nom (casse et espaces près) et même contenu : doublon, dont l'image est écartée ;
+     * même nom mais autres ingrédients : recette distincte
+     */
+    @Test
+    public void duplicatesAreDetectedByNameAndContent() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a.json", json("{\"name\":\"Tarte Tatin\",\"recipeIngredient\":[\"6 pommes\",\"Pâte brisée\"]}"));
+        entries.put("a.jpg", JPEG);
+        entries.put("b.jpg", JPEG);
+        entries.put("b.json", json("{\"name\":\"  tarte   TATIN \",\"recipeIngredient\":[\"6  Pommes\",\"pâte brisée\"]}"));
+        entries.put("c.json", json("{\"name\":\"Tarte Tatin\",\"recipeIngredient\":[\"6 poires\",\"Pâte brisée\"]}"));
+        byte[] archive = zip(entries);
+
+        ArchiveImportResult first = run(archive);
+
+        assertEquals(2, first.imported);
+        assertEquals(1, first.duplicates);
+        assertEquals(1, first.images);
+        assertEquals(1, imageDir.listFiles().length);
+        assertFalse(stagingDir.exists());
+
+        // Réimporter la même archive n'ajoute rien
+        ArchiveImportResult second = run(archive);
+
+        assertEquals(0, second.imported);
+        assertEquals(3, second.duplicates);
+        assertEquals(2, recipeDao.recipes.size());
+    }
+
+    @Test
+    public void unreadableEntriesDoNotStopTheImport() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("tronque.json", json("{\"name\":\"Incomplète\","));
+        entries.put("illisible.paprikarecipe", json("pas du gzip"));
+        entries.put("sans-nom.json", json("{\"description\":\"Recette sans nom\"}"));
+        entries.put("ok.json", json("{\"name\":\"Ratatouille\"}"));
+
+        ArchiveImportResult result = run(zip(entries));
+
+        assertEquals(1, result.imported);
+        assertEquals(3, result.failed);
+        assertNotNull(recipeDao.byName("Ratatouille"));
+    }
+
+    /**
+     * Annulation après le premier lot : il reste enregistré, et relancer l'import n'ajoute que le reste
+     */
+    @Test
+    public void cancelledImportKeepsSavedBatches() throws IOException {
+        StringBuilder recipes = new StringBuilder("[");
+        for (int i = 0; i < 80; i++) {
+            if (i > 0) recipes.append(',');
+            recipes.append("{\"name\":\"Recette ").append(i).append("\",\"recipeIngredient\":[\"ingrédient ")
+                .append(i).append("\"]}");
+        }
+        byte[] archive = json(recipes.append(']').toString());
+
+        BulkImportHandle handle = new BulkImportHandle();
+        try {
+            new ArchiveImporter(recipeDao, imageDir, stagingDir).run(new ByteArrayInputStream(archive),
+                archive.length, handle, new RecordingCallback() {
+                    @Override
+                    public void onProgress(int imported, long bytesRead, long totalBytes) {
+                        handle.cancel();
+                    }
+                });
+            fail("L'import annulé doit s'interrompre");
+        } catch (InterruptedIOException expected) {
+            // attendu
+        }
+        int saved = recipeDao.recipes.size();
+        assertTrue(saved > 0 && saved < 80);
+
+        ArchiveImportResult resumed = run(archive);
+
+        assertEquals(80 - saved, resumed.imported);
+        assertEquals(saved, resumed.duplicates);
+        assertEquals(80, recipeDao.recipes.size());
+    }
+
+    private ArchiveImportResult run(byte[] archive) throws IOException {
+        return new ArchiveImporter(recipeDao, imageDir, stagingDir).run(new ByteArrayInputStream(archive),
+            archive.length, new BulkImportHandle(), new RecordingCallback());
+    }
+
+    private byte[] imageOf(Recipe recipe, String extension) throws IOException {
+        File image = ImageUtils.getRecipeImageFile(imageDir, recipe.getId(), extension);
+        assertTrue(image.getName() + " absente", image.exists());
+        return Files.readAllBytes(image.toPath());
+    }
+
+    private static byte[] json(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] zip(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static class RecordingCallback implements ArchiveImportCallback {
+        @Override
+        public void onSuccess(ArchiveImportResult result) {
+        }
+
+        @Override
+        public void onError(String error) {
+        }
+
+        @Override
+        public void onProgress(int imported, long bytesRead, long totalBytes) {
+        }
+    }
+
+    /**
+     * Table des recettes triée par id, comme la pagination par clé de Room
+     */
+    private static final class InMemoryRecipeDao implements RecipeDao {
+        final TreeMap<String, Recipe> recipes = new TreeMap<>();
+
+        Recipe byName(String name) {
+            for (Recipe recipe : recipes.values()) {
+                if (name.equals(recipe.getName())) return recipe;
+            }
+            fail("Recette absente : " + name);
+            return null;
+        }
+
+        @Override
+        public void insertRecipes(List<Recipe> batch) {
+            for (Recipe recipe : batch) {
+                if (recipes.containsKey(recipe.getId())) {
+                    throw new IllegalStateException("Identifiant déjà présent : " + recipe.getId());
+                }
+            }
+            for (Recipe recipe : batch) {
+                recipes.put(recipe.getId(), recipe);
+            }
+        }
+
+        @Override
+        public List<Recipe> getRecipesAfter(String afterId, int limit) {
+            List<Recipe> page = new ArrayList<>(limit);
+            for (Recipe recipe : recipes.tailMap(afterId, false).values()) {
+                if (page.size() == limit) break;
+                page.add(recipe);
+            }
+            return page;
+        }
+
+        @Override
+        public int getRecipeCount() {
+            return recipes.size();
+        }
+
+        @Override
+        public List<Recipe> getAllRecipes() {
+            return new ArrayList<>(recipes.values());
+        }
+
+        @Override
+        public List<Recipe> getAllRecipesSync() {
+            return getAllRecipes();
+        }
+
+        @Override
+        public List<Recipe> getAllRecipesSorted() {
+            return getAllRecipes();
+        }
+
+        @Override
+        public List<Recipe> getRecipesByIds(List<String> ids) {
+            List<Recipe> found = new ArrayList<>();
+            for (String id : ids) {
+                if (recipes.containsKey(id)) found.add(recipes.get(id));
+            }
+            return found;
+        }
+
+        @Override
+        public void upsertRecipes(List<Recipe> batch) {
+            for (Recipe recipe : batch) {
+                recipes.put(recipe.getId(), recipe);
+            }
+        }
+
+        @Override
+        public void insert(Recipe recipe) {
+            insertRecipes(Collections.singletonList(recipe));
+        }
+
+        @Override
+        public long insertRecipe(Recipe recipe) {
+            insert(recipe);
+            return recipes.size();
+        }
+
+        @Override
+        public void update(Recipe recipe) {
+            recipes.put(recipe.getId(), recipe);
+        }
+
+        @Override
+        public void updateRecipe(Recipe recipe) {
+            update(recipe);
+        }
+
+        @Override
+        public void deleteRecipe(Recipe recipe) {
+            recipes.remove(recipe.getId());
+        }
+
+        @Override
+        public void deleteAllRecipes() {
+            recipes.clear();
+        }
+
+        @Override
+        public Recipe getRecipeById(long id) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deleteRecipeById(long id) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Recipe> searchRecipesByTitle(String title) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Recipe> getRecipesByCategory(String category) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Recipe> getFavoriteRecipes() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<String> getAllCategories() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
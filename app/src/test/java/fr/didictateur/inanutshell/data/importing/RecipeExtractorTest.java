@@ -0,0 +1,143 @@
+package fr.didictateur.inanutshell.data.importing;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Extraction JSON-LD en flux sur des pages types : objet seul, @graph, tableau, blocs invalides,
+ * scripts ordinaires, jeu de caractères déclaré et repli sur Microdata
+ */
+public class RecipeExtractorTest {
+
+    private RecipeExtractor extractor;
+
+    @Before
+    public void setUp() {
+        extractor = new RecipeExtractor(new RecipeImporter(null, null, null));
+    }
+
+    @Test
+    public void singleRecipeObjectWithRelativeCanonical() throws IOException {
+        RecipeExtractor.Result result = extract(page(
+            "<link rel=\"canonical\" href=\"/recettes/tarte-tatin\">"
+                + jsonLd("{\"@context\":\"https://schema.org\",\"@type\":\"Recipe\",\"name\":\"Tarte Tatin\","
+                + "\"description\":\"Pommes caramélisées\",\"recipeYield\":\"6 parts\"}"),
+            ""), "https://cuisine.example/recettes/tarte-tatin?utm_source=rss");
+
+        assertEquals("Tarte Tatin", result.recipe.getName());
+        assertEquals("Pommes caramélisées", result.recipe.getDescription());
+        assertEquals("6", result.recipe.getRecipeYield());
+        assertEquals("https://cuisine.example/recettes/tarte-tatin", result.canonicalUrl);
+    }
+
+    @Test
+    public void recipeInsideGraph() throws IOException {
+        RecipeExtractor.Result result = extract(page(jsonLd("{\"@context\":\"https://schema.org\",\"@graph\":["
+            + "{\"@type\":\"WebSite\",\"name\":\"Cuisine\"},"
+            + "{\"@type\":\"BreadcrumbList\",\"itemListElement\":[]},"
+            + "{\"@type\":\"Recipe\",\"name\":\"Quiche lorraine\"}]}"), ""),
+            "https://graph.example/quiche");
+
+        assertEquals("Quiche lorraine", result.recipe.getName());
+        assertNull(result.canonicalUrl);
+    }
+
+    @Test
+    public void recipeInsideTopLevelArray() throws IOException {
+        RecipeExtractor.Result result = extract(page(jsonLd("[{\"@type\":\"Organization\",\"name\":\"Éditeur\"},"
+            + "{\"@type\":[\"Recipe\",\"NewsArticle\"],\"name\":\"Crêpes\"}]"), ""),
+            "https://array.example/crepes");
+
+        assertEquals("Crêpes", result.recipe.getName());
+    }
+
+    @Test
+    public void brokenBlockDoesNotHideNextOne() throws IOException {
+        RecipeExtractor.Result result = extract(page(
+            jsonLd("{\"@type\":\"Recipe\",\"name\":\"Incomplète\",")
+                + jsonLd("{\"@type\":\"Recipe\",\"name\":\"Ratatouille\"}"),
+            ""), "https://broken.example/ratatouille");
+
+        assertEquals("Ratatouille", result.recipe.getName());
+    }
+
+    @Test
+    public void brokenJsonFallsBackToMicrodata() throws IOException {
+        RecipeExtractor.Result result = extract(page(
+            jsonLd("{\"@type\": \"Recipe\", \"name\": }"),
+            "<div itemscope itemtype=\"https://schema.org/Recipe\"><h1 itemprop=\"name\">Gratin dauphinois</h1></div>"),
+            "https://microdata.example/gratin");
+
+        assertEquals("Gratin dauphinois", result.recipe.getName());
+    }
+
+    /**
+     * Une chaîne "&lt;script" dans du JavaScript ne doit pas être prise pour une balise
+     */
+    @Test
+    public void ordinaryScriptsAreSkipped() throws IOException {
+        RecipeExtractor.Result result = extract(page(
+            "<script>var tag = '<script type=\"application/ld+json\">{\"@type\":\"Recipe\",\"name\":\"Piège\"}';"
+                + " var link = '<link rel=\"canonical\" href=\"/piege\">';</script>"
+                + jsonLd("{\"@type\":\"Recipe\",\"name\":\"Bœuf bourguignon\"}"),
+            ""), "https://script.example/boeuf");
+
+        assertEquals("Bœuf bourguignon", result.recipe.getName());
+        assertNull(result.canonicalUrl);
+    }
+
+    @Test
+    public void declaredCharsetIsUsedForJsonLd() throws IOException {
+        String html = "<html><head><meta charset=\"ISO-8859-1\">"
+            + jsonLd("{\"@type\":\"Recipe\",\"name\":\"Île flottante\"}") + "</head><body></body></html>";
+        Charset latin1 = StandardCharsets.ISO_8859_1;
+
+        RecipeExtractor.Result result = extractor.extract(
+            new ByteArrayInputStream(html.getBytes(latin1)), null, "https://latin1.example/ile");
+
+        assertEquals("Île flottante", result.recipe.getName());
+    }
+
+    /**
+     * Site mémorisé sans JSON-LD : les pages suivantes passent par Jsoup, qui trouve quand même
+     * un bloc ajouté depuis
+     */
+    @Test
+    public void domStrategyStillFindsNewJsonLd() throws IOException {
+        String host = "https://memo.example/";
+        RecipeExtractor.Result first = extract(page("",
+            "<div itemscope itemtype=\"https://schema.org/Recipe\"><h1 itemprop=\"name\">Soupe</h1></div>"),
+            host + "soupe");
+        RecipeExtractor.Result second = extract(page(
+            "<link rel=\"canonical\" href=\"https://memo.example/salade\">"
+                + jsonLd("{\"@graph\":[{\"@type\":\"Recipe\",\"name\":\"Salade niçoise\"}]}"), ""),
+            host + "salade?page=2");
+
+        assertEquals("Soupe", first.recipe.getName());
+        assertNotNull(second.recipe);
+        assertEquals("Salade niçoise", second.recipe.getName());
+        assertEquals("https://memo.example/salade", second.canonicalUrl);
+    }
+
+    private RecipeExtractor.Result extract(String html, String url) throws IOException {
+        return extractor.extract(new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)), "UTF-8", url);
+    }
+
+    private static String page(String head, String body) {
+        return "<!DOCTYPE html><html><head><title>Recette</title>" + head + "</head><body>" + body
+            + "</body></html>";
+    }
+
+    private static String jsonLd(String json) {
+        return "<script type=\"application/ld+json\">" + json + "</script>";
+    }
+}
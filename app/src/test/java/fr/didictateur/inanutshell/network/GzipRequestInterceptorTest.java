@@ -0,0 +1,141 @@
+package fr.didictateur.inanutshell.network;
+
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSource;
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Découverte de la compression des requêtes par hôte : clair par défaut, sonde uniquement
+ * sur une requête rejouable, jamais de renvoi d'un POST
+ */
+public class GzipRequestInterceptorTest {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private MockWebServer server;
+    private GzipRequestInterceptor interceptor;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        interceptor = new GzipRequestInterceptor((SharedPreferences) null);
+        client = new OkHttpClient.Builder()
+            .addInterceptor(interceptor)
+            .build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void postToUnknownHostIsSentPlain() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(201));
+
+        send("POST", largeJson());
+
+        RecordedRequest recorded = server.takeRequest();
+        assertNull(recorded.getHeader("Content-Encoding"));
+        assertEquals(largeJson(), recorded.getBody().readUtf8());
+    }
+
+    @Test
+    public void putProbesCompressionAndConfirmsHost() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200));
+        server.enqueue(new MockResponse().setResponseCode(201));
+
+        send("PUT", largeJson());
+        send("POST", largeJson());
+
+        RecordedRequest probe = server.takeRequest();
+        assertEquals("gzip", probe.getHeader("Content-Encoding"));
+        assertEquals(largeJson(), gunzip(probe.getBody()));
+
+        RecordedRequest post = server.takeRequest();
+        assertEquals("gzip", post.getHeader("Content-Encoding"));
+        assertEquals(largeJson(), gunzip(post.getBody()));
+    }
+
+    @Test
+    public void rejectedProbeIsReplayedPlainAndHostMarkedUnsupported() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(415));
+        server.enqueue(new MockResponse().setResponseCode(200));
+        server.enqueue(new MockResponse().setResponseCode(200));
+
+        assertEquals(200, send("PUT", largeJson()));
+        send("PUT", largeJson());
+
+        assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+        RecordedRequest replay = server.takeRequest();
+        assertNull(replay.getHeader("Content-Encoding"));
+        assertEquals(largeJson(), replay.getBody().readUtf8());
+        assertNull(server.takeRequest().getHeader("Content-Encoding"));
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void rejectedPostIsNeverReplayed() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(415));
+
+        assertEquals(415, send("POST", largeJson()));
+
+        assertNull(server.takeRequest().getHeader("Content-Encoding"));
+        assertNull(server.takeRequest(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void smallBodiesStayPlain() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200));
+
+        send("PUT", "{\"name\":\"Tarte\"}");
+
+        assertNull(server.takeRequest().getHeader("Content-Encoding"));
+    }
+
+    private int send(String method, String json) throws IOException {
+        Request request = new Request.Builder()
+            .url(server.url("/api/recipes/tarte"))
+            .method(method, RequestBody.create(json, JSON))
+            .build();
+        try (Response response = client.newCall(request).execute()) {
+            return response.code();
+        }
+    }
+
+    private static String gunzip(Buffer body) throws IOException {
+        return Okio.buffer(new GzipSource(body)).readUtf8();
+    }
+
+    private static String largeJson() {
+        StringBuilder json = new StringBuilder("{\"recipeInstructions\":[");
+        for (int i = 0; i < 100; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"text\":\"Étape ").append(i).append(" : mélanger puis laisser reposer\"}");
+        }
+        return json.append("]}").toString();
+    }
+}
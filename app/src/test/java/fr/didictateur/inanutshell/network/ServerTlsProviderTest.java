@@ -0,0 +1,183 @@
+package fr.didictateur.inanutshell.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.didictateur.inanutshell.config.CertificatePin;
+import fr.didictateur.inanutshell.config.ServerConfig;
+import fr.didictateur.inanutshell.database.dao.CertificatePinDao;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Épinglage à la première connexion d'un serveur auto-signé, refus d'un certificat
+ * différent puis confiance accordée au nouveau certificat
+ */
+public class ServerTlsProviderTest {
+
+    private final HeldCertificate firstCertificate = selfSigned();
+    private final HeldCertificate renewedCertificate = selfSigned();
+
+    private CertificatePinStore pinStore;
+    private ServerTlsProvider tlsProvider;
+    private MockWebServer server;
+    private ServerConfig config;
+    private String hostPort;
+
+    @Before
+    public void setUp() throws IOException {
+        pinStore = new CertificatePinStore(new InMemoryPinDao());
+        tlsProvider = new ServerTlsProvider(pinStore);
+        server = startServer(firstCertificate, 0);
+
+        hostPort = server.getHostName() + ":" + server.getPort();
+        config = new ServerConfig("Mealie", "https://" + hostPort, "cle");
+        config.setId(1);
+        config.setAllowSelfSigned(true);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void firstConnectionPinsServerCertificate() throws IOException {
+        assertEquals(200, get());
+
+        CertificatePin pin = pinStore.get(hostPort);
+        assertNotNull(pin);
+        assertEquals(fingerprint(firstCertificate), pin.spkiSha256);
+        assertNull(tlsProvider.getPinMismatch(config));
+    }
+
+    @Test
+    public void changedCertificateIsRejectedAndReported() throws IOException {
+        assertEquals(200, get());
+        renewServerCertificate();
+
+        try {
+            get();
+            fail("Un certificat différent de celui épinglé doit être refusé");
+        } catch (IOException expected) {
+            // attendu : poignée de main refusée
+        }
+
+        PinningTrustManager.PinMismatchException mismatch = tlsProvider.getPinMismatch(config);
+        assertNotNull(mismatch);
+        assertEquals(fingerprint(firstCertificate), mismatch.getExpected());
+        assertEquals(fingerprint(renewedCertificate), mismatch.getActual());
+        assertEquals(fingerprint(firstCertificate), pinStore.get(hostPort).spkiSha256);
+    }
+
+    @Test
+    public void resetTrustAcceptsRenewedCertificate() throws IOException {
+        assertEquals(200, get());
+        renewServerCertificate();
+        try {
+            get();
+            fail("Un certificat différent de celui épinglé doit être refusé");
+        } catch (IOException expected) {
+            // attendu : poignée de main refusée
+        }
+
+        tlsProvider.resetTrust(config);
+
+        assertEquals(200, get());
+        assertEquals(fingerprint(renewedCertificate), pinStore.get(hostPort).spkiSha256);
+        assertNull(tlsProvider.getPinMismatch(config));
+    }
+
+    private int get() throws IOException {
+        server.enqueue(new MockResponse().setBody("{}"));
+        // Nouveau client à chaque appel : pas de connexion réutilisée depuis un pool
+        OkHttpClient.Builder builder = new OkHttpClient.Builder();
+        tlsProvider.configure(builder, config);
+        Request request = new Request.Builder().url(server.url("/api/app/about")).build();
+        try (Response response = builder.build().newCall(request).execute()) {
+            return response.code();
+        }
+    }
+
+    /**
+     * Même hôte et même port, nouvelle clé : certificat régénéré sur le serveur
+     */
+    private void renewServerCertificate() throws IOException {
+        int port = server.getPort();
+        server.shutdown();
+        server = startServer(renewedCertificate, port);
+    }
+
+    private static MockWebServer startServer(HeldCertificate certificate, int port) throws IOException {
+        MockWebServer webServer = new MockWebServer();
+        HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+            .heldCertificate(certificate)
+            .build();
+        webServer.useHttps(serverCertificates.sslSocketFactory(), false);
+        webServer.start(port);
+        return webServer;
+    }
+
+    private static HeldCertificate selfSigned() {
+        return new HeldCertificate.Builder()
+            .commonName("mealie.local")
+            .addSubjectAlternativeName("mealie.local")
+            .build();
+    }
+
+    private static String fingerprint(HeldCertificate certificate) {
+        return CertificatePinStore.spkiSha256(certificate.certificate());
+    }
+
+    private static final class InMemoryPinDao implements CertificatePinDao {
+        private final Map<String, CertificatePin> pins = new HashMap<>();
+
+        @Override
+        public synchronized void upsert(CertificatePin pin) {
+            pins.put(pin.hostPort, pin);
+        }
+
+        @Override
+        public synchronized List<CertificatePin> getAll() {
+            return new ArrayList<>(pins.values());
+        }
+
+        @Override
+        public synchronized CertificatePin get(String hostPort) {
+            return pins.get(hostPort);
+        }
+
+        @Override
+        public synchronized void touch(String hostPort, long timestamp) {
+            CertificatePin pin = pins.get(hostPort);
+            if (pin != null) pin.lastSeen = timestamp;
+        }
+
+        @Override
+        public synchronized void delete(String hostPort) {
+            pins.remove(hostPort);
+        }
+
+        @Override
+        public synchronized void deleteForServer(int serverId) {
+            pins.values().removeIf(pin -> pin.serverId == serverId);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package fr.didictateur.inanutshell.sync;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import fr.didictateur.inanutshell.data.model.Recipe;
+import fr.didictateur.inanutshell.sync.database.SyncSnapshot;
+import fr.didictateur.inanutshell.sync.database.SyncSnapshotDao;
+import fr.didictateur.inanutshell.sync.model.SyncItem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Encodage / décodage des données de la file hors ligne : objet complet, patch sur la
+ * dernière version synchronisée et repli sur la recette locale
+ */
+public class SyncPayloadCodecTest {
+
+    private final Map<String, Recipe> localRecipes = new HashMap<>();
+    private InMemorySnapshotDao snapshotDao;
+    private SyncSnapshotStore snapshotStore;
+    private SyncPayloadCodec codec;
+
+    @Before
+    public void setUp() {
+        snapshotDao = new InMemorySnapshotDao();
+        snapshotStore = new SyncSnapshotStore(snapshotDao);
+        codec = new SyncPayloadCodec(snapshotStore, localRecipes::get);
+    }
+
+    @Test
+    public void fullPayloadRoundTrip() throws IOException {
+        Recipe recipe = recipe("r1", "Tarte", "Pâte brisée et pommes");
+
+        byte[] payload = codec.encode(item(recipe, SyncItem.Action.CREATE));
+        Recipe decoded = (Recipe) codec.decode(payload, SyncItem.Type.RECIPE, "r1");
+
+        assertEquals("r1", decoded.getId());
+        assertEquals("Tarte", decoded.getName());
+        assertEquals("Pâte brisée et pommes", decoded.getDescription());
+    }
+
+    @Test
+    public void updateIsEncodedAsPatchOnSyncedVersion() throws IOException {
+        Recipe synced = recipe("r1", "Tarte", longDescription());
+        snapshotStore.saveRecipe(synced);
+        Recipe edited = recipe("r1", "Tarte aux pommes", longDescription());
+
+        byte[] patch = codec.encode(item(edited, SyncItem.Action.UPDATE));
+        byte[] full = codec.encode(item(edited, SyncItem.Action.CREATE));
+        Recipe decoded = (Recipe) codec.decode(patch, SyncItem.Type.RECIPE, "r1");
+
+        assertTrue("patch " + patch.length + " octets, complet " + full.length, patch.length < full.length);
+        assertEquals("Tarte aux pommes", decoded.getName());
+        assertEquals(longDescription(), decoded.getDescription());
+    }
+
+    @Test
+    public void removedFieldIsRemovedFromBase() throws IOException {
+        snapshotStore.saveRecipe(recipe("r1", "Tarte", "Ancienne description"));
+        Recipe edited = recipe("r1", "Tarte", null);
+
+        byte[] patch = codec.encode(item(edited, SyncItem.Action.UPDATE));
+        Recipe decoded = (Recipe) codec.decode(patch, SyncItem.Type.RECIPE, "r1");
+
+        assertEquals("Tarte", decoded.getName());
+        assertNull(decoded.getDescription());
+    }
+
+    @Test
+    public void replacedBaseFallsBackToLocalRecipe() throws IOException {
+        snapshotStore.saveRecipe(recipe("r1", "Tarte", "v1"));
+        byte[] patch = codec.encode(item(recipe("r1", "Tarte", "v2"), SyncItem.Action.UPDATE));
+
+        // Nouvelle synchronisation entre l'encodage et l'envoi
+        snapshotDao.get(SyncItem.Type.RECIPE.name(), "r1").syncedAt += 1;
+        localRecipes.put("r1", recipe("r1", "Tarte", "v3 locale"));
+
+        Recipe decoded = (Recipe) codec.decode(patch, SyncItem.Type.RECIPE, "r1");
+
+        assertEquals("v3 locale", decoded.getDescription());
+    }
+
+    @Test
+    public void missingBaseAndLocalRecipeFailsToDecode() throws IOException {
+        snapshotStore.saveRecipe(recipe("r1", "Tarte", "v1"));
+        byte[] patch = codec.encode(item(recipe("r1", "Tarte", "v2"), SyncItem.Action.UPDATE));
+        snapshotStore.deleteRecipe("r1");
+
+        try {
+            codec.decode(patch, SyncItem.Type.RECIPE, "r1");
+            fail("Le patch sans base ni recette locale doit échouer");
+        } catch (IOException expected) {
+            // attendu
+        }
+    }
+
+    @Test
+    public void emptyPayloadDecodesToNull() throws IOException {
+        byte[] payload = codec.encode(item(null, SyncItem.Action.DELETE));
+
+        assertNull(codec.decode(payload, SyncItem.Type.RECIPE, "r1"));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownFormatVersionIsRejected() throws IOException {
+        codec.decode(new byte[] {42, 1}, SyncItem.Type.RECIPE, "r1");
+    }
+
+    private static SyncItem item(Recipe recipe, SyncItem.Action action) {
+        return new SyncItem("r1", SyncItem.Type.RECIPE, action, 0L, "test", recipe);
+    }
+
+    private static Recipe recipe(String id, String name, String description) {
+        Recipe recipe = new Recipe();
+        recipe.setId(id);
+        recipe.setName(name);
+        recipe.setDescription(description);
+        recipe.setRecipeYield("4 personnes");
+        return recipe;
+    }
+
+    private static String longDescription() {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            description.append("Étape ").append(i).append(" : mélanger puis laisser reposer. ");
+        }
+        return description.toString();
+    }
+
+    private static final class InMemorySnapshotDao implements SyncSnapshotDao {
+        private final Map<String, SyncSnapshot> snapshots = new HashMap<>();
+
+        @Override
+        public void upsert(SyncSnapshot snapshot) {
+            snapshots.put(snapshot.type + "/" + snapshot.itemId, snapshot);
+        }
+
+        @Override
+        public SyncSnapshot get(String type, String itemId) {
+            return snapshots.get(type + "/" + itemId);
+        }
+
+        @Override
+        public void delete(String type, String itemId) {
+            snapshots.remove(type + "/" + itemId);
+        }
+
+        @Override
+        public void deleteAll() {
+            snapshots.clear();
+        }
+    }
+}